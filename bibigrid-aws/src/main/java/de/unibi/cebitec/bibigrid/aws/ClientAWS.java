@@ -1,5 +1,6 @@
 package de.unibi.cebitec.bibigrid.aws;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
@@ -13,12 +14,14 @@ import de.unibi.cebitec.bibigrid.core.model.Snapshot;
 import de.unibi.cebitec.bibigrid.core.model.Subnet;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.ClientConnectionFailedException;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.NotYetSupportedException;
+import de.unibi.cebitec.bibigrid.core.util.RetryPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -27,6 +30,7 @@ import java.util.stream.Collectors;
  */
 class ClientAWS extends Client {
     private static final Logger LOG = LoggerFactory.getLogger(ClientAWS.class);
+    static final RetryPolicy RETRY = RetryPolicy.DEFAULT.withClassifier(ClientAWS::classify);
 
     private AmazonEC2 internalClient;
 
@@ -53,6 +57,40 @@ class ClientAWS extends Client {
         return internalClient;
     }
 
+    /**
+     * Throttled requests and unavailable services have not been processed. Internal errors and lost
+     * connections may have been processed. Resources not found right after their creation are a result of
+     * the eventual consistency of the ec2 api and show up with a delay.
+     */
+    private static RetryPolicy.Failure classify(Throwable e) {
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException ase = (AmazonServiceException) e;
+            String code = ase.getErrorCode() != null ? ase.getErrorCode() : "";
+            if (ase.getStatusCode() == 503 || code.equals("RequestLimitExceeded") || code.equals("Throttling")) {
+                return RetryPolicy.Failure.REJECTED;
+            }
+            return ase.getStatusCode() >= 500 || code.endsWith(".NotFound") ?
+                    RetryPolicy.Failure.TRANSIENT : RetryPolicy.Failure.PERMANENT;
+        }
+        return e instanceof AmazonClientException ? RetryPolicy.Failure.TRANSIENT : RetryPolicy.Failure.PERMANENT;
+    }
+
+    /**
+     * Runs an ec2 api call and retries it on transient errors according to the {@link RetryPolicy}.
+     *
+     * @param operation name of the operation, e.g. "ec2.instances.describe"
+     */
+    static <T> T call(String operation, Supplier<T> call) {
+        return RETRY.call(operation, call::get);
+    }
+
+    /**
+     * @param idempotent true, if the call can be repeated without side effects, e.g. requests with a client token
+     */
+    static <T> T call(String operation, boolean idempotent, Supplier<T> call) {
+        return RETRY.call(operation, idempotent, call::get);
+    }
+
     @Override
     public List<Network> getNetworks() {
         DescribeVpcsRequest request = new DescribeVpcsRequest();
@@ -170,4 +208,30 @@ class ClientAWS extends Client {
     public ServerGroup getServerGroupByIdOrName(String serverGroup) throws NotYetSupportedException {
         throw new NotYetSupportedException("Server groups are currently not supported by BiBigrid AWS.");
     }
+
+    /**
+     * EC2 reports the elastic ip limit of the region as account attribute. The instance limits are vCPU based
+     * and only available through the service quotas api, so they are not checked.
+     */
+    @Override
+    public Quotas getQuotas() {
+        Quotas quotas = new Quotas();
+        try {
+            DescribeAccountAttributesRequest attributesRequest = new DescribeAccountAttributesRequest()
+                    .withAttributeNames("vpc-max-elastic-ips");
+            for (AccountAttribute attribute :
+                    internalClient.describeAccountAttributes(attributesRequest).getAccountAttributes()) {
+                if (attribute.getAttributeValues().isEmpty()) {
+                    continue;
+                }
+                long limit = Long.parseLong(attribute.getAttributeValues().get(0).getAttributeValue());
+                long used = internalClient.describeAddresses().getAddresses().stream()
+                        .filter(address -> DomainType.Vpc.toString().equals(address.getDomain())).count();
+                quotas.set(Quotas.Resource.FLOATING_IPS, limit, used);
+            }
+        } catch (AmazonServiceException e) {
+            LOG.warn("Failed to load account attributes: {}", e.getErrorMessage());
+        }
+        return quotas;
+    }
 }
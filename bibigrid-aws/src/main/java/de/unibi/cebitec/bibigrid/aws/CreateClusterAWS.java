@@ -143,6 +143,7 @@ public class CreateClusterAWS extends CreateCluster {
     protected InstanceAWS launchClusterMasterInstance(String masterName) {
         LOG.info("Requesting master instance ...");
         Instance masterInstance;
+        List<String> masterInstanceIds;
         Tag masterNameTag = new Tag().withKey(de.unibi.cebitec.bibigrid.core.model.Instance.TAG_NAME).withValue(masterName);
         if (config.isUseSpotInstances()) {
             RequestSpotInstancesRequest masterReq = new RequestSpotInstancesRequest()
@@ -161,7 +162,9 @@ public class CreateClusterAWS extends CreateCluster {
                     .withNetworkInterfaces(masterNetworkInterface);
             masterReq.setLaunchSpecification(masterLaunchSpecification);
 
-            RequestSpotInstancesResult masterReqResult = ec2.requestSpotInstances(masterReq);
+            masterReq.setClientToken(UUID.randomUUID().toString());
+            RequestSpotInstancesResult masterReqResult = ClientAWS.call("ec2.spotInstances.request", true,
+                    () -> ec2.requestSpotInstances(masterReq));
 
             List<SpotInstanceRequest> masterReqResponses = masterReqResult.getSpotInstanceRequests();
             // collect all spotInstanceRequestIds ...
@@ -170,12 +173,12 @@ public class CreateClusterAWS extends CreateCluster {
                 spotInstanceRequestIds.add(requestResponse.getSpotInstanceRequestId());
             }
             // Tag spot request
-            ec2.createTags(new CreateTagsRequest()
+            ClientAWS.call("ec2.tags.create", true, () -> ec2.createTags(new CreateTagsRequest()
                     .withResources(spotInstanceRequestIds)
-                    .withTags(bibigridId, username, masterNameTag));
+                    .withTags(bibigridId, username, masterNameTag)));
             // Wait for spot request finished
             LOG.info("Waiting for master instance (spot request) to finish booting ...");
-            masterInstance = waitForInstances(waitForSpotInstances(spotInstanceRequestIds)).get(0);
+            masterInstanceIds = waitForSpotInstances(spotInstanceRequestIds);
         } else {
             RunInstancesRequest masterReq = new RunInstancesRequest()
                     .withInstanceType(InstanceType.fromValue(config.getMasterInstance().getProviderType().getValue()))
@@ -185,31 +188,49 @@ public class CreateClusterAWS extends CreateCluster {
                     .withImageId(config.getMasterInstance().getImage())
                     .withUserData(base64MasterUserData)
                     .withBlockDeviceMappings(masterDeviceMappings)
-                    .withNetworkInterfaces(masterNetworkInterface);
+                    .withNetworkInterfaces(masterNetworkInterface)
+                    .withClientToken(UUID.randomUUID().toString());
             // mounting ephemerals
-            RunInstancesResult runInstancesResult = ec2.runInstances(masterReq);
+            RunInstancesResult runInstancesResult = ClientAWS.call("ec2.instances.run", true,
+                    () -> ec2.runInstances(masterReq));
             runInstancesResult.getReservation().getReservationId();
-            masterInstance = runInstancesResult.getReservation().getInstances().get(0);
+            masterInstanceIds = Collections.singletonList(
+                    runInstancesResult.getReservation().getInstances().get(0).getInstanceId());
             LOG.info("Waiting for master instance to finish booting ...");
-            // Waiting for master instance to run
-            masterInstance = waitForInstances(Collections.singletonList(masterInstance.getInstanceId())).get(0);
         }
+        // Waiting for master instance to run
+        List<Instance> runningInstances = waitForInstances(masterInstanceIds);
+        if (isCancelled()) {
+            terminateUntaggedInstances(masterInstanceIds);
+            return null;
+        }
+        if (runningInstances.isEmpty()) {
+            LOG.error("Master instance has not been launched.");
+            return null;
+        }
+        masterInstance = runningInstances.get(0);
         LOG.info(I, "Master instance is now running!");
 
         ModifyInstanceAttributeRequest instanceAttributeRequest = new ModifyInstanceAttributeRequest();
         instanceAttributeRequest.setInstanceId(masterInstance.getInstanceId());
         instanceAttributeRequest.setSourceDestCheck(Boolean.FALSE);
-        ec2.modifyInstanceAttribute(instanceAttributeRequest);
+        ClientAWS.call("ec2.instanceAttributes.modify", true,
+                () -> ec2.modifyInstanceAttribute(instanceAttributeRequest));
         // Tagging Master with a name
-        ec2.createTags(new CreateTagsRequest()
-                .withResources(masterInstance.getInstanceId())
-                .withTags(bibigridId, username, masterNameTag));
+        final String masterInstanceId = masterInstance.getInstanceId();
+        ClientAWS.call("ec2.tags.create", true, () -> ec2.createTags(new CreateTagsRequest()
+                .withResources(masterInstanceId)
+                .withTags(bibigridId, username, masterNameTag)));
         // Waiting for Status Checks to finish
         LOG.info("Waiting for status checks on master ...");
         do {
+            if (isCancelled()) {
+                return null;
+            }
             DescribeInstanceStatusRequest request = new DescribeInstanceStatusRequest();
             request.setInstanceIds(Collections.singletonList(masterInstance.getInstanceId()));
-            DescribeInstanceStatusResult response = ec2.describeInstanceStatus(request);
+            DescribeInstanceStatusResult response = ClientAWS.call("ec2.instanceStatus.describe",
+                    () -> ec2.describeInstanceStatus(request));
             InstanceStatus status = response.getInstanceStatuses().get(0);
             String instanceStatus = status.getInstanceStatus().getStatus();
             String systemStatus = status.getSystemStatus().getStatus();
@@ -218,7 +239,9 @@ public class CreateClusterAWS extends CreateCluster {
                 break;
             }
             LOG.info(V, "...");
-            sleep(10);
+            if (!sleep(10)) {
+                return null;
+            }
         } while (true);
         LOG.info(I, "Status checks successful.");
         return new InstanceAWS(config.getMasterInstance(), masterInstance);
@@ -229,59 +252,31 @@ public class CreateClusterAWS extends CreateCluster {
             int batchIndex, Configuration.WorkerInstanceConfiguration instanceConfiguration, String workerName) {
         // run worker instances and supply userdata
         List<Instance> workerInstances;
+        List<String> workerInstanceIds;
         Tag workerNameTag = new Tag().withKey(de.unibi.cebitec.bibigrid.core.model.Instance.TAG_NAME).withValue(workerName);
         String base64WorkerUserData = ShellScriptCreator.getUserData(config, true);
         if (config.isUseSpotInstances()) {
-            RequestSpotInstancesRequest workerReq = new RequestSpotInstancesRequest()
-                    .withType(SpotInstanceType.OneTime)
-                    .withInstanceCount(instanceConfiguration.getCount())
-                    .withLaunchGroup("lg_" + clusterId)
-                    .withSpotPrice(Double.toString(config.getBidPrice()));
-
-            LaunchSpecification workerLaunchSpecification = new LaunchSpecification()
-                    .withInstanceType(InstanceType.fromValue(instanceConfiguration.getProviderType().getValue()))
-                    .withPlacement(spotInstancePlacement)
-                    .withKeyName(config.getKeypair())
-                    .withImageId(instanceConfiguration.getImage())
-                    .withUserData(base64WorkerUserData)
-                    .withBlockDeviceMappings(workerBlockDeviceMappings.get(batchIndex))
-                    .withNetworkInterfaces(workerNetworkInterface);
-
-            workerReq.setLaunchSpecification(workerLaunchSpecification);
-            RequestSpotInstancesResult workerReqResult = ec2.requestSpotInstances(workerReq);
-            List<SpotInstanceRequest> workerReqResponses = workerReqResult.getSpotInstanceRequests();
-            // collect all spotInstanceRequestIds ...
-            List<String> spotInstanceRequestIds = new ArrayList<>();
-            for (SpotInstanceRequest requestResponse : workerReqResponses) {
-                spotInstanceRequestIds.add(requestResponse.getSpotInstanceRequestId());
-            }
-            sleep(1);
-            LOG.info(V, "tag spot request instances");
-            // tag spot requests (worker)
-            CreateTagsRequest ctr = new CreateTagsRequest()
-                    .withResources(spotInstanceRequestIds)
-                    .withTags(bibigridId, username, workerNameTag);
-            // Setting tags for spot requests can cause an amazon service exception, if the spot request
-            // returns an id, but the id isn't registered in spot request registry yet.
-            int counter = 0;
-            boolean finished = false;
-            while (!finished) {
-                try {
-                    ec2.createTags(ctr);
-                    finished = true;
-                } catch (AmazonServiceException ase) {
-                    if (counter < 5) {
-                        LOG.warn("{} ... trying again in 10 seconds.", ase.getMessage());
-                        sleep(10);
-                        counter++;
-                    } else {
-                        throw ase;
+            workerInstanceIds = requestSpotWorkerInstances(batchIndex, instanceConfiguration.getCount(),
+                    instanceConfiguration.getProviderType(), spotInstancePlacement, "lg_" + clusterId,
+                    workerNameTag, base64WorkerUserData);
+            // Unfulfilled spot requests are replaced within the budget, without the launch group of the batch.
+            // The subnet of the cluster is bound to its availability zone, so no fallback zone is used.
+            while (workerInstanceIds.size() < instanceConfiguration.getCount() && !isCancelled()) {
+                int replacements = 0;
+                for (int i = workerInstanceIds.size(); i < instanceConfiguration.getCount(); i++) {
+                    if (takeWorkerReplacement(workerName + " (spot request)")) {
+                        replacements++;
                     }
                 }
+                if (replacements == 0) {
+                    break;
+                }
+                workerInstanceIds.addAll(requestSpotWorkerInstances(batchIndex, replacements,
+                        getReplacementType(instanceConfiguration), spotInstancePlacement, null, workerNameTag,
+                        base64WorkerUserData));
             }
             LOG.info("Waiting for worker instance(s) (spot request) to finish booting ...");
-            // wait for spot request (worker) finished
-            workerInstances = waitForInstances(waitForSpotInstances(spotInstanceRequestIds));
+            workerInstances = waitForInstances(workerInstanceIds);
         } else {
             RunInstancesRequest workerReq = new RunInstancesRequest()
                     .withInstanceType(InstanceType.fromValue(instanceConfiguration.getProviderType().getValue()))
@@ -292,29 +287,97 @@ public class CreateClusterAWS extends CreateCluster {
                     .withImageId(instanceConfiguration.getImage())
                     .withUserData(base64WorkerUserData)
                     .withBlockDeviceMappings(workerBlockDeviceMappings.get(batchIndex))
-                    .withNetworkInterfaces(workerNetworkInterface);
+                    .withNetworkInterfaces(workerNetworkInterface)
+                    .withClientToken(UUID.randomUUID().toString());
 
-            RunInstancesResult runInstancesResult = ec2.runInstances(workerReq);
+            RunInstancesResult runInstancesResult = ClientAWS.call("ec2.instances.run", true,
+                    () -> ec2.runInstances(workerReq));
             runInstancesResult.getReservation().getReservationId();
             // create a list of all worker instances
-            List<String> workerInstanceListIds = new ArrayList<>();
+            workerInstanceIds = new ArrayList<>();
             for (Instance i : runInstancesResult.getReservation().getInstances()) {
-                workerInstanceListIds.add(i.getInstanceId());
+                workerInstanceIds.add(i.getInstanceId());
             }
             LOG.info("Waiting for worker instance(s) to finish booting ...");
-            workerInstances = waitForInstances(workerInstanceListIds);
+            workerInstances = waitForInstances(workerInstanceIds);
+        }
+        if (isCancelled()) {
+            terminateUntaggedInstances(workerInstanceIds);
+            return null;
         }
         // Waiting for master instance to run
         LOG.info(I, "Worker instance(s) is now running!");
         // Tagging all workers with a name
         for (Instance si : workerInstances) {
-            ec2.createTags(new CreateTagsRequest()
+            ClientAWS.call("ec2.tags.create", true, () -> ec2.createTags(new CreateTagsRequest()
                     .withResources(si.getInstanceId())
-                    .withTags(bibigridId, username, workerNameTag));
+                    .withTags(bibigridId, username, workerNameTag)));
         }
         return workerInstances.stream().map(i -> new InstanceAWS(instanceConfiguration, i)).collect(Collectors.toList());
     }
 
+    /**
+     * Requests spot worker instances and waits for the requests to be fulfilled.
+     *
+     * @param launchGroup launch group of the requests or null, if the instances may be launched independently
+     * @return ids of the instances of the fulfilled requests
+     */
+    private List<String> requestSpotWorkerInstances(int batchIndex, int count,
+                                                    de.unibi.cebitec.bibigrid.core.model.InstanceType providerType,
+                                                    SpotPlacement placement, String launchGroup, Tag workerNameTag,
+                                                    String base64WorkerUserData) {
+        RequestSpotInstancesRequest workerReq = new RequestSpotInstancesRequest()
+                .withType(SpotInstanceType.OneTime)
+                .withInstanceCount(count)
+                .withLaunchGroup(launchGroup)
+                .withSpotPrice(Double.toString(config.getBidPrice()));
+
+        LaunchSpecification workerLaunchSpecification = new LaunchSpecification()
+                .withInstanceType(InstanceType.fromValue(providerType.getValue()))
+                .withPlacement(placement)
+                .withKeyName(config.getKeypair())
+                .withImageId(config.getWorkerInstances().get(batchIndex).getImage())
+                .withUserData(base64WorkerUserData)
+                .withBlockDeviceMappings(workerBlockDeviceMappings.get(batchIndex))
+                .withNetworkInterfaces(workerNetworkInterface);
+
+        workerReq.setLaunchSpecification(workerLaunchSpecification);
+        workerReq.setClientToken(UUID.randomUUID().toString());
+        RequestSpotInstancesResult workerReqResult = ClientAWS.call("ec2.spotInstances.request", true,
+                () -> ec2.requestSpotInstances(workerReq));
+        List<SpotInstanceRequest> workerReqResponses = workerReqResult.getSpotInstanceRequests();
+        // collect all spotInstanceRequestIds ...
+        List<String> spotInstanceRequestIds = new ArrayList<>();
+        for (SpotInstanceRequest requestResponse : workerReqResponses) {
+            spotInstanceRequestIds.add(requestResponse.getSpotInstanceRequestId());
+        }
+        sleep(1);
+        LOG.info(V, "tag spot request instances");
+        // tag spot requests (worker)
+        CreateTagsRequest ctr = new CreateTagsRequest()
+                .withResources(spotInstanceRequestIds)
+                .withTags(bibigridId, username, workerNameTag);
+        // Setting tags for spot requests can cause an amazon service exception, if the spot request
+        // returns an id, but the id isn't registered in spot request registry yet. The retry policy
+        // treats these as transient.
+        ClientAWS.call("ec2.tags.create", true, () -> ec2.createTags(ctr));
+        LOG.info("Waiting for worker spot request(s) to be fulfilled ...");
+        return waitForSpotInstances(spotInstanceRequestIds);
+    }
+
+    /**
+     * Terminates instances of a cancelled setup. Instances are tagged after they are running, so the rollback
+     * can't find them before.
+     */
+    private void terminateUntaggedInstances(List<String> instanceIds) {
+        if (instanceIds.isEmpty()) {
+            return;
+        }
+        TerminateInstancesRequest terminateRequest = new TerminateInstancesRequest().withInstanceIds(instanceIds);
+        ClientAWS.call("ec2.instances.terminate", () -> ec2.terminateInstances(terminateRequest));
+        LOG.info("Instance(s) {} terminated.", instanceIds);
+    }
+
     /**
      * Takes a list of instance IDs as Strings and monitors their system status
      *
@@ -326,11 +389,15 @@ public class CreateClusterAWS extends CreateCluster {
             return new ArrayList<>();
         }
         do {
+            if (isCancelled()) {
+                return new ArrayList<>();
+            }
             DescribeInstancesRequest describeInstancesRequest = new DescribeInstancesRequest();
             describeInstancesRequest.setInstanceIds(listOfInstances);
             boolean allRunning = true;
             try {
-                DescribeInstancesResult describeInstancesResult = ec2.describeInstances(describeInstancesRequest);
+                DescribeInstancesResult describeInstancesResult = ClientAWS.call("ec2.instances.describe",
+                        () -> ec2.describeInstances(describeInstancesRequest));
                 // Collect all instances from all reservations and check their state
                 List<Instance> reservationInstances = describeInstancesResult.getReservations().stream()
                         .map(Reservation::getInstances)
@@ -348,67 +415,105 @@ public class CreateClusterAWS extends CreateCluster {
                     return reservationInstances;
                 }
                 LOG.info(V, "...");
-                sleep(10);
+                if (!sleep(10)) {
+                    return new ArrayList<>();
+                }
             } catch (AmazonServiceException e) {
+                // transient errors are already retried, anything else won't go away by polling
+                if (ClientAWS.RETRY.classify(e) == RetryPolicy.Failure.PERMANENT) {
+                    throw e;
+                }
                 LOG.debug("{}", e);
-                sleep(3);
+                if (!sleep(3)) {
+                    return new ArrayList<>();
+                }
             }
         } while (true);
     }
 
     /**
-     * Get a lost of spotInstance IDs as Strings and monitors their spot request status
+     * Get a lost of spotInstance IDs as Strings and monitors their spot request status.
+     * Requests still open after the deadline of the retry policy are cancelled, so the caller can replace them
+     * within the worker replacement budget.
+     *
+     * @return the ids of the instances launched by fulfilled requests
      */
     private List<String> waitForSpotInstances(List<String> listOfSpotInstances) {
-        // Create a variable that will track whether there are any requests still in the open state.
-        boolean anyOpen;
+        // Track the requests which are still in the open state.
+        List<String> openRequests = new ArrayList<>(listOfSpotInstances);
         List<String> fulfilled = new ArrayList<>();
-        do {
+        RetryPolicy.Deadline deadline = ClientAWS.RETRY.deadline();
+        while (!openRequests.isEmpty()) {
             // Create the describeRequest object with all of the request ids to monitor (e.g. that we started).
             DescribeSpotInstanceRequestsRequest describeRequest = new DescribeSpotInstanceRequestsRequest();
             describeRequest.setSpotInstanceRequestIds(listOfSpotInstances);
-            // Initialize the anyOpen variable to false - which assumes there are no requests open unless we find
-            // one that is still open.
-            anyOpen = false;
             try {
                 // Retrieve all of the requests we want to monitor.
-                DescribeSpotInstanceRequestsResult describeResult = ec2.describeSpotInstanceRequests(describeRequest);
-                List<SpotInstanceRequest> describeResponses = describeResult.getSpotInstanceRequests();
-                // Look through each request and determine if they are all in the active state.
-                for (SpotInstanceRequest describeResponse : describeResponses) {
+                DescribeSpotInstanceRequestsResult describeResult = ClientAWS.call(
+                        "ec2.spotInstanceRequests.describe", () -> ec2.describeSpotInstanceRequests(describeRequest));
+                openRequests.clear();
+                for (SpotInstanceRequest describeResponse : describeResult.getSpotInstanceRequests()) {
                     // If the state is open, it hasn't changed since we attempted to request it. There is the
                     // potential for it to transition almost immediately to closed or cancelled so we compare
                     // against open instead of active.
                     if (describeResponse.getState().equals("open")) {
-                        anyOpen = true;
-                        break;
+                        openRequests.add(describeResponse.getSpotInstanceRequestId());
                     }
                 }
             } catch (AmazonServiceException e) {
                 // If we have an exception, ensure we don't break out of the loop. This prevents the scenario where
-                // there was blip on the wire.
-                anyOpen = true;
+                // there was blip on the wire. Permanent errors won't go away by polling.
+                if (ClientAWS.RETRY.classify(e) == RetryPolicy.Failure.PERMANENT) {
+                    throw e;
+                }
+            }
+            if (openRequests.isEmpty()) {
+                break;
+            }
+            if (isCancelled()) {
+                // open requests would otherwise launch instances after the rollback
+                cancelSpotInstanceRequests(listOfSpotInstances);
+                break;
+            }
+            if (deadline.isExpired()) {
+                LOG.warn("{} spot instance request(s) not fulfilled within {} seconds.", openRequests.size(),
+                        ClientAWS.RETRY.getDeadlineMillis() / 1000);
+                cancelSpotInstanceRequests(openRequests);
+                break;
             }
-            // Sleep for 30 seconds.
             LOG.debug(V, "Waiting for spot instance request completion ...");
-            sleep(30);
-        } while (anyOpen);
+            if (!sleep(30)) {
+                cancelSpotInstanceRequests(openRequests);
+                break;
+            }
+        }
 
         // get all instance id's
         DescribeSpotInstanceRequestsRequest describeRequest = new DescribeSpotInstanceRequestsRequest();
         describeRequest.setSpotInstanceRequestIds(listOfSpotInstances);
-        DescribeSpotInstanceRequestsResult describeResult = ec2.describeSpotInstanceRequests(describeRequest);
+        DescribeSpotInstanceRequestsResult describeResult = ClientAWS.call("ec2.spotInstanceRequests.describe",
+                () -> ec2.describeSpotInstanceRequests(describeRequest));
         List<SpotInstanceRequest> describeResponses = describeResult.getSpotInstanceRequests();
         for (SpotInstanceRequest describeResponse : describeResponses) {
             LOG.info(V, "{} : {}", describeResponse.getInstanceId(), describeResponse.getState());
-            if (describeResponse.getState().equals("active")) {
-                LOG.info(V, "{} - {}", describeResponse.getInstanceId(), describeResponse.getInstanceId());
+            // a request cancelled right after its fulfillment keeps its instance running
+            if (describeResponse.getState().equals("active") || (describeResponse.getState().equals("cancelled")
+                    && describeResponse.getInstanceId() != null)) {
+                LOG.info(V, "{} - {}", describeResponse.getSpotInstanceRequestId(), describeResponse.getInstanceId());
                 fulfilled.add(describeResponse.getInstanceId());
             }
         }
         return fulfilled;
     }
 
+    private void cancelSpotInstanceRequests(List<String> spotInstanceRequestIds) {
+        CancelSpotInstanceRequestsRequest cancelRequest = new CancelSpotInstanceRequestsRequest()
+                .withSpotInstanceRequestIds(spotInstanceRequestIds);
+        ClientAWS.call("ec2.spotInstanceRequests.cancel", true,
+                () -> ec2.cancelSpotInstanceRequests(cancelRequest));
+        LOG.info("{} spot instance request(s) cancelled.", spotInstanceRequestIds.size());
+    }
+
     private List<BlockDeviceMapping> createBlockDeviceMappings(DeviceMapper deviceMapper) {
         List<BlockDeviceMapping> mappings = new ArrayList<>();
         List<Configuration.MountPoint> snapshotToMountPointMap = deviceMapper.getSnapshotIdToMountPoint();
@@ -47,11 +47,15 @@ class PrepareIntentAWS extends PrepareIntent {
                     break;
                 } else {
                     LOG.info(V, "...");
-                    sleep(10);
+                    if (!sleep(10)) {
+                        return;
+                    }
                 }
             } catch (AmazonServiceException e) {
                 LOG.debug("{}", e);
-                sleep(3);
+                if (!sleep(3)) {
+                    return;
+                }
             }
         } while (true);
     }
@@ -14,6 +14,7 @@ import de.unibi.cebitec.bibigrid.core.model.Client;
 import de.unibi.cebitec.bibigrid.core.model.Cluster;
 import de.unibi.cebitec.bibigrid.core.model.Configuration;
 import de.unibi.cebitec.bibigrid.core.model.ProviderModule;
+import de.unibi.cebitec.bibigrid.core.util.RetryPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +46,16 @@ public class TerminateIntentAWS extends TerminateIntent {
         return true;
     }
 
+    @Override
+    public boolean terminateInstances(List<de.unibi.cebitec.bibigrid.core.model.Instance> instances) {
+        List<String> instanceIds = new ArrayList<>();
+        for (de.unibi.cebitec.bibigrid.core.model.Instance instance : instances) {
+            instanceIds.add(instance.getId());
+        }
+        terminateInstances(((ClientAWS) client).getInternal(), instanceIds);
+        return true;
+    }
+
     private void terminateInstances(final AmazonEC2 ec2, final Cluster cluster) {
         List<String> instanceIds = new ArrayList<>();
         if (cluster.getMasterInstance() != null) {
@@ -55,15 +66,21 @@ public class TerminateIntentAWS extends TerminateIntent {
                 instanceIds.add(instance.getId());
             }
         }
+        terminateInstances(ec2, instanceIds);
+    }
+
+    private void terminateInstances(final AmazonEC2 ec2, final List<String> instanceIds) {
         if (instanceIds.size() > 0) {
             TerminateInstancesRequest terminateInstanceRequest = new TerminateInstancesRequest();
             terminateInstanceRequest.setInstanceIds(instanceIds);
-            ec2.terminateInstances(terminateInstanceRequest);
+            ClientAWS.call("ec2.instances.terminate", () -> ec2.terminateInstances(terminateInstanceRequest));
             LOG.info("Waiting for instances to shut down. This might take a while.");
+            RetryPolicy.Deadline deadline = ClientAWS.RETRY.deadline();
             do {
                 DescribeInstancesRequest describeInstancesRequest = new DescribeInstancesRequest();
                 describeInstancesRequest.setInstanceIds(instanceIds);
-                DescribeInstancesResult describeInstancesResult = ec2.describeInstances(describeInstancesRequest);
+                DescribeInstancesResult describeInstancesResult = ClientAWS.call("ec2.instances.describe",
+                        () -> ec2.describeInstances(describeInstancesRequest));
                 boolean allTerminated = true;
                 for (Reservation reservation : describeInstancesResult.getReservations()) {
                     for (Instance instance : reservation.getInstances()) {
@@ -74,8 +91,16 @@ public class TerminateIntentAWS extends TerminateIntent {
                 if (allTerminated) {
                     break;
                 }
+                if (deadline.isExpired()) {
+                    LOG.warn("Instances did not shut down within {} seconds.",
+                            ClientAWS.RETRY.getDeadlineMillis() / 1000);
+                    break;
+                }
                 // wait until instances are shut down
-                sleep(5);
+                if (!sleep(5)) {
+                    LOG.warn("Waiting for instances to shut down has been interrupted.");
+                    break;
+                }
             } while (true);
             // log.info("Instance(s) ({}) terminated.",join(",", instances));
         }
@@ -85,7 +110,7 @@ public class TerminateIntentAWS extends TerminateIntent {
         if (cluster.getPlacementGroup() != null) {
             DeletePlacementGroupRequest deletePlacementGroupRequest = new DeletePlacementGroupRequest();
             deletePlacementGroupRequest.setGroupName(cluster.getPlacementGroup());
-            ec2.deletePlacementGroup(deletePlacementGroupRequest);
+            ClientAWS.call("ec2.placementGroups.delete", () -> ec2.deletePlacementGroup(deletePlacementGroupRequest));
             LOG.info("PlacementGroup terminated.");
         }
     }
@@ -94,7 +119,7 @@ public class TerminateIntentAWS extends TerminateIntent {
         if (cluster.getSubnet() != null) {
             DeleteSubnetRequest deleteSubnetRequest = new DeleteSubnetRequest();
             deleteSubnetRequest.setSubnetId(cluster.getSubnet().getId());
-            ec2.deleteSubnet(deleteSubnetRequest);
+            ClientAWS.call("ec2.subnets.delete", () -> ec2.deleteSubnet(deleteSubnetRequest));
             LOG.info("Subnet terminated.");
         }
     }
@@ -103,7 +128,7 @@ public class TerminateIntentAWS extends TerminateIntent {
         if (cluster.getSecurityGroup() != null) {
             DeleteSecurityGroupRequest deleteSecurityGroupRequest = new DeleteSecurityGroupRequest();
             deleteSecurityGroupRequest.setGroupId(cluster.getSecurityGroup());
-            ec2.deleteSecurityGroup(deleteSecurityGroupRequest);
+            ClientAWS.call("ec2.securityGroups.delete", () -> ec2.deleteSecurityGroup(deleteSecurityGroupRequest));
             LOG.info("Security group terminated.");
         }
     }
@@ -130,6 +130,9 @@ public class CreateClusterAzure extends CreateCluster {
         LOG.info("Waiting for Status Checks on instances ...");
         for (VirtualMachine instance : instances) {
             do {
+                if (isCancelled()) {
+                    return;
+                }
                 PowerState status = instance.powerState();
                 LOG.info(V, "Status of " + instance.computerName() + " instance: " + status);
                 if (status == PowerState.RUNNING) {
@@ -43,7 +43,9 @@ class PrepareIntentAzure extends PrepareIntent {
                 break;
             } else {
                 LOG.info(V, "...");
-                sleep(10);
+                if (!sleep(10)) {
+                    return;
+                }
             }
         } while (true);
     }
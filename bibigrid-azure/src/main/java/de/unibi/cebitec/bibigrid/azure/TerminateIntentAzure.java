@@ -5,10 +5,13 @@ import de.unibi.cebitec.bibigrid.core.intents.TerminateIntent;
 import de.unibi.cebitec.bibigrid.core.model.Client;
 import de.unibi.cebitec.bibigrid.core.model.Cluster;
 import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.Instance;
 import de.unibi.cebitec.bibigrid.core.model.ProviderModule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 import static de.unibi.cebitec.bibigrid.azure.CreateClusterEnvironmentAzure.RESOURCE_GROUP_PREFIX;
 
 /**
@@ -37,4 +40,19 @@ public class TerminateIntentAzure extends TerminateIntent {
         }
         return true;
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean terminateInstances(List<Instance> instances) {
+        final Azure compute = ((ClientAzure) client).getInternal();
+        boolean success = true;
+        for (Instance instance : instances) {
+            try {
+                compute.virtualMachines().deleteById(instance.getId());
+            } catch (Exception e) {
+                LOG.error("Failed to delete instance '{}'. {}", instance.getName(), e);
+                success = false;
+            }
+        }
+        return success;
+    }
+}
@@ -0,0 +1,59 @@
+package de.unibi.cebitec.bibigrid.benchmarks;
+
+import de.unibi.cebitec.bibigrid.core.model.Instance;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of the ansible configuration files uploaded to the master.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnsibleConfigBenchmark {
+    @Benchmark
+    public long writeCommonFile(ClusterState state) {
+        CountingOutputStream stream = new CountingOutputStream();
+        state.ansibleConfig.writeCommonFile(stream);
+        return stream.getCount();
+    }
+
+    @Benchmark
+    public long writeSiteFile(ClusterState state) {
+        CountingOutputStream stream = new CountingOutputStream();
+        state.ansibleConfig.writeSiteFile(stream, Collections.emptyMap(), Collections.emptyMap());
+        return stream.getCount();
+    }
+
+    /**
+     * One vars file per worker, as separate files.
+     */
+    @Benchmark
+    public long writeInstanceFile(ClusterState state) {
+        CountingOutputStream stream = new CountingOutputStream();
+        for (Instance worker : state.cluster.getWorkers()) {
+            state.ansibleConfig.writeInstanceFile(worker, stream);
+        }
+        return stream.getCount();
+    }
+
+    /**
+     * All vars files as single archive, as uploaded to the master.
+     */
+    @Benchmark
+    public long writeInstanceFiles(ClusterState state) throws IOException {
+        CountingOutputStream stream = new CountingOutputStream();
+        state.ansibleConfig.writeInstanceFiles(stream);
+        return stream.getCount();
+    }
+
+    @Benchmark
+    public String hostsConfigToString(ClusterState state) {
+        return state.hostsConfig.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package de.unibi.cebitec.bibigrid.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Runs the JMH benchmarks like org.openjdk.jmh.Main, but writes a JSON report by default
+ * (bibigrid-benchmarks-[version]-[timestamp].json), so results can be compared across releases.
+ * All JMH command line options are supported, e.g. "-rf csv" or "-rff results.json" override the defaults.
+ */
+public final class BenchmarkMain {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        if (cmdOptions.shouldHelp()) {
+            cmdOptions.showHelp();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+        if (!cmdOptions.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmdOptions.getResult().hasValue()) {
+            String version = BenchmarkMain.class.getPackage().getImplementationVersion();
+            options.result("bibigrid-benchmarks-" + (version != null ? version : "dev") + "-"
+                    + LocalDateTime.now().format(TIMESTAMP_FORMAT) + ".json");
+        }
+        Runner runner = new Runner(options.build());
+        if (cmdOptions.shouldList()) {
+            runner.list();
+        } else if (cmdOptions.shouldListWithParams()) {
+            runner.listWithParams(cmdOptions);
+        } else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package de.unibi.cebitec.bibigrid.benchmarks;
+
+import de.unibi.cebitec.bibigrid.core.model.AnsibleConfig;
+import de.unibi.cebitec.bibigrid.core.model.AnsibleHostsConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/**
+ * Synthetic cluster of 10 to 10000 workers shared by the benchmarks of one trial.
+ */
+@State(Scope.Benchmark)
+public class ClusterState {
+    @Param({"10", "100", "1000", "10000"})
+    public int workers;
+
+    SyntheticCluster cluster;
+    AnsibleConfig ansibleConfig;
+    AnsibleHostsConfig hostsConfig;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        cluster = new SyntheticCluster(workers);
+        ansibleConfig = new AnsibleConfig(cluster.getConfig(), "/dev/vd", cluster.getSubnetCidr(),
+                cluster.getMaster(), cluster.getWorkers());
+        hostsConfig = new AnsibleHostsConfig(cluster.getConfig(), cluster.getWorkers());
+    }
+}
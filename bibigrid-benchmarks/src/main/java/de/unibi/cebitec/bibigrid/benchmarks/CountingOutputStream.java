@@ -0,0 +1,24 @@
+package de.unibi.cebitec.bibigrid.benchmarks;
+
+import java.io.OutputStream;
+
+/**
+ * Discards all data, but counts the written bytes, so the result can be consumed by a blackhole.
+ */
+public final class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,104 @@
+package de.unibi.cebitec.bibigrid.benchmarks;
+
+import de.unibi.cebitec.bibigrid.core.intents.ListIntent;
+import de.unibi.cebitec.bibigrid.core.model.*;
+import de.unibi.cebitec.bibigrid.core.util.DeviceMapper;
+import de.unibi.cebitec.bibigrid.core.util.ShellScriptCreator;
+import de.unibi.cebitec.bibigrid.core.util.SubNets;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model operations whose cost depends on the cluster size or the number of existing clusters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+    private static final int MOUNT_POINTS = 3;
+
+    /**
+     * Existing subnets (one per worker count) of other clusters and the master volumes to map.
+     */
+    @State(Scope.Benchmark)
+    public static class ModelState {
+        List<String> usedCidrs;
+        List<Configuration.MountPoint> mountPoints;
+
+        @Setup(Level.Trial)
+        public void setup(ClusterState state) {
+            SubNets subNets = new SubNets("10.0.0.0/8", 24);
+            usedCidrs = new ArrayList<>(state.workers);
+            for (int i = 0; i < state.workers; i++) {
+                usedCidrs.add(subNets.nextCidr());
+            }
+            mountPoints = new ArrayList<>();
+            for (int i = 0; i < MOUNT_POINTS; i++) {
+                Configuration.MountPoint mountPoint = new Configuration.MountPoint();
+                mountPoint.setSource("snap-0a12b34c" + i + ":1");
+                mountPoint.setTarget("/vol/data" + i);
+                mountPoints.add(mountPoint);
+            }
+        }
+    }
+
+    /**
+     * ListIntent working on the synthetic instances, all other cloud resources are empty.
+     */
+    private static final class SyntheticListIntent extends ListIntent {
+        private final List<Instance> instances;
+
+        SyntheticListIntent(Configuration config, List<Instance> instances) {
+            super(null, new NullClient(), config);
+            this.instances = instances;
+        }
+
+        @Override
+        protected List<Instance> getInstances() {
+            return instances;
+        }
+
+        @Override
+        protected void loadInstanceConfiguration(Instance instance) {
+        }
+    }
+
+    @Benchmark
+    public String getUserData(ClusterState state) {
+        return ShellScriptCreator.getUserData(state.cluster.getConfig(), true);
+    }
+
+    @Benchmark
+    public String nextCidr(ModelState model) {
+        return new SubNets("10.0.0.0/8", 24).nextCidr(model.usedCidrs);
+    }
+
+    /**
+     * One device mapper per instance, as created for the master and each worker batch.
+     */
+    @Benchmark
+    public void deviceMapper(ClusterState state, ModelState model, Blackhole blackhole) {
+        for (Instance worker : state.cluster.getWorkers()) {
+            blackhole.consume(new DeviceMapper(null, model.mountPoints,
+                    worker.getConfiguration().getProviderType().getEphemerals()));
+        }
+    }
+
+    /**
+     * Aggregation of all instances to clusters (checkInstance per instance).
+     */
+    @Benchmark
+    public Map<String, Cluster> listClusters(ClusterState state) {
+        List<Instance> instances = new ArrayList<>(state.cluster.getWorkers().size() + 1);
+        instances.add(state.cluster.getMaster());
+        instances.addAll(state.cluster.getWorkers());
+        return new SyntheticListIntent(state.cluster.getConfig(), instances).getList();
+    }
+}
@@ -0,0 +1,96 @@
+package de.unibi.cebitec.bibigrid.benchmarks;
+
+import de.unibi.cebitec.bibigrid.core.model.*;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Client of an empty cloud, used where a benchmark does not depend on cloud resources.
+ */
+final class NullClient extends Client {
+    @Override
+    public List<Network> getNetworks() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Network getNetworkByName(String networkName) {
+        return null;
+    }
+
+    @Override
+    public Network getNetworkById(String networkId) {
+        return null;
+    }
+
+    @Override
+    public Network getNetworkByIdOrName(String network) {
+        return null;
+    }
+
+    @Override
+    public Network getDefaultNetwork() {
+        return null;
+    }
+
+    @Override
+    public List<Subnet> getSubnets() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getKeypairNames() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Subnet getSubnetByName(String subnetName) {
+        return null;
+    }
+
+    @Override
+    public Subnet getSubnetById(String subnetId) {
+        return null;
+    }
+
+    @Override
+    public Subnet getSubnetByIdOrName(String subnet) {
+        return null;
+    }
+
+    @Override
+    public InstanceImage getImageByName(String imageName) {
+        return null;
+    }
+
+    @Override
+    public InstanceImage getImageById(String imageId) {
+        return null;
+    }
+
+    @Override
+    public InstanceImage getImageByIdOrName(String image) {
+        return null;
+    }
+
+    @Override
+    public Snapshot getSnapshotByName(String snapshotName) {
+        return null;
+    }
+
+    @Override
+    public Snapshot getSnapshotById(String snapshotId) {
+        return null;
+    }
+
+    @Override
+    public Snapshot getSnapshotByIdOrName(String snapshot) {
+        return null;
+    }
+
+    @Override
+    public ServerGroup getServerGroupByIdOrName(String serverGroup) {
+        return null;
+    }
+}
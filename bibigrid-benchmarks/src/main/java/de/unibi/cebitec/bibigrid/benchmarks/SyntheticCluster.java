@@ -0,0 +1,160 @@
+package de.unibi.cebitec.bibigrid.benchmarks;
+
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.Instance;
+import de.unibi.cebitec.bibigrid.core.model.InstanceType;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cluster model (configuration, master and workers) of a given size without any cloud provider involved.
+ * Workers are split into up to {@link #BATCHES} batches of different instance types and get consecutive
+ * private ip addresses, as they usually do in a freshly created subnet.
+ */
+public final class SyntheticCluster {
+    public static final String CLUSTER_ID = "bench01";
+    public static final int BATCHES = 4;
+
+    private final Configuration config;
+    private final Instance master;
+    private final List<Instance> workers;
+
+    public SyntheticCluster(int workerCount) throws IOException {
+        config = new BenchmarkConfiguration();
+        config.setUser("benchmark");
+        config.setSshUser("ubuntu");
+        config.setMode("openstack");
+        Configuration.InstanceConfiguration masterConfiguration = new Configuration.InstanceConfiguration();
+        masterConfiguration.setType("de.NBI.large");
+        masterConfiguration.setImage("ubuntu-18.04");
+        masterConfiguration.setProviderType(new BenchmarkInstanceType("de.NBI.large", 8, 16384, 1));
+        config.setMasterInstance(masterConfiguration);
+
+        List<Configuration.WorkerInstanceConfiguration> batches = new ArrayList<>();
+        int batchCount = Math.max(1, Math.min(BATCHES, workerCount));
+        for (int b = 0; b < batchCount; b++) {
+            Configuration.WorkerInstanceConfiguration batch = new Configuration.WorkerInstanceConfiguration();
+            batch.setType("de.NBI.worker" + b);
+            batch.setImage("ubuntu-18.04");
+            batch.setCount(workerCount / batchCount + (b < workerCount % batchCount ? 1 : 0));
+            batch.setProviderType(new BenchmarkInstanceType("de.NBI.worker" + b, 2 << b, 4096 << b, b));
+            batches.add(batch);
+        }
+        config.setWorkerInstances(batches);
+
+        master = new BenchmarkInstance(masterConfiguration, "bibigrid-master-" + CLUSTER_ID, getIp(0));
+        List<Instance> workerList = new ArrayList<>(workerCount);
+        int index = 0;
+        for (int b = 0; b < batches.size(); b++) {
+            for (int i = 0; i < batches.get(b).getCount(); i++) {
+                index++;
+                workerList.add(new BenchmarkInstance(batches.get(b),
+                        "bibigrid-worker" + (b + 1) + "-" + (i + 1) + "-" + CLUSTER_ID, getIp(index)));
+            }
+        }
+        workers = Collections.unmodifiableList(workerList);
+    }
+
+    /**
+     * @return private ip of the n-th instance in 10.0.0.0/16, starting at 10.0.0.10
+     */
+    private static String getIp(int n) {
+        int address = n + 10;
+        return "10.0." + (address / 256) + "." + (address % 256);
+    }
+
+    public Configuration getConfig() {
+        return config;
+    }
+
+    public Instance getMaster() {
+        return master;
+    }
+
+    public List<Instance> getWorkers() {
+        return workers;
+    }
+
+    public String getSubnetCidr() {
+        return "10.0.0.0/16";
+    }
+
+    public static final class BenchmarkConfiguration extends Configuration {
+        public BenchmarkConfiguration() throws IOException {
+            super();
+        }
+    }
+
+    static final class BenchmarkInstanceType extends InstanceType {
+        BenchmarkInstanceType(String value, int cpuCores, int maxRam, int ephemerals) {
+            this.value = value;
+            this.cpuCores = cpuCores;
+            this.maxRam = maxRam;
+            this.ephemerals = ephemerals;
+            this.maxDiskSpace = 20L * 1024;
+        }
+    }
+
+    static final class BenchmarkInstance extends Instance {
+        private final String name;
+        private final String privateIp;
+        private final ZonedDateTime creationTimestamp = ZonedDateTime.now();
+
+        BenchmarkInstance(Configuration.InstanceConfiguration configuration, String name, String privateIp) {
+            super(configuration);
+            this.name = name;
+            this.privateIp = privateIp;
+        }
+
+        @Override
+        public String getPublicIp() {
+            return null;
+        }
+
+        @Override
+        public String getPrivateIp() {
+            return privateIp;
+        }
+
+        @Override
+        public String getHostname() {
+            return name;
+        }
+
+        @Override
+        public String getId() {
+            return "id-" + name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getTag(String key) {
+            if (TAG_BIBIGRID_ID.equals(key)) {
+                return CLUSTER_ID;
+            } else if (TAG_NAME.equals(key)) {
+                return name;
+            } else if (TAG_USER.equals(key)) {
+                return "benchmark";
+            }
+            return null;
+        }
+
+        @Override
+        public ZonedDateTime getCreationTimestamp() {
+            return creationTimestamp;
+        }
+
+        @Override
+        public String getKeyName() {
+            return "bibigrid-" + CLUSTER_ID;
+        }
+    }
+}
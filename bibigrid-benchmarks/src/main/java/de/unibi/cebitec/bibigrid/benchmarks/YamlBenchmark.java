@@ -0,0 +1,99 @@
+package de.unibi.cebitec.bibigrid.benchmarks;
+
+import de.unibi.cebitec.bibigrid.core.model.AnsibleConfig;
+import de.unibi.cebitec.bibigrid.core.model.Instance;
+import de.unibi.cebitec.bibigrid.core.util.YamlSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a new {@link Yaml} instance per file (as used before) with the shared {@link YamlSupport} emitter,
+ * for writing one vars file per worker and for loading role vars files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YamlBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int workers;
+
+    private AnsibleConfig ansibleConfig;
+    private List<Map<String, Object>> workerMaps;
+    private byte[] varsFile;
+
+    @Setup
+    public void setup() throws IOException {
+        SyntheticCluster cluster = new SyntheticCluster(workers);
+        ansibleConfig = new AnsibleConfig(cluster.getConfig(), "/dev/vd", cluster.getSubnetCidr(),
+                cluster.getMaster(), cluster.getWorkers());
+        workerMaps = new ArrayList<>();
+        for (Instance worker : cluster.getWorkers()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("ip", worker.getPrivateIp());
+            map.put("cores", worker.getConfiguration().getProviderType().getCpuCores());
+            map.put("memory", worker.getConfiguration().getProviderType().getMaxRam());
+            map.put("hostname", worker.getHostname());
+            map.put("ephemerals", Arrays.asList("/dev/vdb", "/dev/vdc"));
+            workerMaps.add(map);
+        }
+        Map<String, Object> vars = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            vars.put("key" + i, Arrays.asList("value" + i, i, i % 2 == 0));
+        }
+        varsFile = new Yaml().dumpAsMap(vars).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long writeVarsFilesNewYaml() throws IOException {
+        CountingOutputStream stream = new CountingOutputStream();
+        for (Map<String, Object> map : workerMaps) {
+            try (Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+                writer.write(new Yaml().dumpAsMap(map));
+            }
+        }
+        return stream.getCount();
+    }
+
+    @Benchmark
+    public long writeVarsFilesShared() throws IOException {
+        CountingOutputStream stream = new CountingOutputStream();
+        for (Map<String, Object> map : workerMaps) {
+            YamlSupport.dump(map, stream);
+        }
+        return stream.getCount();
+    }
+
+    @Benchmark
+    public long writeInstanceFiles() throws IOException {
+        CountingOutputStream stream = new CountingOutputStream();
+        ansibleConfig.writeInstanceFiles(stream);
+        return stream.getCount();
+    }
+
+    @Benchmark
+    public long writeCommonFile() {
+        CountingOutputStream stream = new CountingOutputStream();
+        ansibleConfig.writeCommonFile(stream);
+        return stream.getCount();
+    }
+
+    @Benchmark
+    public void loadVarsFileNewYaml(Blackhole blackhole) {
+        Map<String, Object> vars = new Yaml().load(new ByteArrayInputStream(varsFile));
+        blackhole.consume(vars);
+    }
+
+    @Benchmark
+    public void loadVarsFileShared(Blackhole blackhole) {
+        blackhole.consume(YamlSupport.load(new ByteArrayInputStream(varsFile), Map.class));
+    }
+}
@@ -2,22 +2,19 @@ package de.unibi.cebitec.bibigrid.core;
 
 import de.unibi.cebitec.bibigrid.core.model.*;
 
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.InstanceTypeNotFoundException;
+import de.unibi.cebitec.bibigrid.core.util.RemoteChecks;
 import de.unibi.cebitec.bibigrid.core.util.SshFactory;
+import de.unibi.cebitec.bibigrid.core.util.ValidationMemo;
 
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +30,8 @@ public abstract class Validator {
 
     protected Configuration config;
     private Configuration.WorkerInstanceConfiguration commandLineWorkerInstance;
+    private boolean forceValidation;
+    private ValidationMemo memo;
 
     public Validator(final Configuration config, final ProviderModule providerModule)
             throws ConfigurationException {
@@ -82,6 +81,11 @@ public abstract class Validator {
         if (config.hasCustomAnsibleRoles() || config.hasCustomAnsibleGalaxyRoles()) {
             LOG.info("Checking Ansible configuration ...");
         }
+        // Check Ansible bootstrap bundle
+        if (config.getAnsibleBundle() != null && !Files.isReadable(Paths.get(config.getAnsibleBundle()))) {
+            LOG.error("Ansible: bootstrap bundle '{}' is not readable.", config.getAnsibleBundle());
+            return false;
+        }
         // Check Ansible roles
         for (Configuration.AnsibleRoles role : config.getAnsibleRoles()) {
             if (role.getFile() == null) {
@@ -115,6 +119,8 @@ public abstract class Validator {
             }
         }
         // Check Ansible Galaxy roles
+        RemoteChecks checks = new RemoteChecks();
+        List<RemoteChecks.Check> remoteChecks = new ArrayList<>();
         for (Configuration.AnsibleGalaxyRoles role : config.getAnsibleGalaxyRoles()) {
             if (role.getGalaxy() == null && role.getGit() == null && role.getUrl() == null) {
                 LOG.error("Ansible Galaxy: At least one of 'galaxy', 'git' or 'url' has to be specified.");
@@ -138,10 +144,14 @@ public abstract class Validator {
                 return false;
             }
             if (role.getUrl() != null) {
-                if (!isValidURL(role.getUrl())) {
-                    LOG.error("Ansible Galaxy: url parameter contains no valid URL.");
-                    return false;
-                }
+                String url = role.getUrl();
+                remoteChecks.add(() -> {
+                    if (!checks.isValidURL(url)) {
+                        LOG.error("Ansible Galaxy: url parameter contains no valid URL: {}.", url);
+                        return false;
+                    }
+                    return true;
+                });
             }
             if (role.getGalaxy() != null) {
                 String[] galaxyName = role.getGalaxy().split("[.]");
@@ -150,83 +160,92 @@ public abstract class Validator {
                     return false;
                 }
 
-                if (!isValidAnsibleGalaxyRole(galaxyName[0], galaxyName[1])) {
-                    LOG.error("Ansible Galaxy: Not a valid galaxy role: {}.", role.getGalaxy());
-                    return false;
-                }
+                String galaxy = role.getGalaxy();
+                remoteChecks.add(() -> {
+                    if (!checks.isValidAnsibleGalaxyRole(galaxyName[0], galaxyName[1])) {
+                        LOG.error("Ansible Galaxy: Not a valid galaxy role: {}.", galaxy);
+                        return false;
+                    }
+                    return true;
+                });
             }
         }
-        return true;
+        // Remote checks run concurrently after all local checks passed
+        return checks.checkAll(remoteChecks);
     }
 
     /**
-     * Determine validity of URL.
-     * @param url url / galaxy url
-     * @return true, if url is valid
+     * Checks requirements. The local file and remote checks are skipped, if the same configuration has
+     * been validated successfully before, see {@link ValidationMemo}.
+     * @return true, if requirements fulfilled
      */
-    private boolean isValidURL(String url) {
-        try {
-            HttpURLConnection.setFollowRedirects(false);
-            URL u = new URL(url);
-            HttpURLConnection conn = (HttpURLConnection) u.openConnection();
-            conn.connect();
-            int status = conn.getResponseCode();
-            if (status != HttpURLConnection.HTTP_OK) {
-                return false;
-            }
-        } catch (Exception e) {
+    public boolean validate() {
+        // provider parameters are always validated, since they complete the configuration (e.g. credentials)
+        if (!validateProviderParameters()) {
             return false;
         }
+        memo = new ValidationMemo(ValidationMemo.hash(config, getReferencedFiles(), getProviderEndpoint()),
+                TimeUnit.HOURS.toMillis(config.getValidationCacheTtl()), forceValidation);
+        Instant validatedAt = memo.getValidatedAt();
+        if (validatedAt != null) {
+            LOG.info("Configuration is unchanged since its successful validation at {}. Skipping checks, " +
+                    "use --force-validate to validate again.", validatedAt);
+            return true;
+        }
+        return validateSSHKeyFiles() &&
+                validateAnsibleRequirements();
+    }
 
-        return true;
+    /**
+     * Ignore successful validations of the same configuration recorded before.
+     */
+    public void setForceValidation(boolean forceValidation) {
+        this.forceValidation = forceValidation;
     }
 
     /**
-     * Validates galaxy role by checking API values.
-     * @param author galaxy author
-     * @param role name of galaxy role
-     * @return true, if galaxy role is valid
+     * @return memo of the validated configuration, null before {@link #validate()}
      */
-    private boolean isValidAnsibleGalaxyRole(String author, String role) {
-        try {
-            String galaxyURL = "https://galaxy.ansible.com/api/v1/roles/?format=json&search=" + role;
-            URL u = new URL(galaxyURL);
-            HttpURLConnection conn = (HttpURLConnection) u.openConnection();
-            InputStream in = new BufferedInputStream(conn.getInputStream());
-            JSONParser parser = new JSONParser();
-            JSONObject jsonObject = (JSONObject) parser.parse(new InputStreamReader(in));
+    public ValidationMemo getValidationMemo() {
+        return memo;
+    }
 
-            if (jsonObject.containsKey("count")) {
-                int count = Integer.parseInt(String.valueOf(jsonObject.get("count")));
-                if (count == 0) {
-                    return false;
-                } else if (count == 1) {
-                    // role name is valid, but probably the author is false
-                    JSONArray results = (JSONArray) jsonObject.get("results");
-                    if (!results.toJSONString().contains("\"name\":\"" + author + "\"")) {
-                        LOG.error("Ansible Galaxy: Author '{}' invalid for specified role.", author);
-                        return false;
-                    }
-                    if (!results.toJSONString().contains("\"name\":\"" + role + "\"")) {
-                        LOG.error("Ansible Galaxy: Name of role '{}' is invalid.", role);
-                        return false;
-                    }
-                }
+    /**
+     * @return paths of all files referenced by the configuration, whose content is part of the validation
+     */
+    protected List<String> getReferencedFiles() {
+        List<String> files = new ArrayList<>(config.getSshPublicKeyFiles());
+        if (config.getSshPublicKeyFile() != null) {
+            files.add(config.getSshPublicKeyFile());
+        }
+        if (config.getCredentialsFile() != null) {
+            files.add(config.getCredentialsFile());
+        }
+        if (config.getAnsibleBundle() != null) {
+            files.add(config.getAnsibleBundle());
+        }
+        for (Configuration.AnsibleRoles role : config.getAnsibleRoles()) {
+            if (role.getFile() != null) {
+                files.add(role.getFile());
+            }
+            if (role.getVarsFile() != null) {
+                files.add(role.getVarsFile());
             }
-        } catch (IOException | ParseException e) {
-            e.printStackTrace();
         }
-        return true;
+        for (Configuration.AnsibleGalaxyRoles role : config.getAnsibleGalaxyRoles()) {
+            if (role.getVarsFile() != null) {
+                files.add(role.getVarsFile());
+            }
+        }
+        return files;
     }
 
     /**
-     * Checks requirements.
-     * @return true, if requirements fulfilled
+     * @return endpoint of the provider api the configuration is validated against, part of the
+     * {@link ValidationMemo}. Should be overridden by providers with configurable endpoints.
      */
-    public boolean validate() {
-        return validateSSHKeyFiles() &&
-                validateAnsibleRequirements() &&
-                validateProviderParameters();
+    protected String getProviderEndpoint() {
+        return config.getMode() + ":" + config.getRegion();
     }
 
     protected abstract List<String> getRequiredOptions();
@@ -242,9 +261,23 @@ public abstract class Validator {
             return false;
         }
         try {
-            for (Configuration.InstanceConfiguration instanceConfiguration : config.getWorkerInstances()) {
+            for (Configuration.WorkerInstanceConfiguration instanceConfiguration : config.getWorkerInstances()) {
                 InstanceType workerType = providerModule.getInstanceType(client, config, instanceConfiguration.getType());
                 instanceConfiguration.setProviderType(workerType);
+                if (instanceConfiguration.getFallbackType() != null) {
+                    InstanceType fallbackType = providerModule.getInstanceType(client, config,
+                            instanceConfiguration.getFallbackType());
+                    // replacements are configured like the other workers of the batch
+                    if (fallbackType.getCpuCores() < workerType.getCpuCores() ||
+                            fallbackType.getMaxRam() < workerType.getMaxRam()) {
+                        LOG.error("Fallback instance type '{}' provides less cores or memory than '{}'!",
+                                fallbackType.getValue(), workerType.getValue());
+                        return false;
+                    }
+                    instanceConfiguration.setFallbackProviderType(fallbackType);
+                } else {
+                    instanceConfiguration.setFallbackProviderType(null);
+                }
             }
         } catch (InstanceTypeNotFoundException e) {
             LOG.error("Invalid worker instance type specified!", e);
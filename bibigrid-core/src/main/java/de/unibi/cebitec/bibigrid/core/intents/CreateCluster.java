@@ -6,17 +6,22 @@ import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
 import de.unibi.cebitec.bibigrid.core.util.*;
 
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Base64;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static de.unibi.cebitec.bibigrid.core.util.ImportantInfoOutputFilter.I;
 import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
@@ -33,30 +38,57 @@ public abstract class CreateCluster extends Intent {
     public static final String PREFIX = "bibigrid-";
     static final String MASTER_NAME_PREFIX = PREFIX + "master";
     static final String WORKER_NAME_PREFIX = PREFIX + "worker";
+    private static final int ANSIBLE_PROFILE_TOP_TASKS = 10;
+    /**
+     * Time the interrupted setup thread gets to stop, before the rollback lists the cluster resources.
+     */
+    private static final long SETUP_STOP_MILLIS = 10000;
 
     protected final ProviderModule providerModule;
     protected final Client client;
     protected final Configuration config;
-    protected final String clusterId;
+    protected String clusterId;
     protected CreateClusterEnvironment environment;
+    protected ResourceContext resources;
 
     private Instance masterInstance;
     private List<Instance> workerInstances;
+    private ClusterJournal journal;
+    /**
+     * Existing cluster as listed by the provider, if its setup is resumed or it is scaled up.
+     */
+    private Cluster existingCluster;
+    private boolean scaleUp;
+    /**
+     * Workers added by a scale-up, null if all hosts are configured.
+     */
+    private List<Instance> addedWorkers;
+    /**
+     * Number of workers of the scaled up batch launched before, so the names of added workers don't clash.
+     */
+    private int workerIndexOffset;
+    private boolean instancesLaunched;
+    private int replacedWorkers;
     protected DeviceMapper masterDeviceMapper;
 
-    private Thread interruptionMessageHook;
+    private final Thread interruptionHook;
+    /**
+     * Thread running the cluster setup, null if no setup is in progress.
+     */
+    private volatile Thread setupThread;
+    private final Object setupLock = new Object();
+    private volatile boolean cancelled;
 
     protected CreateCluster(ProviderModule providerModule, Client client, Configuration config) {
         this.providerModule = providerModule;
         this.client = client;
         this.config = config;
+        resources = new ResourceContext(client);
         clusterId = generateClusterId();
         LOG.debug("cluster id: {}", clusterId);
         config.setClusterIds(clusterId);
-        this.interruptionMessageHook = new Thread(() ->
-                LOG.error("Cluster setup was interrupted!\n\n" +
-                        "Please clean up the remains using: -t {}\n\n", this.clusterId)
-        );
+        journal = ClusterJournal.create(clusterId);
+        interruptionHook = new Thread(this::onInterrupt, "interruption-hook");
     }
 
     static String generateClusterId() {
@@ -76,6 +108,20 @@ public abstract class CreateCluster extends Intent {
         return clusterId;
     }
 
+    /**
+     * @return provider resources resolved for this cluster
+     */
+    public ResourceContext getResources() {
+        return resources;
+    }
+
+    /**
+     * Reuses the provider resources already resolved by the validation.
+     */
+    public void setResources(ResourceContext resources) {
+        this.resources = resources;
+    }
+
     /**
      * The environment creation procedure. For a successful environment creation
      * you will need an Environment-Instance which implements the
@@ -97,10 +143,279 @@ public abstract class CreateCluster extends Intent {
      * @throws ConfigurationException Throws an exception if the creation of the cluster environment failed.
      */
     public CreateClusterEnvironment createClusterEnvironment() throws ConfigurationException {
-        Runtime.getRuntime().addShutdownHook(this.interruptionMessageHook);
+        startSetup();
         return environment = providerModule.getClusterEnvironment(client, this);
     }
 
+    /**
+     * Resumes the setup of an existing cluster from its journal instead of creating a new environment.
+     * The journaled resources are verified and reused, {@link #launchClusterInstances(boolean)} continues
+     * with the first step missing in the journal. Instances of the cluster missing in the journal are deleted.
+     *
+     * @param clusterId id of the cluster to resume
+     * @throws ConfigurationException if the cluster can't be resumed or a journaled resource no longer exists
+     */
+    public CreateClusterEnvironment resumeClusterEnvironment(String clusterId) throws ConfigurationException {
+        ClusterJournal resumedJournal;
+        try {
+            resumedJournal = ClusterJournal.load(clusterId);
+        } catch (IOException e) {
+            throw new ConfigurationException("No journal of cluster '" + clusterId + "' found. " + e.getMessage());
+        }
+        if (!resumedJournal.contains(ClusterJournal.Step.ENVIRONMENT)) {
+            throw new ConfigurationException("The environment of cluster '" + clusterId + "' is incomplete. " +
+                    "Please clean up the remains using: -t " + clusterId);
+        }
+        if (resumedJournal.contains(ClusterJournal.Step.ANSIBLE_PLAYBOOK)) {
+            throw new ConfigurationException("The setup of cluster '" + clusterId + "' is already complete.");
+        }
+        Cluster existing = useExistingCluster(clusterId);
+        journal = resumedJournal;
+        LOG.info("Resuming setup of cluster '{}' from journal '{}'.", clusterId, journal.getFile());
+        // instances of incomplete steps are launched again, so the ones left behind are deleted
+        List<String> journaledInstances = journal.getInstances();
+        List<Instance> incompleteInstances = new ArrayList<>();
+        for (Instance instance : getInstances(existing)) {
+            if (!journaledInstances.contains(instance.getId())) {
+                LOG.info(V, "Instance '{}' (ID: {}) has not been completed before.", instance.getName(),
+                        instance.getId());
+                incompleteInstances.add(instance);
+            }
+        }
+        if (!incompleteInstances.isEmpty()) {
+            LOG.info("Deleting {} instance(s) not completed before ...", incompleteInstances.size());
+            if (!providerModule.getTerminateIntent(client, config).terminateInstances(incompleteInstances)) {
+                throw new ConfigurationException("Failed to delete the incomplete instances of cluster '" +
+                        clusterId + "'. Please clean up the remains using: -t " + clusterId);
+            }
+        }
+        startSetup();
+        environment = providerModule.getClusterEnvironment(client, this);
+        return environment.resume(existing, journal.get(ClusterJournal.Step.ENVIRONMENT, 0),
+                journal.get(ClusterJournal.Step.ENVIRONMENT, 1));
+    }
+
+    /**
+     * Reuses network, subnet, security group, keypair and master of a running cluster, so workers can be added
+     * by {@link #scaleUpClusterInstances(int, int)} without provisioning a new cluster.
+     *
+     * @param clusterId id of the cluster to scale up
+     * @throws ConfigurationException if the cluster or one of its resources no longer exists
+     */
+    public CreateClusterEnvironment scaleUpClusterEnvironment(String clusterId) throws ConfigurationException {
+        scaleUp = true;
+        Cluster existing = useExistingCluster(clusterId);
+        if (existing.getMasterInstance() == null) {
+            throw new ConfigurationException("Master of cluster '" + clusterId + "' no longer exists.");
+        }
+        String networkId = null;
+        String subnetId = null;
+        try {
+            journal = ClusterJournal.load(clusterId);
+            networkId = journal.get(ClusterJournal.Step.ENVIRONMENT, 0);
+            subnetId = journal.get(ClusterJournal.Step.ENVIRONMENT, 1);
+        } catch (IOException e) {
+            LOG.info(V, "No journal of cluster '{}' found, using network and subnet listed by the provider.",
+                    clusterId);
+            journal = ClusterJournal.create(clusterId);
+        }
+        if (subnetId == null && existing.getSubnet() != null) {
+            subnetId = existing.getSubnet().getId();
+        }
+        if (networkId == null && existing.getNetwork() != null) {
+            networkId = existing.getNetwork().getId();
+        }
+        LOG.info("Scaling up cluster '{}' with {} worker instance(s).", clusterId,
+                getInstances(existing).size() - 1);
+        startSetup();
+        environment = providerModule.getClusterEnvironment(client, this);
+        return environment.resume(existing, networkId, subnetId);
+    }
+
+    /**
+     * Looks up a running cluster and loads its keypair, so the cluster resources can be reused.
+     *
+     * @throws ConfigurationException if the cluster or its keypair don't exist
+     */
+    private Cluster useExistingCluster(String clusterId) throws ConfigurationException {
+        Cluster existing = providerModule.getListIntent(client, config).getList().get(clusterId);
+        if (existing == null) {
+            throw new ConfigurationException("No cluster with ID '" + clusterId + "' found.");
+        }
+        this.clusterId = clusterId;
+        config.setClusterIds(clusterId);
+        existingCluster = existing;
+        try {
+            config.getClusterKeyPair().setName(PREFIX + clusterId);
+            config.getClusterKeyPair().load();
+        } catch (IOException e) {
+            throw new ConfigurationException("Failed to load the keypair of cluster '" + clusterId + "'. " +
+                    e.getMessage());
+        }
+        return existing;
+    }
+
+    private void startSetup() {
+        setupThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(interruptionHook);
+    }
+
+    private void finishSetup() {
+        synchronized (setupLock) {
+            setupThread = null;
+            setupLock.notifyAll();
+        }
+        if (cancelled) {
+            // the interruption has been handled by the rollback
+            Thread.interrupted();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(interruptionHook);
+        } catch (IllegalStateException e) {
+            // shutdown in progress, the hook is already running
+        }
+    }
+
+    /**
+     * Runs on shutdown, e.g. after Ctrl-C. An interrupted setup is rolled back, unless the resources should be
+     * kept. The setup of a resumed cluster is never rolled back, so it can be resumed again. A scaled up
+     * cluster keeps running including the workers added so far.
+     */
+    private void onInterrupt() {
+        Thread thread = setupThread;
+        if (thread == null || !thread.isAlive()) {
+            return;
+        }
+        if (scaleUp) {
+            LOG.error("Scale-up of cluster '{}' was interrupted! Workers added so far keep running, but might " +
+                    "not be configured.", clusterId);
+            return;
+        }
+        if (config.isKeepOnInterrupt() || isResumed()) {
+            LOG.error("Cluster setup was interrupted!\n\n" +
+                    "Please continue the setup using: --resume {}\n" +
+                    "or clean up the remains using: -t {}\n\n", clusterId, clusterId);
+            return;
+        }
+        cancel();
+    }
+
+    /**
+     * Cancels the cluster setup in progress and rolls back the resources created so far. Outstanding waits
+     * of the setup are interrupted, instances not requested yet are not launched anymore and the cluster is
+     * terminated like by {@link TerminateIntent}. The rollback is bounded by the interrupt grace period.
+     *
+     * @return true, if the cluster has been rolled back within the grace period
+     */
+    public boolean cancel() {
+        if (scaleUp) {
+            // the running cluster is not rolled back
+            cancelled = true;
+            Thread thread = setupThread;
+            if (thread != null && thread != Thread.currentThread()) {
+                thread.interrupt();
+            }
+            return false;
+        }
+        cancelled = true;
+        LOG.warn("Cluster setup was interrupted! Rolling back cluster '{}' ...", clusterId);
+        RetryPolicy.Deadline deadline = new RetryPolicy.Deadline(
+                TimeUnit.SECONDS.toMillis(config.getInterruptGracePeriod()));
+        Thread thread = setupThread;
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+            // resources requested until the setup stopped are rolled back as well
+            RetryPolicy.Deadline stopped = new RetryPolicy.Deadline(
+                    Math.min(SETUP_STOP_MILLIS, deadline.remainingMillis()));
+            synchronized (setupLock) {
+                try {
+                    while (setupThread != null && !stopped.isExpired()) {
+                        setupLock.wait(stopped.remainingMillis() + 1);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        AtomicBoolean terminated = new AtomicBoolean();
+        Thread rollback = new Thread(() -> {
+            client.attachThread();
+            config.setClusterIds(clusterId);
+            terminated.set(PhaseTracer.getInstance().trace("rollback",
+                    () -> providerModule.getTerminateIntent(client, config).terminate()));
+        }, "rollback-" + clusterId);
+        rollback.setDaemon(true);
+        rollback.start();
+        try {
+            rollback.join(deadline.remainingMillis() + 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (rollback.isAlive() || !terminated.get()) {
+            LOG.error("Rollback of cluster '{}' has not been completed within {} s.\n\n" +
+                    "Please clean up the remains using: -t {}\n\n", clusterId, config.getInterruptGracePeriod(),
+                    clusterId);
+            return false;
+        }
+        LOG.info("Cluster '{}' has been rolled back.", clusterId);
+        return true;
+    }
+
+    /**
+     * @return true, if the setup has been cancelled and the launch of further resources should stop
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void checkCancelled() throws ConfigurationException {
+        if (cancelled) {
+            throw new ConfigurationException("Cluster setup has been cancelled.");
+        }
+    }
+
+    /**
+     * @return true, if the setup of an existing cluster is resumed
+     */
+    boolean isResumed() {
+        return existingCluster != null && !scaleUp;
+    }
+
+    /**
+     * @return true, if the resources of an existing cluster are reused, i.e. its setup is resumed or it is
+     * scaled up
+     */
+    boolean isExisting() {
+        return existingCluster != null;
+    }
+
+    private static List<Instance> getInstances(Cluster cluster) {
+        List<Instance> instances = new ArrayList<>();
+        if (cluster.getMasterInstance() != null) {
+            instances.add(cluster.getMasterInstance());
+        }
+        if (cluster.getWorkerInstances() != null) {
+            instances.addAll(cluster.getWorkerInstances());
+        }
+        return instances;
+    }
+
+    /**
+     * @return journaled instance of the resumed cluster, configured like a newly launched one
+     * @throws ConfigurationException if the instance no longer exists
+     */
+    private Instance getResumedInstance(String instanceId, Configuration.InstanceConfiguration configuration)
+            throws ConfigurationException {
+        for (Instance instance : getInstances(existingCluster)) {
+            if (instance.getId().equals(instanceId)) {
+                instance.setConfiguration(configuration);
+                return instance;
+            }
+        }
+        throw new ConfigurationException("Instance (ID: " + instanceId + ") of cluster '" + clusterId +
+                "' no longer exists. Please clean up the remains using: -t " + clusterId);
+    }
+
     /**
      * Configure and manage Master-instance to launch.
      */
@@ -130,11 +445,25 @@ public abstract class CreateCluster extends Intent {
      * Start the configured cluster now.
      */
     public boolean launchClusterInstances(final boolean prepare) {
+        PhaseTracer tracer = PhaseTracer.getInstance();
         try {
-            String masterNameTag = MASTER_NAME_PREFIX + "-" + clusterId;
-            masterInstance = launchClusterMasterInstance(masterNameTag);
-            if (masterInstance == null) {
-                return false;
+            checkCancelled();
+            if (!journal.contains(ClusterJournal.Step.ENVIRONMENT)) {
+                journal.record(ClusterJournal.Step.ENVIRONMENT, environment.getNetwork() != null ?
+                        environment.getNetwork().getId() : null, environment.getSubnet().getId());
+            }
+            if (isResumed() && journal.contains(ClusterJournal.Step.MASTER)) {
+                masterInstance = getResumedInstance(journal.get(ClusterJournal.Step.MASTER, 0),
+                        config.getMasterInstance());
+                LOG.info("Master (ID: {}) has been launched before.", masterInstance.getId());
+            } else {
+                String masterNameTag = MASTER_NAME_PREFIX + "-" + clusterId;
+                masterInstance = tracer.trace("launch master", () -> launchClusterMasterInstance(masterNameTag));
+                if (masterInstance == null) {
+                    return false;
+                }
+                instancesLaunched = true;
+                journal.record(ClusterJournal.Step.MASTER, masterInstance.getId());
             }
             workerInstances = new ArrayList<>();
             int totalWorkerInstanceCount = config.getWorkerInstanceCount();
@@ -143,24 +472,57 @@ public abstract class CreateCluster extends Intent {
                         totalWorkerInstanceCount, config.getWorkerInstances().size());
                 for (int i = 0; i < config.getWorkerInstances().size(); i++) {
                     Configuration.WorkerInstanceConfiguration instanceConfiguration = config.getWorkerInstances().get(i);
+                    if (isResumed() && journal.isBatchLaunched(i)) {
+                        for (String workerId : journal.getWorkers(i)) {
+                            workerInstances.add(getResumedInstance(workerId, instanceConfiguration));
+                        }
+                        LOG.info("{} worker instance(s) of batch {} have been launched before.",
+                                journal.getWorkers(i).size(), i + 1);
+                        continue;
+                    }
+                    checkCancelled();
                     LOG.info("Requesting {} worker instance(s) with same configuration...",
                             instanceConfiguration.getCount());
                     String workerNameTag = WORKER_NAME_PREFIX + "-" + clusterId;
-                    List<Instance> workersBatch = launchClusterWorkerInstances(i, instanceConfiguration, workerNameTag);
+                    List<Instance> workersBatch;
+                    int replacedBefore = replacedWorkers;
+                    try (PhaseTracer.Span span = tracer.start("launch workers")
+                            .arg("batch", i + 1).arg("count", instanceConfiguration.getCount())) {
+                        workersBatch = launchClusterWorkerInstances(i, instanceConfiguration, workerNameTag);
+                        span.arg("replaced", replacedWorkers - replacedBefore);
+                    }
                     if (workersBatch == null) {
                         return false;
                     }
+                    LOG.info("Batch {}: {} worker instance(s) requested, {} obtained, {} replaced.", i + 1,
+                            instanceConfiguration.getCount(), workersBatch.size(), replacedWorkers - replacedBefore);
+                    instancesLaunched = true;
+                    for (Instance worker : workersBatch) {
+                        journal.record(ClusterJournal.Step.WORKER, i, worker.getId());
+                    }
+                    journal.record(ClusterJournal.Step.BATCH, i, workersBatch.size());
                     workerInstances.addAll(workersBatch);
                 }
+                if (workerInstances.size() < totalWorkerInstanceCount) {
+                    LOG.warn("Only {} of {} requested worker instance(s) have been obtained.",
+                            workerInstances.size(), totalWorkerInstanceCount);
+                }
             } else {
                 LOG.info("No Worker instance(s) requested!");
             }
             // just to be sure, everything is present, wait x seconds
-            sleep(4);
+            try (PhaseTracer.Span ignored = tracer.start("settle")) {
+                sleep(4);
+            }
+            checkCancelled();
             LOG.info("Cluster (ID: {}) successfully created!", clusterId);
             final String masterIp = config.isUseMasterWithPublicIp() ? masterInstance.getPublicIp() :
                     masterInstance.getPrivateIp();
-            configure(masterInstance, workerInstances, environment.getSubnet().getCidr(), prepare);
+            try (PhaseTracer.Span ignored = tracer.start("configure")) {
+                configure(masterInstance, workerInstances, environment.getSubnet().getCidr(), prepare);
+            }
+            // configure throws unless the playbook has been run successfully
+            journal.record(ClusterJournal.Step.ANSIBLE_PLAYBOOK);
             logFinishedInfoMessage(masterIp);
             saveGridPropertiesFile(masterIp);
         } catch (Exception e) {
@@ -175,14 +537,143 @@ public abstract class CreateCluster extends Intent {
                 logFinishedInfoMessage(
                         config.isUseMasterWithPublicIp() ? masterInstance.getPublicIp() : masterInstance.getPrivateIp());
             }
+            return false;
+        } finally {
+            finishSetup();
+        }
+        return true;
+    }
 
-            Runtime.getRuntime().removeShutdownHook(this.interruptionMessageHook);
+    /**
+     * Adds workers to the cluster prepared by {@link #scaleUpClusterEnvironment(String)}. Only the new workers
+     * are launched. Ansible configures the master and the new workers, the running workers only get the
+     * updated host list and slurm configuration.
+     *
+     * @param batch number of the worker configuration the workers are launched with, starting with 1
+     * @param count number of workers to add
+     * @return true, if the workers have been added and configured
+     */
+    public boolean scaleUpClusterInstances(int batch, int count) {
+        PhaseTracer tracer = PhaseTracer.getInstance();
+        try {
+            if (batch < 1 || batch > config.getWorkerInstances().size()) {
+                throw new ConfigurationException("Worker batch " + batch + " is not configured. Please choose " +
+                        "one of the " + config.getWorkerInstances().size() + " worker configuration(s).");
+            }
+            if (count < 1) {
+                throw new ConfigurationException("At least one worker instance has to be added.");
+            }
+            int batchIndex = batch - 1;
+            Configuration.WorkerInstanceConfiguration instanceConfiguration =
+                    config.getWorkerInstances().get(batchIndex);
+            masterInstance = existingCluster.getMasterInstance();
+            masterInstance.setConfiguration(config.getMasterInstance());
+            workerInstances = getExistingWorkers(batchIndex);
+            workerIndexOffset = getWorkerIndexOffset(batchIndex);
+            instanceConfiguration.setCount(count);
+            checkCancelled();
+            LOG.info("Requesting {} worker instance(s) of batch {}...", count, batch);
+            String workerNameTag = WORKER_NAME_PREFIX + "-" + clusterId;
+            List<Instance> workersBatch;
+            try (PhaseTracer.Span span = tracer.start("launch workers").arg("batch", batch).arg("count", count)) {
+                workersBatch = launchClusterWorkerInstances(batchIndex, instanceConfiguration, workerNameTag);
+                span.arg("replaced", replacedWorkers);
+            }
+            if (workersBatch == null) {
+                return false;
+            }
+            LOG.info("Batch {}: {} worker instance(s) requested, {} obtained, {} replaced.", batch, count,
+                    workersBatch.size(), replacedWorkers);
+            int journaledWorkers = journal.getWorkers(batchIndex).size();
+            for (Instance worker : workersBatch) {
+                journal.record(ClusterJournal.Step.WORKER, batchIndex, worker.getId());
+            }
+            journal.record(ClusterJournal.Step.BATCH, batchIndex, journaledWorkers + workersBatch.size());
+            addedWorkers = workersBatch;
+            workerInstances.addAll(workersBatch);
+            checkCancelled();
+            try (PhaseTracer.Span ignored = tracer.start("configure")) {
+                configure(masterInstance, workerInstances, environment.getSubnet().getCidr(), false);
+            }
+            LOG.info(I, "Cluster (ID: {}) has been scaled up to {} worker instance(s).", clusterId,
+                    workerInstances.size());
+        } catch (Exception e) {
+            if (VerboseOutputFilter.SHOW_VERBOSE) {
+                LOG.error(e.getMessage(), e);
+            } else {
+                LOG.error(e.getMessage());
+            }
             return false;
+        } finally {
+            finishSetup();
         }
-        Runtime.getRuntime().removeShutdownHook(this.interruptionMessageHook);
         return true;
     }
 
+    /**
+     * @return running workers of the scaled up cluster, configured like the batch they have been launched with
+     */
+    private List<Instance> getExistingWorkers(int scaledBatchIndex) {
+        List<Instance> workers = new ArrayList<>();
+        if (existingCluster.getWorkerInstances() == null) {
+            return workers;
+        }
+        List<Configuration.WorkerInstanceConfiguration> configurations = config.getWorkerInstances();
+        for (Instance worker : existingCluster.getWorkerInstances()) {
+            int batchIndex = getWorkerBatchIndex(worker);
+            if (batchIndex < 0 || batchIndex >= configurations.size()) {
+                LOG.info(V, "Batch of worker '{}' (ID: {}) is unknown, assuming batch {}.", worker.getName(),
+                        worker.getId(), scaledBatchIndex + 1);
+                batchIndex = scaledBatchIndex;
+            }
+            worker.setConfiguration(configurations.get(batchIndex));
+            workers.add(worker);
+        }
+        return workers;
+    }
+
+    /**
+     * @return index of the batch a running worker has been launched with, either journaled or derived from the
+     * worker name, or -1 if unknown
+     */
+    private int getWorkerBatchIndex(Instance worker) {
+        for (int i = 0; i < config.getWorkerInstances().size(); i++) {
+            if (journal.getWorkers(i).contains(worker.getId())) {
+                return i;
+            }
+        }
+        Matcher matcher = getWorkerNamePattern().matcher(worker.getName() != null ? worker.getName() : "");
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) - 1 : -1;
+    }
+
+    /**
+     * @return highest worker index of the batch used by the running workers
+     */
+    private int getWorkerIndexOffset(int batchIndex) {
+        Configuration.WorkerInstanceConfiguration instanceConfiguration = config.getWorkerInstances().get(batchIndex);
+        int batchSize = 0;
+        int offset = 0;
+        for (Instance worker : workerInstances) {
+            if (worker.getConfiguration() != instanceConfiguration) {
+                continue;
+            }
+            batchSize++;
+            Matcher matcher = getWorkerNamePattern().matcher(worker.getName() != null ? worker.getName() : "");
+            if (matcher.matches() && Integer.parseInt(matcher.group(1)) == batchIndex + 1) {
+                offset = Math.max(offset, Integer.parseInt(matcher.group(2)));
+            }
+        }
+        return Math.max(offset, batchSize);
+    }
+
+    /**
+     * @return pattern matching the names built by {@link #buildWorkerInstanceName(int, int)}, groups are the
+     * batch and worker number
+     */
+    private Pattern getWorkerNamePattern() {
+        return Pattern.compile(Pattern.quote(WORKER_NAME_PREFIX) + "(\\d+)-(\\d+)-" + Pattern.quote(clusterId));
+    }
+
     /**
      * Start the configured cluster master instance.
      *
@@ -196,8 +687,43 @@ public abstract class CreateCluster extends Intent {
     protected abstract List<Instance> launchClusterWorkerInstances(
             int batchIndex, Configuration.WorkerInstanceConfiguration instanceConfiguration, String workerNameTag);
 
+    /**
+     * Takes a replacement for a failed worker instance from the budget of the cluster setup. The failed
+     * instance has to be deleted by the caller.
+     *
+     * @param failedWorker name of the failed worker instance
+     * @return true, if a replacement should be launched
+     */
+    protected boolean takeWorkerReplacement(String failedWorker) {
+        if (replacedWorkers >= config.getWorkerReplacements()) {
+            LOG.warn("Worker instance '{}' failed and can't be replaced, {} replacement(s) used up.", failedWorker,
+                    config.getWorkerReplacements());
+            return false;
+        }
+        replacedWorkers++;
+        LOG.warn("Replacing failed worker instance '{}' ({}/{}).", failedWorker, replacedWorkers,
+                config.getWorkerReplacements());
+        return true;
+    }
+
+    /**
+     * @return instance type replacements for failed workers of the batch are launched with
+     */
+    protected InstanceType getReplacementType(Configuration.WorkerInstanceConfiguration instanceConfiguration) {
+        return instanceConfiguration.getFallbackProviderType() != null ?
+                instanceConfiguration.getFallbackProviderType() : instanceConfiguration.getProviderType();
+    }
+
+    /**
+     * @return availability zone replacements for failed workers are launched in
+     */
+    protected String getReplacementAvailabilityZone() {
+        return config.getFallbackAvailabilityZone() != null ? config.getFallbackAvailabilityZone() :
+                config.getAvailabilityZone();
+    }
+
     protected String buildWorkerInstanceName(int batchIndex, int workerIndex) {
-        return WORKER_NAME_PREFIX + (batchIndex + 1) + "-" + (workerIndex + 1) + "-" + clusterId;
+        return WORKER_NAME_PREFIX + (batchIndex + 1) + "-" + (workerIndexOffset + workerIndex + 1) + "-" + clusterId;
     }
 
     private void logFinishedInfoMessage(final String masterPublicIp) {
@@ -264,8 +790,17 @@ public abstract class CreateCluster extends Intent {
         }
     }
 
-    private void configure(final Instance masterInstance, final List<Instance> workerInstances,
-                           final String subnetCidr, final boolean prepare) throws ConfigurationException {
+    /**
+     * Configures the launched instances by running ansible on the master instance.
+     *
+     * @param masterInstance launched master instance
+     * @param workerInstances launched worker instances
+     * @param subnetCidr cidr of the cluster subnet
+     * @param prepare true, if still preparation necessary
+     * @throws ConfigurationException if the master is not reachable via ssh or the configuration failed
+     */
+    protected void configure(final Instance masterInstance, final List<Instance> workerInstances,
+                             final String subnetCidr, final boolean prepare) throws ConfigurationException {
         AnsibleHostsConfig ansibleHostsConfig = new AnsibleHostsConfig(config, workerInstances);
         AnsibleConfig ansibleConfig = new AnsibleConfig(config, providerModule.getBlockDeviceBase(), subnetCidr,
                 masterInstance, workerInstances);
@@ -274,42 +809,58 @@ public abstract class CreateCluster extends Intent {
         final String masterIp = config.isUseMasterWithPublicIp() ? masterInstance.getPublicIp() :
                 masterInstance.getPrivateIp();
         LOG.info("Now configuring...");
-        boolean configured = false;
-        boolean sshPortIsReady = SshFactory.pollSshPortIsAvailable(masterIp);
-        if (sshPortIsReady) {
-            try {
-                LOG.info("Trying to connect to master...");
+        PhaseTracer tracer = PhaseTracer.getInstance();
+        boolean sshPortIsReady = tracer.trace("wait for ssh",
+                () -> SshFactory.pollSshPortIsAvailable(masterIp, config.getSshPort()));
+        if (!sshPortIsReady) {
+            throw new ConfigurationException("SSH port " + config.getSshPort() + " of master " + masterIp +
+                    " is not reachable.");
+        }
+        try {
+            LOG.info("Trying to connect to master...");
+            // Create new Session to avoid packet corruption.
+            Session sshSession = SshFactory.createSshSession(config,masterIp);
+            if (sshSession == null) {
+                throw new ConfigurationException("Failed to create SSH session to master " + masterIp + ".");
+            }
+            // Start connection attempt
+            try (PhaseTracer.Span ignored = tracer.start("ssh connect")) {
                 sleep(4);
-                // Create new Session to avoid packet corruption.
-                Session sshSession = SshFactory.createSshSession(config,masterIp);
-                if (sshSession != null) {
-                    // Start connection attempt
-                    sshSession.connect();
-                    LOG.info("Connected to master!");
-
-                    /*
-                        ConfigurationException is thrown by 'uploadAnsibleToMaster' and 'installAndExecuteAnsible'
-                        in the case anything failed during the upload or ansible run. The exception is caught by
-                        'launchClusterInstances'.
-                        But not closing the sshSession blocks the JVM to exit(). Therefore we have to catch the
-                        ConfigurationException, close the sshSession and throw a new ConfigurationException
-
-                     */
-                    try {
+                sshSession.connect();
+            }
+            LOG.info("Connected to master!");
+
+            /*
+                ConfigurationException is thrown by 'uploadAnsibleToMaster' and 'installAndExecuteAnsible'
+                in the case anything failed during the upload or ansible run. The exception is caught by
+                'launchClusterInstances'.
+                But not closing the sshSession blocks the JVM to exit(). Therefore we have to catch the
+                ConfigurationException, close the sshSession and throw a new ConfigurationException
+
+             */
+            try {
+                if (isResumed() && !instancesLaunched && journal.contains(ClusterJournal.Step.UPLOAD)) {
+                    LOG.info("Ansible playbook has been uploaded to master before.");
+                } else {
+                    try (PhaseTracer.Span ignored = tracer.start("upload")) {
                         uploadAnsibleToMaster(sshSession, ansibleHostsConfig, ansibleConfig, workerInstances);
-                        installAndExecuteAnsible(sshSession, prepare);
-                    } catch (ConfigurationException e) {
-                        throw new ConfigurationException(e.getMessage());
-                    } finally {
-                        sshSession.disconnect();
                     }
+                    journal.record(ClusterJournal.Step.UPLOAD);
                 }
-            } catch (IOException | JSchException e) {
-                if (VerboseOutputFilter.SHOW_VERBOSE) {
-                    e.printStackTrace();
+                installAndExecuteAnsible(sshSession, prepare);
+                try (PhaseTracer.Span ignored = tracer.start("cache ansible bundle")) {
+                    cacheAnsibleBundle(sshSession);
                 }
-                throw new ConfigurationException(e);
+            } catch (ConfigurationException e) {
+                throw new ConfigurationException(e.getMessage());
+            } finally {
+                sshSession.disconnect();
             }
+        } catch (IOException | JSchException e) {
+            if (VerboseOutputFilter.SHOW_VERBOSE) {
+                e.printStackTrace();
+            }
+            throw new ConfigurationException(e);
         }
         LOG.info(I, "Cluster has been configured.");
     }
@@ -331,10 +882,12 @@ public abstract class CreateCluster extends Intent {
         LOG.info("Uploading Ansible playbook to master instance.");
         LOG.info(V, "Connecting sftp channel...");
         channel.connect();
+        SftpUploadMonitor monitor = new SftpUploadMonitor(sshSession.getHost());
         try {
             // Collect Ansible files from resources for upload
             AnsibleResources resources = new AnsibleResources();
-            uploadResourcesFiles(resources, channel);
+            uploadResourcesFiles(resources, channel, monitor);
+            uploadAnsibleBundle(channel, monitor);
 
             // Divide into master and worker roles to write in site.yml
             Map<String, String> customMasterRoles = new LinkedHashMap<>();
@@ -352,16 +905,13 @@ public abstract class CreateCluster extends Intent {
                 // Set role key - value pairs
                 if (role.getVarsFile() != null) {
                     // VarsFile readable since it is proved in Validation
-                    String vars = new String(Files.readAllBytes(Paths.get(role.getVarsFile())));
-                    Yaml yaml = new Yaml();
-                    Map<String, Object> additionalVars = yaml.load(vars);
+                    Map<String, Object> additionalVars = YamlSupport.load(Paths.get(role.getVarsFile()));
                     roleVars.putAll(additionalVars);
                 }
                 String roleVarsFile = "";
                 if (roleVars != null && !roleVars.isEmpty()) {
                     roleVarsFile = AnsibleResources.VARS_PATH + roleName + "-vars.yml";
-                    commonConfig.writeAnsibleVarsFile(channel.put(channel.getHome() + "/" +
-                            AnsibleResources.ROOT_PATH + roleVarsFile), roleVars);
+                    commonConfig.writeAnsibleVarsFile(put(channel, AnsibleResources.ROOT_PATH + roleVarsFile, monitor), roleVars);
                 }
                 switch (role.getHosts()) {
                     case "master":
@@ -376,7 +926,7 @@ public abstract class CreateCluster extends Intent {
                         customWorkerRoles.put(roleName, roleVarsFile);
                 }
 
-                uploadAnsibleRole(channel, role.getFile());
+                uploadAnsibleRole(channel, role.getFile(), monitor);
             }
 
             // Add galaxy roles
@@ -387,16 +937,13 @@ public abstract class CreateCluster extends Intent {
                 // Set role key - value pairs
                 // Put vars from external vars file into Map
                 if (role.getVarsFile() != null) {
-                    String vars = new String(Files.readAllBytes(Paths.get(role.getVarsFile())));
-                    Yaml yaml = new Yaml();
-                    Map<String, Object> additionalVars = yaml.load(vars);
+                    Map<String, Object> additionalVars = YamlSupport.load(Paths.get(role.getVarsFile()));
                     roleVars.putAll(additionalVars);
                 }
                 String roleVarsFile = "";
                 if (roleVars != null && !roleVars.isEmpty()) {
                     roleVarsFile = AnsibleResources.VARS_PATH + roleName + "-vars.yml";
-                    commonConfig.writeAnsibleVarsFile(channel.put(channel.getHome() + "/" +
-                            AnsibleResources.ROOT_PATH + roleVarsFile), roleVars);
+                    commonConfig.writeAnsibleVarsFile(put(channel, AnsibleResources.ROOT_PATH + roleVarsFile, monitor), roleVars);
                 }
                 // Replace ansible galaxy name with self-specified
                 role.setName(roleName);
@@ -415,30 +962,27 @@ public abstract class CreateCluster extends Intent {
             }
 
             // Write the hosts configuration file
-            try (OutputStreamWriter writer = new OutputStreamWriter(channel.put(channel.getHome() + "/" +
-                    AnsibleResources.HOSTS_CONFIG_FILE), StandardCharsets.UTF_8)) {
-                writer.write(hostsConfig.toString());
+            try (OutputStreamWriter writer = new OutputStreamWriter(put(channel, AnsibleResources.HOSTS_CONFIG_FILE, monitor), StandardCharsets.UTF_8)) {
+                hostsConfig.write(writer);
             }
             // Write the commons configuration file
-            commonConfig.writeCommonFile(channel.put(channel.getHome() + "/"
-                    + AnsibleResources.COMMONS_CONFIG_FILE));
+            commonConfig.writeCommonFile(put(channel, AnsibleResources.COMMONS_CONFIG_FILE, monitor));
 
             // Write custom site file
-            commonConfig.writeSiteFile(channel.put(channel.getHome() + "/"
-                            + AnsibleResources.SITE_CONFIG_FILE),
+            commonConfig.writeSiteFile(put(channel, AnsibleResources.SITE_CONFIG_FILE, monitor),
                      customMasterRoles, customWorkerRoles);
 
+            // Write ansible.cfg tuned for the cluster size
+            commonConfig.writeAnsibleCfgFile(put(channel, AnsibleResources.ANSIBLE_CFG_FILE, monitor));
+
             // Write requirements file for ansible-galaxy support
             if (!ansibleGalaxyRoles.isEmpty()) {
-                commonConfig.writeRequirementsFile(channel.put(channel.getHome() + "/"
-                        + AnsibleResources.REQUIREMENTS_CONFIG_FILE));
+                commonConfig.writeRequirementsFile(put(channel, AnsibleResources.REQUIREMENTS_CONFIG_FILE, monitor));
             }
 
-            // Write worker instance specific configuration file
-            for (Instance worker : workerInstances) {
-                String filename = channel.getHome() + "/" + AnsibleResources.CONFIG_ROOT_PATH + "/"
-                        + worker.getPrivateIp() + ".yml";
-                commonConfig.writeInstanceFile(worker, channel.put(filename));
+            // Write worker instance specific configuration files as single archive, extracted on master
+            if (!workerInstances.isEmpty()) {
+                commonConfig.writeInstanceFiles(put(channel, AnsibleResources.WORKER_VARS_ARCHIVE, monitor));
             }
 
         } catch (SftpException | IOException e) {
@@ -447,7 +991,14 @@ public abstract class CreateCluster extends Intent {
         } finally {
             channel.disconnect();
         }
+        LOG.info(V, "SFTP: Uploaded {} file(s), {} bytes.", monitor.getFiles(), monitor.getBytes());
+    }
 
+    /**
+     * Opens a stream writing a file relative to the home folder.
+     */
+    private static OutputStream put(ChannelSftp channel, String path, SftpUploadMonitor monitor) throws SftpException {
+        return channel.put(channel.getHome() + "/" + path, monitor, ChannelSftp.OVERWRITE);
     }
 
     /**
@@ -455,8 +1006,9 @@ public abstract class CreateCluster extends Intent {
      *
      * @param resources ansible configuration
      * @param channel client side of sftp server channel
+     * @param monitor counts the uploaded bytes
      */
-    private void uploadResourcesFiles(AnsibleResources resources, ChannelSftp channel) {
+    private void uploadResourcesFiles(AnsibleResources resources, ChannelSftp channel, SftpUploadMonitor monitor) {
         try {
             // First the folders need to be created
             createSftpFolders(channel, resources, resources.getFiles());
@@ -466,13 +1018,92 @@ public abstract class CreateCluster extends Intent {
                 // Upload the file stream via sftp to the home folder
                 String fullPath = channel.getHome() + "/" + filepath;
                 LOG.info(V, "SFTP: Upload file {}", fullPath);
-                channel.put(stream, fullPath);
+                channel.put(stream, fullPath, monitor);
             }
         } catch (SftpException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Returns the local ansible bootstrap bundle, either configured explicitly or cached by a previous
+     * cluster setup for the pinned ansible version.
+     *
+     * @return path to bundle or null, if no bundle is available
+     */
+    private Path getLocalAnsibleBundle() {
+        if (config.getAnsibleBundle() != null) {
+            return Paths.get(config.getAnsibleBundle());
+        }
+        if (config.getAnsibleVersion() != null) {
+            Path cached = getCachedAnsibleBundlePath();
+            if (Files.isReadable(cached)) {
+                return cached;
+            }
+        }
+        return null;
+    }
+
+    private Path getCachedAnsibleBundlePath() {
+        return Paths.get(Configuration.CACHE_DIR, "ansible-" + config.getAnsibleVersion() + "-bundle.tar.gz");
+    }
+
+    /**
+     * Uploads the ansible bootstrap bundle (if available), so ansible can be installed on master without
+     * accessing the internet.
+     *
+     * @param channel client side of sftp server channel
+     * @param monitor counts the uploaded bytes
+     * @throws SftpException possible SFTP failure
+     * @throws IOException possible File failure
+     */
+    private void uploadAnsibleBundle(ChannelSftp channel, SftpUploadMonitor monitor) throws SftpException, IOException {
+        Path bundle = getLocalAnsibleBundle();
+        if (bundle == null) {
+            return;
+        }
+        createSFTPFolder(channel, AnsibleResources.BOOTSTRAP_PATH);
+        LOG.info(V, "SFTP: Upload ansible bootstrap bundle {}", bundle);
+        try (InputStream stream = Files.newInputStream(bundle)) {
+            channel.put(stream, AnsibleResources.BOOTSTRAP_BUNDLE, monitor);
+        }
+    }
+
+    /**
+     * Downloads the ansible bootstrap bundle built on master to the local cache, if a pinned ansible version
+     * has been installed online. A failed download does not affect the cluster setup.
+     *
+     * @param sshSession ssh connection to master
+     */
+    private void cacheAnsibleBundle(Session sshSession) {
+        if (config.getAnsibleVersion() == null || getLocalAnsibleBundle() != null) {
+            return;
+        }
+        Path cached = getCachedAnsibleBundlePath();
+        ChannelSftp channel = null;
+        Path tmp = null;
+        try {
+            channel = (ChannelSftp) sshSession.openChannel("sftp");
+            channel.connect();
+            Files.createDirectories(cached.getParent());
+            tmp = Files.createTempFile(cached.getParent(), "ansible-", ".tmp");
+            try (OutputStream stream = Files.newOutputStream(tmp)) {
+                channel.get(AnsibleResources.BOOTSTRAP_BUNDLE, stream);
+            }
+            Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING);
+            LOG.info("Ansible bootstrap bundle cached as '{}'.", cached);
+        } catch (JSchException | SftpException | IOException e) {
+            LOG.info(V, "Ansible bootstrap bundle not cached: {}", e.getMessage());
+            if (tmp != null) {
+                tmp.toFile().delete();
+            }
+        } finally {
+            if (channel != null) {
+                channel.disconnect();
+            }
+        }
+    }
+
     /**
      * Creates folders for every directory, given a file structure.
      *
@@ -509,17 +1140,18 @@ public abstract class CreateCluster extends Intent {
      *
      * @param channel client side of sftp server channel
      * @param roleFile path/to/role on local machine
+     * @param monitor counts the uploaded bytes
      * @throws SftpException possible SFTP failure
      * @throws IOException possible File failure
      */
-    private void uploadAnsibleRole(ChannelSftp channel, String roleFile)
+    private void uploadAnsibleRole(ChannelSftp channel, String roleFile, SftpUploadMonitor monitor)
             throws SftpException, IOException {
         String remotePath = AnsibleResources.UPLOAD_PATH + getSingleFileName(roleFile);
         InputStream stream = new FileInputStream(roleFile);
         // target location on master
         LOG.info(V, "SFTP: Upload file {} to {}", roleFile, remotePath );
         // Upload the file stream via sftp
-        channel.put(stream, remotePath );
+        channel.put(stream, remotePath, monitor);
     }
 
     /**
@@ -548,7 +1180,21 @@ public abstract class CreateCluster extends Intent {
             throws IOException, JSchException, ConfigurationException {
         LOG.info("Ansible is now configuring your cloud instances. This might take a while.");
 
-        String execCommand = ShellScriptCreator.getMasterAnsibleExecutionScript(prepare, config);
+        String execCommand;
+        if (addedWorkers == null) {
+            execCommand = ShellScriptCreator.getMasterAnsibleExecutionScript(prepare, config);
+        } else {
+            List<String> added = new ArrayList<>();
+            List<String> running = new ArrayList<>();
+            for (Instance worker : workerInstances) {
+                if (addedWorkers.contains(worker)) {
+                    added.add(worker.getPrivateIp());
+                } else {
+                    running.add(worker.getPrivateIp());
+                }
+            }
+            execCommand = ShellScriptCreator.getMasterAnsibleExecutionScript(prepare, config, added, running);
+        }
         ChannelExec channel = (ChannelExec) sshSession.openChannel("exec");
         /*
            The fct have to watch and parse the stdout and stderr stream at the same time. Since BufferReader.readline()
@@ -559,31 +1205,25 @@ public abstract class CreateCluster extends Intent {
          */
 
 
-        // "Runnable" for stdout
+        // "Runnable" for stdout, the events generated by the ansible callback plugin are evaluated by the handler
+        final AnsibleEventHandler eventHandler = new AnsibleEventHandler();
+        // the execution script announces the playbook run, everything before installs and bootstraps ansible
+        final long[] playbookStart = new long[1];
         LineReaderRunnable stdout = new LineReaderRunnable(new BufferedReader(new InputStreamReader(channel.getInputStream()))) {
             @Override
             public void work_on_line(String lineOut) {
-                if (lineOut.contains("CONFIGURATION FINISHED")) {
-                    returnCode = 0;
-                    returnMsg = ""; // clear possible msg
-                } else if (lineOut.contains("failed:")) {
-                    returnMsg = lineOut;
-                }
-                if (VerboseOutputFilter.SHOW_VERBOSE) {
-                    // in verbose mode show every line generated by ansible
-                    LOG.info(V, "{}", lineOut);
-                } else {
-                    // otherwise show only ansible msg containing "[BIBIGRID]"
-                    int indexOfLogMessage = lineOut.indexOf("\"[BIBIGRID] ");
-                    if (indexOfLogMessage > 0) {
-                        LOG.info("[Ansible] {}",  lineOut.substring(indexOfLogMessage + 12, lineOut.length() - 1));
+                if (playbookStart[0] == 0 && lineOut.startsWith(ShellScriptCreator.PLAYBOOK_START_MESSAGE)) {
+                    playbookStart[0] = System.nanoTime();
+                    if (!scaleUp) {
+                        journal.record(ClusterJournal.Step.ANSIBLE_BOOTSTRAP);
                     }
                 }
+                eventHandler.handleLine(lineOut);
             }
 
             @Override
             public void work_on_exception(Exception e) {
-                LOG.error("Evaluate stderr : "+e.getMessage());
+                LOG.error("Evaluate stdout : "+e.getMessage());
                 returnCode = 1;
             }
         };
@@ -620,23 +1260,55 @@ public abstract class CreateCluster extends Intent {
         // ... start ansible ...
         channel.setCommand(execCommand);
         // ... connect channel
-        channel.connect();
+        long start = System.nanoTime();
+        try (FlightRecording.Scope event = FlightRecording.sshExec(sshSession.getHost(), execCommand)) {
+            channel.connect();
 
-        // ... wait for threads finished ...
-        try {
-            t_stdout.join();
-            t_stderr.join();
-        } catch (InterruptedException e) {
-            throw new ConfigurationException("Exception occured while evaluate ansible output!");
+            // ... wait for threads finished ...
+            try {
+                t_stdout.join();
+                t_stderr.join();
+            } catch (InterruptedException e) {
+                throw new ConfigurationException("Exception occured while evaluate ansible output!");
+            }
+            event.setExitStatus(channel.getExitStatus());
+        }
+        long end = System.nanoTime();
+        PhaseTracer tracer = PhaseTracer.getInstance();
+        if (playbookStart[0] != 0) {
+            tracer.record("ansible bootstrap", PhaseTracer.CATEGORY_PHASE, start, playbookStart[0]);
+            tracer.record("ansible playbook", PhaseTracer.CATEGORY_PHASE, playbookStart[0], end);
+        } else {
+            tracer.record("ansible", PhaseTracer.CATEGORY_PHASE, start, end);
         }
 
         // and  disconnect channel
         channel.disconnect();
 
+        writeAnsibleProfile(eventHandler.getProfile());
 
 
-        if (stdout.getReturnCode() != 0) {
-            throw new ConfigurationException("Cluster configuration failed.\n"+stdout.getReturnMsg());
+        if (stdout.getReturnCode() == 1 || !eventHandler.isSuccessful()) {
+            throw new ConfigurationException("Cluster configuration failed.\n" + eventHandler.getFailureSummary());
+        }
+    }
+
+    /**
+     * Writes the ansible task timing report to REPORTS_DIR and logs the slowest tasks.
+     *
+     * @param profile task durations collected during the playbook run
+     */
+    private void writeAnsibleProfile(AnsibleProfile profile) {
+        if (profile.isEmpty()) {
+            return;
+        }
+        profile.logSummary(ANSIBLE_PROFILE_TOP_TASKS);
+        Path reportFile = Paths.get(Configuration.REPORTS_DIR, clusterId + "-ansible-profile.json");
+        try {
+            profile.writeReport(clusterId, reportFile);
+            LOG.info(V, "Ansible profile written to '{}'.", reportFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to write ansible profile '{}': {}", reportFile, e.getMessage());
         }
     }
 
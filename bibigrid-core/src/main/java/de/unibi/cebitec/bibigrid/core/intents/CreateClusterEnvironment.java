@@ -4,10 +4,12 @@ import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.KeyPair;
 import de.unibi.cebitec.bibigrid.core.model.Client;
+import de.unibi.cebitec.bibigrid.core.model.Cluster;
 import de.unibi.cebitec.bibigrid.core.model.Configuration;
 import de.unibi.cebitec.bibigrid.core.model.Network;
 import de.unibi.cebitec.bibigrid.core.model.Subnet;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.NotYetSupportedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +35,10 @@ public abstract class CreateClusterEnvironment {
     protected CreateClusterEnvironment(Client client, CreateCluster cluster) throws ConfigurationException {
         this.client = client;
         this.cluster = cluster;
+        if (cluster.isExisting()) {
+            // the keypair of a resumed or scaled up cluster has been loaded before
+            return;
+        }
         // create a new clusterKeyPair
         try {
             Configuration config = cluster.getConfig();
@@ -64,10 +70,10 @@ public abstract class CreateClusterEnvironment {
     public CreateClusterEnvironment createNetwork() throws ConfigurationException {
         String networkName = getConfig().getNetwork();
         if (networkName != null && networkName.length() > 0) {
-            network = client.getNetworkByName(networkName);
-            // If the network could not be found, try if the user provided a network id instead of the name.
-            if (network == null) {
-                network = client.getNetworkById(networkName);
+            try {
+                network = cluster.getResources().getNetwork(networkName);
+            } catch (NotYetSupportedException e) {
+                throw new ConfigurationException(e.getMessage());
             }
             if (network == null) {
                 throw new ConfigurationException("No network with name or id '" + networkName + "' found!");
@@ -125,6 +131,44 @@ public abstract class CreateClusterEnvironment {
         return this;
     }
 
+    /**
+     * Api specific implementation of restoring the environment of a cluster, which setup is resumed or which is
+     * scaled up.
+     * Implementations verify the journaled resources still exist.
+     *
+     * @param existing  cluster as listed by the provider
+     * @param networkId journaled id of the cluster network
+     * @param subnetId  journaled id of the cluster subnet
+     * @throws ConfigurationException if resuming is not supported or a resource no longer exists
+     */
+    public CreateClusterEnvironment resume(Cluster existing, String networkId, String subnetId)
+            throws ConfigurationException {
+        throw new ConfigurationException("Reusing the environment of an existing cluster is not supported by " +
+                "this provider.");
+    }
+
+    /**
+     * Restores network and subnet of a resumed cluster.
+     *
+     * @throws ConfigurationException if network or subnet no longer exist
+     */
+    protected void resumeNetwork(String networkId, String subnetId) throws ConfigurationException {
+        try {
+            subnet = subnetId != null ? cluster.getResources().getSubnet(subnetId) : null;
+            if (subnet == null) {
+                throw new ConfigurationException("Subnet (ID: " + subnetId + ") of the cluster no longer exists!");
+            }
+            network = cluster.getResources().getNetwork(networkId != null ? networkId : subnet.getNetworkId());
+            if (network == null) {
+                throw new ConfigurationException("Network (ID: " + networkId + ") of the cluster no longer exists!");
+            }
+        } catch (NotYetSupportedException e) {
+            throw new ConfigurationException(e.getMessage());
+        }
+        LOG.info(V, "Using network '{}' and subnet '{}' (CIDR: {}) of the cluster.", network.getId(), subnet.getId(),
+                subnet.getCidr());
+    }
+
     protected Configuration getConfig() {
         return cluster.getConfig();
     }
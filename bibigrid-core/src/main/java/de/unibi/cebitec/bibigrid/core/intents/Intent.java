@@ -3,6 +3,8 @@ package de.unibi.cebitec.bibigrid.core.intents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
 /**
  * Provider module base class for accessing the implementation details for a specific cloud provider.
  *
@@ -11,18 +13,27 @@ import org.slf4j.LoggerFactory;
 public abstract class Intent {
     private static final Logger LOG = LoggerFactory.getLogger(Intent.class);
 
-    protected void sleep(int seconds) {
-        sleep(seconds, true);
+    /**
+     * @return false, if the thread has been interrupted and polling loops should stop
+     */
+    protected boolean sleep(int seconds) {
+        return sleep(seconds, true);
     }
 
-    protected void sleep(int seconds, boolean throwException) {
+    /**
+     * @return false, if the thread has been interrupted and polling loops should stop
+     */
+    protected boolean sleep(int seconds, boolean throwException) {
         try {
             Thread.sleep(seconds * 1000);
+            return true;
         } catch (InterruptedException ie) {
+            // keep the interrupt visible to the caller, e.g. a cancelled cluster setup
+            Thread.currentThread().interrupt();
             if (throwException) {
-                LOG.error("Thread.sleep interrupted!");
-                ie.printStackTrace();
+                LOG.info(V, "Sleep interrupted.");
             }
+            return false;
         }
     }
 }
@@ -42,6 +42,10 @@ public abstract class PrepareIntent extends Intent {
         for (Instance instance : workerInstances) {
             waitForInstanceShutdown(instance);
         }
+        if (Thread.currentThread().isInterrupted()) {
+            LOG.error("Waiting for instances to shutdown has been interrupted.");
+            return false;
+        }
         LOG.info("Creating images...");
         LOG.info("Creating master instance image...");
         boolean success = true;
@@ -62,6 +66,9 @@ public abstract class PrepareIntent extends Intent {
 
     protected abstract boolean stopInstance(Instance instance);
 
+    /**
+     * Waits until the instance has been stopped. Returns early, if the thread has been interrupted.
+     */
     protected abstract void waitForInstanceShutdown(Instance instance);
 
     protected abstract boolean createImageFromInstance(Instance instance, String imageName);
@@ -3,7 +3,10 @@ package de.unibi.cebitec.bibigrid.core.intents;
 import de.unibi.cebitec.bibigrid.core.model.Client;
 import de.unibi.cebitec.bibigrid.core.model.Cluster;
 import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.Instance;
 import de.unibi.cebitec.bibigrid.core.model.ProviderModule;
+import de.unibi.cebitec.bibigrid.core.util.ClusterJournal;
+import de.unibi.cebitec.bibigrid.core.util.PhaseTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,12 +17,19 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * @author Johannes Steiner - jsteiner(at)cebitec.uni-bielefeld.de
  */
 public abstract class TerminateIntent extends Intent {
     private static final Logger LOG = LoggerFactory.getLogger(TerminateIntent.class);
+    private static final int PARALLEL_DELETES = 16;
     private final ProviderModule providerModule;
     protected final Client client;
     private final Configuration config;
@@ -37,7 +47,9 @@ public abstract class TerminateIntent extends Intent {
      * @return Return true in case of success, false otherwise
      */
     public boolean terminate() {
-        final Map<String, Cluster> clusters = providerModule.getListIntent(client, config).getList();
+        PhaseTracer tracer = PhaseTracer.getInstance();
+        final Map<String, Cluster> clusters = tracer.trace("list clusters",
+                () -> providerModule.getListIntent(client, config).getList());
         boolean success = true;
         List<String> toRemove = new ArrayList<>();
         for (String clusterId : config.getClusterIds()) {
@@ -62,8 +74,13 @@ public abstract class TerminateIntent extends Intent {
         for (String clusterId : toRemove) {
             LOG.info("Terminating cluster with ID '{}' ...", clusterId);
             final Cluster cluster = clusters.get(clusterId);
-            if (terminateCluster(cluster)) {
+            boolean terminated;
+            try (PhaseTracer.Span ignored = tracer.start("terminate cluster").arg("clusterId", clusterId)) {
+                terminated = terminateCluster(cluster);
+            }
+            if (terminated) {
                 delete_Key(cluster);
+                ClusterJournal.delete(clusterId);
                 LOG.info("Cluster '{}' terminated!", clusterId);
             } else {
                 LOG.info("Failed to terminate cluster '{}'!", clusterId);
@@ -75,6 +92,77 @@ public abstract class TerminateIntent extends Intent {
 
     protected abstract boolean terminateCluster(Cluster cluster);
 
+    /**
+     * Terminates single instances of a cluster and keeps the other resources of the cluster, e.g. instances
+     * left behind by an interrupted setup.
+     *
+     * @return true, if all instances have been deleted
+     */
+    public abstract boolean terminateInstances(List<Instance> instances);
+
+    /**
+     * Deletes the master and worker instances of the cluster concurrently. The instances have to be deleted
+     * before the other resources of the cluster, which stay in use until the instances are gone.
+     *
+     * @param delete deletes a single instance, returns false or throws an exception if it failed
+     * @return true, if all instances have been deleted
+     */
+    protected boolean deleteInstances(Cluster cluster, Predicate<Instance> delete) {
+        List<Instance> instances = new ArrayList<>();
+        if (cluster.getMasterInstance() != null) {
+            instances.add(cluster.getMasterInstance());
+        }
+        for (Instance worker : cluster.getWorkerInstances()) {
+            if (worker != null) {
+                instances.add(worker);
+            }
+        }
+        return deleteInstances(instances, delete);
+    }
+
+    /**
+     * Deletes the instances concurrently.
+     *
+     * @param delete deletes a single instance, returns false or throws an exception if it failed
+     * @return true, if all instances have been deleted
+     */
+    protected boolean deleteInstances(List<Instance> instances, Predicate<Instance> delete) {
+        if (instances.isEmpty()) {
+            return true;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(PARALLEL_DELETES, instances.size()), r -> {
+            Thread thread = new Thread(r, "terminate-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Boolean>> deletions = new ArrayList<>();
+            for (Instance instance : instances) {
+                deletions.add(executor.submit(() -> {
+                    client.attachThread();
+                    return delete.test(instance);
+                }));
+            }
+            boolean success = true;
+            for (int i = 0; i < deletions.size(); i++) {
+                try {
+                    success &= deletions.get(i).get();
+                } catch (ExecutionException e) {
+                    LOG.error("Failed to delete instance '{}'. {}", instances.get(i).getName(),
+                            e.getCause().getMessage());
+                    success = false;
+                }
+            }
+            return success;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private void delete_Key(Cluster cluster) {
         try {
             Path p = Paths.get(Configuration.KEYS_DIR + System.getProperty("file.separator") + cluster.getKeyName());
@@ -2,13 +2,21 @@ package de.unibi.cebitec.bibigrid.core.intents;
 
 import de.unibi.cebitec.bibigrid.core.model.*;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.NotYetSupportedException;
+import de.unibi.cebitec.bibigrid.core.util.ValidationMemo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static de.unibi.cebitec.bibigrid.core.util.ImportantInfoOutputFilter.I;
 import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
@@ -22,66 +30,124 @@ import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
  * <li>Check images are available</li>
  * <li>Check snapshots are available</li>
  * <li>Check network and subnet are available</li>
+ * <li>Check the quotas leave room for the cluster</li>
  * </ol>
+ * The provider lookups run concurrently. Resolved resources are kept in a {@link ResourceContext}, which is
+ * handed to the create intent.
  *
  * @author Johannes Steiner - jsteiner(at)cebitec.uni-bielefeld.de
  * @author Jan Krueger - jkrueger(at)cebitec.uni-bielefeld.de
  */
 public class ValidateIntent extends Intent {
     private static final Logger LOG = LoggerFactory.getLogger(ValidateIntent.class);
+    private static final int PARALLEL_CHECKS = 4;
     protected final Client client;
     protected final Configuration config;
+    protected final ResourceContext resources;
+    private ValidationMemo memo;
+    private boolean masterRunning;
 
     public ValidateIntent(final Client client, final Configuration config) {
         this.client = client;
         this.config = config;
+        resources = new ResourceContext(client);
+    }
+
+    /**
+     * @return provider resources resolved by the validation, to be reused by the create intent
+     */
+    public ResourceContext getResources() {
+        return resources;
+    }
+
+    /**
+     * Skips the provider lookups, if the memo holds a successful validation of the same configuration, and
+     * records successful validations.
+     */
+    public void setValidationMemo(ValidationMemo memo) {
+        this.memo = memo;
+    }
+
+    /**
+     * The master of the cluster is running already, e.g. when scaling up, so only the workers are checked
+     * against the quotas.
+     */
+    public void setMasterRunning(boolean masterRunning) {
+        this.masterRunning = masterRunning;
     }
 
     public boolean validate() {
         LOG.info("Validating config file...");
-        boolean success = true;
         if (!connect()) {
             LOG.error("API connection not successful. Please check your configuration.");
             // If not even the connection can be established, the next steps won't be necessary
             return false;
         }
-        LOG.info("Checking images...");
-        if (checkImages()) {
-            LOG.info(V, "Image check has been successful.");
-        } else {
-            LOG.error("Failed to check images.");
-            success = false;
-        }
-        LOG.info("Checking instance types...");
-        if (checkInstanceTypes()) {
-            LOG.info(V, "Instance type check has been successful.");
-        } else {
-            LOG.error("Failed to check instance types.");
-            success = false;
-        }
-        LOG.info("Checking snapshots/volumes...");
-        if (checkSnapshots()) {
-            LOG.info(V, "Snapshot/Volume check has been successful.");
-        } else {
-            LOG.error("One or more snapshots/volumes could not be found.");
-            success = false;
-        }
-        LOG.info("Checking network...");
-        if (checkNetwork()) {
-            LOG.info(V, "Network check has been successful.");
-        } else {
-            LOG.error("Failed to check network.");
-            success = false;
+        if (memo != null && memo.getValidatedAt() != null) {
+            LOG.info("Configuration has been validated before. Skipping image, instance type, snapshot/volume " +
+                    "and network checks.");
+            // the server group is referenced by id when launching instances, quota usage changes between runs
+            boolean success = checkServerGroup();
+            return checkQuotas() && success;
         }
-        LOG.info("Checking servergroup...");
-        if (checkServerGroup()) {
-            LOG.info(V,"Server group check has been successful.");
-        } else {
-            LOG.error("Failed to check server group.");
-            success = false;
+        // The provider lookups are independent of each other and run concurrently
+        LOG.info("Checking images, instance types, snapshots/volumes, network, servergroup and quotas...");
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_CHECKS, r -> {
+            Thread thread = new Thread(r, "validate-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<Boolean> images = submit(executor, this::checkImages);
+            Future<Boolean> snapshots = submit(executor, this::checkSnapshots);
+            Future<Boolean> network = submit(executor, this::checkNetwork);
+            Future<Boolean> serverGroup = submit(executor, this::checkServerGroup);
+            Future<Boolean> quotas = submit(executor, this::checkQuotas);
+            boolean success = await(images, "Image check has been successful.", "Failed to check images.");
+            if (checkInstanceTypes()) {
+                LOG.info(V, "Instance type check has been successful.");
+            } else {
+                LOG.error("Failed to check instance types.");
+                success = false;
+            }
+            success &= await(snapshots, "Snapshot/Volume check has been successful.",
+                    "One or more snapshots/volumes could not be found.");
+            success &= await(network, "Network check has been successful.", "Failed to check network.");
+            success &= await(serverGroup, "Server group check has been successful.",
+                    "Failed to check server group.");
+            success &= await(quotas, "Quota check has been successful.",
+                    "The quotas do not leave enough room for the cluster.");
+            if (success && memo != null) {
+                memo.recordSuccess();
+            }
+            return success;
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        return success;
+    private Future<Boolean> submit(ExecutorService executor, Supplier<Boolean> check) {
+        return executor.submit(() -> {
+            client.attachThread();
+            return check.get();
+        });
+    }
+
+    private static boolean await(Future<Boolean> check, String successMessage, String failureMessage) {
+        try {
+            if (check.get()) {
+                LOG.info(V, successMessage);
+                return true;
+            }
+            LOG.error(failureMessage);
+        } catch (ExecutionException e) {
+            LOG.error("{} {}", failureMessage, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error(failureMessage);
+        }
+        return false;
     }
 
     /**
@@ -95,7 +161,7 @@ public class ValidateIntent extends Intent {
     private boolean checkImages() {
         Map<Configuration.InstanceConfiguration, InstanceImage> typeImageMap = new HashMap<>();
         try {
-            InstanceImage masterImage = client.getImageByIdOrName(config.getMasterInstance().getImage());
+            InstanceImage masterImage = resources.getImage(config.getMasterInstance().getImage());
             if (masterImage == null) {
                 LOG.error("Failed to find master image ({}).", config.getMasterInstance().getImage());
             } else {
@@ -106,7 +172,7 @@ public class ValidateIntent extends Intent {
         }
         try {
             for (Configuration.InstanceConfiguration instanceConfiguration : config.getWorkerInstances()) {
-                InstanceImage workerImage = client.getImageByIdOrName(instanceConfiguration.getImage());
+                InstanceImage workerImage = resources.getImage(instanceConfiguration.getImage());
                 if (workerImage == null) {
                     LOG.error("Failed to find worker image ({}).", instanceConfiguration.getImage());
                 } else {
@@ -186,7 +252,7 @@ public class ValidateIntent extends Intent {
                 snapshotId = snapshotId.substring(0, snapshotId.indexOf(":"));
             }
             try {
-                Snapshot snapshot = client.getSnapshotByIdOrName(snapshotId);
+                Snapshot snapshot = resources.getSnapshot(snapshotId);
                 if (snapshot == null) {
                     LOG.error("Snapshot/Volume '{}' could not be found.", snapshotId);
                     allCheck = false;
@@ -205,7 +271,7 @@ public class ValidateIntent extends Intent {
         boolean result = true;
         if (config.getNetwork() != null && config.getNetwork().length() > 0) {
             try {
-                Network network = client.getNetworkByIdOrName(config.getNetwork());
+                Network network = resources.getNetwork(config.getNetwork());
                 // If the network could not be found, try if the user provided a network id instead of the name.
                 if (network == null) {
                     LOG.error("Network '{}' could not be found.", config.getNetwork());
@@ -221,7 +287,7 @@ public class ValidateIntent extends Intent {
         }
         if (config.getSubnet() != null && config.getSubnet().length() > 0) {
             try {
-                Subnet subnet = client.getSubnetByIdOrName(config.getSubnet());
+                Subnet subnet = resources.getSubnet(config.getSubnet());
                 if (subnet == null) {
                     LOG.error("Subnet '{}' could not be found.", config.getSubnet());
                     result = false;
@@ -241,7 +307,7 @@ public class ValidateIntent extends Intent {
         boolean result = true;
         if (config.getServerGroup() != null && !config.getServerGroup().isEmpty()) {
             try {
-                ServerGroup serverGroup = client.getServerGroupByIdOrName(config.getServerGroup());
+                ServerGroup serverGroup = resources.getServerGroup(config.getServerGroup());
                 if (serverGroup == null) {
                     LOG.error("ServerGroup '{}' could not be found.", config.getServerGroup());
                     result = false;
@@ -255,4 +321,52 @@ public class ValidateIntent extends Intent {
         }
         return result;
     }
+
+    /**
+     * Compares the resources the cluster needs with the remaining quotas, so the creation fails before any
+     * resource is created instead of leaving a half built cluster behind.
+     */
+    private boolean checkQuotas() {
+        Quotas quotas;
+        try {
+            quotas = client.getQuotas();
+        } catch (NotYetSupportedException e) {
+            LOG.warn(e.getMessage());
+            return true;
+        }
+        Map<Quotas.Resource, Long> required = new EnumMap<>(Quotas.Resource.class);
+        InstanceType masterType = config.getMasterInstance().getProviderType();
+        required.put(Quotas.Resource.INSTANCES, (masterRunning ? 0L : 1L) + config.getWorkerInstanceCount());
+        required.put(Quotas.Resource.CORES, masterRunning ? 0L : (long) masterType.getCpuCores());
+        required.put(Quotas.Resource.RAM, masterRunning ? 0L : (long) masterType.getMaxRam());
+        for (Configuration.WorkerInstanceConfiguration worker : config.getWorkerInstances()) {
+            InstanceType type = worker.getProviderType();
+            required.merge(Quotas.Resource.CORES, (long) worker.getCount() * type.getCpuCores(), Long::sum);
+            required.merge(Quotas.Resource.RAM, (long) worker.getCount() * type.getMaxRam(), Long::sum);
+        }
+        // the master reuses a floating ip, which is not associated with a server
+        required.put(Quotas.Resource.FLOATING_IPS, !masterRunning && config.isUseMasterWithPublicIp() &&
+                quotas.getUnused(Quotas.Resource.FLOATING_IPS) == 0 ? 1L : 0L);
+        boolean result = true;
+        for (Map.Entry<Quotas.Resource, Long> entry : required.entrySet()) {
+            Quotas.Resource resource = entry.getKey();
+            if (!quotas.has(resource)) {
+                continue;
+            }
+            long headroom = quotas.getHeadroom(resource);
+            if (entry.getValue() > headroom && resource == Quotas.Resource.FLOATING_IPS) {
+                // providers may hand out floating ips from pools not covered by the reported quota
+                LOG.warn("Quota for {}: The cluster needs {}, but only {} of {} are available. The master might " +
+                        "not get a public ip.", resource, entry.getValue(), headroom, quotas.getLimit(resource));
+            } else if (entry.getValue() > headroom) {
+                LOG.error("Quota exceeded for {}: The cluster needs {}, but only {} of {} are available.",
+                        resource, entry.getValue(), headroom, quotas.getLimit(resource));
+                result = false;
+            } else if (headroom != Long.MAX_VALUE) {
+                LOG.info(V, "Quota for {}: {} needed, {} of {} available.", resource, entry.getValue(), headroom,
+                        quotas.getLimit(resource));
+            }
+        }
+        return result;
+    }
 }
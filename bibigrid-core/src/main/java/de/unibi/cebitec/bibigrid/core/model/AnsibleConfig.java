@@ -3,13 +3,14 @@ package de.unibi.cebitec.bibigrid.core.model;
 import de.unibi.cebitec.bibigrid.core.model.Configuration.AnsibleRoles;
 import de.unibi.cebitec.bibigrid.core.util.AnsibleResources;
 import de.unibi.cebitec.bibigrid.core.util.DeviceMapper;
-import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.nodes.Tag;
+import de.unibi.cebitec.bibigrid.core.util.TarArchiveWriter;
+import de.unibi.cebitec.bibigrid.core.util.YamlSupport;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -21,6 +22,10 @@ import java.util.*;
  */
 public final class AnsibleConfig {
     private static final int BLOCK_DEVICE_START = 98;
+    private static final int DEFAULT_FORKS = 5;
+    private static final int FORKS_PER_CORE = 20;
+    private static final int MEMORY_PER_FORK = 128;
+    private static final String FACT_CACHE_PATH = "~/.ansible/fact_cache";
 
     private final Configuration config;
     private final String blockDeviceBase;
@@ -53,6 +58,11 @@ public final class AnsibleConfig {
 
     /**
      * Generates site.yml automatically including custom ansible roles.
+     * The master play (common and master role) runs first and does not wait for any worker. The worker play(s)
+     * follow, since the worker roles depend on services (nfs, gridengine, slurm) provided by the master.
+     * Worker plays use the free strategy unless configured otherwise, so a slow worker does not hold back the
+     * others. Hosts then run their tasks out of step, so task durations of the ansible profile are no longer
+     * comparable per task; the linear strategy keeps them comparable.
      *
      * @param stream write file to remote
      * @param customMasterRoles master ansible roles names and variable file names
@@ -63,6 +73,8 @@ public final class AnsibleConfig {
                               Map<String, String> customWorkerRoles) {
         String COMMON_FILE = AnsibleResources.COMMON_YML;
         String DEFAULT_IP_FILE = AnsibleResources.VARS_PATH + "{{ ansible_default_ipv4.address }}.yml";
+        Configuration.AnsibleTuning tuning = config.getAnsibleTuning();
+        List<Map<String, Object>> plays = new ArrayList<>();
         // master configuration
         Map<String, Object> master = new LinkedHashMap<>();
         master.put("hosts", "master");
@@ -80,10 +92,8 @@ public final class AnsibleConfig {
         roles.add("master");
         roles.addAll(customMasterRoles.keySet());
         master.put("roles", roles);
+        plays.add(master);
         // worker configuration
-        Map<String, Object> workers = new LinkedHashMap<>();
-        workers.put("hosts", "workers");
-        workers.put("become", "yes");
         vars_files = new ArrayList<>();
         vars_files.add(COMMON_FILE);
         vars_files.add(DEFAULT_IP_FILE);
@@ -92,13 +102,86 @@ public final class AnsibleConfig {
                 vars_files.add(vars_file);
             }
         }
-        workers.put("vars_files", vars_files);
         roles = new ArrayList<>();
         roles.add("common");
         roles.add("worker");
         roles.addAll(customWorkerRoles.keySet());
-        workers.put("roles", roles);
-        writeToOutputStream(stream, Arrays.asList(master, workers));
+        List<String> workerHosts = new ArrayList<>();
+        if (tuning.isPlayPerBatch()) {
+            for (Integer batch : AnsibleHostsConfig.getWorkerBatches(config, workerInstances).keySet()) {
+                workerHosts.add(AnsibleHostsConfig.getWorkerGroup(batch));
+            }
+        } else {
+            workerHosts.add("workers");
+        }
+        for (String hosts : workerHosts) {
+            Map<String, Object> workers = new LinkedHashMap<>();
+            workers.put("hosts", hosts);
+            workers.put("become", "yes");
+            if (tuning.getWorkerStrategy() != null && !tuning.getWorkerStrategy().isEmpty() &&
+                    !tuning.getWorkerStrategy().equals(Configuration.AnsibleTuning.LINEAR_STRATEGY)) {
+                workers.put("strategy", tuning.getWorkerStrategy());
+            }
+            if (tuning.getSerial() != null && !tuning.getSerial().isEmpty()) {
+                workers.put("serial", tuning.getSerial().matches("\\d+") ?
+                        Integer.valueOf(tuning.getSerial()) : tuning.getSerial());
+            }
+            // copy lists to prevent yaml anchors in case of multiple worker plays
+            workers.put("vars_files", new ArrayList<>(vars_files));
+            workers.put("roles", new ArrayList<>(roles));
+            plays.add(workers);
+        }
+        writeToOutputStream(stream, plays);
+    }
+
+    /**
+     * Generates ansible.cfg next to site.yml. Unless set in the configuration, the number of forks scales with the
+     * number of hosts, limited by cores and memory of the master which runs ansible.
+     *
+     * @param stream write file to remote
+     */
+    public void writeAnsibleCfgFile(OutputStream stream) {
+        Configuration.AnsibleTuning tuning = config.getAnsibleTuning();
+        StringBuilder cfg = new StringBuilder();
+        cfg.append("[defaults]\n");
+        cfg.append("forks = ").append(getForks()).append("\n");
+        cfg.append("host_key_checking = False\n");
+        if (tuning.getGatherSubset() != null && !tuning.getGatherSubset().isEmpty()) {
+            cfg.append("gather_subset = ").append(tuning.getGatherSubset()).append("\n");
+        }
+        if (tuning.isFactCaching()) {
+            cfg.append("gathering = smart\n");
+            cfg.append("fact_caching = jsonfile\n");
+            cfg.append("fact_caching_connection = ").append(FACT_CACHE_PATH).append("\n");
+            cfg.append("fact_caching_timeout = ").append(tuning.getFactCachingTimeout()).append("\n");
+        }
+        cfg.append("\n[ssh_connection]\n");
+        cfg.append("pipelining = ").append(tuning.isPipelining() ? "True" : "False").append("\n");
+        if (tuning.getControlPersist() != null && !tuning.getControlPersist().isEmpty()) {
+            cfg.append("ssh_args = -o ControlMaster=auto -o ControlPersist=").append(tuning.getControlPersist())
+                    .append("\n");
+        }
+        try (OutputStreamWriter writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+            writer.write(cfg.toString());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return configured number of forks or number of hosts, bounded by cores and memory of master
+     */
+    int getForks() {
+        Integer forks = config.getAnsibleTuning().getForks();
+        if (forks != null && forks > 0) {
+            return forks;
+        }
+        InstanceType masterType = config.getMasterInstance().getProviderType();
+        int limit = Math.max(1, masterType.getCpuCores()) * FORKS_PER_CORE;
+        if (masterType.getMaxRam() > 0) {
+            limit = Math.min(limit, masterType.getMaxRam() / MEMORY_PER_FORK);
+        }
+        return Math.max(DEFAULT_FORKS, Math.min(workerInstances.size() + 1, limit));
     }
 
     /**
@@ -147,7 +230,30 @@ public final class AnsibleConfig {
      * Write specified instance to stream (in YAML format)
      */
     public void writeInstanceFile(Instance instance, OutputStream stream) {
-        writeToOutputStream(stream, getInstanceMap(instance, true));
+        writeToOutputStream(stream, getInstanceMap(instance));
+    }
+
+    /**
+     * Writes the configuration files of all workers into a single tar.gz archive, to be extracted in the
+     * playbook folder. The archive contains one file (vars/{ip}.yml) per worker with the same content as
+     * {@link #writeInstanceFile(Instance, OutputStream)} and one file (group_vars/workers_{n}.yml) per worker
+     * batch with the facts shared by all workers of the batch (cores, memory, ephemerals).
+     *
+     * @param stream write archive to remote
+     */
+    public void writeInstanceFiles(OutputStream stream) throws IOException {
+        try (TarArchiveWriter archive = new TarArchiveWriter(stream)) {
+            for (Map.Entry<Integer, List<Instance>> batch :
+                    AnsibleHostsConfig.getWorkerBatches(config, workerInstances).entrySet()) {
+                archive.putFile(AnsibleResources.GROUP_VARS_PATH + AnsibleHostsConfig.getWorkerGroup(batch.getKey())
+                                + ".yml",
+                        YamlSupport.dumpAsBytes(getBatchMap(batch.getValue().get(0).getConfiguration())));
+                for (Instance worker : batch.getValue()) {
+                    archive.putFile(AnsibleResources.VARS_PATH + worker.getPrivateIp() + ".yml",
+                            YamlSupport.dumpAsBytes(getInstanceMap(worker)));
+                }
+            }
+        }
     }
 
     /**
@@ -161,7 +267,6 @@ public final class AnsibleConfig {
         map.put("ssh_user", config.getSshUser());
         map.put("munge_key",config.getMungeKey());
         map.put("master", getMasterMap());
-        map.put("workers", getWorkerMap());
         map.put("CIDR", subnetCidr);
         if (config.isNfs()) {
             map.put("nfs_mounts", getNfsSharesMap());
@@ -193,7 +298,31 @@ public final class AnsibleConfig {
             map.put("ansible_galaxy_roles", getAnsibleGalaxyRoles());
         }
 
-        writeToOutputStream(stream, map);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            YamlSupport.dump(map, writer);
+            writeWorkers(writer);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Streams the list of workers (ip, hostname) one line per worker. Facts shared by all workers of a batch
+     * are written to group_vars once (see {@link #writeInstanceFiles(OutputStream)}) and are available
+     * via hostvars[ip].
+     *
+     * @param writer common.yml writer
+     */
+    private void writeWorkers(Writer writer) throws IOException {
+        if (workerInstances.isEmpty()) {
+            writer.write("workers: []\n");
+            return;
+        }
+        writer.write("workers:\n");
+        for (Instance worker : workerInstances) {
+            writer.write("- ");
+            YamlSupport.dumpFlow(getInstanceMap(worker), writer);
+        }
     }
 
     /**
@@ -203,12 +332,8 @@ public final class AnsibleConfig {
      * @param map (yml) file content
      */
     private void writeToOutputStream(OutputStream stream, Object map) {
-        try (OutputStreamWriter writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
-                if (map instanceof Map) {
-                    writer.write(new Yaml().dumpAsMap(map));
-                } else {
-                    writer.write(new Yaml().dumpAs(map, Tag.SEQ, DumperOptions.FlowStyle.BLOCK));
-                }
+        try {
+            YamlSupport.dump(map, stream);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -330,29 +455,29 @@ public final class AnsibleConfig {
     }
 
     /**
-     * Creates map of instance configuration.
+     * Creates map of host specific instance configuration.
      *
      * @param instance current remote instance
-     * @param full
      * @return map of instance configuration
      */
-    private Map<String, Object> getInstanceMap(Instance instance, boolean full) {
+    private Map<String, Object> getInstanceMap(Instance instance) {
         Map<String, Object> instanceMap = new LinkedHashMap<>();
         instanceMap.put("ip", instance.getPrivateIp());
-        instanceMap.put("cores", instance.getConfiguration().getProviderType().getCpuCores());
-        instanceMap.put("memory", instance.getConfiguration().getProviderType().getMaxRam());
-        if (full) {
-            instanceMap.put("hostname", instance.getHostname());
-            instanceMap.put("ephemerals", getEphemeralDevices(instance.getConfiguration().getProviderType().getEphemerals()));
-        }
+        instanceMap.put("hostname", instance.getHostname());
         return instanceMap;
     }
 
-    private List<Map<String, Object>> getWorkerMap() {
-        List<Map<String, Object>> l = new ArrayList<>();
-        for (Instance worker : workerInstances) {
-            l.add(getInstanceMap(worker, true));
-        }
-        return l;
+    /**
+     * Creates map of the facts shared by all instances of the same configuration (batch).
+     *
+     * @param instanceConfiguration configuration of the batch
+     * @return map of batch configuration
+     */
+    private Map<String, Object> getBatchMap(Configuration.InstanceConfiguration instanceConfiguration) {
+        Map<String, Object> batchMap = new LinkedHashMap<>();
+        batchMap.put("cores", instanceConfiguration.getProviderType().getCpuCores());
+        batchMap.put("memory", instanceConfiguration.getProviderType().getMaxRam());
+        batchMap.put("ephemerals", getEphemeralDevices(instanceConfiguration.getProviderType().getEphemerals()));
+        return batchMap;
     }
 }
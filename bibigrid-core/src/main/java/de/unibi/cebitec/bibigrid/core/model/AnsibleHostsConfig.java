@@ -1,43 +1,141 @@
 package de.unibi.cebitec.bibigrid.core.model;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
 
 /**
  * Host configuration for the ansible scripts.
  * <p/>
- * The {@link #toString() toString} method outputs the configuration in ini format
- * ready to use for ansible.
+ * The {@link #write(Writer) write} method streams the configuration in ini format ready to use for ansible.
+ * Workers are grouped by batch (workers_1, workers_2, ...) and consecutive ip addresses are combined
+ * to host ranges (e.g. 192.168.0.[5:104]).
  *
  * @author mfriedrichs(at)techfak.uni-bielefeld.de
  */
 public class AnsibleHostsConfig {
+    private static final String WORKER_GROUP_PREFIX = "workers_";
+
     private final Configuration config;
-    private final List<String> workerIps;
+    private final Map<Integer, List<Instance>> workerBatches;
 
     public AnsibleHostsConfig(Configuration config, List<Instance> workerInstances) {
         this.config = config;
-        workerIps = new ArrayList<>();
+        workerBatches = getWorkerBatches(config, workerInstances);
+    }
+
+    /**
+     * @return name of the inventory group containing all workers of the given batch
+     */
+    public static String getWorkerGroup(int batch) {
+        return WORKER_GROUP_PREFIX + batch;
+    }
+
+    /**
+     * Groups the worker instances by the worker configuration (batch) they are created from.
+     *
+     * @return worker instances per batch index, starting with 1
+     * @throws IllegalArgumentException if a worker instance is not created from any configured worker batch
+     */
+    static Map<Integer, List<Instance>> getWorkerBatches(Configuration config, List<Instance> workerInstances) {
+        Map<Integer, List<Instance>> batches = new TreeMap<>();
+        List<Configuration.WorkerInstanceConfiguration> workerConfigurations = config.getWorkerInstances();
         for (Instance instance : workerInstances) {
-            workerIps.add(instance.getPrivateIp());
+            int batch = workerConfigurations.indexOf(instance.getConfiguration()) + 1;
+            if (batch == 0) {
+                throw new IllegalArgumentException("Worker instance '" + instance.getName() + "' (ID: " +
+                        instance.getId() + ") does not belong to any configured worker batch.");
+            }
+            batches.computeIfAbsent(batch, k -> new ArrayList<>()).add(instance);
+        }
+        return batches;
+    }
+
+    /**
+     * Combines consecutive ip addresses (same network, last octet increasing by one) to ansible host ranges.
+     *
+     * @param ips private ip addresses
+     * @return host patterns in ascending order
+     */
+    static List<String> getHostRanges(List<String> ips) {
+        Map<String, TreeSet<Integer>> networks = new TreeMap<>();
+        List<String> hosts = new ArrayList<>();
+        for (String ip : ips) {
+            int index = ip.lastIndexOf('.');
+            String lastOctet = ip.substring(index + 1);
+            if (index < 0 || !lastOctet.matches("\\d{1,3}")) {
+                hosts.add(ip);
+                continue;
+            }
+            networks.computeIfAbsent(ip.substring(0, index + 1), k -> new TreeSet<>()).add(Integer.valueOf(lastOctet));
+        }
+        for (Map.Entry<String, TreeSet<Integer>> network : networks.entrySet()) {
+            Integer start = null;
+            Integer end = null;
+            for (Integer octet : network.getValue()) {
+                if (start != null && octet == end + 1) {
+                    end = octet;
+                    continue;
+                }
+                if (start != null) {
+                    hosts.add(getHostRange(network.getKey(), start, end));
+                }
+                start = octet;
+                end = octet;
+            }
+            if (start != null) {
+                hosts.add(getHostRange(network.getKey(), start, end));
+            }
+        }
+        return hosts;
+    }
+
+    private static String getHostRange(String network, int start, int end) {
+        return start == end ? network + start : network + "[" + start + ":" + end + "]";
+    }
+
+    /**
+     * Writes the inventory to the given writer.
+     */
+    public void write(Writer writer) throws IOException {
+        writer.write("# The content of this file (ansible_hosts) should be generated by ");
+        writer.write("BiBiGrid during instance initialization.\n");
+        writer.write("# Depending on the used base image the ansible_user must be changed. ");
+        writer.write("The local ip address of each worker must\n");
+        writer.write("# be inserted in the worker section\n\n");
+        writer.write("[master]\n");
+        writer.write("localhost ansible_connection=local\n\n");
+        for (Map.Entry<Integer, List<Instance>> batch : workerBatches.entrySet()) {
+            writer.write("[" + getWorkerGroup(batch.getKey()) + "]\n");
+            List<String> ips = new ArrayList<>();
+            for (Instance instance : batch.getValue()) {
+                ips.add(instance.getPrivateIp());
+            }
+            for (String hosts : getHostRanges(ips)) {
+                writer.write(hosts + "\n");
+            }
+            writer.write("\n");
+        }
+        writer.write("[workers:children]\n");
+        for (Integer batch : workerBatches.keySet()) {
+            writer.write(getWorkerGroup(batch) + "\n");
         }
+        writer.write("\n[workers:vars]\n");
+        writer.write("ansible_connection=ssh\n");
+        writer.write("ansible_python_interpreter=python3\n");
+        writer.write("ansible_user=" + config.getSshUser() + "\n");
     }
 
     @Override
     public String toString() {
-        StringBuilder hostsConfig = new StringBuilder();
-        hostsConfig.append("# The content of this file (ansible_hosts) should be generated by ");
-        hostsConfig.append("BiBiGrid during instance initialization.\n");
-        hostsConfig.append("# Depending on the used base image the ansible_user must be changed. ");
-        hostsConfig.append("The local ip address of each worker must\n");
-        hostsConfig.append("# be inserted in the worker section\n\n");
-        hostsConfig.append("[master]\n");
-        hostsConfig.append("localhost ansible_connection=local\n\n");
-        hostsConfig.append("[workers]\n");
-        for (String workerIp : workerIps) {
-            hostsConfig.append(workerIp).append(" ansible_connection=ssh ansible_python_interpreter=python3 ansible_user=");
-            hostsConfig.append(config.getSshUser()).append("\n");
+        StringWriter writer = new StringWriter();
+        try {
+            write(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return hostsConfig.toString();
+        return writer.toString();
     }
 }
@@ -10,6 +10,13 @@ import java.util.List;
  * @author mfriedrichs(at)techfak.uni-bielefeld.de
  */
 public abstract class Client {
+    /**
+     * Makes the client usable from the current thread before it runs api calls concurrently. Must be
+     * overridden by clients bound to the thread that created them.
+     */
+    public void attachThread() {
+    }
+
     public abstract List<Network> getNetworks();
 
     @Deprecated
@@ -52,4 +59,11 @@ public abstract class Client {
 
 
     public abstract ServerGroup getServerGroupByIdOrName(String serverGroup) throws NotYetSupportedException;
+
+    /**
+     * @return resource limits and usage of the project, tenant or account
+     */
+    public Quotas getQuotas() throws NotYetSupportedException {
+        throw new NotYetSupportedException("Quota check is not supported by this provider.");
+    }
 }
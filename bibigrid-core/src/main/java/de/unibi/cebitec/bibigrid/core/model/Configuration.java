@@ -1,9 +1,9 @@
 package de.unibi.cebitec.bibigrid.core.model;
 
 import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
+import de.unibi.cebitec.bibigrid.core.util.YamlSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
 
@@ -28,6 +28,8 @@ public abstract class Configuration {
     public static final String DEFAULT_WORKSPACE = "$HOME";
     public static final String CONFIG_DIR = System.getProperty("user.home")+System.getProperty("file.separator")+".bibigrid";
     public static final String KEYS_DIR = CONFIG_DIR + System.getProperty("file.separator")+"keys";
+    public static final String REPORTS_DIR = CONFIG_DIR + System.getProperty("file.separator")+"reports";
+    public static final String CACHE_DIR = CONFIG_DIR + System.getProperty("file.separator")+"cache";
     public static final FileAttribute KEYS_PERMS = PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"));
 
     /* protected const */
@@ -70,8 +72,8 @@ public abstract class Configuration {
         }
 
         try {
-            return new Yaml().loadAs(new FileInputStream(propertiesFilePath.toFile()), configurationClass);
-        } catch (FileNotFoundException e) {
+            return YamlSupport.load(propertiesFilePath, configurationClass);
+        } catch (IOException e) {
             if (DEBUG) {
                 e.printStackTrace();
             }
@@ -87,6 +89,7 @@ public abstract class Configuration {
     private String mode;
     private String user = System.getProperty("user.name");
     private String sshUser = "ubuntu";
+    private int sshPort = 22;
     @Deprecated
     private String keypair;
     private String sshPublicKeyFile;
@@ -101,12 +104,16 @@ public abstract class Configuration {
     private String credentialsFile;
     private String region;
     private String availabilityZone;
+    private String fallbackAvailabilityZone;
     private String serverGroup;
     private List<Port> ports = new ArrayList<>();
     private boolean useMasterAsCompute;
     private boolean useMasterWithPublicIp = true;
     private InstanceConfiguration masterInstance = new InstanceConfiguration();
     private List<WorkerInstanceConfiguration> workerInstances = new ArrayList<>();
+    private int workerReplacements = 5;
+    private boolean keepOnInterrupt;
+    private int interruptGracePeriod = 120;
     private boolean oge;
     private boolean slurm;
     private boolean localDNSLookup;
@@ -122,9 +129,14 @@ public abstract class Configuration {
     private List<MountPoint> extNfsShares = new ArrayList<>();
     private FS localFS = FS.XFS;
     private boolean debugRequests;
+    private int validationCacheTtl = 24;
+    private Map<String, Double> apiRateLimits = new HashMap<>();
     private Properties ogeConf = OgeConf.initOgeConfProperties();
     private List<AnsibleRoles> ansibleRoles = new ArrayList<>();
     private List<AnsibleGalaxyRoles> ansibleGalaxyRoles = new ArrayList<>();
+    private String ansibleVersion;
+    private String ansibleBundle;
+    private AnsibleTuning ansibleTuning = new AnsibleTuning();
 
     private String network;
     private String subnet;
@@ -308,6 +320,18 @@ public abstract class Configuration {
         LOG.info(V, "Availability zone set. ({})", this.availabilityZone);
     }
 
+    /**
+     * @return availability zone replacements for failed worker instances are launched in, null for the default
+     */
+    public String getFallbackAvailabilityZone() {
+        return fallbackAvailabilityZone;
+    }
+
+    public void setFallbackAvailabilityZone(String fallbackAvailabilityZone) {
+        this.fallbackAvailabilityZone = fallbackAvailabilityZone.trim();
+        LOG.info(V, "Fallback availability zone set. ({})", this.fallbackAvailabilityZone);
+    }
+
     public String getServerGroup() {
         return serverGroup;
     }
@@ -475,6 +499,19 @@ public abstract class Configuration {
         this.sshUser = sshUser.trim();
     }
 
+    public int getSshPort() {
+        return sshPort;
+    }
+
+    /**
+     * Not part of the configuration file, since security groups and the ide tunnel use port 22. Tests connect
+     * to an embedded ssh server on another port.
+     */
+    protected void setSshPort(int sshPort) {
+        this.sshPort = sshPort;
+        LOG.info(V, "SSH port set. ({})", sshPort);
+    }
+
     public FS getLocalFS() {
         return localFS;
     }
@@ -500,6 +537,71 @@ public abstract class Configuration {
         LOG.info(V, "Debug requests {}.", debugRequests ? "enabled" : "disabled");
     }
 
+    /**
+     * @return hours a successful validation of an unchanged configuration is reused, 0 if disabled
+     */
+    /**
+     * @return number of failed worker instances replaced during the cluster setup
+     */
+    public int getWorkerReplacements() {
+        return workerReplacements;
+    }
+
+    public void setWorkerReplacements(int workerReplacements) {
+        this.workerReplacements = Math.max(0, workerReplacements);
+    }
+
+    /**
+     * @return true, if an interrupted cluster setup keeps the resources created so far instead of rolling back
+     */
+    public boolean isKeepOnInterrupt() {
+        return keepOnInterrupt;
+    }
+
+    public void setKeepOnInterrupt(boolean keepOnInterrupt) {
+        this.keepOnInterrupt = keepOnInterrupt;
+        LOG.info(V, "Keep on interrupt set. ({})", keepOnInterrupt);
+    }
+
+    /**
+     * @return seconds the rollback of an interrupted cluster setup may take before the program exits
+     */
+    public int getInterruptGracePeriod() {
+        return interruptGracePeriod;
+    }
+
+    public void setInterruptGracePeriod(int interruptGracePeriod) {
+        this.interruptGracePeriod = Math.max(0, interruptGracePeriod);
+    }
+
+    public int getValidationCacheTtl() {
+        return validationCacheTtl;
+    }
+
+    public void setValidationCacheTtl(int validationCacheTtl) {
+        this.validationCacheTtl = Math.max(0, validationCacheTtl);
+    }
+
+    /**
+     * @return client side api requests per second per operation prefix, e.g. "compute.servers.boot"
+     */
+    public Map<String, Double> getApiRateLimits() {
+        return apiRateLimits;
+    }
+
+    public void setApiRateLimits(Map<String, ? extends Number> apiRateLimits) {
+        this.apiRateLimits = new HashMap<>();
+        if (apiRateLimits != null) {
+            // yaml integers are not converted to the declared value type
+            for (Map.Entry<String, ? extends Number> entry : apiRateLimits.entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Number) {
+                    this.apiRateLimits.put(entry.getKey(), ((Number) value).doubleValue());
+                }
+            }
+        }
+    }
+
     public boolean isIDE() { return cloud9 || theia; }
 
     public boolean isCloud9() {
@@ -721,6 +823,8 @@ public abstract class Configuration {
         }
 
         private int count;
+        private String fallbackType;
+        private InstanceType fallbackProviderType;
 
         public int getCount() {
             return count;
@@ -732,6 +836,25 @@ public abstract class Configuration {
                 LOG.warn("Number of worker nodes has to be at least 0. ({})", count);
             }
         }
+
+        /**
+         * @return instance type replacements for failed workers are launched with, null for the configured type
+         */
+        public String getFallbackType() {
+            return fallbackType;
+        }
+
+        public void setFallbackType(String fallbackType) {
+            this.fallbackType = fallbackType != null ? fallbackType.trim() : null;
+        }
+
+        public InstanceType getFallbackProviderType() {
+            return fallbackProviderType;
+        }
+
+        public void setFallbackProviderType(InstanceType fallbackProviderType) {
+            this.fallbackProviderType = fallbackProviderType;
+        }
     }
 
     @SuppressWarnings("WeakerAccess")
@@ -867,6 +990,143 @@ public abstract class Configuration {
         this.ansibleGalaxyRoles = (this.ansibleGalaxyRoles == null) ? ansibleGalaxyRoles : new ArrayList<>(ansibleGalaxyRoles);
     }
 
+    /**
+     * @return pinned ansible version installed on the master or null, if the latest version should be used
+     */
+    public String getAnsibleVersion() {
+        return ansibleVersion;
+    }
+
+    public void setAnsibleVersion(String ansibleVersion) {
+        this.ansibleVersion = ansibleVersion != null ? ansibleVersion.trim() : null;
+        LOG.info(V, "Ansible version set. ({})", this.ansibleVersion);
+    }
+
+    /**
+     * @return path to a prebuilt ansible bootstrap bundle (wheelhouse tarball) or null
+     */
+    public String getAnsibleBundle() {
+        return ansibleBundle;
+    }
+
+    public void setAnsibleBundle(String ansibleBundle) {
+        this.ansibleBundle = ansibleBundle != null ? ansibleBundle.trim() : null;
+        LOG.info(V, "Ansible bootstrap bundle set. ({})", this.ansibleBundle);
+    }
+
+    public AnsibleTuning getAnsibleTuning() {
+        return ansibleTuning;
+    }
+
+    public void setAnsibleTuning(AnsibleTuning ansibleTuning) {
+        this.ansibleTuning = ansibleTuning != null ? ansibleTuning : new AnsibleTuning();
+    }
+
+    /**
+     * Settings written to the generated ansible.cfg on the master.
+     *
+     * Integer forks            : (optional) number of parallel ansible processes, default scales with cluster size
+     * boolean pipelining       : execute modules without copying them to the remote host first
+     * String controlPersist    : time an idle ssh master connection is kept open
+     * String gatherSubset      : facts gathered from every host
+     * boolean factCaching      : cache gathered facts on the master between playbook runs
+     * int factCachingTimeout   : time in seconds the fact cache stays valid
+     * String workerStrategy    : ansible strategy of the worker play(s)
+     * String serial            : (optional) number or percentage of workers configured per wave
+     * boolean playPerBatch     : configure each worker batch in a separate play
+     */
+    public static class AnsibleTuning {
+        public static final String LINEAR_STRATEGY = "linear";
+        public static final String FREE_STRATEGY = "free";
+
+        public AnsibleTuning() {
+        }
+
+        private Integer forks;
+        private boolean pipelining = true;
+        private String controlPersist = "10m";
+        private String gatherSubset = "!all,network";
+        private boolean factCaching = true;
+        private int factCachingTimeout = 86400;
+        private String workerStrategy = FREE_STRATEGY;
+        private String serial;
+        private boolean playPerBatch;
+
+        public Integer getForks() {
+            return forks;
+        }
+
+        public void setForks(Integer forks) {
+            this.forks = forks;
+            LOG.info(V, "Ansible forks set. ({})", forks);
+        }
+
+        public boolean isPipelining() {
+            return pipelining;
+        }
+
+        public void setPipelining(boolean pipelining) {
+            this.pipelining = pipelining;
+        }
+
+        public String getControlPersist() {
+            return controlPersist;
+        }
+
+        public void setControlPersist(String controlPersist) {
+            this.controlPersist = controlPersist != null ? controlPersist.trim() : null;
+        }
+
+        public String getGatherSubset() {
+            return gatherSubset;
+        }
+
+        public void setGatherSubset(String gatherSubset) {
+            this.gatherSubset = gatherSubset != null ? gatherSubset.replaceAll("\\s", "") : null;
+        }
+
+        public boolean isFactCaching() {
+            return factCaching;
+        }
+
+        public void setFactCaching(boolean factCaching) {
+            this.factCaching = factCaching;
+        }
+
+        public int getFactCachingTimeout() {
+            return factCachingTimeout;
+        }
+
+        public void setFactCachingTimeout(int factCachingTimeout) {
+            this.factCachingTimeout = factCachingTimeout;
+        }
+
+        public String getWorkerStrategy() {
+            return workerStrategy;
+        }
+
+        public void setWorkerStrategy(String workerStrategy) {
+            this.workerStrategy = workerStrategy != null ? workerStrategy.trim() : null;
+        }
+
+        public String getSerial() {
+            return serial;
+        }
+
+        public void setSerial(String serial) {
+            this.serial = serial != null ? serial.trim() : null;
+            LOG.info(V, "Ansible serial set. ({})", this.serial);
+        }
+
+        public boolean isPlayPerBatch() {
+            return playPerBatch;
+        }
+
+        public void setPlayPerBatch(boolean playPerBatch) {
+            this.playPerBatch = playPerBatch;
+        }
+    }
+
     /**
      * Provides support for (local) Ansible roles and playbooks.
      *
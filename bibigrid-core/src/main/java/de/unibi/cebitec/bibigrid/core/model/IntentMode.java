@@ -5,6 +5,8 @@ public enum IntentMode {
     HELP("h", "help"),
     TERMINATE("t", "terminate"),
     CREATE("c", "create"),
+    RESUME("rs", "resume"),
+    SCALE_UP("su", "scale-up"),
     PREPARE("p", "prepare"),
     LIST("l", "list"),
     VALIDATE("ch", "check"),
@@ -0,0 +1,78 @@
+package de.unibi.cebitec.bibigrid.core.model;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Resource limits of the project, tenant or account together with their current usage. Resources a provider
+ * does not report are not checked.
+ */
+public class Quotas {
+    public static final long UNLIMITED = -1;
+
+    public enum Resource {
+        INSTANCES("instances"),
+        CORES("cores"),
+        RAM("ram (MB)"),
+        FLOATING_IPS("floating ips");
+
+        private final String label;
+
+        Resource(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final Map<Resource, long[]> limits = new EnumMap<>(Resource.class);
+    private final Map<Resource, Long> unused = new EnumMap<>(Resource.class);
+
+    /**
+     * @param limit maximum of the resource or {@link #UNLIMITED}
+     * @param used  currently used amount of the resource
+     */
+    public Quotas set(Resource resource, long limit, long used) {
+        limits.put(resource, new long[]{limit, used});
+        return this;
+    }
+
+    /**
+     * @param amount part of the used amount, which is not in use by any server and can be reused by the cluster,
+     *               e.g. floating ips not associated with a server
+     */
+    public Quotas setUnused(Resource resource, long amount) {
+        unused.put(resource, amount);
+        return this;
+    }
+
+    /**
+     * @return true, if the provider reported a limit for the resource
+     */
+    public boolean has(Resource resource) {
+        return limits.containsKey(resource);
+    }
+
+    public long getLimit(Resource resource) {
+        return has(resource) ? limits.get(resource)[0] : UNLIMITED;
+    }
+
+    public long getUsed(Resource resource) {
+        return has(resource) ? limits.get(resource)[1] : 0;
+    }
+
+    public long getUnused(Resource resource) {
+        return unused.getOrDefault(resource, 0L);
+    }
+
+    /**
+     * @return amount of the resource still available, {@link Long#MAX_VALUE} if unlimited or unknown
+     */
+    public long getHeadroom(Resource resource) {
+        long limit = getLimit(resource);
+        return limit < 0 ? Long.MAX_VALUE : Math.max(0, limit - getUsed(resource));
+    }
+}
@@ -0,0 +1,90 @@
+package de.unibi.cebitec.bibigrid.core.model;
+
+import de.unibi.cebitec.bibigrid.core.model.exceptions.NotYetSupportedException;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Provider resources resolved by id or name during a run. The validation fills the context and the create
+ * intent reuses it, so every image, network, subnet, snapshot and server group is looked up once per run.
+ * <p/>
+ * Resolved resources are also stored under their id, since the validation replaces names in the
+ * configuration by ids. Resources that could not be found are remembered as well.
+ */
+public class ResourceContext {
+    private final Client client;
+    private final Lookup<InstanceImage> images = new Lookup<>(InstanceImage::getId);
+    private final Lookup<Network> networks = new Lookup<>(Network::getId);
+    private final Lookup<Subnet> subnets = new Lookup<>(Subnet::getId);
+    private final Lookup<Snapshot> snapshots = new Lookup<>(Snapshot::getId);
+    private final Lookup<ServerGroup> serverGroups = new Lookup<>(ServerGroup::getId);
+
+    @FunctionalInterface
+    private interface Resolver<T> {
+        T resolve(String idOrName) throws NotYetSupportedException;
+    }
+
+    private static final class Lookup<T> {
+        private final ConcurrentMap<String, Optional<T>> resolved = new ConcurrentHashMap<>();
+        private final Function<T, String> idFunction;
+
+        private Lookup(Function<T, String> idFunction) {
+            this.idFunction = idFunction;
+        }
+
+        private T get(String idOrName, Resolver<T> resolver) throws NotYetSupportedException {
+            Optional<T> cached = resolved.get(idOrName);
+            if (cached != null) {
+                return cached.orElse(null);
+            }
+            T resource = resolver.resolve(idOrName);
+            resolved.putIfAbsent(idOrName, Optional.ofNullable(resource));
+            if (resource != null) {
+                resolved.putIfAbsent(idFunction.apply(resource), Optional.of(resource));
+            }
+            return resource;
+        }
+    }
+
+    public ResourceContext(Client client) {
+        this.client = client;
+    }
+
+    /**
+     * @return image with the given id or name, null if it does not exist
+     */
+    public InstanceImage getImage(String idOrName) throws NotYetSupportedException {
+        return images.get(idOrName, client::getImageByIdOrName);
+    }
+
+    /**
+     * @return network with the given id or name, null if it does not exist
+     */
+    public Network getNetwork(String idOrName) throws NotYetSupportedException {
+        return networks.get(idOrName, client::getNetworkByIdOrName);
+    }
+
+    /**
+     * @return subnet with the given id or name, null if it does not exist
+     */
+    public Subnet getSubnet(String idOrName) throws NotYetSupportedException {
+        return subnets.get(idOrName, client::getSubnetByIdOrName);
+    }
+
+    /**
+     * @return snapshot or volume with the given id or name, null if it does not exist
+     */
+    public Snapshot getSnapshot(String idOrName) throws NotYetSupportedException {
+        return snapshots.get(idOrName, client::getSnapshotByIdOrName);
+    }
+
+    /**
+     * @return server group with the given id or name, null if it does not exist
+     */
+    public ServerGroup getServerGroup(String idOrName) throws NotYetSupportedException {
+        return serverGroups.get(idOrName, client::getServerGroupByIdOrName);
+    }
+}
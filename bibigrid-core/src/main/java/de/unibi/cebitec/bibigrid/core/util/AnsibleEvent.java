@@ -0,0 +1,182 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Typed event emitted by the BiBiGrid ansible stdout callback plugin (playbook/callback_plugins/bibigrid.py).
+ * The plugin writes one JSON object per line; {@link #parse(String)} turns such a line into an event.
+ */
+public final class AnsibleEvent {
+    public enum Type {
+        PLAY_START, TASK_START, TASK_END, HOST_RESULT, STATS
+    }
+
+    public enum Status {
+        OK, CHANGED, FAILED, SKIPPED, UNREACHABLE
+    }
+
+    private static final String[] STAT_KEYS = {"ok", "changed", "failures", "unreachable", "skipped", "rescued", "ignored"};
+
+    private final Type type;
+    private final double timestamp;
+    private String play;
+    private String task;
+    private String role;
+    private String host;
+    private Status status;
+    private double duration;
+    private String message;
+    private boolean ignored;
+    private boolean rescued;
+    private Map<String, Map<String, Integer>> stats = Collections.emptyMap();
+
+    private AnsibleEvent(Type type, double timestamp) {
+        this.type = type;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Parses a single line of ansible output.
+     *
+     * @param line line of stdout
+     * @return parsed event or null, if the line is not an event generated by the callback plugin
+     */
+    public static AnsibleEvent parse(String line) {
+        if (line == null) {
+            return null;
+        }
+        String trimmed = line.trim();
+        if (!trimmed.startsWith("{") || !trimmed.contains("\"event\"")) {
+            return null;
+        }
+        JSONObject json;
+        try {
+            Object parsed = new JSONParser().parse(trimmed);
+            if (!(parsed instanceof JSONObject)) {
+                return null;
+            }
+            json = (JSONObject) parsed;
+        } catch (ParseException e) {
+            return null;
+        }
+        Type type;
+        try {
+            type = Type.valueOf(String.valueOf(json.get("event")).toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        AnsibleEvent event = new AnsibleEvent(type, toDouble(json.get("ts")));
+        event.play = (String) json.get("play");
+        event.task = (String) json.get("task");
+        event.role = (String) json.get("role");
+        event.host = (String) json.get("host");
+        event.duration = toDouble(json.get("duration"));
+        event.message = (String) json.get("msg");
+        event.ignored = Boolean.TRUE.equals(json.get("ignored"));
+        event.rescued = Boolean.TRUE.equals(json.get("rescued"));
+        Object status = json.get("status");
+        if (status != null) {
+            try {
+                event.status = Status.valueOf(status.toString().toUpperCase(Locale.US));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        if (type == Type.STATS && json.get("hosts") instanceof JSONObject) {
+            event.stats = parseStats((JSONObject) json.get("hosts"));
+        }
+        return event;
+    }
+
+    private static Map<String, Map<String, Integer>> parseStats(JSONObject hosts) {
+        Map<String, Map<String, Integer>> result = new HashMap<>();
+        for (Object key : hosts.keySet()) {
+            Object value = hosts.get(key);
+            if (!(value instanceof JSONObject)) {
+                continue;
+            }
+            JSONObject summary = (JSONObject) value;
+            Map<String, Integer> counts = new HashMap<>();
+            for (String statKey : STAT_KEYS) {
+                Object count = summary.get(statKey);
+                counts.put(statKey, count instanceof Number ? ((Number) count).intValue() : 0);
+            }
+            result.put(String.valueOf(key), counts);
+        }
+        return result;
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0.0;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return unix timestamp (seconds) the event was emitted on the master
+     */
+    public double getTimestamp() {
+        return timestamp;
+    }
+
+    public String getPlay() {
+        return play;
+    }
+
+    public String getTask() {
+        return task;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return duration in seconds of a task (TASK_END) or of a task on a single host (HOST_RESULT)
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return true, if a failed task has been declared with 'ignore_errors'
+     */
+    public boolean isIgnored() {
+        return ignored;
+    }
+
+    /**
+     * @return true, if a failed task is part of a block with a 'rescue' section
+     */
+    public boolean isRescued() {
+        return rescued;
+    }
+
+    /**
+     * @return recap per host (ok, changed, failures, unreachable, skipped, rescued, ignored), only set for STATS
+     */
+    public Map<String, Map<String, Integer>> getStats() {
+        return stats;
+    }
+}
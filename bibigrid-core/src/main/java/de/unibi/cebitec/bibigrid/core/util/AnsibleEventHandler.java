@@ -0,0 +1,181 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * Evaluates the output of the ansible execution script line by line. Lines generated by the BiBiGrid
+ * callback plugin are handled as {@link AnsibleEvent}s, everything else (bootstrap output) is only logged
+ * in verbose mode.
+ */
+public class AnsibleEventHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(AnsibleEventHandler.class);
+    private static final String LOG_MESSAGE_PREFIX = "[BIBIGRID] ";
+    public static final String CONFIGURATION_FINISHED = "CONFIGURATION FINISHED";
+    public static final String CONFIGURATION_FAILED = "CONFIGURATION FAILED";
+
+    private final Map<String, List<String>> failures = new TreeMap<>();
+    private final Set<String> unreachableHosts = new TreeSet<>();
+    private final AnsibleProfile profile = new AnsibleProfile();
+    private Map<String, Map<String, Integer>> stats;
+    private String lastLogMessage;
+    private boolean finished;
+    private int events;
+
+    /**
+     * Handles a single line of ansible output.
+     *
+     * @param line line of output
+     */
+    public void handleLine(String line) {
+        AnsibleEvent event = AnsibleEvent.parse(line);
+        if (event != null) {
+            events++;
+            handleEvent(event);
+            return;
+        }
+        if (line.contains(CONFIGURATION_FINISHED)) {
+            finished = true;
+        } else if (line.contains(CONFIGURATION_FAILED)) {
+            finished = false;
+        }
+        LOG.info(V, "{}", line);
+    }
+
+    protected void handleEvent(AnsibleEvent event) {
+        profile.record(event);
+        switch (event.getType()) {
+            case PLAY_START:
+                LOG.info(V, "[Ansible] PLAY [{}]", event.getPlay());
+                break;
+            case TASK_START:
+                LOG.info(V, "[Ansible] TASK [{}]", taskName(event));
+                break;
+            case TASK_END:
+                LOG.info(V, "[Ansible] TASK [{}] finished in {}s", taskName(event),
+                        String.format(Locale.US, "%.1f", event.getDuration()));
+                break;
+            case HOST_RESULT:
+                handleHostResult(event);
+                break;
+            case STATS:
+                stats = event.getStats();
+                break;
+        }
+    }
+
+    private void handleHostResult(AnsibleEvent event) {
+        String message = event.getMessage();
+        if (event.getStatus() == null) {
+            LOG.info(V, "[Ansible] result without status: [{}] {}", event.getHost(), taskName(event));
+            return;
+        }
+        switch (event.getStatus()) {
+            case OK:
+            case CHANGED:
+                LOG.info(V, "[Ansible] {}: [{}]", event.getStatus().name().toLowerCase(Locale.US), event.getHost());
+                // show each "[BIBIGRID]" message only once, even if it is printed on every host
+                if (message != null && message.startsWith(LOG_MESSAGE_PREFIX) && !message.equals(lastLogMessage)) {
+                    lastLogMessage = message;
+                    LOG.info("[Ansible] {}", message.substring(LOG_MESSAGE_PREFIX.length()));
+                }
+                break;
+            case FAILED:
+                if (event.isIgnored()) {
+                    LOG.info(V, "[Ansible] failed: [{}] {} ... ignoring", event.getHost(), message);
+                } else if (event.isRescued()) {
+                    LOG.info(V, "[Ansible] failed: [{}] {} ... rescued", event.getHost(), message);
+                } else {
+                    LOG.error("[Ansible] failed: [{}] {} : {}", event.getHost(), taskName(event), message);
+                    failures.computeIfAbsent(event.getHost(), k -> new ArrayList<>())
+                            .add(taskName(event) + (message != null ? " : " + message : ""));
+                }
+                break;
+            case UNREACHABLE:
+                LOG.error("[Ansible] unreachable: [{}] {}", event.getHost(), message);
+                unreachableHosts.add(event.getHost());
+                break;
+            case SKIPPED:
+                LOG.info(V, "[Ansible] skipping: [{}]", event.getHost());
+                break;
+        }
+    }
+
+    private static String taskName(AnsibleEvent event) {
+        return event.getRole() != null ? event.getRole() + " : " + event.getTask() : event.getTask();
+    }
+
+    /**
+     * @return true, if the execution script reported success and ansible recap contains no failed or
+     * unreachable host.
+     */
+    public boolean isSuccessful() {
+        if (!finished || !failures.isEmpty() || !unreachableHosts.isEmpty()) {
+            return false;
+        }
+        if (stats != null) {
+            for (Map<String, Integer> hostStats : stats.values()) {
+                if (hostStats.get("failures") > 0 || hostStats.get("unreachable") > 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return failed (neither ignored nor rescued) tasks per host
+     */
+    public Map<String, List<String>> getFailures() {
+        return failures;
+    }
+
+    public Set<String> getUnreachableHosts() {
+        return unreachableHosts;
+    }
+
+    /**
+     * @return ansible recap per host or null, if the playbook has not finished
+     */
+    public Map<String, Map<String, Integer>> getStats() {
+        return stats;
+    }
+
+    /**
+     * @return task durations collected from the handled events
+     */
+    public AnsibleProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return number of events handled so far
+     */
+    public int getEventCount() {
+        return events;
+    }
+
+    /**
+     * Summary of failed and unreachable hosts, suitable as error message.
+     */
+    public String getFailureSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, List<String>> entry : failures.entrySet()) {
+            summary.append(entry.getKey()).append(":\n");
+            for (String failure : entry.getValue()) {
+                summary.append("  - ").append(failure).append("\n");
+            }
+        }
+        for (String host : unreachableHosts) {
+            summary.append(host).append(": unreachable\n");
+        }
+        if (summary.length() == 0 && !finished) {
+            summary.append("Ansible execution did not finish.\n");
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,214 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Collects the duration of each ansible task per host from the {@link AnsibleEvent} stream and
+ * aggregates them per task, role and host.
+ */
+public class AnsibleProfile {
+    private static final Logger LOG = LoggerFactory.getLogger(AnsibleProfile.class);
+    private static final String NO_ROLE = "-";
+
+    private final Map<String, TaskProfile> tasks = new LinkedHashMap<>();
+    private final Map<String, Double> hosts = new TreeMap<>();
+    private double firstTimestamp;
+    private double lastTimestamp;
+
+    /**
+     * Profile of a single task (identified by play, role and name) over all hosts.
+     */
+    public static final class TaskProfile {
+        private final String play;
+        private final String role;
+        private final String task;
+        private double duration;
+        private final Map<String, Double> hosts = new TreeMap<>();
+
+        private TaskProfile(String play, String role, String task) {
+            this.play = play;
+            this.role = role;
+            this.task = task;
+        }
+
+        public String getPlay() {
+            return play;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public String getTask() {
+            return task;
+        }
+
+        /**
+         * @return wall clock time of the task in seconds, summed up if the task is executed more than once
+         */
+        public double getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return duration of the task in seconds per host
+         */
+        public Map<String, Double> getHosts() {
+            return hosts;
+        }
+    }
+
+    public void record(AnsibleEvent event) {
+        if (event.getTimestamp() > 0) {
+            if (firstTimestamp == 0) {
+                firstTimestamp = event.getTimestamp();
+            }
+            lastTimestamp = Math.max(lastTimestamp, event.getTimestamp());
+        }
+        switch (event.getType()) {
+            case TASK_END:
+                getTaskProfile(event).duration += event.getDuration();
+                break;
+            case HOST_RESULT:
+                if (event.getStatus() != AnsibleEvent.Status.SKIPPED) {
+                    getTaskProfile(event).hosts.merge(event.getHost(), event.getDuration(), Double::sum);
+                    hosts.merge(event.getHost(), event.getDuration(), Double::sum);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private TaskProfile getTaskProfile(AnsibleEvent event) {
+        String role = event.getRole() != null ? event.getRole() : NO_ROLE;
+        String key = event.getPlay() + "|" + role + "|" + event.getTask();
+        return tasks.computeIfAbsent(key, k -> new TaskProfile(event.getPlay(), role, event.getTask()));
+    }
+
+    /**
+     * @return wall clock time between the first and the last event in seconds
+     */
+    public double getTotalDuration() {
+        return lastTimestamp - firstTimestamp;
+    }
+
+    public boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    /**
+     * @return all tasks sorted by duration, slowest first
+     */
+    public List<TaskProfile> getTasks() {
+        List<TaskProfile> result = new ArrayList<>(tasks.values());
+        result.sort(Comparator.comparingDouble(TaskProfile::getDuration).reversed());
+        return result;
+    }
+
+    /**
+     * @return summed up task durations per role, slowest first
+     */
+    public Map<String, Double> getRoles() {
+        Map<String, Double> roles = new HashMap<>();
+        for (TaskProfile task : tasks.values()) {
+            roles.merge(task.role, task.duration, Double::sum);
+        }
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(roles.entrySet());
+        entries.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return summed up task durations per host
+     */
+    public Map<String, Double> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Writes the profile as JSON report.
+     *
+     * @param clusterId id of the profiled cluster
+     * @param path report file, parent directories are created if necessary
+     */
+    public void writeReport(String clusterId, Path path) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("clusterId", clusterId);
+        report.put("created", Instant.now().toString());
+        report.put("totalDuration", round(getTotalDuration()));
+        Map<String, Object> roles = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : getRoles().entrySet()) {
+            roles.put(entry.getKey(), round(entry.getValue()));
+        }
+        report.put("roles", roles);
+        List<Object> taskList = new ArrayList<>();
+        for (TaskProfile task : getTasks()) {
+            Map<String, Object> taskMap = new LinkedHashMap<>();
+            taskMap.put("play", task.play);
+            taskMap.put("role", task.role);
+            taskMap.put("task", task.task);
+            taskMap.put("duration", round(task.duration));
+            Map<String, Object> taskHosts = new LinkedHashMap<>();
+            for (Map.Entry<String, Double> entry : task.hosts.entrySet()) {
+                taskHosts.put(entry.getKey(), round(entry.getValue()));
+            }
+            taskMap.put("hosts", taskHosts);
+            taskList.add(taskMap);
+        }
+        report.put("tasks", taskList);
+        Map<String, Object> hostMap = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : hosts.entrySet()) {
+            hostMap.put(entry.getKey(), round(entry.getValue()));
+        }
+        report.put("hosts", hostMap);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            JSONValue.writeJSONString(report, writer);
+        }
+    }
+
+    /**
+     * Logs the n slowest tasks and the time spent per role.
+     *
+     * @param n number of tasks to show
+     */
+    public void logSummary(int n) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        StringBuilder display = new StringBuilder();
+        Formatter formatter = new Formatter(display, Locale.US);
+        display.append("\nAnsible profile (total ").append(String.format(Locale.US, "%.1f", getTotalDuration()))
+                .append("s), ").append(Math.min(n, tasks.size())).append(" slowest tasks:\n\n");
+        String lineFormat = "%10s | %-16s | %-60s%n";
+        formatter.format(lineFormat, "duration", "role", "task");
+        display.append(new String(new char[92]).replace('\0', '-')).append("\n");
+        for (TaskProfile task : getTasks().subList(0, Math.min(n, tasks.size()))) {
+            formatter.format(lineFormat, String.format(Locale.US, "%.1fs", task.duration), task.role, task.task);
+        }
+        display.append("\nTime spent per role:\n\n");
+        for (Map.Entry<String, Double> entry : getRoles().entrySet()) {
+            formatter.format("%10s | %s%n", String.format(Locale.US, "%.1fs", entry.getValue()), entry.getKey());
+        }
+        LOG.info(display.toString());
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
@@ -19,16 +19,25 @@ public final class AnsibleResources {
     public static final String ROOT_PATH = "playbook/";
     public static final String ANSIBLE_HOSTS = "ansible_hosts";
     public static final String VARS_PATH = "vars/";
+    public static final String GROUP_VARS_PATH = "group_vars/";
     public static final String ROLES_PATH = "roles/";
     public static final String COMMON_YML = VARS_PATH + "common.yml";
     public static final String SITE_YML = "site.yml";
+    public static final String ANSIBLE_CFG = "ansible.cfg";
     public static final String REQUIREMENTS_YML = "requirements.yml";
     public static final String HOSTS_CONFIG_FILE = ROOT_PATH + ANSIBLE_HOSTS;
     public static final String CONFIG_ROOT_PATH = ROOT_PATH + VARS_PATH;
     public static final String ROLES_ROOT_PATH = ROOT_PATH + ROLES_PATH;
     public static final String COMMONS_CONFIG_FILE = ROOT_PATH + COMMON_YML;
     public static final String SITE_CONFIG_FILE = ROOT_PATH + SITE_YML;
+    public static final String ANSIBLE_CFG_FILE = ROOT_PATH + ANSIBLE_CFG;
+    public static final String WORKER_VARS_ARCHIVE = ROOT_PATH + "workers.tar.gz";
     public static final String REQUIREMENTS_CONFIG_FILE = ROOT_PATH + REQUIREMENTS_YML;
+    public static final String CALLBACK_PLUGINS_PATH = ROOT_PATH + "callback_plugins";
+    public static final String CALLBACK_PLUGIN = "bibigrid";
+    public static final String BOOTSTRAP_PATH = "/tmp/bibigrid/";
+    public static final String BOOTSTRAP_BUNDLE = BOOTSTRAP_PATH + "ansible-bundle.tar.gz";
+    public static final String BOOTSTRAP_MARKER = "/etc/bibigrid/ansible-bootstrap";
     private final List<String> files = new ArrayList<>();
 
     public AnsibleResources() {
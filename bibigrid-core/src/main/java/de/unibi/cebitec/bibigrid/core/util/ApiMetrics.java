@@ -0,0 +1,337 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Counts the cloud api calls of a run per operation (e.g. "compute.servers.boot") together with a latency
+ * histogram, retries and error codes. All counters are lock-free, so provider code may record calls from
+ * any number of threads without contention.
+ * <p/>
+ * Error codes are derived from exceptions by an error classifier, which providers replace to map their
+ * sdk exceptions to http status codes.
+ */
+public final class ApiMetrics {
+    /**
+     * Upper bounds of the latency histogram buckets in milliseconds, a last bucket catches the rest.
+     */
+    static final long[] BUCKET_BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    private static final ApiMetrics INSTANCE = new ApiMetrics();
+
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private volatile Function<Throwable, String> errorClassifier = e -> e.getClass().getSimpleName();
+
+    /**
+     * Cloud api call, e.g. a request of the provider sdk.
+     */
+    @FunctionalInterface
+    public interface ApiCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Counters of a single api operation.
+     */
+    public static final class Operation {
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+        private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        private void record(long nanos) {
+            calls.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            long millis = nanos / 1_000_000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        /**
+         * @return number of failed calls over all error codes
+         */
+        public long getErrors() {
+            long sum = 0;
+            for (LongAdder count : errors.values()) {
+                sum += count.sum();
+            }
+            return sum;
+        }
+
+        /**
+         * @return number of failed calls per error code
+         */
+        public Map<String, Long> getErrorCodes() {
+            Map<String, Long> result = new TreeMap<>();
+            for (Map.Entry<String, LongAdder> entry : errors.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().sum());
+            }
+            return result;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos.sum() / 1e6;
+        }
+
+        public double getMeanMillis() {
+            long count = getCalls();
+            return count > 0 ? getTotalMillis() / count : 0;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * @return number of calls per histogram bucket, see {@link #BUCKET_BOUNDS}
+         */
+        public long[] getBucketCounts() {
+            long[] result = new long[buckets.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = buckets.get(i);
+            }
+            return result;
+        }
+
+        /**
+         * Estimates a latency percentile by the upper bound of the bucket containing it.
+         *
+         * @param quantile between 0 and 1
+         * @return latency in ms, the maximum latency if the percentile falls into the last bucket
+         */
+        public double getPercentileMillis(double quantile) {
+            long[] counts = getBucketCounts();
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS[i], getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+    }
+
+    private ApiMetrics() {
+    }
+
+    public static ApiMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replaces the function deriving error codes from exceptions of failed calls.
+     */
+    public void setErrorClassifier(Function<Throwable, String> errorClassifier) {
+        this.errorClassifier = errorClassifier;
+    }
+
+    /**
+     * Runs and measures an api call. Exceptions are counted by their error code and rethrown.
+     *
+     * @param operation name of the operation, e.g. "compute.servers.list"
+     * @return result of the call
+     */
+    public <T, E extends Exception> T call(String operation, ApiCall<T, E> call) throws E {
+        long start = System.nanoTime();
+        try (FlightRecording.Scope event = FlightRecording.apiCall(operation)) {
+            try {
+                T result = call.call();
+                record(operation, System.nanoTime() - start);
+                return result;
+            } catch (Exception | Error e) {
+                record(operation, System.nanoTime() - start);
+                String errorCode = errorClassifier.apply(e);
+                recordError(operation, errorCode);
+                event.setError(errorCode);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Records a call measured by the caller.
+     *
+     * @param nanos latency of the call
+     */
+    public void record(String operation, long nanos) {
+        getOrCreate(operation).record(nanos);
+    }
+
+    /**
+     * Records a failed call, e.g. an unsuccessful response that has not been thrown as exception.
+     */
+    public void recordError(String operation, String errorCode) {
+        getOrCreate(operation).errors.computeIfAbsent(errorCode, k -> new LongAdder()).increment();
+    }
+
+    public void recordRetry(String operation) {
+        getOrCreate(operation).retries.increment();
+    }
+
+    private Operation getOrCreate(String operation) {
+        Operation result = operations.get(operation);
+        return result != null ? result : operations.computeIfAbsent(operation, Operation::new);
+    }
+
+    /**
+     * @return operation with the given name or null, if it has not been called yet
+     */
+    public Operation getOperation(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * @return all operations called so far ordered by name
+     */
+    public List<Operation> getOperations() {
+        List<Operation> result = new ArrayList<>(operations.values());
+        result.sort(Comparator.comparing(Operation::getName));
+        return result;
+    }
+
+    /**
+     * @return number of calls over all operations
+     */
+    public long getTotalCalls() {
+        long sum = 0;
+        for (Operation operation : operations.values()) {
+            sum += operation.getCalls();
+        }
+        return sum;
+    }
+
+    public void clear() {
+        operations.clear();
+    }
+
+    /**
+     * @return table of calls, errors, retries and latencies per operation or an empty string,
+     * if no call has been recorded
+     */
+    public String getSummary() {
+        List<Operation> list = getOperations();
+        if (list.isEmpty()) {
+            return "";
+        }
+        StringBuilder display = new StringBuilder();
+        Formatter formatter = new Formatter(display, Locale.US);
+        display.append("\nCloud api calls (total ").append(getTotalCalls()).append("):\n\n");
+        String lineFormat = "%-36s | %6s | %6s | %7s | %9s | %9s | %9s | %s%n";
+        formatter.format(lineFormat, "operation", "calls", "errors", "retries", "mean", "p95", "max", "error codes");
+        display.append(new String(new char[120]).replace('\0', '-')).append("\n");
+        for (Operation operation : list) {
+            StringJoiner codes = new StringJoiner(", ");
+            for (Map.Entry<String, Long> entry : operation.getErrorCodes().entrySet()) {
+                codes.add(entry.getKey() + " x" + entry.getValue());
+            }
+            formatter.format(lineFormat, operation.getName(), operation.getCalls(), operation.getErrors(),
+                    operation.getRetries(), formatMillis(operation.getMeanMillis()),
+                    formatMillis(operation.getPercentileMillis(0.95)), formatMillis(operation.getMaxMillis()),
+                    codes.toString());
+        }
+        return display.toString();
+    }
+
+    private static String formatMillis(double millis) {
+        return String.format(Locale.US, "%.1fms", millis);
+    }
+
+    /**
+     * Writes all counters in the Prometheus text exposition format.
+     */
+    public void writePrometheus(Writer writer) throws IOException {
+        List<Operation> list = getOperations();
+        writer.write("# HELP bibigrid_api_calls_total Cloud api calls per operation.\n");
+        writer.write("# TYPE bibigrid_api_calls_total counter\n");
+        for (Operation operation : list) {
+            writer.write("bibigrid_api_calls_total{operation=\"" + escape(operation.getName()) + "\"} " +
+                    operation.getCalls() + "\n");
+        }
+        writer.write("# HELP bibigrid_api_errors_total Failed cloud api calls per operation and error code.\n");
+        writer.write("# TYPE bibigrid_api_errors_total counter\n");
+        for (Operation operation : list) {
+            for (Map.Entry<String, Long> entry : operation.getErrorCodes().entrySet()) {
+                writer.write("bibigrid_api_errors_total{operation=\"" + escape(operation.getName()) + "\",code=\"" +
+                        escape(entry.getKey()) + "\"} " + entry.getValue() + "\n");
+            }
+        }
+        writer.write("# HELP bibigrid_api_retries_total Retried cloud api calls per operation.\n");
+        writer.write("# TYPE bibigrid_api_retries_total counter\n");
+        for (Operation operation : list) {
+            writer.write("bibigrid_api_retries_total{operation=\"" + escape(operation.getName()) + "\"} " +
+                    operation.getRetries() + "\n");
+        }
+        writer.write("# HELP bibigrid_api_latency_seconds Latency of cloud api calls per operation.\n");
+        writer.write("# TYPE bibigrid_api_latency_seconds histogram\n");
+        for (Operation operation : list) {
+            String label = "operation=\"" + escape(operation.getName()) + "\"";
+            long[] counts = operation.getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String bound = i < BUCKET_BOUNDS.length ?
+                        String.format(Locale.US, "%.3f", BUCKET_BOUNDS[i] / 1000.0) : "+Inf";
+                writer.write("bibigrid_api_latency_seconds_bucket{" + label + ",le=\"" + bound + "\"} " +
+                        cumulative + "\n");
+            }
+            writer.write("bibigrid_api_latency_seconds_sum{" + label + "} " +
+                    String.format(Locale.US, "%.6f", operation.getTotalMillis() / 1000.0) + "\n");
+            writer.write("bibigrid_api_latency_seconds_count{" + label + "} " + cumulative + "\n");
+        }
+    }
+
+    /**
+     * Writes all counters in the Prometheus text exposition format to the given file.
+     */
+    public void writePrometheus(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writePrometheus(writer);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
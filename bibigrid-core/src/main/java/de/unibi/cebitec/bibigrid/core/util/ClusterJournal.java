@@ -0,0 +1,246 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only journal of the completed steps of a cluster setup, stored as
+ * CONFIG_DIR/clusters/&lt;cluster-id&gt;/journal. A setup failed or interrupted halfway is resumed from the
+ * first step missing in the journal. The system property {@value #CLUSTERS_DIR_PROPERTY} overrides the
+ * clusters directory, e.g. for tests.
+ * <p/>
+ * Every line holds the time, the step and its values separated by spaces, e.g.
+ * "2020-05-04T10:15:30Z WORKER 0 7a3c...". Steps are journaled after they have been completed, so lines
+ * partly written by an interrupted run are ignored.
+ */
+public final class ClusterJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterJournal.class);
+    private static final String FILE_NAME = "journal";
+    private static final String NO_VALUE = "-";
+    public static final String CLUSTERS_DIR_PROPERTY = "bibigrid.clusters.dir";
+
+    public enum Step {
+        /**
+         * Network, subnet, security group and keypair have been created. Values are network and subnet id.
+         */
+        ENVIRONMENT,
+        /**
+         * Master instance is running. Value is the instance id.
+         */
+        MASTER,
+        /**
+         * Worker instance is running. Values are batch index and instance id.
+         */
+        WORKER,
+        /**
+         * All workers of a batch have been launched. Values are batch index and number of workers.
+         */
+        BATCH,
+        /**
+         * Ansible playbook and configuration have been uploaded to master.
+         */
+        UPLOAD,
+        /**
+         * Ansible has been installed on master.
+         */
+        ANSIBLE_BOOTSTRAP,
+        /**
+         * Ansible playbook has been run successfully, the setup is complete.
+         */
+        ANSIBLE_PLAYBOOK
+    }
+
+    private final Path file;
+    private final List<String[]> entries = new ArrayList<>();
+
+    ClusterJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return directory holding the journal of the cluster
+     */
+    public static Path getDirectory(String clusterId) {
+        String clustersDir = System.getProperty(CLUSTERS_DIR_PROPERTY);
+        if (clustersDir != null) {
+            return Paths.get(clustersDir, clusterId);
+        }
+        return Paths.get(Configuration.CONFIG_DIR, "clusters", clusterId);
+    }
+
+    /**
+     * @return empty journal of a new cluster, the file is written with the first step
+     */
+    public static ClusterJournal create(String clusterId) {
+        return new ClusterJournal(getDirectory(clusterId).resolve(FILE_NAME));
+    }
+
+    /**
+     * Loads the journal of an existing cluster.
+     *
+     * @throws IOException if the journal does not exist or can't be read
+     */
+    public static ClusterJournal load(String clusterId) throws IOException {
+        return load(getDirectory(clusterId).resolve(FILE_NAME));
+    }
+
+    static ClusterJournal load(Path file) throws IOException {
+        ClusterJournal journal = new ClusterJournal(file);
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] parts = line.trim().split(" ");
+            if (parts.length < 2 || !isStep(parts[1])) {
+                LOG.warn("Ignoring incomplete journal entry '{}'.", line);
+                continue;
+            }
+            journal.entries.add(Arrays.copyOfRange(parts, 1, parts.length));
+        }
+        return journal;
+    }
+
+    private static boolean isStep(String name) {
+        for (Step step : Step.values()) {
+            if (step.name().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the journal of a terminated cluster.
+     */
+    public static void delete(String clusterId) {
+        Path directory = getDirectory(clusterId);
+        try {
+            Files.deleteIfExists(directory.resolve(FILE_NAME));
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete journal of cluster '{}': {}", clusterId, e.getMessage());
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Journals a completed step. A failed write is logged, but does not affect the cluster setup.
+     *
+     * @param values ids and indices describing the step, null values are journaled as missing
+     */
+    public synchronized void record(Step step, Object... values) {
+        String[] entry = new String[values.length + 1];
+        entry[0] = step.name();
+        for (int i = 0; i < values.length; i++) {
+            entry[i + 1] = values[i] != null ? values[i].toString() : NO_VALUE;
+        }
+        entries.add(entry);
+        try {
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(Instant.now() + " " + String.join(" ", entry));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to write journal '{}': {}", file, e.getMessage());
+        }
+    }
+
+    public synchronized boolean contains(Step step) {
+        return getLast(step) != null;
+    }
+
+    /**
+     * @param index position of the value journaled with the step
+     * @return value of the last entry of the step or null, if the step or value is missing
+     */
+    public synchronized String get(Step step, int index) {
+        String[] entry = getLast(step);
+        if (entry == null || index + 1 >= entry.length || NO_VALUE.equals(entry[index + 1])) {
+            return null;
+        }
+        return entry[index + 1];
+    }
+
+    private String[] getLast(Step step) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i)[0].equals(step.name())) {
+                return entries.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true, if all workers of the batch have been launched
+     */
+    public synchronized boolean isBatchLaunched(int batchIndex) {
+        String index = String.valueOf(batchIndex);
+        for (String[] entry : entries) {
+            if (entry[0].equals(Step.BATCH.name()) && entry.length > 1 && entry[1].equals(index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A batch is journaled again with its total size after it has been scaled up.
+     *
+     * @return instance ids of the workers journaled with the last completed launch of the batch
+     */
+    public synchronized List<String> getWorkers(int batchIndex) {
+        String index = String.valueOf(batchIndex);
+        List<String> workers = new ArrayList<>();
+        List<String> launched = new ArrayList<>();
+        for (String[] entry : entries) {
+            if (entry.length < 3 || !entry[1].equals(index)) {
+                continue;
+            }
+            if (entry[0].equals(Step.WORKER.name())) {
+                workers.add(entry[2]);
+            } else if (entry[0].equals(Step.BATCH.name())) {
+                // workers journaled by an interrupted launch of the batch precede the ones of the completed launch
+                int count = Integer.parseInt(entry[2]);
+                launched = new ArrayList<>(workers.subList(Math.max(0, workers.size() - count), workers.size()));
+            }
+        }
+        return launched;
+    }
+
+    /**
+     * @return instance ids of the journaled master and the workers of all completed batches
+     */
+    public synchronized List<String> getInstances() {
+        List<String> instances = new ArrayList<>();
+        if (get(Step.MASTER, 0) != null) {
+            instances.add(get(Step.MASTER, 0));
+        }
+        Set<Integer> batches = new LinkedHashSet<>();
+        for (String[] entry : entries) {
+            if (entry[0].equals(Step.BATCH.name()) && entry.length > 1) {
+                batches.add(Integer.parseInt(entry[1]));
+            }
+        }
+        for (int batchIndex : batches) {
+            instances.addAll(getWorkers(batchIndex));
+        }
+        return instances;
+    }
+}
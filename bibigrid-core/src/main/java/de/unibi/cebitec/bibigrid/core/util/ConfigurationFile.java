@@ -5,11 +5,9 @@ import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
 import org.apache.commons.cli.CommandLine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -50,9 +48,9 @@ public final class ConfigurationFile {
             LOG.info(V, "Reading options from properties file at '{}'.", propertiesFilePath);
             try {
                 // In order to load the yaml file directly into the provider Configuration we have to peek the mode
-                Map<String, String> yamlMap = new Yaml().load(new FileInputStream(propertiesFilePath.toFile()));
+                Map<String, String> yamlMap = YamlSupport.load(propertiesFilePath);
                 propertiesMode = yamlMap.getOrDefault("mode", null);
-            } catch (FileNotFoundException e) {
+            } catch (IOException e) {
                 LOG.error("Failed to load mode parameter from properties file.");
             }
         } else {
@@ -77,8 +75,8 @@ public final class ConfigurationFile {
             throws ConfigurationException {
         if (Files.exists(propertiesFilePath)) {
             try {
-                return new Yaml().loadAs(new FileInputStream(propertiesFilePath.toFile()), configurationClass);
-            } catch (FileNotFoundException e) {
+                return YamlSupport.load(propertiesFilePath, configurationClass);
+            } catch (IOException e) {
                 throw new ConfigurationException("Failed to load properties file.", e);
             } catch (YAMLException e) {
                 throw new ConfigurationException("Failed to parse configuration file. "+e.getMessage(), e);
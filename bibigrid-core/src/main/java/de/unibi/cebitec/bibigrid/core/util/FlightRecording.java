@@ -0,0 +1,134 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * Java Flight Recorder support. Cloud api calls, ssh exec channels, sftp uploads and provisioning phases are
+ * emitted as custom events, so a slow cluster setup can be correlated with gc, thread states and network io
+ * of the bibigrid jvm.
+ * <p/>
+ * The jdk.jfr api is only touched if the running jvm provides it (Java 11+ or 8u262+), otherwise recording
+ * is unavailable and all events are no-ops. Events are cheap to create if no recording is running.
+ */
+public final class FlightRecording {
+    private static final Logger LOG = LoggerFactory.getLogger(FlightRecording.class);
+    private static final boolean AVAILABLE = isJfrAvailable();
+
+    private static Object recording;
+
+    /**
+     * Duration event in progress, committed by {@link #close()}.
+     */
+    public static class Scope implements AutoCloseable {
+        public static final Scope NOOP = new Scope();
+
+        Scope() {
+        }
+
+        /**
+         * Marks the call as failed.
+         */
+        public void setError(String errorCode) {
+        }
+
+        /**
+         * Sets the number of transferred bytes.
+         */
+        public void setBytes(long bytes) {
+        }
+
+        public void setExitStatus(int exitStatus) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private FlightRecording() {
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return jdk.jfr.FlightRecorder.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    public static Scope apiCall(String operation) {
+        return AVAILABLE ? JfrEvents.apiCall(operation) : Scope.NOOP;
+    }
+
+    public static Scope phase(String name, String category) {
+        return AVAILABLE ? JfrEvents.phase(name, category) : Scope.NOOP;
+    }
+
+    public static Scope sshExec(String host, String command) {
+        return AVAILABLE ? JfrEvents.sshExec(host, command) : Scope.NOOP;
+    }
+
+    public static Scope sftpUpload(String host, String path) {
+        return AVAILABLE ? JfrEvents.sftpUpload(host, path) : Scope.NOOP;
+    }
+
+    /**
+     * Starts a recording with the jdk "profile" settings and all bibigrid events enabled.
+     *
+     * @return false, if flight recording is not supported by the running jvm or failed to start
+     */
+    public static synchronized boolean start() {
+        if (!AVAILABLE) {
+            LOG.warn("Java Flight Recorder is not available in this JVM. Recording disabled.");
+            return false;
+        }
+        if (recording != null) {
+            return true;
+        }
+        try {
+            recording = JfrEvents.startRecording();
+            LOG.info(V, "Flight recording started.");
+            return true;
+        } catch (Exception e) {
+            LOG.warn("Failed to start flight recording: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    public static synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Writes the events recorded so far to the given file. The recording continues.
+     */
+    public static synchronized void dump(Path path) throws IOException {
+        if (recording == null) {
+            return;
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        JfrEvents.dump(recording, path);
+    }
+
+    /**
+     * Stops and discards the recording.
+     */
+    public static synchronized void stop() {
+        if (recording != null) {
+            JfrEvents.stop(recording);
+            recording = null;
+        }
+    }
+}
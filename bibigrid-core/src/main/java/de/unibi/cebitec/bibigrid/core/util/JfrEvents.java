@@ -0,0 +1,173 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import jdk.jfr.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * Custom flight recorder events. Only loaded by {@link FlightRecording} if the jdk.jfr api is available.
+ */
+final class JfrEvents {
+    private static final String CATEGORY = "BiBiGrid";
+    private static final int MAX_COMMAND_LENGTH = 256;
+
+    @Name("de.unibi.cebitec.bibigrid.ApiCall")
+    @Label("Cloud API Call")
+    @Category({CATEGORY, "Cloud API"})
+    @StackTrace(false)
+    static class ApiCallEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Error Code")
+        String errorCode;
+    }
+
+    @Name("de.unibi.cebitec.bibigrid.Phase")
+    @Label("Provisioning Phase")
+    @Category({CATEGORY, "Provisioning"})
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Category")
+        String category;
+    }
+
+    @Name("de.unibi.cebitec.bibigrid.SshExec")
+    @Label("SSH Exec Channel")
+    @Category({CATEGORY, "SSH"})
+    @StackTrace(false)
+    static class SshExecEvent extends Event {
+        @Label("Host")
+        String host;
+
+        @Label("Command")
+        String command;
+
+        @Label("Exit Status")
+        int exitStatus;
+    }
+
+    @Name("de.unibi.cebitec.bibigrid.SftpUpload")
+    @Label("SFTP Upload")
+    @Category({CATEGORY, "SSH"})
+    @StackTrace(false)
+    static class SftpUploadEvent extends Event {
+        @Label("Host")
+        String host;
+
+        @Label("Path")
+        String path;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    private JfrEvents() {
+    }
+
+    static FlightRecording.Scope apiCall(String operation) {
+        ApiCallEvent event = new ApiCallEvent();
+        if (!event.isEnabled()) {
+            return FlightRecording.Scope.NOOP;
+        }
+        event.operation = operation;
+        event.begin();
+        return new FlightRecording.Scope() {
+            @Override
+            public void setError(String errorCode) {
+                event.errorCode = errorCode;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    static FlightRecording.Scope phase(String name, String category) {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return FlightRecording.Scope.NOOP;
+        }
+        event.name = name;
+        event.category = category;
+        event.begin();
+        return new FlightRecording.Scope() {
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    static FlightRecording.Scope sshExec(String host, String command) {
+        SshExecEvent event = new SshExecEvent();
+        if (!event.isEnabled()) {
+            return FlightRecording.Scope.NOOP;
+        }
+        event.host = host;
+        event.command = command.length() > MAX_COMMAND_LENGTH ?
+                command.substring(0, MAX_COMMAND_LENGTH) + "..." : command;
+        event.exitStatus = -1;
+        event.begin();
+        return new FlightRecording.Scope() {
+            @Override
+            public void setExitStatus(int exitStatus) {
+                event.exitStatus = exitStatus;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    static FlightRecording.Scope sftpUpload(String host, String path) {
+        SftpUploadEvent event = new SftpUploadEvent();
+        if (!event.isEnabled()) {
+            return FlightRecording.Scope.NOOP;
+        }
+        event.host = host;
+        event.path = path;
+        event.begin();
+        return new FlightRecording.Scope() {
+            @Override
+            public void setBytes(long bytes) {
+                event.bytes = bytes;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    static Object startRecording() throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("profile"));
+        recording.setName("bibigrid");
+        for (Class<? extends Event> type : Arrays.asList(ApiCallEvent.class, PhaseEvent.class,
+                SshExecEvent.class, SftpUploadEvent.class)) {
+            recording.enable(type).withoutStackTrace();
+        }
+        recording.start();
+        return recording;
+    }
+
+    static void dump(Object recording, Path path) throws IOException {
+        ((Recording) recording).dump(path);
+    }
+
+    static void stop(Object recording) {
+        ((Recording) recording).close();
+    }
+}
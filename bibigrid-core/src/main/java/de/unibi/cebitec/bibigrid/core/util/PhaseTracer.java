@@ -0,0 +1,202 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.json.simple.JSONValue;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records the provisioning phases of a run as nested spans and writes them in the Chrome trace event format,
+ * which can be opened with chrome://tracing, Perfetto or Speedscope. Spans of the same thread nest by their
+ * timestamps, spans recorded by other threads (e.g. instance boot times) show up on separate tracks.
+ */
+public final class PhaseTracer {
+    public static final String CATEGORY_PHASE = "phase";
+    public static final String CATEGORY_INSTANCE = "instance";
+    private static final PhaseTracer INSTANCE = new PhaseTracer();
+
+    private final long originNanos = System.nanoTime();
+    private final Instant origin = Instant.now();
+    private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Call of a traced phase.
+     */
+    @FunctionalInterface
+    public interface Phase<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Span of a phase, finished by {@link #close()}.
+     */
+    public final class Span implements AutoCloseable {
+        private final String name;
+        private final String category;
+        private final long startNanos;
+        private long endNanos;
+        private final long threadId;
+        private final String threadName;
+        private final Map<String, Object> args = new LinkedHashMap<>();
+        private FlightRecording.Scope event = FlightRecording.Scope.NOOP;
+
+        private Span(String name, String category, long startNanos) {
+            this.name = name;
+            this.category = category;
+            this.startNanos = startNanos;
+            Thread thread = Thread.currentThread();
+            threadId = thread.getId();
+            threadName = thread.getName();
+        }
+
+        /**
+         * Adds an argument shown with the span.
+         */
+        public Span arg(String key, Object value) {
+            args.put(key, value);
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * @return duration in nanoseconds or -1, if the span has not been finished yet
+         */
+        public long getDuration() {
+            return endNanos != 0 ? endNanos - startNanos : -1;
+        }
+
+        public Map<String, Object> getArgs() {
+            return args;
+        }
+
+        private void finish(long endNanos) {
+            if (this.endNanos == 0) {
+                this.endNanos = endNanos;
+                spans.add(this);
+                event.close();
+            }
+        }
+
+        @Override
+        public void close() {
+            finish(System.nanoTime());
+        }
+    }
+
+    private PhaseTracer() {
+    }
+
+    public static PhaseTracer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts a span of the current thread, to be finished by {@link Span#close()}.
+     */
+    public Span start(String name) {
+        return start(name, CATEGORY_PHASE);
+    }
+
+    public Span start(String name, String category) {
+        Span span = new Span(name, category, System.nanoTime());
+        span.event = FlightRecording.phase(name, category);
+        return span;
+    }
+
+    /**
+     * Runs the given phase inside a span.
+     *
+     * @return result of the phase
+     */
+    public <T, E extends Exception> T trace(String name, Phase<T, E> phase) throws E {
+        try (Span ignored = start(name)) {
+            return phase.call();
+        }
+    }
+
+    /**
+     * Records a finished span measured by the caller, e.g. the boot time of an instance.
+     *
+     * @param startNanos start as returned by {@link System#nanoTime()}
+     * @param endNanos end as returned by {@link System#nanoTime()}
+     */
+    public Span record(String name, String category, long startNanos, long endNanos) {
+        Span span = new Span(name, category, startNanos);
+        span.finish(Math.max(startNanos + 1, endNanos));
+        return span;
+    }
+
+    /**
+     * @return finished spans in order of completion
+     */
+    public List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    public void clear() {
+        spans.clear();
+    }
+
+    /**
+     * Writes all finished spans as Chrome trace event file.
+     *
+     * @param clusterId cluster the run belongs to
+     * @param path trace file
+     */
+    public void writeTrace(String clusterId, Path path) throws IOException {
+        List<Object> events = new ArrayList<>();
+        Map<Long, String> threads = new TreeMap<>();
+        for (Span span : spans) {
+            threads.putIfAbsent(span.threadId, span.threadName);
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("name", span.name);
+            event.put("cat", span.category);
+            event.put("ph", "X");
+            event.put("ts", toMicros(span.startNanos - originNanos));
+            event.put("dur", toMicros(span.endNanos - span.startNanos));
+            event.put("pid", 1);
+            event.put("tid", span.threadId);
+            if (!span.args.isEmpty()) {
+                event.put("args", span.args);
+            }
+            events.add(event);
+        }
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("name", "thread_name");
+            event.put("ph", "M");
+            event.put("pid", 1);
+            event.put("tid", thread.getKey());
+            event.put("args", Collections.singletonMap("name", thread.getValue()));
+            events.add(event);
+        }
+        Map<String, Object> otherData = new LinkedHashMap<>();
+        otherData.put("clusterId", clusterId);
+        otherData.put("started", origin.toString());
+        Map<String, Object> trace = new LinkedHashMap<>();
+        trace.put("traceEvents", events);
+        trace.put("displayTimeUnit", "ms");
+        trace.put("otherData", otherData);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            JSONValue.writeJSONString(trace, writer);
+        }
+    }
+
+    private static double toMicros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+}
@@ -0,0 +1,234 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * Client side limit of the cloud api request rate with token buckets per endpoint.
+ * <p/>
+ * Budgets are configured per operation prefix, e.g. "compute" covers all compute operations and
+ * "compute.servers.boot" only the boot requests. An operation takes a token from the bucket of the longest
+ * matching prefix, the budget "default" applies to operations without a matching prefix. Operations without
+ * any budget are not limited.
+ * <p/>
+ * Requests throttled by the cloud (e.g. HTTP 429) pause the whole bucket for the delay the server requested with
+ * Retry-After, so concurrent requests to the same endpoint back off as well. The limiter does not repeat the
+ * request itself, the {@link RetryPolicy} of the provider does, so the number of attempts has a single bound.
+ * Identical reads in flight at the same time are sent once and share the response.
+ */
+public final class RateLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(RateLimiter.class);
+    private static final RateLimiter INSTANCE = new RateLimiter();
+    /**
+     * Returned by the throttle classifier for exceptions, that are no throttling of the request.
+     */
+    public static final long NOT_THROTTLED = -1;
+    public static final String DEFAULT_BUDGET = "default";
+    /**
+     * Pause of a bucket after a request has been throttled without a Retry-After delay.
+     */
+    static final long THROTTLE_PAUSE_MILLIS = 500;
+
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlightReads = new ConcurrentHashMap<>();
+    private final LongAdder coalescedReads = new LongAdder();
+    private volatile Map<String, Double> budgets = new HashMap<>();
+    private volatile ToLongFunction<Throwable> throttleClassifier = e -> NOT_THROTTLED;
+
+    /**
+     * Token bucket holding up to one second worth of requests. Tokens are reserved ahead, so waiting
+     * requests are served in the order they arrived.
+     */
+    static final class Bucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private long pausedUntil = refilledAt;
+
+        Bucket(double requestsPerSecond) {
+            tokensPerNano = requestsPerSecond / 1e9;
+            capacity = Math.max(1, requestsPerSecond);
+            tokens = capacity;
+        }
+
+        /**
+         * @return nanoseconds the caller has to wait before sending the request
+         */
+        synchronized long reserve() {
+            long now = System.nanoTime();
+            long pause = Math.max(0, pausedUntil - now);
+            if (tokensPerNano <= 0) {
+                return pause;
+            }
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            tokens -= 1;
+            long wait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+            return Math.max(pause, wait);
+        }
+
+        synchronized void pause(long millis) {
+            pausedUntil = Math.max(pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    RateLimiter() {
+    }
+
+    public static RateLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replaces the request budgets.
+     *
+     * @param budgets requests per second per operation prefix, null or values &lt;= 0 are unlimited
+     */
+    public void configure(Map<String, Double> budgets) {
+        Map<String, Double> result = new HashMap<>();
+        if (budgets != null) {
+            for (Map.Entry<String, Double> entry : budgets.entrySet()) {
+                if (entry.getValue() != null && entry.getValue() > 0) {
+                    result.put(entry.getKey().trim(), entry.getValue());
+                    LOG.info(V, "Api rate limit of '{}' set. ({}/s)", entry.getKey().trim(), entry.getValue());
+                }
+            }
+        }
+        this.budgets = result;
+        buckets.clear();
+    }
+
+    /**
+     * Replaces the function detecting throttled requests. The function returns the delay in milliseconds
+     * requested by the server, 0 if the request was throttled without a delay or {@link #NOT_THROTTLED}.
+     */
+    public void setThrottleClassifier(ToLongFunction<Throwable> throttleClassifier) {
+        this.throttleClassifier = throttleClassifier;
+    }
+
+    /**
+     * @return name of the budget the operation is limited by or the operation itself, if it is unlimited
+     */
+    String getEndpoint(String operation) {
+        Map<String, Double> current = budgets;
+        String prefix = operation;
+        while (true) {
+            if (current.containsKey(prefix)) {
+                return prefix;
+            }
+            int index = prefix.lastIndexOf('.');
+            if (index < 0) {
+                break;
+            }
+            prefix = prefix.substring(0, index);
+        }
+        return current.containsKey(DEFAULT_BUDGET) ? DEFAULT_BUDGET : operation;
+    }
+
+    private Bucket getBucket(String operation) {
+        String endpoint = getEndpoint(operation);
+        Bucket bucket = buckets.get(endpoint);
+        if (bucket == null) {
+            Double budget = budgets.get(endpoint);
+            bucket = buckets.computeIfAbsent(endpoint, k -> new Bucket(budget != null ? budget : 0));
+        }
+        return bucket;
+    }
+
+    /**
+     * Sends an api request within the budget of its endpoint. A throttled request pauses the endpoint and is
+     * rethrown, further requests (including a retry by the {@link RetryPolicy}) wait until the pause is over.
+     *
+     * @param operation name of the operation, e.g. "compute.servers.boot"
+     * @return result of the call
+     */
+    public <T, E extends Exception> T call(String operation, ApiMetrics.ApiCall<T, E> call) throws E {
+        Bucket bucket = getBucket(operation);
+        await(bucket.reserve());
+        try {
+            return call.call();
+        } catch (Exception e) {
+            long retryAfter = throttleClassifier.applyAsLong(e);
+            if (retryAfter >= 0) {
+                long delay = retryAfter > 0 ? retryAfter : THROTTLE_PAUSE_MILLIS;
+                bucket.pause(delay);
+                LOG.info(V, "Request '{}' has been throttled, pausing '{}' for {} ms.", operation,
+                        getEndpoint(operation), delay);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a read request, unless an identical request is already in flight. In that case the caller waits
+     * for the pending request and shares its response.
+     *
+     * @param key  identifies the request, e.g. operation and resource id
+     * @param call read request, usually wrapped by {@link #call(String, ApiMetrics.ApiCall)}
+     */
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T read(String key, ApiMetrics.ApiCall<T, E> call) throws E {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> pending = inFlightReads.putIfAbsent(key, future);
+        if (pending != null) {
+            coalescedReads.increment();
+            try {
+                return (T) pending.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw (E) cause;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return call.call();
+            }
+        }
+        try {
+            T result = call.call();
+            future.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightReads.remove(key, future);
+        }
+    }
+
+    /**
+     * @return number of reads answered by an identical request in flight
+     */
+    public long getCoalescedReads() {
+        return coalescedReads.sum();
+    }
+
+    private static void await(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            // the request is sent anyway, the caller handles the interruption
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * Remote checks of the configuration, e.g. whether an ansible role url is reachable or a galaxy role exists.
+ * Every request is bounded by connect and read timeouts and a batch of checks runs concurrently, so the
+ * validation takes about as long as the slowest single check.
+ * <p/>
+ * Positive results are cached in {@link Configuration#CACHE_DIR} for {@link #DEFAULT_TTL_MILLIS}, negative
+ * results are always checked again.
+ */
+public class RemoteChecks {
+    private static final Logger LOG = LoggerFactory.getLogger(RemoteChecks.class);
+    static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    static final int READ_TIMEOUT_MILLIS = 10000;
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final int MAX_PARALLEL_CHECKS = 16;
+    private static final String GALAXY_API = "https://galaxy.ansible.com/api/v1/roles/";
+    private static final String CACHE_FILENAME = "remote-checks.properties";
+
+    private final Path cacheFile;
+    private final long ttlMillis;
+    private final String galaxyApi;
+    private final int readTimeoutMillis;
+    private final Map<String, Long> cache = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    /**
+     * Remote check run by {@link #checkAll(List)}.
+     */
+    @FunctionalInterface
+    public interface Check {
+        /**
+         * @return true, if the check succeeded. Failures are expected to be logged by the check itself.
+         */
+        boolean check();
+    }
+
+    public RemoteChecks() {
+        this(Paths.get(Configuration.CACHE_DIR, CACHE_FILENAME), DEFAULT_TTL_MILLIS, GALAXY_API,
+                READ_TIMEOUT_MILLIS);
+    }
+
+    RemoteChecks(Path cacheFile, long ttlMillis, String galaxyApi, int readTimeoutMillis) {
+        this.cacheFile = cacheFile;
+        this.ttlMillis = ttlMillis;
+        this.galaxyApi = galaxyApi;
+        this.readTimeoutMillis = readTimeoutMillis;
+        loadCache();
+    }
+
+    /**
+     * Runs the given checks concurrently and stores new positive results in the cache.
+     *
+     * @return true, if all checks succeeded
+     */
+    public boolean checkAll(List<Check> checks) {
+        if (checks.isEmpty()) {
+            return true;
+        }
+        boolean result = true;
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(checks.size(), MAX_PARALLEL_CHECKS), r -> {
+            Thread thread = new Thread(r, "remote-check-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (Check check : checks) {
+                futures.add(executor.submit(check::check));
+            }
+            for (Future<Boolean> future : futures) {
+                try {
+                    result &= future.get();
+                } catch (ExecutionException e) {
+                    LOG.error("Remote check failed: {}", e.getCause().getMessage());
+                    result = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+            saveCache();
+        }
+        return result;
+    }
+
+    /**
+     * Determine validity of URL.
+     *
+     * @param url url / galaxy url
+     * @return true, if the url responds with HTTP 200
+     */
+    public boolean isValidURL(String url) {
+        String key = "url:" + url;
+        if (isCached(key)) {
+            LOG.info(V, "Url '{}' is valid (cached).", url);
+            return true;
+        }
+        try {
+            HttpURLConnection conn = openConnection(url);
+            conn.setInstanceFollowRedirects(false);
+            try {
+                if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    return false;
+                }
+            } finally {
+                conn.disconnect();
+            }
+        } catch (IOException e) {
+            LOG.info(V, "Url '{}' is not reachable: {}", url, e.getMessage());
+            return false;
+        }
+        putCache(key);
+        return true;
+    }
+
+    /**
+     * Validates galaxy role by checking API values. If the galaxy api can not be reached, the role is
+     * considered valid.
+     *
+     * @param author galaxy author
+     * @param role   name of galaxy role
+     * @return true, if galaxy role is valid
+     */
+    public boolean isValidAnsibleGalaxyRole(String author, String role) {
+        String key = "galaxy:" + author + "." + role;
+        if (isCached(key)) {
+            LOG.info(V, "Galaxy role '{}.{}' is valid (cached).", author, role);
+            return true;
+        }
+        JSONObject jsonObject;
+        try {
+            HttpURLConnection conn = openConnection(galaxyApi + "?format=json&search=" +
+                    URLEncoder.encode(role, StandardCharsets.UTF_8.name()));
+            try (Reader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                jsonObject = (JSONObject) new JSONParser().parse(reader);
+            } finally {
+                conn.disconnect();
+            }
+        } catch (IOException | ParseException | ClassCastException e) {
+            LOG.warn("Ansible Galaxy: Failed to check role '{}.{}': {}", author, role, e.getMessage());
+            return true;
+        }
+        if (jsonObject.containsKey("count")) {
+            int count = Integer.parseInt(String.valueOf(jsonObject.get("count")));
+            if (count == 0) {
+                return false;
+            } else if (count == 1) {
+                // role name is valid, but probably the author is false
+                JSONArray results = (JSONArray) jsonObject.get("results");
+                if (!containsName(results, author)) {
+                    LOG.error("Ansible Galaxy: Author '{}' invalid for specified role.", author);
+                    return false;
+                }
+                if (!containsName(results, role)) {
+                    LOG.error("Ansible Galaxy: Name of role '{}' is invalid.", role);
+                    return false;
+                }
+            }
+        }
+        putCache(key);
+        return true;
+    }
+
+    /**
+     * @return true, if the json value contains a "name" attribute with the given value at any depth
+     */
+    private static boolean containsName(Object value, String name) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            if (name.equals(object.get("name"))) {
+                return true;
+            }
+            for (Object child : object.values()) {
+                if (containsName(child, name)) {
+                    return true;
+                }
+            }
+        } else if (value instanceof JSONArray) {
+            for (Object child : (JSONArray) value) {
+                if (containsName(child, name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(readTimeoutMillis);
+        return conn;
+    }
+
+    private boolean isCached(String key) {
+        Long timestamp = cache.get(key);
+        return timestamp != null && System.currentTimeMillis() - timestamp < ttlMillis;
+    }
+
+    private void putCache(String key) {
+        cache.put(key, System.currentTimeMillis());
+        modified = true;
+    }
+
+    private void loadCache() {
+        if (!Files.isReadable(cacheFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            LOG.warn("Failed to read remote check cache '{}': {}", cacheFile, e.getMessage());
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                cache.put(key, Long.parseLong(properties.getProperty(key)));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Writes the cache without expired entries. The file is replaced atomically, so concurrent runs
+     * never read a partially written cache.
+     */
+    private void saveCache() {
+        if (!modified) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> entry : cache.entrySet()) {
+            if (System.currentTimeMillis() - entry.getValue() < ttlMillis) {
+                properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+        }
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            Path tmp = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), CACHE_FILENAME, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "Positive remote check results of bibigrid");
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } catch (IOException e) {
+            LOG.warn("Failed to write remote check cache '{}': {}", cacheFile, e.getMessage());
+        }
+    }
+}
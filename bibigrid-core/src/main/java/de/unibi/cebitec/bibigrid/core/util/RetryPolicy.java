@@ -0,0 +1,192 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * Retries cloud api calls failing with transient errors using exponential backoff with jitter, bounded by a
+ * number of attempts and a deadline.
+ * <p/>
+ * Errors are classified by the provider. Idempotent calls (get, list, delete, ...) are retried on every
+ * transient error. Non-idempotent calls (boot, create, ...) are only retried if the cloud rejected the request
+ * before processing it, since a retry might otherwise create a resource twice. Whether a call is idempotent is
+ * derived from the last segment of the operation name, e.g. "compute.servers.get", unless given explicitly.
+ */
+public final class RetryPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+    private static final Set<String> IDEMPOTENT_VERBS = new HashSet<>(Arrays.asList(
+            "get", "list", "describe", "show", "delete", "terminate", "detachInterface", "limits"));
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, 1000, 30000, 300000);
+
+    /**
+     * Classification of a failed call.
+     */
+    public enum Failure {
+        /**
+         * Retrying won't help, e.g. invalid arguments, missing resources or exceeded quotas.
+         */
+        PERMANENT,
+        /**
+         * The request may have been processed, e.g. internal server errors, gateway errors and timeouts.
+         */
+        TRANSIENT,
+        /**
+         * The request has not been processed, e.g. refused connections or throttled requests.
+         */
+        REJECTED
+    }
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final long deadlineMillis;
+    private final Function<Throwable, Failure> classifier;
+
+    /**
+     * @param maxAttempts        attempts including the first call
+     * @param initialDelayMillis delay before the first retry, doubled for every further retry
+     * @param maxDelayMillis     upper bound of a single delay
+     * @param deadlineMillis     time after the first attempt no further retry is started
+     */
+    public RetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis, long deadlineMillis) {
+        this(maxAttempts, initialDelayMillis, maxDelayMillis, deadlineMillis, e -> Failure.PERMANENT);
+    }
+
+    private RetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis, long deadlineMillis,
+                        Function<Throwable, Failure> classifier) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.deadlineMillis = deadlineMillis;
+        this.classifier = classifier;
+    }
+
+    /**
+     * @return copy of the policy classifying errors with the given provider specific function
+     */
+    public RetryPolicy withClassifier(Function<Throwable, Failure> classifier) {
+        return new RetryPolicy(maxAttempts, initialDelayMillis, maxDelayMillis, deadlineMillis, classifier);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public Failure classify(Throwable e) {
+        Failure failure = classifier.apply(e);
+        return failure != null ? failure : Failure.PERMANENT;
+    }
+
+    /**
+     * @return true, if the operation (e.g. "compute.servers.get") can be repeated without further side effects
+     */
+    public static boolean isIdempotent(String operation) {
+        return IDEMPOTENT_VERBS.contains(operation.substring(operation.lastIndexOf('.') + 1));
+    }
+
+    /**
+     * Runs an api call, retrying it depending on the idempotency derived from the operation name.
+     *
+     * @param operation name of the operation, e.g. "compute.servers.get"
+     */
+    public <T, E extends Exception> T call(String operation, ApiMetrics.ApiCall<T, E> call) throws E {
+        return call(operation, isIdempotent(operation), call);
+    }
+
+    /**
+     * Runs an api call and retries it on transient errors.
+     *
+     * @param operation  name of the operation, e.g. "compute.servers.boot"
+     * @param idempotent true, if the call can be repeated without further side effects
+     * @return result of the call
+     */
+    public <T, E extends Exception> T call(String operation, boolean idempotent, ApiMetrics.ApiCall<T, E> call)
+            throws E {
+        Deadline deadline = deadline();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                Failure failure = classify(e);
+                boolean retryable = failure == Failure.REJECTED || failure == Failure.TRANSIENT && idempotent;
+                long delay = getDelay(attempt);
+                if (!retryable || attempt >= maxAttempts || deadline.remainingMillis() < delay ||
+                        !sleep(delay)) {
+                    throw e;
+                }
+                ApiMetrics.getInstance().recordRetry(operation);
+                LOG.warn("Request '{}' failed: {} Retrying ({}/{}) ...", operation, e.getMessage(), attempt,
+                        maxAttempts - 1);
+            }
+        }
+    }
+
+    /**
+     * @param attempt number of the failed attempt, starting with 1
+     * @return exponential delay before the next attempt, randomized between half and the full delay
+     */
+    public long getDelay(int attempt) {
+        long delay = Math.min(maxDelayMillis, initialDelayMillis << Math.min(attempt - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Waits the delay of the given attempt.
+     *
+     * @return false, if the waiting thread has been interrupted
+     */
+    public boolean backoff(int attempt) {
+        long delay = getDelay(attempt);
+        LOG.info(V, "Waiting {} ms before attempt {}.", delay, attempt + 1);
+        return sleep(delay);
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return deadline starting now, for polling loops waiting on a cloud resource
+     */
+    public Deadline deadline() {
+        return new Deadline(deadlineMillis);
+    }
+
+    /**
+     * Point in time a polling loop or retry gives up.
+     */
+    public static final class Deadline {
+        private final long end;
+
+        public Deadline(long millis) {
+            end = System.nanoTime() + millis * 1_000_000;
+        }
+
+        public long remainingMillis() {
+            return Math.max(0, (end - System.nanoTime()) / 1_000_000);
+        }
+
+        public boolean isExpired() {
+            return end - System.nanoTime() <= 0;
+        }
+    }
+}
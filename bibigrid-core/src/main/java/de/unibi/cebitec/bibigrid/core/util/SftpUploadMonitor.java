@@ -0,0 +1,51 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import com.jcraft.jsch.SftpProgressMonitor;
+
+/**
+ * Counts the files and bytes uploaded through an sftp channel and emits a flight recorder event per file.
+ * JSch calls the monitor from the thread performing the transfer, one transfer at a time.
+ */
+public class SftpUploadMonitor implements SftpProgressMonitor {
+    private final String host;
+    private FlightRecording.Scope event = FlightRecording.Scope.NOOP;
+    private long fileBytes;
+    private long totalBytes;
+    private int files;
+
+    /**
+     * @param host remote host shown in the flight recorder events
+     */
+    public SftpUploadMonitor(String host) {
+        this.host = host;
+    }
+
+    @Override
+    public void init(int op, String src, String dest, long max) {
+        fileBytes = 0;
+        event = FlightRecording.sftpUpload(host, dest);
+    }
+
+    @Override
+    public boolean count(long count) {
+        fileBytes += count;
+        totalBytes += count;
+        return true;
+    }
+
+    @Override
+    public void end() {
+        files++;
+        event.setBytes(fileBytes);
+        event.close();
+        event = FlightRecording.Scope.NOOP;
+    }
+
+    public long getBytes() {
+        return totalBytes;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+}
@@ -10,6 +10,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -22,6 +23,10 @@ import org.slf4j.LoggerFactory;
  */
 public final class ShellScriptCreator {
     private static final Logger LOG = LoggerFactory.getLogger(ShellScriptCreator.class);
+    /**
+     * Printed by the master execution script when the ansible bootstrap is done and the playbook starts.
+     */
+    public static final String PLAYBOOK_START_MESSAGE = "Execute ansible-playbook";
 
     public static String getUserData(Configuration config, boolean base64) {
         StringBuilder userData = new StringBuilder();
@@ -125,13 +130,36 @@ public final class ShellScriptCreator {
     }
 
     /**
-     * Builds script to configure ansible and execute ansible commands to install (galaxy) roles / playbooks.
-     * @param prepare true, if still preparation necessary
-     * @param config Configuration
-     * @return script String to execute in CreateCluster
+     * Installs ansible on the master. The bootstrap is skipped if the marker file shows that the requested
+     * ansible version is already installed (e.g. on an image created by the prepare intent). Otherwise an uploaded
+     * offline bundle (wheelhouse) is installed, falling back to the online installation via apt and pip.
+     * After an online installation of a pinned ansible version, a bundle is built on the master, so it can be
+     * cached locally and reused for the next cluster. The marker holds the requested ansible package version
+     * (the version reported by ansible itself, if not pinned) and is only written if pip succeeded. The pip runs
+     * piped into the log are run by bash with pipefail, since the login shell executing the script might not be bash.
      */
-    public static String getMasterAnsibleExecutionScript(final boolean prepare, final Configuration config) {
-        StringBuilder script = new StringBuilder();
+    private static void appendAnsibleBootstrap(final Configuration config, StringBuilder script) {
+        final String version = config.getAnsibleVersion() != null ? config.getAnsibleVersion() : "";
+        final String ansiblePackage = version.isEmpty() ? "ansible" : "ansible==" + version;
+        final String wheelhouse = AnsibleResources.BOOTSTRAP_PATH + "wheelhouse";
+        script.append("ANSIBLE_VERSION=\"").append(version).append("\"\n");
+        script.append("ANSIBLE_MARKER=").append(AnsibleResources.BOOTSTRAP_MARKER).append("\n");
+        script.append("if [ -f ${ANSIBLE_MARKER} ] && which ansible-playbook > /dev/null && ")
+                .append("( [ -z \"${ANSIBLE_VERSION}\" ] || [ \"$(cat ${ANSIBLE_MARKER})\" = \"${ANSIBLE_VERSION}\" ] ); then\n");
+        script.append("echo \"Ansible $(cat ${ANSIBLE_MARKER}) already installed, skipping bootstrap.\"\n");
+        script.append("else\n");
+        script.append("installed=1\n");
+        // Install from offline bundle, pip is installed from the wheel contained in the bundle
+        script.append("if [ -f ").append(AnsibleResources.BOOTSTRAP_BUNDLE).append(" ]; then\n");
+        script.append("echo \"Install ansible from offline bundle.\"\n");
+        script.append("mkdir -p ").append(wheelhouse).append(" && tar -xzf ")
+                .append(AnsibleResources.BOOTSTRAP_BUNDLE).append(" -C ").append(wheelhouse).append("\n");
+        script.append("bash -o pipefail -c 'sudo python3 $(ls ").append(wheelhouse)
+                .append("/pip-*.whl | head -n 1)/pip install --no-index --find-links=").append(wheelhouse)
+                .append(" pip setuptools ").append(ansiblePackage).append(" | sudo tee -a /var/log/ssh_exec.log'\n");
+        script.append("installed=$?\n");
+        script.append("fi\n");
+        script.append("if [ ${installed} -ne 0 ]; then\n");
         // apt-get update
         script.append("sudo apt-get update | sudo tee -a /var/log/ssh_exec.log\n");
         // install python3
@@ -146,9 +174,63 @@ public final class ShellScriptCreator {
         // Install setuptools from pypi using pip
         script.append("sudo pip3 install setuptools | sudo tee -a /var/log/ssh_exec.log\n");
         // Install ansible from pypi using pip
-        script.append("sudo pip3 install ansible | sudo tee -a /var/log/ssh_exec.log\n");
+        script.append("bash -o pipefail -c 'sudo pip3 install ").append(ansiblePackage)
+                .append(" | sudo tee -a /var/log/ssh_exec.log'\n");
+        script.append("installed=$?\n");
+        // Build offline bundle of a pinned ansible version to be cached by BiBiGrid
+        script.append("if [ ${installed} -eq 0 ] && [ -n \"${ANSIBLE_VERSION}\" ]; then\n");
+        script.append("echo \"Build ansible offline bundle.\"\n");
+        script.append("mkdir -p ").append(wheelhouse).append("\n");
+        script.append("pip3 wheel --wheel-dir=").append(wheelhouse).append(" pip setuptools wheel ")
+                .append(ansiblePackage).append(" > /dev/null && tar -czf ").append(AnsibleResources.BOOTSTRAP_BUNDLE)
+                .append(" -C ").append(wheelhouse).append(" .\n");
+        script.append("fi\n");
+        script.append("fi\n");
+        script.append("if [ ${installed} -eq 0 ]; then\n");
+        script.append("sudo mkdir -p $(dirname ${ANSIBLE_MARKER})\n");
+        // ansible --version reports the version of ansible-core, which differs from the version of the package
+        script.append("if [ -n \"${ANSIBLE_VERSION}\" ]; then echo \"${ANSIBLE_VERSION}\" | sudo tee ${ANSIBLE_MARKER}; ")
+                .append("else ansible --version | head -n 1 | grep -o '[0-9][0-9.]*' | head -n 1 | sudo tee ${ANSIBLE_MARKER}; fi\n");
+        script.append("else\n");
+        script.append("echo \"Ansible installation failed.\"\n");
+        script.append("fi\n");
+        script.append("fi\n");
+    }
+
+    /**
+     * Builds script to configure ansible and execute ansible commands to install (galaxy) roles / playbooks.
+     * @param prepare true, if still preparation necessary
+     * @param config Configuration
+     * @return script String to execute in CreateCluster
+     */
+    public static String getMasterAnsibleExecutionScript(final boolean prepare, final Configuration config) {
+        return getMasterAnsibleExecutionScript(prepare, config, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Builds script to configure ansible and execute the playbook after workers have been added to a running
+     * cluster. The playbook is limited to the master and the added workers, the running workers only update
+     * their host list and slurm configuration (tags hosts and slurm).
+     * @param prepare true, if still preparation necessary
+     * @param config Configuration
+     * @param addedWorkers private ips of the added workers, empty to configure all hosts
+     * @param runningWorkers private ips of the workers running before
+     * @return script String to execute in CreateCluster
+     */
+    public static String getMasterAnsibleExecutionScript(final boolean prepare, final Configuration config,
+                                                         final List<String> addedWorkers,
+                                                         final List<String> runningWorkers) {
+        StringBuilder script = new StringBuilder();
+        appendAnsibleBootstrap(config, script);
+        // Use the generated ansible.cfg for all following ansible commands
+        script.append("export ANSIBLE_CONFIG=${HOME}/").append(AnsibleResources.ANSIBLE_CFG_FILE).append("\n");
+        // Extract worker specific configuration files
+        script.append("if [ -f ~/").append(AnsibleResources.WORKER_VARS_ARCHIVE).append(" ]; then tar -xzf ~/")
+                .append(AnsibleResources.WORKER_VARS_ARCHIVE).append(" -C ~/").append(AnsibleResources.ROOT_PATH)
+                .append(" && rm ~/").append(AnsibleResources.WORKER_VARS_ARCHIVE).append("; fi\n");
         // Install python3 on workers instances
-        script.append("ansible workers -i ~/" + AnsibleResources.HOSTS_CONFIG_FILE
+        script.append("ansible " + (addedWorkers.isEmpty() ? "workers" : String.join(",", addedWorkers))
+                + " -i ~/" + AnsibleResources.HOSTS_CONFIG_FILE
                 + " --become -m raw -a \"apt-get update && apt-get --yes install python3\" | sudo tee -a /var/log/ansible.log\n");
 
         // Run ansible-galaxy to install ansible-galaxy roles from galaxy, git or url (.tar.gz)
@@ -166,13 +248,22 @@ public final class ShellScriptCreator {
         script.append("files=$(for f in $( find ~/playbook -type f); do  file ${f} | grep ASCII | cut -f 1 -d ':'; done;)\n");
         script.append("for file in ${file}; do sed -i 's/\\r$//' \"${file}\"; done\n");
 
-        script.append("echo Execute ansible-playbook\n");
-        script.append("sudo touch /var/log/ansible-playbook.log\n");
-        script.append("sudo chown ${USER}:${USER} /var/log/ansible-playbook.log\n");
-        script.append("python3 ${HOME}/playbook/tools/tee.py --cmd \"$(which ansible-playbook)").
-                append(" ${HOME}/").append(AnsibleResources.SITE_CONFIG_FILE).
-                append(" -i ${HOME}/").append(AnsibleResources.HOSTS_CONFIG_FILE).
-                append("\" --outfile /var/log/ansible-playbook.log \n");
+        script.append("echo ").append(PLAYBOOK_START_MESSAGE).append("\n");
+        // Use BiBiGrid callback plugin, which prints each playbook event as single JSON line
+        script.append("export ANSIBLE_CALLBACK_PLUGINS=${HOME}/").append(AnsibleResources.CALLBACK_PLUGINS_PATH).append("\n");
+        script.append("export ANSIBLE_STDOUT_CALLBACK=").append(AnsibleResources.CALLBACK_PLUGIN).append("\n");
+        if (addedWorkers.isEmpty()) {
+            appendPlaybookRun(script, "", "/var/log/ansible-playbook.log");
+        } else {
+            appendPlaybookRun(script, " --limit master," + String.join(",", addedWorkers),
+                    "/var/log/ansible-playbook.log");
+            if (!runningWorkers.isEmpty()) {
+                // the running workers need the new hosts in their host list and slurm configuration
+                script.append("[ $? -eq 0 ] && ");
+                appendPlaybookRun(script, " --limit " + String.join(",", runningWorkers) + " --tags hosts,slurm",
+                        "/var/log/ansible-playbook-refresh.log");
+            }
+        }
 
         // Execute ansible playbook using tee
         //script.append("ansible-playbook ~/" + AnsibleResources.SITE_CONFIG_FILE
@@ -181,7 +272,21 @@ public final class ShellScriptCreator {
         //       .append(" | sudo tee -a /var/log/ansible-playbook.log")
         //        .append("\n");
 
-        script.append("if [ $? == 0 ]; then echo CONFIGURATION FINISHED; else echo CONFIGURATION FAILED; fi\n");
+        script.append("if [ $? -eq 0 ]; then echo ").append(AnsibleEventHandler.CONFIGURATION_FINISHED)
+                .append("; else echo ").append(AnsibleEventHandler.CONFIGURATION_FAILED).append("; fi\n");
         return script.toString();
     }
+
+    /**
+     * Appends a run of the playbook using tee, so the output is written to the given log file as well.
+     *
+     * @param options additional ansible-playbook options, e.g. " --limit master"
+     */
+    private static void appendPlaybookRun(StringBuilder script, String options, String logFile) {
+        script.append("sudo touch ").append(logFile).append(" && sudo chown ${USER}:${USER} ").append(logFile)
+                .append(" && python3 ${HOME}/playbook/tools/tee.py --cmd \"$(which ansible-playbook)")
+                .append(" ${HOME}/").append(AnsibleResources.SITE_CONFIG_FILE)
+                .append(" -i ${HOME}/").append(AnsibleResources.HOSTS_CONFIG_FILE).append(options)
+                .append("\" --outfile ").append(logFile).append(" \n");
+    }
 }
@@ -22,7 +22,7 @@ public class SshFactory {
     public static Session createSshSession(Configuration config, String ip) throws JSchException{
         JSch jssh = new JSch();
         JSch.setLogger(new JSchLogger());
-        Session sshSession = jssh.getSession(config.getSshUser(), ip, 22);
+        Session sshSession = jssh.getSession(config.getSshUser(), ip, config.getSshPort());
         Configuration.ClusterKeyPair ckp = config.getClusterKeyPair();
         jssh.addIdentity(ckp.getName(),ckp.getPrivateKey().getBytes(),ckp.getPublicKey().getBytes(),null);
         UserInfo userInfo = getConsolePasswordUserInfo();
@@ -85,12 +85,16 @@ public class SshFactory {
     }
 
     public static boolean pollSshPortIsAvailable(String masterPublicIp) {
+        return pollSshPortIsAvailable(masterPublicIp, 22);
+    }
+
+    public static boolean pollSshPortIsAvailable(String masterPublicIp, int port) {
         LOG.info(V, "Checking if SSH port is available and ready ...");
         int attempt = SSH_POLL_ATTEMPTS;
         while (attempt > 0) {
             try {
                 final Socket socket = new Socket();
-                socket.connect(new InetSocketAddress(masterPublicIp, 22), 2000);
+                socket.connect(new InetSocketAddress(masterPublicIp, port), 2000);
                 byte[] buffer = new byte[1024];
                 int bytesRead = socket.getInputStream().read(buffer, 0, buffer.length);
                 String sshVersion = new String(buffer, 0, bytesRead).trim();
@@ -102,7 +106,11 @@ public class SshFactory {
             }
             try {
                 Thread.sleep(2000);
-            } catch (InterruptedException ignored) {
+            } catch (InterruptedException e) {
+                // the setup has been cancelled, e.g. by Ctrl-C
+                Thread.currentThread().interrupt();
+                LOG.error("Waiting for the master instance SSH port has been interrupted.");
+                return false;
             }
         }
         LOG.error("Master instance SSH port is not reachable.");
@@ -0,0 +1,81 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal streaming writer for gzip compressed tar (ustar) archives containing regular files only.
+ * Used to transfer many small files to the master in a single upload.
+ */
+public class TarArchiveWriter implements Closeable {
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+
+    private final OutputStream stream;
+    private final long modificationTime = System.currentTimeMillis() / 1000;
+
+    public TarArchiveWriter(OutputStream stream) throws IOException {
+        this.stream = new GZIPOutputStream(stream);
+    }
+
+    /**
+     * Appends a regular file to the archive.
+     *
+     * @param name relative path of the file, at most 100 characters
+     * @param content file content
+     */
+    public void putFile(String name, byte[] content) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > NAME_LENGTH) {
+            throw new IOException("File name too long for tar archive: " + name);
+        }
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, content.length);
+        putOctal(header, 136, 12, modificationTime);
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        // checksum is calculated with the checksum field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        stream.write(header);
+        stream.write(content);
+        int padding = (BLOCK_SIZE - content.length % BLOCK_SIZE) % BLOCK_SIZE;
+        stream.write(new byte[padding]);
+    }
+
+    /**
+     * Writes a zero padded octal number followed by a NUL byte.
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        StringBuilder field = new StringBuilder();
+        for (int i = octal.length(); i < length - 1; i++) {
+            field.append('0');
+        }
+        field.append(octal);
+        System.arraycopy(field.toString().getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    /**
+     * Writes the end of archive marker and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        stream.write(new byte[2 * BLOCK_SIZE]);
+        stream.close();
+    }
+}
@@ -0,0 +1,192 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.introspector.Property;
+import org.yaml.snakeyaml.representer.Representer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * Remembers successful validations of a configuration, so repeated runs with an unchanged configuration can
+ * skip the local file checks, remote checks and provider lookups within a time to live.
+ * <p/>
+ * A configuration is identified by a hash of its effective values, the content of all referenced files
+ * (key files, role tarballs, vars files, ...) and the provider endpoint. Successful validations are stored
+ * with their timestamp in {@link Configuration#CACHE_DIR}.
+ */
+public final class ValidationMemo {
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationMemo.class);
+    private static final String MEMO_FILENAME = "validations.properties";
+    /**
+     * Properties that change between runs without changing the result of a validation.
+     */
+    private static final Set<String> VOLATILE_PROPERTIES = new HashSet<>(Arrays.asList(
+            "clusterIds", "clusterKeyPair", "fallbackProviderType", "id", "keepOnInterrupt", "mungeKey",
+            "providerType", "slaveInstances"));
+
+    private final Path file;
+    private final String hash;
+    private final long ttlMillis;
+    private final boolean force;
+
+    /**
+     * @param hash      hash of the configuration, see {@link #hash(Configuration, List, String)}
+     * @param ttlMillis time a successful validation stays valid, 0 disables the memo
+     * @param force     ignore recorded validations, new successful validations are still recorded
+     */
+    public ValidationMemo(String hash, long ttlMillis, boolean force) {
+        this(Paths.get(Configuration.CACHE_DIR, MEMO_FILENAME), hash, ttlMillis, force);
+    }
+
+    ValidationMemo(Path file, String hash, long ttlMillis, boolean force) {
+        this.file = file;
+        this.hash = hash;
+        this.ttlMillis = ttlMillis;
+        this.force = force;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return time of the last successful validation of the same configuration within the time to live, null if
+     * there is none or the validation is forced
+     */
+    public Instant getValidatedAt() {
+        if (force || ttlMillis <= 0) {
+            return null;
+        }
+        String timestamp = load().getProperty(hash);
+        if (timestamp == null) {
+            return null;
+        }
+        try {
+            long millis = Long.parseLong(timestamp);
+            return System.currentTimeMillis() - millis < ttlMillis ? Instant.ofEpochMilli(millis) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records a successful validation of the configuration. Expired validations are removed.
+     */
+    public void recordSuccess() {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Properties properties = load();
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                if (now - Long.parseLong(properties.getProperty(key)) >= ttlMillis) {
+                    properties.remove(key);
+                }
+            } catch (NumberFormatException e) {
+                properties.remove(key);
+            }
+        }
+        properties.setProperty(hash, String.valueOf(now));
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), MEMO_FILENAME, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "Successful validations of bibigrid configurations");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info(V, "Validation of configuration {} recorded.", hash);
+        } catch (IOException e) {
+            LOG.warn("Failed to record validation in '{}': {}", file, e.getMessage());
+        }
+    }
+
+    private Properties load() {
+        Properties properties = new Properties();
+        if (Files.isReadable(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                LOG.warn("Failed to read validations from '{}': {}", file, e.getMessage());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Computes a stable hash of the effective configuration.
+     *
+     * @param config   configuration after loading and provider parameter validation
+     * @param files    paths of files referenced by the configuration, missing files are hashed by their path
+     * @param endpoint provider endpoint, e.g. the openstack auth url
+     * @return hex encoded sha-256 hash
+     */
+    public static String hash(Configuration config, List<String> files, String endpoint) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, String.valueOf(endpoint));
+        update(digest, dump(config));
+        byte[] buffer = new byte[8192];
+        for (String path : files) {
+            update(digest, path);
+            Path filePath = Paths.get(path);
+            if (!Files.isReadable(filePath) || Files.isDirectory(filePath)) {
+                continue;
+            }
+            try (InputStream in = Files.newInputStream(filePath)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                update(digest, "unreadable");
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Dumps all bean properties in alphabetical order, except the {@link #VOLATILE_PROPERTIES}.
+     */
+    static String dump(Configuration config) {
+        Representer representer = new Representer() {
+            @Override
+            protected Set<Property> getProperties(Class<?> type) {
+                Set<Property> properties = new TreeSet<>(super.getProperties(type));
+                properties.removeIf(p -> VOLATILE_PROPERTIES.contains(p.getName()));
+                return properties;
+            }
+        };
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        return new Yaml(representer, options).dump(config);
+    }
+}
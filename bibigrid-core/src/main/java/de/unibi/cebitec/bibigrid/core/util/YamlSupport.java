@@ -0,0 +1,119 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.serializer.NumberAnchorGenerator;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Shared access to preconfigured SnakeYAML instances. {@link Yaml} is not thread-safe, therefore every thread
+ * gets its own instance, which is reused for all following calls instead of creating a new one per file.
+ * Data is serialized directly to the given writer, without building an intermediate String.
+ */
+public final class YamlSupport {
+    private static final ThreadLocal<Emitter> BLOCK_YAML =
+            ThreadLocal.withInitial(() -> new Emitter(DumperOptions.FlowStyle.BLOCK));
+    private static final ThreadLocal<Emitter> FLOW_YAML =
+            ThreadLocal.withInitial(() -> new Emitter(DumperOptions.FlowStyle.FLOW));
+
+    /**
+     * Yaml instance together with its options, which are adjusted before each dump.
+     */
+    private static final class Emitter {
+        private final DumperOptions options = new DumperOptions();
+        private final Yaml yaml;
+
+        private Emitter(DumperOptions.FlowStyle flowStyle) {
+            options.setDefaultFlowStyle(flowStyle);
+            if (flowStyle == DumperOptions.FlowStyle.FLOW) {
+                // keep each flow collection in a single line
+                options.setWidth(Integer.MAX_VALUE);
+            }
+            yaml = new Yaml(options);
+        }
+
+        private void dump(Object data, Writer writer) {
+            // start anchor names (id001, ...) for each document, as a new Yaml instance would do
+            options.setAnchorGenerator(new NumberAnchorGenerator(0));
+            yaml.dump(data, writer);
+        }
+    }
+
+    private YamlSupport() {
+    }
+
+    /**
+     * Writes maps and lists in block style, the same output as {@link Yaml#dumpAsMap(Object)}.
+     *
+     * @param data map or list to write
+     * @param writer target, not closed
+     */
+    public static void dump(Object data, Writer writer) {
+        BLOCK_YAML.get().dump(data, writer);
+    }
+
+    /**
+     * Writes maps and lists in block style as UTF-8 to the stream.
+     *
+     * @param data map or list to write
+     * @param stream target, closed afterwards
+     */
+    public static void dump(Object data, OutputStream stream) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            dump(data, writer);
+        }
+    }
+
+    /**
+     * Writes data in flow style as a single line, e.g. "{ip: 192.168.0.5, hostname: worker}".
+     *
+     * @param data map or list to write
+     * @param writer target, not closed
+     */
+    public static void dumpFlow(Object data, Writer writer) {
+        FLOW_YAML.get().dump(data, writer);
+    }
+
+    /**
+     * @return data in block style as UTF-8 encoded bytes
+     */
+    public static byte[] dumpAsBytes(Object data) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+            dump(data, writer);
+        } catch (IOException e) {
+            // not thrown by ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+        return stream.toByteArray();
+    }
+
+    /**
+     * Loads a yaml document into an instance of the given class.
+     */
+    public static <T> T load(InputStream stream, Class<T> type) {
+        return BLOCK_YAML.get().yaml.loadAs(stream, type);
+    }
+
+    /**
+     * Loads a yaml file into an instance of the given class.
+     */
+    public static <T> T load(Path path, Class<T> type) throws IOException {
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(path))) {
+            return load(stream, type);
+        }
+    }
+
+    /**
+     * Loads a yaml file into the default java representation (Map, List, String, ...).
+     */
+    public static <T> T load(Path path) throws IOException {
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(path))) {
+            return BLOCK_YAML.get().yaml.load(stream);
+        }
+    }
+}
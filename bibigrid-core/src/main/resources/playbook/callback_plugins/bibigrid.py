@@ -0,0 +1,105 @@
+# -*- coding: utf-8 -*-
+# Stdout callback plugin used by BiBiGrid. Every playbook event is printed as a single JSON object per line,
+# which is parsed by BiBiGrid (see de.unibi.cebitec.bibigrid.core.util.AnsibleEvent) instead of scraping the
+# human readable default output.
+from __future__ import (absolute_import, division, print_function)
+__metaclass__ = type
+
+DOCUMENTATION = '''
+    callback: bibigrid
+    type: stdout
+    short_description: JSON lines output consumed by BiBiGrid
+    description:
+      - Prints one JSON object per line for play start, task start/end, per host results and final stats.
+'''
+
+import json
+import time
+
+from ansible.plugins.callback import CallbackBase
+
+
+class CallbackModule(CallbackBase):
+    CALLBACK_VERSION = 2.0
+    CALLBACK_TYPE = 'stdout'
+    CALLBACK_NAME = 'bibigrid'
+
+    def __init__(self):
+        super(CallbackModule, self).__init__()
+        self._play = None
+        self._task = None
+        self._task_start = None
+
+    def _emit(self, event, **fields):
+        fields['event'] = event
+        fields['ts'] = round(time.time(), 3)
+        self._display.display(json.dumps(fields, sort_keys=True))
+
+    @staticmethod
+    def _role(task):
+        role = getattr(task, '_role', None)
+        return role.get_name() if role else None
+
+    @staticmethod
+    def _rescued(task):
+        # a failure within a block that has a rescue section is handled by the rescue tasks
+        child, parent = task, getattr(task, '_parent', None)
+        while parent is not None:
+            if getattr(parent, 'rescue', None) and any(t is child for t in getattr(parent, 'block', None) or []):
+                return True
+            child, parent = parent, getattr(parent, '_parent', None)
+        return False
+
+    def _end_task(self):
+        if self._task is not None:
+            self._emit('task_end', play=self._play, task=self._task.get_name(), role=self._role(self._task),
+                       duration=round(time.time() - self._task_start, 3))
+        self._task = None
+        self._task_start = None
+
+    def _start_task(self, task):
+        self._end_task()
+        self._task = task
+        self._task_start = time.time()
+        self._emit('task_start', play=self._play, task=task.get_name(), role=self._role(task))
+
+    def _host_result(self, status, result, msg=None, **fields):
+        task = result._task
+        duration = time.time() - self._task_start if self._task_start is not None else 0.0
+        if msg is None:
+            msg = result._result.get('msg')
+        self._emit('host_result', status=status, host=result._host.get_name(), play=self._play,
+                   task=task.get_name(), role=self._role(task), duration=round(duration, 3),
+                   msg=msg if isinstance(msg, str) else None, **fields)
+
+    def v2_playbook_on_play_start(self, play):
+        self._end_task()
+        self._play = play.get_name()
+        self._emit('play_start', play=self._play)
+
+    def v2_playbook_on_task_start(self, task, is_conditional):
+        self._start_task(task)
+
+    def v2_playbook_on_handler_task_start(self, task):
+        self._start_task(task)
+
+    def v2_runner_on_ok(self, result):
+        self._host_result('changed' if result._result.get('changed', False) else 'ok', result)
+
+    def v2_runner_on_failed(self, result, ignore_errors=False):
+        msg = result._result.get('msg') or result._result.get('stderr')
+        self._host_result('failed', result, msg=msg, ignored=bool(ignore_errors),
+                          rescued=self._rescued(result._task))
+
+    def v2_runner_on_unreachable(self, result):
+        self._host_result('unreachable', result)
+
+    def v2_runner_on_skipped(self, result):
+        self._host_result('skipped', result, msg='')
+
+    def v2_playbook_on_stats(self, stats):
+        self._end_task()
+        hosts = {}
+        for host in sorted(stats.processed.keys()):
+            hosts[host] = stats.summarize(host)
+        self._emit('stats', hosts=hosts)
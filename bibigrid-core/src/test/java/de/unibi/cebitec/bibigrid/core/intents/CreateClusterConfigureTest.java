@@ -0,0 +1,376 @@
+package de.unibi.cebitec.bibigrid.core.intents;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.KeyPair;
+import de.unibi.cebitec.bibigrid.core.Validator;
+import de.unibi.cebitec.bibigrid.core.model.*;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
+import de.unibi.cebitec.bibigrid.core.util.AnsibleEventHandler;
+import de.unibi.cebitec.bibigrid.core.util.AnsibleResources;
+import de.unibi.cebitec.bibigrid.core.util.ClusterJournal;
+import de.unibi.cebitec.bibigrid.core.util.DeviceMapper;
+import de.unibi.cebitec.bibigrid.core.util.EmbeddedSshServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the configure pipeline (upload and ansible execution) against an {@link EmbeddedSshServer}.
+ */
+public class CreateClusterConfigureTest {
+    private static final String STATS_OK = "{\"event\": \"stats\", \"hosts\": {\"127.0.0.1\": {\"ok\": 12, " +
+            "\"changed\": 4, \"failures\": 0, \"unreachable\": 0, \"skipped\": 2}}}";
+    private static final String STATS_FAILED = "{\"event\": \"stats\", \"hosts\": {\"127.0.0.1\": {\"ok\": 3, " +
+            "\"changed\": 1, \"failures\": 1, \"unreachable\": 0, \"skipped\": 0}}}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestConfiguration config;
+    private EmbeddedSshServer server;
+    private Instance master;
+    private List<Instance> workers;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty(ClusterJournal.CLUSTERS_DIR_PROPERTY, folder.newFolder("clusters").getPath());
+        config = new TestConfiguration();
+        JSch jsch = new JSch();
+        KeyPair keypair = KeyPair.genKeyPair(jsch, KeyPair.RSA, 2048);
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        keypair.writePrivateKey(bao);
+        config.getClusterKeyPair().setPrivateKey(bao.toString());
+        bao = new ByteArrayOutputStream();
+        keypair.writePublicKey(bao, "generated by BiBiGrid");
+        config.getClusterKeyPair().setPublicKey(bao.toString());
+        config.getClusterKeyPair().setName("bibigrid-test");
+
+        server = new EmbeddedSshServer(config.getClusterKeyPair().getPublicKey(), folder.newFolder("master").toPath());
+        server.start();
+        config.setSshPort(server.getPort());
+
+        master = new TestInstance(config.getMasterInstance(), "127.0.0.1");
+        workers = Arrays.asList(
+                new TestInstance(config.getWorkerInstances().get(0), "10.0.0.11"),
+                new TestInstance(config.getWorkerInstances().get(0), "10.0.0.12"),
+                new TestInstance(config.getWorkerInstances().get(0), "10.0.0.14"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        System.clearProperty(ClusterJournal.CLUSTERS_DIR_PROPERTY);
+    }
+
+    @Test
+    public void configure() throws Exception {
+        server.setExecHandler(EmbeddedSshServer.scriptedOutput(Arrays.asList(
+                "Execute ansible-playbook", STATS_OK, AnsibleEventHandler.CONFIGURATION_FINISHED), 0));
+        TestCreateCluster cluster = new TestCreateCluster(config);
+        cluster.configure(master, workers, "10.0.0.0/24", false);
+
+        List<String> commands = server.getExecutedCommands();
+        assertEquals(1, commands.size());
+        assertTrue(commands.get(0).contains("ansible-playbook"));
+
+        // generated files are identical to the local output
+        Path home = server.getRootDirectory();
+        AnsibleConfig ansibleConfig = cluster.getAnsibleConfig(master, workers);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ansibleConfig.writeSiteFile(expected, Collections.emptyMap(), Collections.emptyMap());
+        assertArrayEquals(expected.toByteArray(), read(home, AnsibleResources.SITE_CONFIG_FILE));
+        expected = new ByteArrayOutputStream();
+        ansibleConfig.writeCommonFile(expected);
+        assertArrayEquals(expected.toByteArray(), read(home, AnsibleResources.COMMONS_CONFIG_FILE));
+        expected = new ByteArrayOutputStream();
+        ansibleConfig.writeAnsibleCfgFile(expected);
+        assertArrayEquals(expected.toByteArray(), read(home, AnsibleResources.ANSIBLE_CFG_FILE));
+        expected = new ByteArrayOutputStream();
+        try (OutputStreamWriter writer = new OutputStreamWriter(expected, StandardCharsets.UTF_8)) {
+            new AnsibleHostsConfig(config, workers).write(writer);
+        }
+        assertArrayEquals(expected.toByteArray(), read(home, AnsibleResources.HOSTS_CONFIG_FILE));
+        // the archive contains a modification time, so compare the extracted files
+        expected = new ByteArrayOutputStream();
+        ansibleConfig.writeInstanceFiles(expected);
+        assertEquals(readTarGz(expected.toByteArray()), readTarGz(read(home, AnsibleResources.WORKER_VARS_ARCHIVE)));
+        assertFalse(Files.exists(home.resolve(AnsibleResources.REQUIREMENTS_CONFIG_FILE)));
+        assertTrue(Files.isDirectory(home.resolve(AnsibleResources.UPLOAD_PATH.substring(1))));
+
+        // static resources are uploaded unchanged, unless replaced by a generated file
+        Set<Path> generated = new HashSet<>();
+        for (String file : Arrays.asList(AnsibleResources.SITE_CONFIG_FILE, AnsibleResources.COMMONS_CONFIG_FILE,
+                AnsibleResources.ANSIBLE_CFG_FILE, AnsibleResources.HOSTS_CONFIG_FILE)) {
+            generated.add(home.resolve(file).normalize());
+        }
+        AnsibleResources resources = new AnsibleResources();
+        assertFalse(resources.getFiles().isEmpty());
+        for (String file : resources.getFiles()) {
+            if (generated.contains(home.resolve(file).normalize())) {
+                continue;
+            }
+            try (InputStream stream = resources.getFileStream(file)) {
+                assertArrayEquals(file, readAll(stream), read(home, file));
+            }
+        }
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void configureFailed() throws Exception {
+        server.setExecHandler(EmbeddedSshServer.scriptedOutput(Arrays.asList(
+                "Execute ansible-playbook", STATS_FAILED, AnsibleEventHandler.CONFIGURATION_FAILED), 2));
+        new TestCreateCluster(config).configure(master, workers, "10.0.0.0/24", false);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void configureUnknownKey() throws Exception {
+        JSch jsch = new JSch();
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        KeyPair.genKeyPair(jsch, KeyPair.RSA, 2048).writePrivateKey(bao);
+        config.getClusterKeyPair().setPrivateKey(bao.toString());
+        new TestCreateCluster(config).configure(master, workers, "10.0.0.0/24", false);
+    }
+
+    private static byte[] read(Path home, String file) throws IOException {
+        return Files.readAllBytes(home.resolve(file));
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] data = new byte[8192];
+        int read;
+        while ((read = stream.read(data)) != -1) {
+            buffer.write(data, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Map<String, String> readTarGz(byte[] data) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        try (InputStream stream = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] header = new byte[512];
+            while (readFully(stream, header) && header[0] != 0) {
+                String name = new String(header, 0, 100, StandardCharsets.UTF_8).trim().replace("\u0000", "");
+                int size = Integer.parseInt(new String(header, 124, 11, StandardCharsets.US_ASCII), 8);
+                byte[] content = new byte[(size + 511) / 512 * 512];
+                assertTrue(readFully(stream, content));
+                files.put(name, new String(content, 0, size, StandardCharsets.UTF_8));
+            }
+        }
+        return files;
+    }
+
+    private static boolean readFully(InputStream stream, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = stream.read(buffer, offset, buffer.length - offset);
+            if (read < 0) {
+                return false;
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    private static class TestCreateCluster extends CreateCluster {
+        TestCreateCluster(Configuration config) {
+            super(new TestProviderModule(), null, config);
+            masterDeviceMapper = new DeviceMapper(providerModule, Collections.emptyList(), 0);
+        }
+
+        AnsibleConfig getAnsibleConfig(Instance master, List<Instance> workers) {
+            AnsibleConfig ansibleConfig = new AnsibleConfig(config, providerModule.getBlockDeviceBase(),
+                    "10.0.0.0/24", master, workers);
+            ansibleConfig.setMasterMounts(masterDeviceMapper);
+            return ansibleConfig;
+        }
+
+        @Override
+        protected List<Configuration.MountPoint> resolveMountSources(List<Configuration.MountPoint> mountPoints) {
+            return mountPoints;
+        }
+
+        @Override
+        protected Instance launchClusterMasterInstance(String masterNameTag) {
+            return null;
+        }
+
+        @Override
+        protected List<Instance> launchClusterWorkerInstances(
+                int batchIndex, Configuration.WorkerInstanceConfiguration instanceConfiguration, String workerNameTag) {
+            return null;
+        }
+    }
+
+    private static class TestProviderModule extends ProviderModule {
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public Class<? extends Configuration> getConfigurationClass() {
+            return TestConfiguration.class;
+        }
+
+        @Override
+        public Validator getValidator(Configuration config, ProviderModule module) {
+            return null;
+        }
+
+        @Override
+        public Client getClient(Configuration config) {
+            return null;
+        }
+
+        @Override
+        public ListIntent getListIntent(Client client, Configuration config) {
+            return null;
+        }
+
+        @Override
+        public TerminateIntent getTerminateIntent(Client client, Configuration config) {
+            return null;
+        }
+
+        @Override
+        public PrepareIntent getPrepareIntent(Client client, Configuration config) {
+            return null;
+        }
+
+        @Override
+        public CreateCluster getCreateIntent(Client client, Configuration config) {
+            return null;
+        }
+
+        @Override
+        public CreateClusterEnvironment getClusterEnvironment(Client client, CreateCluster cluster) {
+            return null;
+        }
+
+        @Override
+        public String getBlockDeviceBase() {
+            return "/dev/vd";
+        }
+
+        @Override
+        protected Map<String, InstanceType> getInstanceTypeMap(Client client, Configuration config) {
+            return Collections.emptyMap();
+        }
+    }
+
+    public static class TestConfiguration extends Configuration {
+        public TestConfiguration() throws IOException {
+            super();
+            setUser("ubuntu");
+            setUseMasterWithPublicIp(true);
+            setMasterInstance(new InstanceConfiguration() {
+                @Override
+                public InstanceType getProviderType() {
+                    return new TestInstanceType("de.NBI.small", 2);
+                }
+            });
+            setWorkerInstances(Collections.singletonList(new WorkerInstanceConfiguration() {
+                @Override
+                public int getCount() {
+                    return 3;
+                }
+
+                @Override
+                public InstanceType getProviderType() {
+                    return new TestInstanceType("de.NBI.large", 8);
+                }
+            }));
+        }
+
+        @Override
+        public void setSshPort(int sshPort) {
+            super.setSshPort(sshPort);
+        }
+    }
+
+    private static class TestInstanceType extends InstanceType {
+        private final String value;
+        private final int cpuCores;
+
+        TestInstanceType(String value, int cpuCores) {
+            this.value = value;
+            this.cpuCores = cpuCores;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public int getCpuCores() {
+            return cpuCores;
+        }
+    }
+
+    private static class TestInstance extends Instance {
+        private final String ip;
+
+        TestInstance(Configuration.InstanceConfiguration instanceConfiguration, String ip) {
+            super(instanceConfiguration);
+            this.ip = ip;
+        }
+
+        @Override
+        public String getId() {
+            return ip;
+        }
+
+        @Override
+        public String getPublicIp() {
+            return ip;
+        }
+
+        @Override
+        public String getPrivateIp() {
+            return ip;
+        }
+
+        @Override
+        public String getHostname() {
+            return "host-" + ip.replace('.', '-');
+        }
+
+        @Override
+        public String getName() {
+            return null;
+        }
+
+        @Override
+        public String getTag(String key) {
+            return null;
+        }
+
+        @Override
+        public ZonedDateTime getCreationTimestamp() {
+            return null;
+        }
+
+        @Override
+        public String getKeyName() {
+            return null;
+        }
+    }
+}
@@ -1,13 +1,26 @@
 package de.unibi.cebitec.bibigrid.core.model;
 
+import de.unibi.cebitec.bibigrid.core.util.AnsibleResources;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author mfriedrichs(at)techfak.uni-bielefeld.de
@@ -175,4 +188,159 @@ public class AnsibleConfigTest {
             e.printStackTrace();
         }
     }
+
+    @Test
+    public void testAnsibleCfg() throws Exception {
+        TestConfiguration testConfiguration = new TestConfiguration();
+        TestInstance masterInstance = new TestInstance(testConfiguration.getMasterInstance(), "192.168.33.5");
+        List<Instance> workerInstances = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            workerInstances.add(new TestInstance(testConfiguration.getWorkerInstances().get(0), "192.168.34." + i));
+        }
+        AnsibleConfig config = new AnsibleConfig(testConfiguration, "/dev/vd", "192.168.32.0/22", masterInstance,
+                workerInstances);
+        // limited by 2 master cores
+        assertEquals(40, config.getForks());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        config.writeAnsibleCfgFile(stream);
+        String cfg = stream.toString("UTF-8");
+        assertTrue(cfg.contains("forks = 40\n"));
+        assertTrue(cfg.contains("pipelining = True\n"));
+        assertTrue(cfg.contains("ControlPersist=10m"));
+        assertTrue(cfg.contains("gather_subset = !all,network\n"));
+
+        testConfiguration.getAnsibleTuning().setForks(8);
+        assertEquals(8, config.getForks());
+        // small clusters keep the ansible default
+        testConfiguration.getAnsibleTuning().setForks(null);
+        assertEquals(5, new AnsibleConfig(testConfiguration, "/dev/vd", "192.168.33.0/24", masterInstance,
+                workerInstances.subList(0, 2)).getForks());
+    }
+
+    @Test
+    public void testSiteFile() throws Exception {
+        TestConfiguration testConfiguration = new TestConfiguration();
+        TestInstance masterInstance = new TestInstance(testConfiguration.getMasterInstance(), "192.168.33.5");
+        List<Instance> workerInstances = Arrays.asList(
+                new TestInstance(testConfiguration.getWorkerInstances().get(0), "192.168.33.6"),
+                new TestInstance(testConfiguration.getWorkerInstances().get(1), "192.168.33.7"),
+                new TestInstance(testConfiguration.getWorkerInstances().get(1), "192.168.33.8"));
+        AnsibleConfig config = new AnsibleConfig(testConfiguration, "/dev/vd", "192.168.33.0/24", masterInstance,
+                workerInstances);
+        testConfiguration.getAnsibleTuning().setSerial("25%");
+        testConfiguration.getAnsibleTuning().setPlayPerBatch(true);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        config.writeSiteFile(stream, Collections.emptyMap(), Collections.emptyMap());
+        String site = stream.toString("UTF-8");
+        // the master play does not wait for the workers
+        assertTrue(site.startsWith("- hosts: master\n"));
+        assertFalse(site.contains("master:workers"));
+        assertTrue(site.contains("- hosts: workers_1\n"));
+        assertTrue(site.contains("- hosts: workers_2\n"));
+        assertTrue(site.contains("serial: 25%\n"));
+        // free by default, linear is the ansible default and not written
+        assertTrue(site.contains("strategy: free\n"));
+        assertFalse(site.contains("&id"));
+        testConfiguration.getAnsibleTuning().setWorkerStrategy("linear");
+        stream = new ByteArrayOutputStream();
+        config.writeSiteFile(stream, Collections.emptyMap(), Collections.emptyMap());
+        assertFalse(stream.toString("UTF-8").contains("strategy:"));
+
+        String hosts = new AnsibleHostsConfig(testConfiguration, workerInstances).toString();
+        assertTrue(hosts.contains("[workers_1]\n192.168.33.6\n"));
+        assertTrue(hosts.contains("[workers_2]\n192.168.33.[7:8]\n"));
+        assertTrue(hosts.contains("[workers:children]\nworkers_1\nworkers_2\n"));
+    }
+
+    @Test
+    public void testStaticSiteFile() throws Exception {
+        TestConfiguration testConfiguration = new TestConfiguration();
+        TestInstance masterInstance = new TestInstance(testConfiguration.getMasterInstance(), "192.168.33.5");
+        AnsibleConfig config = new AnsibleConfig(testConfiguration, "/dev/vd", "192.168.33.0/24", masterInstance,
+                Collections.emptyList());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        config.writeSiteFile(stream, Collections.emptyMap(), Collections.emptyMap());
+        // the packaged site.yml documents the layout generated without custom roles
+        try (InputStream resource = new AnsibleResources().getFileStream(AnsibleResources.SITE_CONFIG_FILE)) {
+            assertEquals(stream.toString("UTF-8"), readAll(resource));
+        }
+    }
+
+    @Test
+    public void testHostRanges() {
+        assertEquals(Arrays.asList("10.0.0.[1:3]", "10.0.0.5", "10.0.1.[9:10]"), AnsibleHostsConfig.getHostRanges(
+                Arrays.asList("10.0.1.10", "10.0.0.2", "10.0.0.1", "10.0.0.5", "10.0.0.3", "10.0.1.9")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWorkerWithoutBatch() throws Exception {
+        TestConfiguration testConfiguration = new TestConfiguration();
+        List<Instance> workerInstances = Collections.singletonList(
+                new TestInstance(new Configuration.WorkerInstanceConfiguration(), "192.168.33.6"));
+        new AnsibleHostsConfig(testConfiguration, workerInstances);
+    }
+
+    @Test
+    public void testInstanceFiles() throws Exception {
+        TestConfiguration testConfiguration = new TestConfiguration();
+        TestInstance masterInstance = new TestInstance(testConfiguration.getMasterInstance(), "192.168.33.5");
+        List<Instance> workerInstances = Arrays.asList(
+                new TestInstance(testConfiguration.getWorkerInstances().get(0), "192.168.33.6"),
+                new TestInstance(testConfiguration.getWorkerInstances().get(1), "192.168.33.7"));
+        AnsibleConfig config = new AnsibleConfig(testConfiguration, "/dev/vd", "192.168.33.0/24", masterInstance,
+                workerInstances);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        config.writeInstanceFiles(archive);
+        Map<String, String> files = readTarGz(archive.toByteArray());
+        assertEquals(Arrays.asList("group_vars/workers_1.yml", "vars/192.168.33.6.yml", "group_vars/workers_2.yml",
+                "vars/192.168.33.7.yml"), new ArrayList<>(files.keySet()));
+        for (Instance worker : workerInstances) {
+            ByteArrayOutputStream single = new ByteArrayOutputStream();
+            config.writeInstanceFile(worker, single);
+            assertEquals(single.toString("UTF-8"), files.get("vars/" + worker.getPrivateIp() + ".yml"));
+        }
+        assertTrue(files.get("group_vars/workers_2.yml").contains("- /dev/vdb\n- /dev/vdc\n- /dev/vdd\n- /dev/vde\n"));
+
+        ByteArrayOutputStream common = new ByteArrayOutputStream();
+        config.writeCommonFile(common);
+        assertTrue(common.toString("UTF-8").contains("workers:\n- {ip: 192.168.33.6, hostname: null}\n" +
+                "- {ip: 192.168.33.7, hostname: null}\n"));
+    }
+
+    private static Map<String, String> readTarGz(byte[] data) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        try (InputStream stream = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] header = new byte[512];
+            while (readFully(stream, header) && header[0] != 0) {
+                String name = new String(header, 0, 100, StandardCharsets.UTF_8).trim().replace("\u0000", "");
+                int size = Integer.parseInt(new String(header, 124, 11, StandardCharsets.US_ASCII), 8);
+                byte[] content = new byte[(size + 511) / 512 * 512];
+                assertTrue(readFully(stream, content));
+                files.put(name, new String(content, 0, size, StandardCharsets.UTF_8));
+            }
+        }
+        return files;
+    }
+
+    private static String readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = stream.read(buffer)) >= 0) {
+            result.write(buffer, 0, read);
+        }
+        return result.toString("UTF-8");
+    }
+
+    private static boolean readFully(InputStream stream, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = stream.read(buffer, offset, buffer.length - offset);
+            if (read < 0) {
+                return false;
+            }
+            offset += read;
+        }
+        return true;
+    }
 }
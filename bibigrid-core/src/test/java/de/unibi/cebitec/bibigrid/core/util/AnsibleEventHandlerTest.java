@@ -0,0 +1,123 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class AnsibleEventHandlerTest {
+    private static final String PLAY_START = "{\"event\": \"play_start\", \"play\": \"master\", \"ts\": 1570000000.0}";
+    private static final String TASK_START = "{\"event\": \"task_start\", \"play\": \"master\", \"role\": \"common\", " +
+            "\"task\": \"debug\", \"ts\": 1570000000.5}";
+    private static final String HOST_OK = "{\"event\": \"host_result\", \"status\": \"ok\", \"host\": \"localhost\", " +
+            "\"task\": \"debug\", \"role\": \"common\", \"duration\": 0.25, \"msg\": \"[BIBIGRID] Setup Docker\", " +
+            "\"ts\": 1570000000.75}";
+    private static final String HOST_FAILED = "{\"event\": \"host_result\", \"status\": \"failed\", " +
+            "\"host\": \"192.168.0.5\", \"task\": \"Install packages\", \"role\": \"common\", \"duration\": 12.5, " +
+            "\"msg\": \"No package matching 'foo'\", \"ignored\": false, \"ts\": 1570000013.0}";
+    private static final String STATS = "{\"event\": \"stats\", \"hosts\": {\"localhost\": {\"ok\": 3, " +
+            "\"changed\": 1, \"failures\": 0, \"unreachable\": 0, \"skipped\": 2}}, \"ts\": 1570000020.0}";
+
+    @Test
+    public void parseHostResult() {
+        AnsibleEvent event = AnsibleEvent.parse(HOST_FAILED);
+        assertNotNull(event);
+        assertEquals(AnsibleEvent.Type.HOST_RESULT, event.getType());
+        assertEquals(AnsibleEvent.Status.FAILED, event.getStatus());
+        assertEquals("192.168.0.5", event.getHost());
+        assertEquals("common", event.getRole());
+        assertEquals(12.5, event.getDuration(), 0.0001);
+        assertFalse(event.isIgnored());
+    }
+
+    @Test
+    public void parseStats() {
+        AnsibleEvent event = AnsibleEvent.parse(STATS);
+        assertNotNull(event);
+        assertEquals(AnsibleEvent.Type.STATS, event.getType());
+        assertEquals(Integer.valueOf(3), event.getStats().get("localhost").get("ok"));
+        assertEquals(Integer.valueOf(0), event.getStats().get("localhost").get("rescued"));
+    }
+
+    @Test
+    public void ignoreNonEventLines() {
+        assertNull(AnsibleEvent.parse("Reading package lists..."));
+        assertNull(AnsibleEvent.parse("{ not json"));
+        assertNull(AnsibleEvent.parse("{\"event\": \"unknown\"}"));
+    }
+
+    @Test
+    public void successfulRun() {
+        AnsibleEventHandler handler = new AnsibleEventHandler();
+        handler.handleLine("Execute ansible-playbook");
+        handler.handleLine(PLAY_START);
+        handler.handleLine(TASK_START);
+        handler.handleLine(HOST_OK);
+        handler.handleLine(STATS);
+        handler.handleLine(AnsibleEventHandler.CONFIGURATION_FINISHED);
+        assertEquals(4, handler.getEventCount());
+        assertTrue(handler.isSuccessful());
+    }
+
+    @Test
+    public void failedRun() {
+        AnsibleEventHandler handler = new AnsibleEventHandler();
+        handler.handleLine(PLAY_START);
+        handler.handleLine(HOST_FAILED);
+        handler.handleLine(AnsibleEventHandler.CONFIGURATION_FAILED);
+        assertFalse(handler.isSuccessful());
+        assertEquals(1, handler.getFailures().get("192.168.0.5").size());
+        assertTrue(handler.getFailureSummary().contains("No package matching 'foo'"));
+    }
+
+    @Test
+    public void ignoredAndRescuedFailures() {
+        AnsibleEventHandler handler = new AnsibleEventHandler();
+        handler.handleLine(PLAY_START);
+        handler.handleLine(HOST_FAILED.replace("\"ignored\": false", "\"ignored\": true"));
+        handler.handleLine(HOST_FAILED.replace("\"ignored\": false", "\"rescued\": true"));
+        // results without status are skipped
+        handler.handleLine("{\"event\": \"host_result\", \"host\": \"192.168.0.5\", \"task\": \"debug\"}");
+        handler.handleLine(STATS);
+        handler.handleLine(AnsibleEventHandler.CONFIGURATION_FINISHED);
+        assertTrue(handler.getFailures().isEmpty());
+        assertTrue(handler.isSuccessful());
+        assertTrue(AnsibleEvent.parse(HOST_FAILED.replace("\"ignored\": false", "\"rescued\": true")).isRescued());
+    }
+
+    @Test
+    public void unfinishedRun() {
+        AnsibleEventHandler handler = new AnsibleEventHandler();
+        handler.handleLine(PLAY_START);
+        assertFalse(handler.isSuccessful());
+    }
+
+    @Test
+    public void profile() throws Exception {
+        AnsibleEventHandler handler = new AnsibleEventHandler();
+        handler.handleLine(PLAY_START);
+        handler.handleLine(TASK_START);
+        handler.handleLine(HOST_OK);
+        handler.handleLine(HOST_FAILED);
+        handler.handleLine("{\"event\": \"task_end\", \"play\": \"master\", \"role\": \"common\", " +
+                "\"task\": \"Install packages\", \"duration\": 13.0, \"ts\": 1570000013.0}");
+        handler.handleLine(STATS);
+        AnsibleProfile profile = handler.getProfile();
+        assertEquals(20.0, profile.getTotalDuration(), 0.0001);
+        assertEquals("Install packages", profile.getTasks().get(0).getTask());
+        assertEquals(13.0, profile.getRoles().get("common"), 0.0001);
+        assertEquals(12.5, profile.getHosts().get("192.168.0.5"), 0.0001);
+
+        Path report = Files.createTempFile("bibigrid", "-ansible-profile.json");
+        try {
+            profile.writeReport("test", report);
+            String json = new String(Files.readAllBytes(report), "UTF-8");
+            assertTrue(json.contains("\"clusterId\":\"test\""));
+            assertTrue(json.contains("\"Install packages\""));
+        } finally {
+            Files.delete(report);
+        }
+    }
+}
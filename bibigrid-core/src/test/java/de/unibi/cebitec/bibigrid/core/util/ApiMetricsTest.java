@@ -0,0 +1,124 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ApiMetricsTest {
+    private final ApiMetrics metrics = ApiMetrics.getInstance();
+
+    @Before
+    @After
+    public void clear() {
+        metrics.clear();
+        metrics.setErrorClassifier(e -> e.getClass().getSimpleName());
+    }
+
+    @Test
+    public void countCallsAndErrors() {
+        assertEquals("srv-1", metrics.call("servers.boot", () -> "srv-1"));
+        try {
+            metrics.call("servers.boot", () -> {
+                throw new IllegalStateException("quota exceeded");
+            });
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+        metrics.recordError("servers.boot", "HTTP 403");
+        metrics.recordRetry("servers.boot");
+
+        ApiMetrics.Operation operation = metrics.getOperation("servers.boot");
+        assertEquals(2, operation.getCalls());
+        assertEquals(2, operation.getErrors());
+        assertEquals(1, operation.getRetries());
+        assertEquals(Long.valueOf(1), operation.getErrorCodes().get("IllegalStateException"));
+        assertEquals(Long.valueOf(1), operation.getErrorCodes().get("HTTP 403"));
+        assertNull(metrics.getOperation("servers.list"));
+    }
+
+    @Test
+    public void errorClassifier() throws IOException {
+        metrics.setErrorClassifier(e -> "HTTP 503");
+        try {
+            metrics.call("servers.list", () -> {
+                throw new IOException("unavailable");
+            });
+            fail();
+        } catch (IOException ignored) {
+        }
+        assertEquals(Long.valueOf(1), metrics.getOperation("servers.list").getErrorCodes().get("HTTP 503"));
+    }
+
+    @Test
+    public void histogram() {
+        metrics.record("servers.get", 3_000_000L);
+        metrics.record("servers.get", 40_000_000L);
+        metrics.record("servers.get", 40_000_000L);
+        metrics.record("servers.get", 20_000_000_000L);
+        ApiMetrics.Operation operation = metrics.getOperation("servers.get");
+        long[] buckets = operation.getBucketCounts();
+        assertEquals(1, buckets[0]);
+        assertEquals(2, buckets[3]);
+        assertEquals(1, buckets[buckets.length - 1]);
+        assertEquals(50, operation.getPercentileMillis(0.5), 0.001);
+        assertEquals(20000, operation.getPercentileMillis(0.95), 0.001);
+        assertEquals(20000, operation.getMaxMillis(), 0.001);
+        assertEquals(5020.75, operation.getMeanMillis(), 0.001);
+    }
+
+    @Test
+    public void concurrentCalls() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        metrics.record("servers.get", 1_000_000L);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8000, metrics.getOperation("servers.get").getCalls());
+        assertEquals(8000, metrics.getTotalCalls());
+    }
+
+    @Test
+    public void summaryAndPrometheus() throws IOException {
+        assertEquals("", metrics.getSummary());
+        metrics.record("compute.servers.list", 12_000_000L);
+        metrics.recordError("compute.servers.list", "HTTP 429");
+        String summary = metrics.getSummary();
+        assertTrue(summary, summary.contains("compute.servers.list"));
+        assertTrue(summary, summary.contains("HTTP 429 x1"));
+
+        StringWriter writer = new StringWriter();
+        metrics.writePrometheus(writer);
+        String text = writer.toString();
+        assertTrue(text, text.contains("bibigrid_api_calls_total{operation=\"compute.servers.list\"} 1\n"));
+        assertTrue(text, text.contains(
+                "bibigrid_api_errors_total{operation=\"compute.servers.list\",code=\"HTTP 429\"} 1\n"));
+        assertTrue(text, text.contains(
+                "bibigrid_api_latency_seconds_bucket{operation=\"compute.servers.list\",le=\"0.010\"} 0\n"));
+        assertTrue(text, text.contains(
+                "bibigrid_api_latency_seconds_bucket{operation=\"compute.servers.list\",le=\"0.025\"} 1\n"));
+        assertTrue(text, text.contains(
+                "bibigrid_api_latency_seconds_bucket{operation=\"compute.servers.list\",le=\"+Inf\"} 1\n"));
+        assertTrue(text, text.contains("bibigrid_api_latency_seconds_count{operation=\"compute.servers.list\"} 1\n"));
+    }
+}
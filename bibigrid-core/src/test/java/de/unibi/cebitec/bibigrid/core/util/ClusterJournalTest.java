@@ -0,0 +1,80 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ClusterJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stepsAreReloaded() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cluster").resolve("journal");
+        ClusterJournal journal = new ClusterJournal(file);
+        journal.record(ClusterJournal.Step.ENVIRONMENT, null, "subnet-1");
+        journal.record(ClusterJournal.Step.MASTER, "srv-1");
+        journal.record(ClusterJournal.Step.WORKER, 0, "srv-2");
+        journal.record(ClusterJournal.Step.WORKER, 0, "srv-3");
+        journal.record(ClusterJournal.Step.BATCH, 0, 2);
+        journal.record(ClusterJournal.Step.WORKER, 1, "srv-4");
+
+        ClusterJournal loaded = ClusterJournal.load(file);
+        assertTrue(loaded.contains(ClusterJournal.Step.ENVIRONMENT));
+        assertNull(loaded.get(ClusterJournal.Step.ENVIRONMENT, 0));
+        assertEquals("subnet-1", loaded.get(ClusterJournal.Step.ENVIRONMENT, 1));
+        assertEquals("srv-1", loaded.get(ClusterJournal.Step.MASTER, 0));
+        assertTrue(loaded.isBatchLaunched(0));
+        assertEquals(Arrays.asList("srv-2", "srv-3"), loaded.getWorkers(0));
+        // the second batch has not been completed
+        assertFalse(loaded.isBatchLaunched(1));
+        assertEquals(Collections.emptyList(), loaded.getWorkers(1));
+        assertEquals(Arrays.asList("srv-1", "srv-2", "srv-3"), loaded.getInstances());
+        assertFalse(loaded.contains(ClusterJournal.Step.UPLOAD));
+    }
+
+    @Test
+    public void interruptedLaunchIsIgnored() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("journal");
+        ClusterJournal journal = new ClusterJournal(file);
+        journal.record(ClusterJournal.Step.MASTER, "srv-1");
+        // the first worker belongs to an interrupted launch of the batch
+        journal.record(ClusterJournal.Step.WORKER, 0, "srv-2");
+        journal.record(ClusterJournal.Step.WORKER, 0, "srv-3");
+        journal.record(ClusterJournal.Step.WORKER, 0, "srv-4");
+        journal.record(ClusterJournal.Step.BATCH, 0, 2);
+        // partly written line
+        Files.write(file, "2020-05-04T10:15:30Z UPL".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        ClusterJournal loaded = ClusterJournal.load(file);
+        assertEquals(Arrays.asList("srv-3", "srv-4"), loaded.getWorkers(0));
+        assertFalse(loaded.contains(ClusterJournal.Step.UPLOAD));
+    }
+
+    @Test
+    public void scaledUpBatchIsReloaded() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("journal");
+        ClusterJournal journal = new ClusterJournal(file);
+        journal.record(ClusterJournal.Step.MASTER, "srv-1");
+        journal.record(ClusterJournal.Step.WORKER, 0, "srv-2");
+        journal.record(ClusterJournal.Step.BATCH, 0, 1);
+        journal.record(ClusterJournal.Step.ANSIBLE_PLAYBOOK);
+        journal.record(ClusterJournal.Step.WORKER, 0, "srv-3");
+        journal.record(ClusterJournal.Step.WORKER, 0, "srv-4");
+        journal.record(ClusterJournal.Step.BATCH, 0, 3);
+
+        ClusterJournal loaded = ClusterJournal.load(file);
+        assertEquals(Arrays.asList("srv-2", "srv-3", "srv-4"), loaded.getWorkers(0));
+        assertEquals(Arrays.asList("srv-1", "srv-2", "srv-3", "srv-4"), loaded.getInstances());
+    }
+}
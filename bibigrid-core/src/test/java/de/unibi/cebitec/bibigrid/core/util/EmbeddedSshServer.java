@@ -0,0 +1,156 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.apache.sshd.common.config.keys.AuthorizedKeyEntry;
+import org.apache.sshd.common.config.keys.PublicKeyEntryResolver;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.KeySetPublickeyAuthenticator;
+import org.apache.sshd.server.command.AbstractCommandSupport;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-process SSH server replacing the master instance in tests. Clients are authenticated by the cluster
+ * public key, the SFTP subsystem is rooted in a local directory and exec requests are answered by an
+ * {@link ExecHandler} instead of a shell, so the output of an ansible run can be scripted.
+ * <p>
+ * The root directory contains an empty <i>tmp</i> folder, since the upload expects it to exist.
+ */
+public class EmbeddedSshServer implements Closeable {
+    /**
+     * Emulates the execution of a command on the master.
+     */
+    @FunctionalInterface
+    public interface ExecHandler {
+        /**
+         * @param command command sent by the client
+         * @param out stdout of the exec channel
+         * @param err stderr of the exec channel
+         * @return exit status of the command
+         */
+        int execute(String command, PrintStream out, PrintStream err) throws IOException;
+    }
+
+    private final SshServer server;
+    private final Path rootDirectory;
+    private final List<String> executedCommands = Collections.synchronizedList(new ArrayList<>());
+    private volatile ExecHandler execHandler = (command, out, err) -> 0;
+
+    /**
+     * @param authorizedKey public key in OpenSSH format (e.g. the cluster public key)
+     * @param rootDirectory local directory used as root and home of the SFTP file system
+     */
+    public EmbeddedSshServer(String authorizedKey, Path rootDirectory) throws IOException, GeneralSecurityException {
+        this.rootDirectory = rootDirectory;
+        Files.createDirectories(rootDirectory.resolve("tmp"));
+        PublicKey publicKey = AuthorizedKeyEntry.parseAuthorizedKeyEntry(authorizedKey.trim())
+                .resolvePublicKey(null, PublicKeyEntryResolver.FAILING);
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPublickeyAuthenticator(new KeySetPublickeyAuthenticator("cluster", Collections.singleton(publicKey)));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(rootDirectory));
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        server.setCommandFactory((channel, command) -> new ScriptedCommand(command));
+    }
+
+    public void start() throws IOException {
+        server.start();
+    }
+
+    /**
+     * @return port the server is listening on, chosen randomly on start
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public Path getRootDirectory() {
+        return rootDirectory;
+    }
+
+    public void setExecHandler(ExecHandler execHandler) {
+        this.execHandler = execHandler;
+    }
+
+    /**
+     * Handler answering every command with the given stdout lines and exit status.
+     */
+    public static ExecHandler scriptedOutput(List<String> lines, int exitStatus) {
+        return (command, out, err) -> {
+            for (String line : lines) {
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            return exitStatus;
+        };
+    }
+
+    /**
+     * @return commands received on exec channels in order of arrival
+     */
+    public List<String> getExecutedCommands() {
+        synchronized (executedCommands) {
+            return new ArrayList<>(executedCommands);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(true);
+    }
+
+    private class ScriptedCommand extends AbstractCommandSupport {
+        ScriptedCommand(String command) {
+            super(command, null);
+        }
+
+        @Override
+        public void run() {
+            executedCommands.add(getCommand());
+            int exitStatus;
+            String message = null;
+            try (PrintStream out = new PrintStream(nonClosing(getOutputStream()), true, "UTF-8");
+                 PrintStream err = new PrintStream(nonClosing(getErrorStream()), true, "UTF-8")) {
+                exitStatus = execHandler.execute(getCommand(), out, err);
+            } catch (IOException | RuntimeException e) {
+                exitStatus = 1;
+                message = e.getMessage();
+            }
+            onExit(exitStatus, message != null ? message : "");
+        }
+
+        private OutputStream nonClosing(OutputStream stream) {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    stream.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    stream.write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    stream.flush();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class FlightRecordingTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        assumeTrue(FlightRecording.isAvailable());
+    }
+
+    @After
+    public void tearDown() {
+        FlightRecording.stop();
+        PhaseTracer.getInstance().clear();
+        ApiMetrics.getInstance().clear();
+    }
+
+    @Test
+    public void eventsWithoutRecordingAreNoOps() {
+        assertFalse(FlightRecording.isRecording());
+        assertSame(FlightRecording.Scope.NOOP, FlightRecording.apiCall("servers.list"));
+    }
+
+    @Test
+    public void recordEvents() throws Exception {
+        assertTrue(FlightRecording.start());
+        assertTrue(FlightRecording.isRecording());
+        try (PhaseTracer.Span ignored = PhaseTracer.getInstance().start("configure")) {
+            ApiMetrics.getInstance().call("compute.servers.list", () -> "ok");
+            try (FlightRecording.Scope exec = FlightRecording.sshExec("10.0.0.1", "ansible-playbook site.yml")) {
+                exec.setExitStatus(0);
+            }
+            SftpUploadMonitor monitor = new SftpUploadMonitor("10.0.0.1");
+            monitor.init(0, "-", "/home/ubuntu/playbook/site.yml", -1);
+            monitor.count(100);
+            monitor.count(28);
+            monitor.end();
+            assertEquals(128, monitor.getBytes());
+            assertEquals(1, monitor.getFiles());
+        }
+        Path path = folder.getRoot().toPath().resolve("reports").resolve("abc.jfr");
+        FlightRecording.dump(path);
+
+        Map<String, RecordedEvent> events = new HashMap<>();
+        List<RecordedEvent> recorded = RecordingFile.readAllEvents(path);
+        for (RecordedEvent event : recorded) {
+            if (event.getEventType().getName().startsWith("de.unibi.cebitec.bibigrid.")) {
+                events.put(event.getEventType().getName(), event);
+            }
+        }
+        assertEquals("compute.servers.list", events.get("de.unibi.cebitec.bibigrid.ApiCall").getString("operation"));
+        assertEquals("configure", events.get("de.unibi.cebitec.bibigrid.Phase").getString("name"));
+        assertEquals(0, events.get("de.unibi.cebitec.bibigrid.SshExec").getInt("exitStatus"));
+        RecordedEvent upload = events.get("de.unibi.cebitec.bibigrid.SftpUpload");
+        assertEquals("/home/ubuntu/playbook/site.yml", upload.getString("path"));
+        assertEquals(128, upload.getLong("bytes"));
+    }
+}
@@ -0,0 +1,99 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PhaseTracerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PhaseTracer tracer = PhaseTracer.getInstance();
+
+    @Before
+    @After
+    public void clear() {
+        tracer.clear();
+    }
+
+    @Test
+    public void nestedSpans() throws Exception {
+        int result;
+        try (PhaseTracer.Span ignored = tracer.start("create cluster").arg("clusterId", "abc")) {
+            result = tracer.trace("create network", () -> 42);
+        }
+        assertEquals(42, result);
+        List<PhaseTracer.Span> spans = tracer.getSpans();
+        assertEquals(2, spans.size());
+        // inner span finishes first
+        assertEquals("create network", spans.get(0).getName());
+        assertEquals("create cluster", spans.get(1).getName());
+        assertEquals("abc", spans.get(1).getArgs().get("clusterId"));
+        assertTrue(spans.get(1).getDuration() >= spans.get(0).getDuration());
+    }
+
+    @Test
+    public void failedPhaseIsRecorded() {
+        try {
+            tracer.trace("configure", () -> {
+                throw new IOException("connection refused");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("connection refused", e.getMessage());
+        }
+        assertEquals(1, tracer.getSpans().size());
+    }
+
+    @Test
+    public void closeIsIdempotent() {
+        PhaseTracer.Span span = tracer.start("upload");
+        assertEquals(-1, span.getDuration());
+        span.close();
+        span.close();
+        assertEquals(1, tracer.getSpans().size());
+    }
+
+    @Test
+    public void writeTrace() throws Exception {
+        long start = System.nanoTime();
+        tracer.record("boot bibigrid-master-abc", PhaseTracer.CATEGORY_INSTANCE, start, start + 2_500_000);
+        try (PhaseTracer.Span ignored = tracer.start("settle")) {
+            Thread.sleep(1);
+        }
+        Path path = folder.getRoot().toPath().resolve("reports").resolve("abc-trace.json");
+        tracer.writeTrace("abc", path);
+
+        JSONObject trace;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            trace = (JSONObject) JSONValue.parse(reader);
+        }
+        assertEquals("abc", ((JSONObject) trace.get("otherData")).get("clusterId"));
+        JSONArray events = (JSONArray) trace.get("traceEvents");
+        // two complete events and one thread name
+        assertEquals(3, events.size());
+        JSONObject boot = (JSONObject) events.get(0);
+        assertEquals("boot bibigrid-master-abc", boot.get("name"));
+        assertEquals(PhaseTracer.CATEGORY_INSTANCE, boot.get("cat"));
+        assertEquals("X", boot.get("ph"));
+        assertEquals(2500.0, ((Number) boot.get("dur")).doubleValue(), 0.0001);
+        JSONObject settle = (JSONObject) events.get(1);
+        assertEquals(PhaseTracer.CATEGORY_PHASE, settle.get("cat"));
+        assertTrue(((Number) settle.get("dur")).doubleValue() >= 1000);
+        assertEquals("M", ((JSONObject) events.get(2)).get("ph"));
+    }
+}
@@ -0,0 +1,158 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+    private final RateLimiter limiter = new RateLimiter();
+
+    private static class ThrottledException extends RuntimeException {
+        private final long retryAfter;
+
+        private ThrottledException(long retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    @After
+    public void clear() {
+        ApiMetrics.getInstance().clear();
+    }
+
+    private static Map<String, Double> budgets(Object... entries) {
+        Map<String, Double> result = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            result.put((String) entries[i], (Double) entries[i + 1]);
+        }
+        return result;
+    }
+
+    @Test
+    public void longestPrefixMatches() {
+        limiter.configure(budgets("compute", 10.0, "compute.servers.boot", 2.0, "network", 0.0));
+        assertEquals("compute.servers.boot", limiter.getEndpoint("compute.servers.boot"));
+        assertEquals("compute", limiter.getEndpoint("compute.servers.get"));
+        // budgets <= 0 are unlimited
+        assertEquals("network.networks.list", limiter.getEndpoint("network.networks.list"));
+        limiter.configure(budgets(RateLimiter.DEFAULT_BUDGET, 5.0));
+        assertEquals(RateLimiter.DEFAULT_BUDGET, limiter.getEndpoint("network.networks.list"));
+    }
+
+    @Test
+    public void budgetLimitsRequestRate() {
+        limiter.configure(budgets("servers", 20.0));
+        long start = System.nanoTime();
+        for (int i = 0; i < 30; i++) {
+            limiter.call("servers.boot", () -> "srv");
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // burst of 20 requests, the remaining 10 at 20 per second
+        assertTrue("took " + millis + " ms", millis >= 450);
+        assertTrue("took " + millis + " ms", millis < 2000);
+    }
+
+    @Test
+    public void throttledRequestsPauseEndpoint() {
+        limiter.setThrottleClassifier(e -> e instanceof ThrottledException ?
+                ((ThrottledException) e).retryAfter : RateLimiter.NOT_THROTTLED);
+        AtomicInteger attempts = new AtomicInteger();
+        // the limiter doesn't repeat throttled requests itself
+        try {
+            limiter.call("servers.boot", () -> {
+                attempts.incrementAndGet();
+                throw new ThrottledException(200);
+            });
+            fail();
+        } catch (ThrottledException ignored) {
+        }
+        assertEquals(1, attempts.get());
+        // the next request to the endpoint waits for the requested delay
+        long start = System.nanoTime();
+        assertEquals("srv", limiter.call("servers.boot", () -> "srv"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+
+        // other errors don't pause the endpoint
+        try {
+            limiter.call("servers.boot", () -> {
+                throw new IllegalStateException("quota exceeded");
+            });
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+        start = System.nanoTime();
+        limiter.call("servers.boot", () -> "srv");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+    }
+
+    @Test
+    public void retryPolicyBoundsThrottledAttempts() {
+        limiter.setThrottleClassifier(e -> e instanceof ThrottledException ?
+                ((ThrottledException) e).retryAfter : RateLimiter.NOT_THROTTLED);
+        RetryPolicy policy = new RetryPolicy(3, 1, 10, 10000).withClassifier(e -> e instanceof ThrottledException ?
+                RetryPolicy.Failure.REJECTED : RetryPolicy.Failure.PERMANENT);
+        AtomicInteger attempts = new AtomicInteger();
+        assertEquals("srv", policy.call("servers.boot", () -> limiter.call("servers.boot", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ThrottledException(10);
+            }
+            return "srv";
+        })));
+        assertEquals(2, ApiMetrics.getInstance().getOperation("servers.boot").getRetries());
+
+        // one cap for all attempts
+        attempts.set(0);
+        try {
+            policy.call("servers.boot", () -> limiter.call("servers.boot", () -> {
+                attempts.incrementAndGet();
+                throw new ThrottledException(1);
+            }));
+            fail();
+        } catch (ThrottledException ignored) {
+        }
+        assertEquals(policy.getMaxAttempts(), attempts.get());
+    }
+
+    @Test
+    public void identicalReadsAreCoalesced() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> limiter.read("servers.get srv-1", () -> {
+                requests.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "ACTIVE";
+            }));
+            started.await();
+            Future<String> second = executor.submit(() -> limiter.read("servers.get srv-1", () -> {
+                requests.incrementAndGet();
+                return "BUILD";
+            }));
+            while (limiter.getCoalescedReads() == 0) {
+                Thread.sleep(5);
+            }
+            // different resources are not coalesced
+            assertEquals("BUILD", limiter.read("servers.get srv-2", () -> {
+                requests.incrementAndGet();
+                return "BUILD";
+            }));
+            release.countDown();
+            assertEquals("ACTIVE", first.get());
+            assertEquals("ACTIVE", second.get());
+            assertEquals(2, requests.get());
+            // completed reads are not cached
+            assertEquals("BUILD", limiter.read("servers.get srv-1", () -> "BUILD"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
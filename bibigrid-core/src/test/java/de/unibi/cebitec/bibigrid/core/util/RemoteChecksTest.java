@@ -0,0 +1,139 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RemoteChecksTest {
+    private static final String GALAXY_RESPONSE = "{\"count\":1,\"results\":[{\"name\":\"docker\"," +
+            "\"summary_fields\":{\"namespace\":{\"name\":\"geerlingguy\"}}}]}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 200, "");
+        });
+        server.createContext("/missing", exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 404, "");
+        });
+        server.createContext("/slow", exchange -> {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException ignored) {
+            }
+            respond(exchange, 200, "");
+        });
+        server.createContext("/galaxy/", exchange -> {
+            requests.incrementAndGet();
+            String query = exchange.getRequestURI().getQuery();
+            respond(exchange, 200,
+                    query.endsWith("search=docker") ? GALAXY_RESPONSE : "{\"count\":0,\"results\":[]}");
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String response) throws IOException {
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    private RemoteChecks createChecks(int readTimeoutMillis) {
+        Path cacheFile = folder.getRoot().toPath().resolve("cache").resolve("remote-checks.properties");
+        return new RemoteChecks(cacheFile, RemoteChecks.DEFAULT_TTL_MILLIS, baseUrl + "/galaxy/",
+                readTimeoutMillis);
+    }
+
+    @Test
+    public void validateUrls() {
+        RemoteChecks checks = createChecks(RemoteChecks.READ_TIMEOUT_MILLIS);
+        assertTrue(checks.isValidURL(baseUrl + "/ok"));
+        assertFalse(checks.isValidURL(baseUrl + "/missing"));
+        assertFalse(checks.isValidURL("http://127.0.0.1:1/unreachable"));
+    }
+
+    @Test
+    public void validateGalaxyRoles() {
+        RemoteChecks checks = createChecks(RemoteChecks.READ_TIMEOUT_MILLIS);
+        assertTrue(checks.isValidAnsibleGalaxyRole("geerlingguy", "docker"));
+        assertFalse(checks.isValidAnsibleGalaxyRole("someone", "docker"));
+        assertFalse(checks.isValidAnsibleGalaxyRole("geerlingguy", "unknown"));
+    }
+
+    @Test
+    public void cachePositiveResults() {
+        List<RemoteChecks.Check> list = new ArrayList<>();
+        RemoteChecks checks = createChecks(RemoteChecks.READ_TIMEOUT_MILLIS);
+        list.add(() -> checks.isValidURL(baseUrl + "/ok"));
+        list.add(() -> checks.isValidAnsibleGalaxyRole("geerlingguy", "docker"));
+        assertTrue(checks.checkAll(list));
+        assertEquals(2, requests.get());
+
+        // A new instance reads the persisted cache, negative results are not cached
+        RemoteChecks cached = createChecks(RemoteChecks.READ_TIMEOUT_MILLIS);
+        assertTrue(cached.isValidURL(baseUrl + "/ok"));
+        assertTrue(cached.isValidAnsibleGalaxyRole("geerlingguy", "docker"));
+        assertFalse(cached.isValidURL(baseUrl + "/missing"));
+        assertFalse(cached.isValidURL(baseUrl + "/missing"));
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void runChecksConcurrently() {
+        RemoteChecks checks = createChecks(RemoteChecks.READ_TIMEOUT_MILLIS);
+        List<RemoteChecks.Check> list = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String url = baseUrl + "/slow?role=" + i;
+            list.add(() -> checks.isValidURL(url));
+        }
+        long start = System.nanoTime();
+        assertTrue(checks.checkAll(list));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Checks took " + millis + "ms", millis < 8 * 500);
+        list.add(() -> checks.isValidURL(baseUrl + "/missing"));
+        assertFalse(checks.checkAll(list));
+    }
+
+    @Test
+    public void timeoutSlowEndpoint() {
+        RemoteChecks checks = createChecks(100);
+        assertFalse(checks.isValidURL(baseUrl + "/slow"));
+    }
+}
@@ -0,0 +1,111 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+    private final RetryPolicy policy = new RetryPolicy(4, 10, 40, 5000).withClassifier(e ->
+            e instanceof IllegalStateException ? RetryPolicy.Failure.TRANSIENT :
+                    e instanceof UnsupportedOperationException ? RetryPolicy.Failure.REJECTED :
+                            RetryPolicy.Failure.PERMANENT);
+
+    @After
+    public void clear() {
+        ApiMetrics.getInstance().clear();
+    }
+
+    private static ApiMetrics.ApiCall<String, RuntimeException> failing(AtomicInteger attempts, int failures,
+                                                                        RuntimeException e) {
+        return () -> {
+            if (attempts.incrementAndGet() <= failures) {
+                throw e;
+            }
+            return "srv";
+        };
+    }
+
+    @Test
+    public void idempotencyIsDerivedFromOperation() {
+        assertTrue(RetryPolicy.isIdempotent("compute.servers.get"));
+        assertTrue(RetryPolicy.isIdempotent("servers.delete"));
+        assertFalse(RetryPolicy.isIdempotent("compute.servers.boot"));
+        assertFalse(RetryPolicy.isIdempotent("network.floatingIps.create"));
+    }
+
+    @Test
+    public void transientErrorsOfIdempotentCallsAreRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertEquals("srv", policy.call("servers.get", failing(attempts, 2, new IllegalStateException("500"))));
+        assertEquals(3, attempts.get());
+        assertEquals(2, ApiMetrics.getInstance().getOperation("servers.get").getRetries());
+    }
+
+    @Test
+    public void onlyRejectedNonIdempotentCallsAreRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            policy.call("servers.boot", failing(attempts, 1, new IllegalStateException("500")));
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+        assertEquals(1, attempts.get());
+
+        attempts.set(0);
+        assertEquals("srv", policy.call("servers.boot", failing(attempts, 1,
+                new UnsupportedOperationException("503"))));
+        assertEquals(2, attempts.get());
+        // idempotency given explicitly, e.g. requests with a client token
+        attempts.set(0);
+        assertEquals("srv", policy.call("servers.boot", true, failing(attempts, 1, new IllegalStateException("500"))));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void permanentErrorsAreNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            policy.call("servers.get", failing(attempts, 1, new IllegalArgumentException("404")));
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void retriesAreBounded() {
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            policy.call("servers.get", failing(attempts, 10, new IllegalStateException("500")));
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+        assertEquals(4, attempts.get());
+
+        // the deadline stops retrying before the attempts are used up
+        RetryPolicy shortDeadline = new RetryPolicy(10, 50, 50, 120).withClassifier(policy::classify);
+        attempts.set(0);
+        try {
+            shortDeadline.call("servers.get", failing(attempts, 10, new IllegalStateException("500")));
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+        assertTrue(attempts.get() < 10);
+    }
+
+    @Test
+    public void delaysGrowExponentiallyWithJitter() {
+        RetryPolicy delays = new RetryPolicy(10, 100, 1000, 5000);
+        for (int i = 0; i < 20; i++) {
+            long first = delays.getDelay(1);
+            assertTrue(first >= 50 && first <= 100);
+            long third = delays.getDelay(3);
+            assertTrue(third >= 200 && third <= 400);
+            long capped = delays.getDelay(8);
+            assertTrue(capped >= 500 && capped <= 1000);
+        }
+    }
+}
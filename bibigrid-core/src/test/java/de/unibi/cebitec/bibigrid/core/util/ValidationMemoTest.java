@@ -0,0 +1,72 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ValidationMemoTest {
+    private static final long TTL = 60_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static class TestConfiguration extends Configuration {
+        public TestConfiguration() throws IOException {
+            setUser("ubuntu");
+            setNetwork("bibigrid-net");
+        }
+    }
+
+    @Test
+    public void hashIsStable() throws IOException {
+        Path key = folder.newFile("id_rsa.pub").toPath();
+        Files.write(key, "ssh-rsa AAAA".getBytes(StandardCharsets.UTF_8));
+        List<String> files = Collections.singletonList(key.toString());
+
+        TestConfiguration config = new TestConfiguration();
+        String hash = ValidationMemo.hash(config, files, "https://openstack:5000/v3");
+        // random and run specific values are not part of the hash
+        TestConfiguration other = new TestConfiguration();
+        other.getMungeKey();
+        other.setClusterIds("abc");
+        assertEquals(hash, ValidationMemo.hash(other, files, "https://openstack:5000/v3"));
+
+        assertNotEquals(hash, ValidationMemo.hash(config, files, "https://other:5000/v3"));
+        other.setNetwork("other-net");
+        assertNotEquals(hash, ValidationMemo.hash(other, files, "https://openstack:5000/v3"));
+        Files.write(key, "ssh-rsa BBBB".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(hash, ValidationMemo.hash(config, files, "https://openstack:5000/v3"));
+    }
+
+    @Test
+    public void recordValidation() {
+        Path file = folder.getRoot().toPath().resolve("cache").resolve("validations.properties");
+        ValidationMemo memo = new ValidationMemo(file, "abc", TTL, false);
+        assertNull(memo.getValidatedAt());
+        memo.recordSuccess();
+        assertNotNull(memo.getValidatedAt());
+        assertNotNull(new ValidationMemo(file, "abc", TTL, false).getValidatedAt());
+        assertNull(new ValidationMemo(file, "def", TTL, false).getValidatedAt());
+        assertNull(new ValidationMemo(file, "abc", TTL, true).getValidatedAt());
+        assertNull(new ValidationMemo(file, "abc", 0, false).getValidatedAt());
+    }
+
+    @Test
+    public void validationExpires() throws InterruptedException {
+        Path file = folder.getRoot().toPath().resolve("validations.properties");
+        ValidationMemo memo = new ValidationMemo(file, "abc", 50, false);
+        memo.recordSuccess();
+        Thread.sleep(100);
+        assertNull(memo.getValidatedAt());
+    }
+}
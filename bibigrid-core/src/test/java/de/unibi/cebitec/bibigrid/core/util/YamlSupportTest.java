@@ -0,0 +1,62 @@
+package de.unibi.cebitec.bibigrid.core.util;
+
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class YamlSupportTest {
+    private static Map<String, Object> getMap(int i) {
+        Map<String, Object> ip = new LinkedHashMap<>();
+        ip.put("ip", "192.168.0." + i);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enable_nfs", "yes");
+        map.put("cores", i);
+        map.put("ephemerals", Arrays.asList("/dev/vdb", "/dev/vdc"));
+        map.put("master", ip);
+        map.put("workers", Arrays.asList(ip, ip));
+        return map;
+    }
+
+    @Test
+    public void sameOutputAsNewYaml() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(new Yaml().dumpAsMap(getMap(i)),
+                    new String(YamlSupport.dumpAsBytes(getMap(i)), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void flowStyle() {
+        StringWriter writer = new StringWriter();
+        YamlSupport.dumpFlow(getMap(5).get("master"), writer);
+        assertEquals("{ip: 192.168.0.5}\n", writer.toString());
+    }
+
+    @Test
+    public void concurrentUse() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i;
+                results.add(executor.submit(() -> {
+                    byte[] yaml = YamlSupport.dumpAsBytes(getMap(n));
+                    return getMap(n).toString().equals(
+                            YamlSupport.load(new ByteArrayInputStream(yaml), Map.class).toString());
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertEquals(true, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -3,6 +3,8 @@ package de.unibi.cebitec.bibigrid.googlecloud;
 import com.google.api.client.auth.oauth2.TokenResponseException;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.compute.Compute;
@@ -12,6 +14,7 @@ import com.google.api.services.compute.model.Subnetwork;
 import de.unibi.cebitec.bibigrid.core.model.*;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.ClientConnectionFailedException;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.NotYetSupportedException;
+import de.unibi.cebitec.bibigrid.core.util.RetryPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
@@ -30,6 +33,7 @@ import java.util.stream.Collectors;
  */
 class ClientGoogleCloud extends Client {
     private static final Logger LOG = LoggerFactory.getLogger(ClientGoogleCloud.class);
+    static final RetryPolicy RETRY = RetryPolicy.DEFAULT.withClassifier(ClientGoogleCloud::classify);
 
     private final ConfigurationGoogleCloud config;
     private Compute internalClient;
@@ -58,6 +62,30 @@ class ClientGoogleCloud extends Client {
         LOG.info("Google compute connection established.");
     }
 
+    /**
+     * Rate limited requests and unavailable services have not been processed. Internal errors and other io
+     * failures like timeouts may have been processed.
+     */
+    private static RetryPolicy.Failure classify(Throwable e) {
+        if (e instanceof HttpResponseException) {
+            int status = ((HttpResponseException) e).getStatusCode();
+            if (status == 429 || status == 503) {
+                return RetryPolicy.Failure.REJECTED;
+            }
+            return status >= 500 ? RetryPolicy.Failure.TRANSIENT : RetryPolicy.Failure.PERMANENT;
+        }
+        return e instanceof IOException ? RetryPolicy.Failure.TRANSIENT : RetryPolicy.Failure.PERMANENT;
+    }
+
+    /**
+     * Executes a compute api request and retries it on transient errors according to the {@link RetryPolicy}.
+     *
+     * @param operation name of the operation, e.g. "compute.instances.get"
+     */
+    static <T> T execute(String operation, AbstractGoogleClientRequest<T> request) throws IOException {
+        return RETRY.call(operation, request::execute);
+    }
+
     Compute getInternal() {
         return internalClient;
     }
@@ -180,4 +208,34 @@ class ClientGoogleCloud extends Client {
     public ServerGroup getServerGroupByIdOrName(String serverGroup) throws NotYetSupportedException {
         throw new NotYetSupportedException("Server groups are currently not supported by BiBigrid Google.");
     }
+
+    /**
+     * Region quotas of the project. Google does not limit memory, addresses are limited by in use addresses.
+     */
+    @Override
+    public Quotas getQuotas() {
+        Quotas quotas = new Quotas();
+        try {
+            for (com.google.api.services.compute.model.Quota quota :
+                    internalClient.regions().get(config.getGoogleProjectId(), config.getRegion()).execute()
+                            .getQuotas()) {
+                long limit = quota.getLimit().longValue();
+                long used = quota.getUsage().longValue();
+                switch (quota.getMetric()) {
+                    case "INSTANCES":
+                        quotas.set(Quotas.Resource.INSTANCES, limit, used);
+                        break;
+                    case "CPUS":
+                        quotas.set(Quotas.Resource.CORES, limit, used);
+                        break;
+                    case "IN_USE_ADDRESSES":
+                        quotas.set(Quotas.Resource.FLOATING_IPS, limit, used);
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to load quotas of region '{}': {}", config.getRegion(), e.getMessage());
+        }
+        return quotas;
+    }
 }
@@ -75,8 +75,8 @@ public class CreateClusterGoogleCloud extends CreateCluster {
         LOG.info("Waiting for master instance to finish booting ...");
         try {
             String zone = config.getAvailabilityZone();
-            Operation createMasterOperation = compute.instances()
-                    .insert(config.getGoogleProjectId(), zone, masterInstance).execute();
+            Operation createMasterOperation = ClientGoogleCloud.execute("compute.instances.insert",
+                    compute.instances().insert(config.getGoogleProjectId(), zone, masterInstance));
             masterInstance = waitForInstances(new Instance[]{masterInstance}, new Operation[]{createMasterOperation}).get(0);
         } catch (Exception e) {
             LOG.error("Failed to start master instance. {}", e);
@@ -117,8 +117,8 @@ public class CreateClusterGoogleCloud extends CreateCluster {
             GoogleCloudUtils.setInstanceSchedulingOptions(workerBuilder, config.isUseSpotInstances());
             try {
                 // Start the instance
-                workerInstanceOperations[i] = compute.instances()
-                        .insert(config.getGoogleProjectId(), zone, workerBuilder).execute();
+                workerInstanceOperations[i] = ClientGoogleCloud.execute("compute.instances.insert",
+                        compute.instances().insert(config.getGoogleProjectId(), zone, workerBuilder));
                 workerInstanceBuilders[i] = workerBuilder;
             } catch (Exception e) {
                 LOG.error("Failed to start worker instance. {}", e);
@@ -137,6 +137,9 @@ public class CreateClusterGoogleCloud extends CreateCluster {
         for (int i = 0; i < instances.size(); i++) {
             Instance instance = instances.get(i);
             do {
+                if (isCancelled()) {
+                    return;
+                }
                 instance = GoogleCloudUtils.reload(compute, config, instance);
                 String status = instance.getStatus();
                 LOG.info(V, "Status of instance '{}': {}", instance.getName(), status);
@@ -116,11 +116,14 @@ final class GoogleCloudUtils {
         while (operation != null && !status.equals("DONE")) {
             try {
                 Thread.sleep(1000);
-                operation = compute.zoneOperations().get(projectId, zone, opId).execute();
+                operation = ClientGoogleCloud.execute("compute.zoneOperations.get",
+                        compute.zoneOperations().get(projectId, zone, opId));
                 if (operation != null) {
                     status = operation.getStatus();
                 }
-            } catch (InterruptedException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
             } catch (IOException e) {
                 throw new InterruptedException(e.getMessage());
             }
@@ -139,7 +142,8 @@ final class GoogleCloudUtils {
         try {
             String projectId = config.getGoogleProjectId();
             String zone = config.getAvailabilityZone();
-            instance = compute.instances().get(projectId, zone, instance.getName()).execute();
+            instance = ClientGoogleCloud.execute("compute.instances.get",
+                    compute.instances().get(projectId, zone, instance.getName()));
         } catch (IOException ignored) {
         }
         return instance;
@@ -54,7 +54,9 @@ class PrepareIntentGoogleCloud extends PrepareIntent {
                 break;
             } else {
                 LOG.info(V, "...");
-                sleep(10);
+                if (!sleep(10)) {
+                    return;
+                }
             }
         } while (true);
     }
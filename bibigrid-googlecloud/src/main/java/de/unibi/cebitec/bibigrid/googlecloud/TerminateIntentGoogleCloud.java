@@ -37,18 +37,28 @@ public class TerminateIntentGoogleCloud extends TerminateIntent {
         return terminateInstances(compute, cluster) && terminateNetwork(compute, cluster);
     }
 
+    @Override
+    public boolean terminateInstances(List<Instance> instances) {
+        return terminateInstances(((ClientGoogleCloud) client).getInternal(), instances);
+    }
+
     private boolean terminateInstances(final Compute compute, final Cluster cluster) {
-        final String zone = config.getAvailabilityZone();
-        List<Instance> instances = cluster.getWorkerInstances();
+        List<Instance> instances = new ArrayList<>(cluster.getWorkerInstances());
         if (cluster.getMasterInstance() != null) {
             instances.add(cluster.getMasterInstance());
         }
+        return terminateInstances(compute, instances);
+    }
+
+    private boolean terminateInstances(final Compute compute, final List<Instance> instances) {
+        final String zone = config.getAvailabilityZone();
         boolean success = true;
         if (instances.size() > 0) {
             LOG.info("Waiting for {} instances to shut down. This might take a while.", instances.size());
             for (Instance i : instances) {
                 try {
-                    Operation operation = compute.instances().delete(config.getGoogleProjectId(), zone, i.getName()).execute();
+                    Operation operation = ClientGoogleCloud.execute("compute.instances.delete",
+                            compute.instances().delete(config.getGoogleProjectId(), zone, i.getName()));
                     GoogleCloudUtils.waitForOperation(compute, config, operation);
                 } catch (Exception e) {
                     LOG.error("Failed to delete instance '{}'. {}", i, e);
@@ -63,7 +73,8 @@ public class TerminateIntentGoogleCloud extends TerminateIntent {
         List<String> firewallsToRemove = new ArrayList<>();
         try {
             // Collect all firewall rules that were created for this cluster
-            FirewallList list = compute.firewalls().list(config.getGoogleProjectId()).execute();
+            FirewallList list = ClientGoogleCloud.execute("compute.firewalls.list",
+                    compute.firewalls().list(config.getGoogleProjectId()));
             for (Firewall firewall : list.getItems()) {
                 if (firewall.getName().startsWith(CreateClusterEnvironment.SECURITY_GROUP_PREFIX + "rule") &&
                         firewall.getName().endsWith(cluster.getClusterId())) {
@@ -77,7 +88,8 @@ public class TerminateIntentGoogleCloud extends TerminateIntent {
         // Sequentially remove all the firewall rules
         for (String firewallLink : firewallsToRemove) {
             try {
-                compute.firewalls().delete(config.getGoogleProjectId(), firewallLink).execute();
+                ClientGoogleCloud.execute("compute.firewalls.delete",
+                        compute.firewalls().delete(config.getGoogleProjectId(), firewallLink));
             } catch (IOException e) {
                 LOG.error("Failed to delete firewall rule '{}'. {}", firewallLink, e);
                 return false;
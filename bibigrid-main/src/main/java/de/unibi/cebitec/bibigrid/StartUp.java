@@ -5,13 +5,19 @@ import de.unibi.cebitec.bibigrid.core.intents.*;
 import de.unibi.cebitec.bibigrid.core.model.*;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.ClientConnectionFailedException;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
+import de.unibi.cebitec.bibigrid.core.util.ApiMetrics;
 import de.unibi.cebitec.bibigrid.core.util.ConfigurationFile;
+import de.unibi.cebitec.bibigrid.core.util.FlightRecording;
+import de.unibi.cebitec.bibigrid.core.util.PhaseTracer;
 import de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter;
 
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Formatter;
 import java.util.Locale;
 import java.util.jar.JarFile;
@@ -23,6 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static de.unibi.cebitec.bibigrid.core.util.ImportantInfoOutputFilter.I;
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
 
 /**
  * Startup/Main class of BiBiGrid.
@@ -49,6 +56,13 @@ public class StartUp {
         Option ide = new Option(IntentMode.IDE.getShortParam(), IntentMode.IDE.getLongParam(),
                 true, "Start a Web IDE");
         ide.setArgName("cluster-id");
+        Option resume = new Option(IntentMode.RESUME.getShortParam(), IntentMode.RESUME.getLongParam(),
+                true, "Resume the setup of a cluster from its journal");
+        resume.setArgName("cluster-id");
+        Option scaleUp = new Option(IntentMode.SCALE_UP.getShortParam(), IntentMode.SCALE_UP.getLongParam(),
+                true, "Add workers of a configured batch to a running cluster");
+        scaleUp.setArgs(3);
+        scaleUp.setArgName("cluster-id> <batch> <count");
         Option list = new Option(IntentMode.LIST.getShortParam(), IntentMode.LIST.getLongParam(),
                 true, "List running clusters");
         list.setOptionalArg(true);
@@ -60,6 +74,8 @@ public class StartUp {
                         false, "Help"))
                 .addOption(new Option(IntentMode.CREATE.getShortParam(), IntentMode.CREATE.getLongParam(),
                         false, "Create cluster"))
+                .addOption(resume)
+                .addOption(scaleUp)
                 .addOption(new Option(IntentMode.PREPARE.getShortParam(), IntentMode.PREPARE.getLongParam(),
                         false, "Prepare cluster images for faster setup"))
                 .addOption(list)
@@ -80,6 +96,9 @@ public class StartUp {
         cmdLineOptions.addOption(new Option("o","config",true,"Path to JSON configuration file"));
         cmdLineOptions.addOption(new Option("d","debug",false,"Don't shut down cluster in the case of a configuration error."));
         cmdLineOptions.addOption(new Option("m","mode",true,"One of "+String.join(",",Provider.getInstance().getProviderNames())));
+        cmdLineOptions.addOption(new Option("r","record",false,"Write a Java Flight Recorder file of the run to the reports directory."));
+        cmdLineOptions.addOption(new Option(null,"force-validate",false,"Validate the configuration even if it has been validated successfully before."));
+        cmdLineOptions.addOption(new Option(null,"keep-on-interrupt",false,"Keep the resources of an interrupted cluster setup instead of rolling it back."));
         cmdLineOptions.addOptionGroup(intentOptions);
         try {
             CommandLine cl = cli.parse(cmdLineOptions, args);
@@ -105,6 +124,9 @@ public class StartUp {
             if (cl.hasOption("debug")) {
                 Configuration.DEBUG = true;
             }
+            if (cl.hasOption("record")) {
+                FlightRecording.start();
+            }
 
             String providerMode = null;
             if (cl.hasOption("mode")) {
@@ -140,6 +162,11 @@ public class StartUp {
 
                 // get provider specific validator
                 Validator validator =  module.getValidator(config,module);
+                validator.setForceValidation(cl.hasOption("force-validate"));
+                if (cl.hasOption("keep-on-interrupt")) {
+                    config.setKeepOnInterrupt(true);
+                }
+                int scaleUpBatch = 0;
 
                 switch (intentMode){
                     case TERMINATE:
@@ -151,6 +178,26 @@ public class StartUp {
                     case IDE:
                         config.setId(cl.getOptionValue(IntentMode.IDE.getShortParam().trim()));
 
+                        break;
+                    case RESUME:
+                        config.setId(cl.getOptionValue(IntentMode.RESUME.getShortParam()).trim());
+                        break;
+                    case SCALE_UP:
+                        String[] scaleUp = cl.getOptionValues(IntentMode.SCALE_UP.getShortParam());
+                        if (scaleUp.length != 3) {
+                            throw new ConfigurationException("Usage: --" + IntentMode.SCALE_UP.getLongParam() +
+                                    " <cluster-id> <batch> <count>");
+                        }
+                        config.setId(scaleUp[0].trim());
+                        scaleUpBatch = parseScaleUpArgument(scaleUp[1], "batch");
+                        int scaleUpCount = parseScaleUpArgument(scaleUp[2], "count");
+                        if (scaleUpBatch > config.getWorkerInstances().size()) {
+                            throw new ConfigurationException("Worker batch " + scaleUpBatch + " is not configured.");
+                        }
+                        // only the added workers are validated, e.g. against the quotas
+                        for (int i = 0; i < config.getWorkerInstances().size(); i++) {
+                            config.getWorkerInstances().get(i).setCount(i == scaleUpBatch - 1 ? scaleUpCount : 0);
+                        }
                         break;
                     case CREATE:
                     case PREPARE:
@@ -165,7 +212,7 @@ public class StartUp {
                     case VALIDATE:
                 }
                 if (validator.validate()) {
-                    runIntent(module, validator, config, intentMode);
+                    runIntent(module, validator, config, intentMode, scaleUpBatch);
                 } else {
                     LOG.error(ABORT_WITH_NOTHING_STARTED);
                 }
@@ -215,7 +262,20 @@ public class StartUp {
         //runIntent(commandLine, IntentMode.HELP);
     }
 
-    private static void runIntent(ProviderModule module, Validator validator, Configuration config, IntentMode intentMode) {
+    private static int parseScaleUpArgument(String value, String name) throws ConfigurationException {
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new ConfigurationException("The " + name + " of --" + IntentMode.SCALE_UP.getLongParam() +
+                " has to be a positive number, but is '" + value + "'.");
+    }
+
+    private static void runIntent(ProviderModule module, Validator validator, Configuration config,
+                                  IntentMode intentMode, int scaleUpBatch) {
 
 
             Client client;
@@ -246,15 +306,48 @@ public class StartUp {
                     }
                     break;
                 case VALIDATE:
-                    if (module.getValidateIntent(client, config).validate()) {
+                    ValidateIntent validation = module.getValidateIntent(client, config);
+                    validation.setValidationMemo(validator.getValidationMemo());
+                    if (validation.validate()) {
                        LOG.info(I, "You can now start your cluster.");
                     } else {
                        LOG.error("There were one or more errors. Please adjust your configuration.");
                     }
                     break;
                 case CREATE:
-                    if (module.getValidateIntent(client, config).validate()) {
-                        runCreateIntent(module, config, client, module.getCreateIntent(client, config), false);
+                    ValidateIntent validateIntent = module.getValidateIntent(client, config);
+                    validateIntent.setValidationMemo(validator.getValidationMemo());
+                    if (validateIntent.validate()) {
+                        CreateCluster createCluster = module.getCreateIntent(client, config);
+                        createCluster.setResources(validateIntent.getResources());
+                        runCreateIntent(module, config, client, createCluster, false);
+                        writeReports(createCluster.getClusterId(), "");
+                    } else {
+                        LOG.error("There were one or more errors. Please adjust your configuration.");
+                    }
+                    break;
+                case RESUME:
+                    ValidateIntent resumeValidation = module.getValidateIntent(client, config);
+                    resumeValidation.setValidationMemo(validator.getValidationMemo());
+                    if (resumeValidation.validate()) {
+                        CreateCluster resumedCluster = module.getCreateIntent(client, config);
+                        resumedCluster.setResources(resumeValidation.getResources());
+                        runResumeIntent(resumedCluster, config.getId());
+                        writeReports(resumedCluster.getClusterId(), "-resume");
+                    } else {
+                        LOG.error("There were one or more errors. Please adjust your configuration.");
+                    }
+                    break;
+                case SCALE_UP:
+                    ValidateIntent scaleUpValidation = module.getValidateIntent(client, config);
+                    scaleUpValidation.setValidationMemo(validator.getValidationMemo());
+                    scaleUpValidation.setMasterRunning(true);
+                    if (scaleUpValidation.validate()) {
+                        CreateCluster scaledCluster = module.getCreateIntent(client, config);
+                        scaledCluster.setResources(scaleUpValidation.getResources());
+                        runScaleUpIntent(scaledCluster, config.getId(), scaleUpBatch,
+                                config.getWorkerInstances().get(scaleUpBatch - 1).getCount());
+                        writeReports(scaledCluster.getClusterId(), "-scale-up");
                     } else {
                         LOG.error("There were one or more errors. Please adjust your configuration.");
                     }
@@ -267,9 +360,13 @@ public class StartUp {
                         module.getTerminateIntent(client, config).terminate();
 
                     }
+                    writeReports(cluster.getClusterId(), "");
                     break;
                 case TERMINATE:
                     module.getTerminateIntent(client, config).terminate();
+                    for (String clusterId : config.getClusterIds()) {
+                        writeReports(clusterId, "-terminate");
+                    }
                     break;
                 case CLOUD9:
                     LOG.warn("Command-line option --cloud9 is deprecated. Please use --ide instead.");
@@ -290,6 +387,16 @@ public class StartUp {
                     LOG.warn("Unknown intent mode.");
                     break;
             }
+            if (ApiMetrics.getInstance().getTotalCalls() > 0) {
+                LOG.info(V, ApiMetrics.getInstance().getSummary());
+            }
+            if (FlightRecording.isRecording()) {
+                if (!EnumSet.of(IntentMode.CREATE, IntentMode.RESUME, IntentMode.SCALE_UP, IntentMode.PREPARE,
+                        IntentMode.TERMINATE).contains(intentMode)) {
+                    writeRecording(intentMode.getLongParam() + "-" + System.currentTimeMillis());
+                }
+                FlightRecording.stop();
+            }
 
     }
 
@@ -305,29 +412,36 @@ public class StartUp {
      */
     private static boolean runCreateIntent(ProviderModule module, Configuration config, Client client,
                                            CreateCluster cluster, boolean prepare) {
-        try {
+        PhaseTracer tracer = PhaseTracer.getInstance();
+        try (PhaseTracer.Span ignored = tracer.start("create cluster").arg("clusterId", cluster.getClusterId())) {
             // configure environment
-            cluster .createClusterEnvironment()
-                    .createNetwork()
-                    .createSubnet()
-                    .createSecurityGroup()
-                    .createKeyPair()
-                    .createPlacementGroup();
+            CreateClusterEnvironment environment = tracer.trace("create environment", cluster::createClusterEnvironment);
+            tracer.trace("create network", environment::createNetwork);
+            tracer.trace("create subnet", environment::createSubnet);
+            tracer.trace("create security group", environment::createSecurityGroup);
+            tracer.trace("create keypair", environment::createKeyPair);
+            tracer.trace("create placement group", environment::createPlacementGroup);
             // configure cluster
-            boolean success =  cluster
+            boolean success = tracer.trace("launch cluster", () -> cluster
                     .configureClusterMasterInstance()
                     .configureClusterWorkerInstance()
-                    .launchClusterInstances(prepare);
+                    .launchClusterInstances(prepare));
             if (!success) {
+                if (cluster.isCancelled()) {
+                    // the interrupted setup has been rolled back already
+                    return false;
+                }
                 /*  In DEBUG mode keep partial configured cluster running, otherwise clean it up */
                 if (Configuration.DEBUG) {
                     LOG.error(StartUp.KEEP);
+                    LOG.error("The setup can be continued using: --{} {}", IntentMode.RESUME.getLongParam(),
+                            cluster.getClusterId());
                 } else {
                     LOG.error(StartUp.ABORT_WITH_INSTANCES_RUNNING);
 
                     TerminateIntent cleanupIntent = module.getTerminateIntent(client, config);
 
-                    cleanupIntent.terminate();
+                    tracer.trace("cleanup", cleanupIntent::terminate);
                 }
                 return false;
             }
@@ -343,6 +457,114 @@ public class StartUp {
         return true;
     }
 
+    /**
+     * Resumes the setup of a cluster from its journal. The cluster is kept in case of an error, so the setup
+     * can be resumed again.
+     *
+     * @param cluster CreateCluster implementation
+     * @param clusterId id of the cluster to resume
+     * @return true, if cluster built successfully.
+     */
+    private static boolean runResumeIntent(CreateCluster cluster, String clusterId) {
+        PhaseTracer tracer = PhaseTracer.getInstance();
+        try (PhaseTracer.Span ignored = tracer.start("resume cluster").arg("clusterId", clusterId)) {
+            tracer.trace("resume environment", () -> cluster.resumeClusterEnvironment(clusterId));
+            boolean success = tracer.trace("launch cluster", () -> cluster
+                    .configureClusterMasterInstance()
+                    .configureClusterWorkerInstance()
+                    .launchClusterInstances(false));
+            if (!success) {
+                LOG.error("Failed to resume cluster '{}'. Please resume it again using: --{} {}\n" +
+                        "or clean up the remains using: -t {}", clusterId, IntentMode.RESUME.getLongParam(),
+                        clusterId, clusterId);
+                return false;
+            }
+        } catch (ConfigurationException ex) {
+            if (VerboseOutputFilter.SHOW_VERBOSE) {
+                LOG.error("Failed to resume cluster. {} {}", ex.getMessage(), ex);
+            } else {
+                LOG.error("Failed to resume cluster. {}", ex.getMessage());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds workers to a running cluster. Workers added before an error are kept, the cluster keeps running.
+     *
+     * @param cluster CreateCluster implementation
+     * @param clusterId id of the cluster to scale up
+     * @param batch number of the worker configuration, starting with 1
+     * @param count number of workers to add
+     * @return true, if the workers have been added and configured
+     */
+    private static boolean runScaleUpIntent(CreateCluster cluster, String clusterId, int batch, int count) {
+        PhaseTracer tracer = PhaseTracer.getInstance();
+        try (PhaseTracer.Span ignored = tracer.start("scale up cluster").arg("clusterId", clusterId)) {
+            tracer.trace("resume environment", () -> cluster.scaleUpClusterEnvironment(clusterId));
+            boolean success = tracer.trace("launch workers", () -> cluster
+                    .configureClusterMasterInstance()
+                    .configureClusterWorkerInstance()
+                    .scaleUpClusterInstances(batch, count));
+            if (!success) {
+                LOG.error("Failed to scale up cluster '{}'. Workers added so far keep running. List them using: " +
+                        "--{} {}", clusterId, IntentMode.LIST.getLongParam(), clusterId);
+                return false;
+            }
+        } catch (ConfigurationException ex) {
+            if (VerboseOutputFilter.SHOW_VERBOSE) {
+                LOG.error("Failed to scale up cluster. {} {}", ex.getMessage(), ex);
+            } else {
+                LOG.error("Failed to scale up cluster. {}", ex.getMessage());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the phases recorded during this run as trace file and the cloud api metrics in the
+     * Prometheus text format to the reports directory, together with the flight recording if -r is given.
+     *
+     * @param clusterId cluster the run belongs to
+     * @param suffix file name suffix after the cluster id
+     */
+    private static void writeReports(String clusterId, String suffix) {
+        Path traceFile = Paths.get(Configuration.REPORTS_DIR, clusterId + suffix + "-trace.json");
+        try {
+            PhaseTracer.getInstance().writeTrace(clusterId, traceFile);
+            LOG.info(V, "Provisioning trace written to '{}'.", traceFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to write provisioning trace '{}': {}", traceFile, e.getMessage());
+        }
+        Path metricsFile = Paths.get(Configuration.REPORTS_DIR, clusterId + suffix + "-metrics.prom");
+        try {
+            ApiMetrics.getInstance().writePrometheus(metricsFile);
+            LOG.info(V, "Cloud api metrics written to '{}'.", metricsFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to write cloud api metrics '{}': {}", metricsFile, e.getMessage());
+        }
+        if (FlightRecording.isRecording()) {
+            writeRecording(clusterId + suffix);
+        }
+    }
+
+    /**
+     * Writes the flight recording of this run to the reports directory.
+     *
+     * @param name file name without extension
+     */
+    private static void writeRecording(String name) {
+        Path recordingFile = Paths.get(Configuration.REPORTS_DIR, name + ".jfr");
+        try {
+            FlightRecording.dump(recordingFile);
+            LOG.info("Flight recording written to '{}'.", recordingFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to write flight recording '{}': {}", recordingFile, e.getMessage());
+        }
+    }
+
     /**
      * Displays table of different machines (name, cores, ram, disk space, swap, ephemerals.
      *
@@ -0,0 +1,202 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.model.*;
+import de.unibi.cebitec.bibigrid.core.util.RateLimiter;
+import de.unibi.cebitec.bibigrid.core.util.RetryPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Client of the in-memory cloud.
+ */
+class ClientMock extends Client {
+    /**
+     * Delays fit the latencies of the in-memory cloud.
+     */
+    static final RetryPolicy RETRY = new RetryPolicy(5, 20, 500, 10000).withClassifier(ClientMock::classify);
+
+    private final MockCloud cloud;
+
+    ClientMock(ConfigurationMock config) {
+        cloud = MockCloud.getInstance(config.getMockCloud());
+        RateLimiter.getInstance().setThrottleClassifier(ClientMock::getRetryAfter);
+        RateLimiter.getInstance().configure(config.getApiRateLimits());
+    }
+
+    MockCloud getInternal() {
+        return cloud;
+    }
+
+    private static long getRetryAfter(Throwable e) {
+        if (e instanceof MockCloudException && ((MockCloudException) e).getStatus() ==
+                MockCloudException.TOO_MANY_REQUESTS) {
+            return ((MockCloudException) e).getRetryAfter();
+        }
+        return RateLimiter.NOT_THROTTLED;
+    }
+
+    /**
+     * Injected failures and throttled requests are thrown before the request changes the cloud.
+     */
+    private static RetryPolicy.Failure classify(Throwable e) {
+        if (!(e instanceof MockCloudException)) {
+            return RetryPolicy.Failure.PERMANENT;
+        }
+        int status = ((MockCloudException) e).getStatus();
+        return status == MockCloudException.SERVICE_UNAVAILABLE || status == MockCloudException.TOO_MANY_REQUESTS ?
+                RetryPolicy.Failure.REJECTED : RetryPolicy.Failure.PERMANENT;
+    }
+
+    /**
+     * Runs a request against the in-memory cloud within the rate limit and retries injected failures.
+     *
+     * @param operation name of the operation, e.g. "servers.boot"
+     */
+    static <T> T call(String operation, Supplier<T> call) {
+        return RETRY.call(operation, () -> RateLimiter.getInstance().call(operation, call::get));
+    }
+
+    /**
+     * Runs a read only request. Identical reads in flight at the same time are sent once.
+     */
+    static <T> T read(String operation, String id, Supplier<T> call) {
+        return RateLimiter.getInstance().read(operation + " " + id, () -> call(operation, call));
+    }
+
+    @Override
+    public List<Network> getNetworks() {
+        return new ArrayList<>(cloud.listNetworks());
+    }
+
+    @Override
+    public Network getNetworkByName(String networkName) {
+        for (NetworkMock network : cloud.listNetworks()) {
+            if (network.getName().equals(networkName)) {
+                return network;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Network getNetworkById(String networkId) {
+        for (NetworkMock network : cloud.listNetworks()) {
+            if (network.getId().equals(networkId)) {
+                return network;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Network getNetworkByIdOrName(String network) {
+        for (NetworkMock n : cloud.listNetworks()) {
+            if (n.getId().equals(network) || n.getName().equals(network)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Network getDefaultNetwork() {
+        return null;
+    }
+
+    @Override
+    public List<Subnet> getSubnets() {
+        return new ArrayList<>(cloud.listSubnets());
+    }
+
+    @Override
+    public List<String> getKeypairNames() {
+        return cloud.listKeypairs();
+    }
+
+    @Override
+    public Subnet getSubnetByName(String subnetName) {
+        for (SubnetMock subnet : cloud.listSubnets()) {
+            if (subnet.getName().equals(subnetName)) {
+                return subnet;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Subnet getSubnetById(String subnetId) {
+        for (SubnetMock subnet : cloud.listSubnets()) {
+            if (subnet.getId().equals(subnetId)) {
+                return subnet;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Subnet getSubnetByIdOrName(String subnet) {
+        for (SubnetMock s : cloud.listSubnets()) {
+            if (s.getId().equals(subnet) || s.getName().equals(subnet)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public InstanceImage getImageByName(String imageName) {
+        for (InstanceImageMock image : cloud.listImages()) {
+            if (image.getName().equals(imageName)) {
+                return image;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public InstanceImage getImageById(String imageId) {
+        for (InstanceImageMock image : cloud.listImages()) {
+            if (image.getId().equals(imageId)) {
+                return image;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public InstanceImage getImageByIdOrName(String image) {
+        for (InstanceImageMock i : cloud.listImages()) {
+            if (i.getId().equals(image) || i.getName().equals(image)) {
+                return i;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Snapshot getSnapshotByName(String snapshotName) {
+        return null;
+    }
+
+    @Override
+    public Snapshot getSnapshotById(String snapshotId) {
+        return null;
+    }
+
+    @Override
+    public Snapshot getSnapshotByIdOrName(String snapshot) {
+        return null;
+    }
+
+    @Override
+    public ServerGroup getServerGroupByIdOrName(String serverGroup) {
+        return null;
+    }
+
+    @Override
+    public Quotas getQuotas() {
+        return cloud.getLimits();
+    }
+}
@@ -0,0 +1,26 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Configuration of the mock provider. The behaviour of the in-memory cloud is set in the
+ * <code>mockCloud</code> section.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ConfigurationMock extends Configuration {
+    public ConfigurationMock() throws IOException {
+        super();
+    }
+
+    private MockCloudSettings mockCloud = new MockCloudSettings();
+
+    public MockCloudSettings getMockCloud() {
+        return mockCloud;
+    }
+
+    public void setMockCloud(MockCloudSettings mockCloud) {
+        this.mockCloud = mockCloud != null ? mockCloud : new MockCloudSettings();
+    }
+}
@@ -0,0 +1,150 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.intents.CreateClusterEnvironment;
+import de.unibi.cebitec.bibigrid.core.model.Client;
+import de.unibi.cebitec.bibigrid.core.model.Cluster;
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.Subnet;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.NotYetSupportedException;
+import de.unibi.cebitec.bibigrid.core.util.SubNets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * Prepare the in-memory cloud environment for a cluster.
+ */
+public class CreateClusterEnvironmentMock extends CreateClusterEnvironment {
+    private static final Logger LOG = LoggerFactory.getLogger(CreateClusterEnvironmentMock.class);
+    private static final String NETWORK_CIDR = "10.0.0.0/8";
+    /**
+     * Addresses of a subnet not available for instances (network, gateway, services and broadcast).
+     */
+    private static final int RESERVED_ADDRESSES = 11;
+
+    private final ClientMock mockClient;
+    private final MockCloud cloud;
+    private String securityGroupId;
+
+    CreateClusterEnvironmentMock(Client client, CreateClusterMock cluster) throws ConfigurationException {
+        super(client, cluster);
+        mockClient = (ClientMock) client;
+        cloud = mockClient.getInternal();
+    }
+
+    @Override
+    public CreateClusterEnvironmentMock createNetwork() throws ConfigurationException {
+        Configuration config = getConfig();
+        try {
+            if (config.getSubnet() != null) {
+                // network is determined by the subnet
+                return this;
+            }
+            if (config.getNetwork() != null) {
+                network = cluster.getResources().getNetwork(config.getNetwork());
+                if (network == null) {
+                    throw new ConfigurationException("No network with name or id '" + config.getNetwork() + "' found!");
+                }
+                LOG.info("Using existing network (ID: {}).", network.getId());
+            } else {
+                network = cloud.createNetwork(NETWORK_PREFIX + cluster.getClusterId());
+                LOG.info("Network (ID: {}, NAME: {}) created.", network.getId(), network.getName());
+            }
+        } catch (MockCloudException | NotYetSupportedException e) {
+            throw new ConfigurationException("Failed to create network. " + e.getMessage());
+        }
+        return this;
+    }
+
+    @Override
+    public CreateClusterEnvironmentMock createSubnet() throws ConfigurationException {
+        Configuration config = getConfig();
+        try {
+            if (config.getSubnet() != null) {
+                subnet = cluster.getResources().getSubnet(config.getSubnet());
+                if (subnet == null) {
+                    throw new ConfigurationException("No subnet with id '" + config.getSubnet() + "' found!");
+                }
+                network = cluster.getResources().getNetwork(subnet.getNetworkId());
+                if (network == null) {
+                    throw new ConfigurationException("No network with id '" + subnet.getNetworkId() + "' found!");
+                }
+                LOG.info("Using existing subnet. (ID: {}, CIDR: {})", subnet.getId(), subnet.getCidr());
+                return this;
+            }
+            List<String> usedCidrs = new ArrayList<>();
+            for (Subnet s : client.getSubnets()) {
+                usedCidrs.add(s.getCidr());
+            }
+            String cidr = new SubNets(NETWORK_CIDR, getSubnetSize(config.getWorkerInstanceCount() + 1))
+                    .nextCidr(usedCidrs);
+            if (cidr == null) {
+                throw new ConfigurationException("No free subnet left in '" + NETWORK_CIDR + "'!");
+            }
+            subnet = cloud.createSubnet(SUBNET_PREFIX + cluster.getClusterId(), network.getId(), cidr);
+            LOG.info("Subnet (ID: {}, CIDR: {}) created.", subnet.getId(), subnet.getCidr());
+        } catch (MockCloudException | NotYetSupportedException e) {
+            throw new ConfigurationException("Failed to create subnet. " + e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * @return largest prefix length (at most /24) of a subnet providing addresses for the given number of instances
+     */
+    static int getSubnetSize(int instances) {
+        int size = 24;
+        while (size > 8 && (1L << (32 - size)) - RESERVED_ADDRESSES < instances) {
+            size--;
+        }
+        return size;
+    }
+
+    @Override
+    public CreateClusterEnvironmentMock createSecurityGroup() throws ConfigurationException {
+        try {
+            securityGroupId = cloud.createSecurityGroup(SECURITY_GROUP_PREFIX + cluster.getClusterId());
+            LOG.info(V, "Security group (ID: {}) created.", securityGroupId);
+        } catch (MockCloudException e) {
+            throw new ConfigurationException("Failed to create security group. " + e.getMessage());
+        }
+        return this;
+    }
+
+    @Override
+    public CreateClusterEnvironmentMock createKeyPair() throws ConfigurationException {
+        Configuration.ClusterKeyPair keyPair = getConfig().getClusterKeyPair();
+        try {
+            cloud.createKeypair(keyPair.getName(), keyPair.getPublicKey());
+            LOG.info(V, "Keypair '{}' created.", keyPair.getName());
+        } catch (MockCloudException e) {
+            throw new ConfigurationException("Failed to create keypair. " + e.getMessage());
+        }
+        return this;
+    }
+
+    @Override
+    public CreateClusterEnvironmentMock resume(Cluster existing, String networkId, String subnetId)
+            throws ConfigurationException {
+        resumeNetwork(networkId, subnetId);
+        securityGroupId = existing.getSecurityGroup();
+        if (securityGroupId == null) {
+            throw new ConfigurationException("Security group of cluster '" + cluster.getClusterId() +
+                    "' no longer exists!");
+        }
+        String keypair = getConfig().getClusterKeyPair().getName();
+        if (!cloud.listKeypairs().contains(keypair)) {
+            throw new ConfigurationException("Keypair '" + keypair + "' no longer exists!");
+        }
+        return this;
+    }
+
+    String getSecurityGroupId() {
+        return securityGroupId;
+    }
+}
@@ -0,0 +1,210 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.intents.CreateCluster;
+import de.unibi.cebitec.bibigrid.core.model.Client;
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.Instance;
+import de.unibi.cebitec.bibigrid.core.model.InstanceImage;
+import de.unibi.cebitec.bibigrid.core.model.InstanceType;
+import de.unibi.cebitec.bibigrid.core.model.ProviderModule;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.NotYetSupportedException;
+import de.unibi.cebitec.bibigrid.core.util.ApiMetrics;
+import de.unibi.cebitec.bibigrid.core.util.PhaseTracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * Mock specific implementation of CreateCluster. Instances are requested and polled like on a real cloud,
+ * but there is no machine behind them, so the ansible configuration is skipped.
+ */
+public class CreateClusterMock extends CreateCluster {
+    private static final Logger LOG = LoggerFactory.getLogger(CreateClusterMock.class);
+
+    private final ClientMock mockClient;
+    private final MockCloud cloud;
+
+    CreateClusterMock(final ProviderModule providerModule, Client client, final Configuration config) {
+        super(providerModule, client, config);
+        mockClient = (ClientMock) client;
+        cloud = mockClient.getInternal();
+    }
+
+    @Override
+    protected List<Configuration.MountPoint> resolveMountSources(List<Configuration.MountPoint> mountPoints) {
+        // the in-memory cloud accepts every volume
+        return new ArrayList<>(mountPoints);
+    }
+
+    private Map<String, String> getMetadata(String nameTag) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(Instance.TAG_NAME, nameTag);
+        metadata.put(Instance.TAG_BIBIGRID_ID, clusterId);
+        metadata.put(Instance.TAG_USER, config.getUser());
+        return metadata;
+    }
+
+    private MockServer bootServer(String name, Configuration.InstanceConfiguration instanceConfiguration,
+                                  Map<String, String> metadata) {
+        return bootServer(name, instanceConfiguration, instanceConfiguration.getProviderType(), metadata);
+    }
+
+    private MockServer bootServer(String name, Configuration.InstanceConfiguration instanceConfiguration,
+                                  InstanceType type, Map<String, String> metadata) {
+        InstanceImage image;
+        try {
+            image = resources.getImage(instanceConfiguration.getImage());
+        } catch (NotYetSupportedException e) {
+            throw new MockCloudException(MockCloudException.NOT_FOUND, e.getMessage());
+        }
+        return ClientMock.call("servers.boot", () -> cloud.bootServer(name, type.getValue(), image.getId(),
+                config.getClusterKeyPair().getName(), environment.getSubnet().getId(), metadata));
+    }
+
+    @Override
+    protected InstanceMock launchClusterMasterInstance(String masterNameTag) {
+        return launchClusterMasterInstance(masterNameTag, 1);
+    }
+
+    /**
+     * @param attempt number of the launch attempt, failed masters are launched again within the limits of the
+     *                {@link ClientMock#RETRY retry policy}
+     */
+    private InstanceMock launchClusterMasterInstance(String masterNameTag, int attempt) {
+        try {
+            long requestNanos = System.nanoTime();
+            MockServer server = bootServer(masterNameTag, config.getMasterInstance(), getMetadata(masterNameTag));
+            LOG.info("Master (ID: {}) started", server.getId());
+            if (config.isUseMasterWithPublicIp()) {
+                LOG.info("FloatingIP '{}' has been assigned to the master (ID: {}).",
+                        ClientMock.call("floatingIps.add", () -> cloud.addFloatingIp(server.getId())),
+                        server.getId());
+            }
+            // wait for master available
+            MockServer.Status status;
+            while ((status = getServer(server.getId()).getStatus()) == MockServer.Status.BUILD) {
+                if (isCancelled()) {
+                    return null;
+                }
+                pause();
+            }
+            if (status == MockServer.Status.ERROR) {
+                LOG.error("Launch of '{}' failed. Message: '{}'", server.getName(), server.getFault());
+                return retryMasterLaunch(server, attempt) ? launchClusterMasterInstance(masterNameTag, attempt + 1) :
+                        null;
+            }
+            PhaseTracer.getInstance().record("boot " + server.getName(), PhaseTracer.CATEGORY_INSTANCE,
+                    requestNanos, System.nanoTime());
+            return new InstanceMock(config.getMasterInstance(), server);
+        } catch (MockCloudException e) {
+            LOG.error("Launch master :: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    protected List<Instance> launchClusterWorkerInstances(
+            int batchIndex, Configuration.WorkerInstanceConfiguration instanceConfiguration, String workerNameTag) {
+        Map<String, MockServer> requested = new LinkedHashMap<>();
+        Map<String, Long> requestNanos = new HashMap<>();
+        try {
+            Map<String, String> metadata = getMetadata(workerNameTag);
+            for (int i = 0; i < instanceConfiguration.getCount(); i++) {
+                if (isCancelled()) {
+                    // workers requested so far are deleted by the rollback
+                    return null;
+                }
+                MockServer server = bootServer(buildWorkerInstanceName(batchIndex, i), instanceConfiguration, metadata);
+                requested.put(server.getId(), server);
+                requestNanos.put(server.getId(), System.nanoTime());
+                LOG.info(V, "Instance request for '{}'.", server.getName());
+            }
+            LOG.info("Waiting for worker instances to be ready ...");
+            List<Instance> workers = new ArrayList<>();
+            Set<String> pending = new LinkedHashSet<>(requested.keySet());
+            while (!pending.isEmpty()) {
+                if (isCancelled()) {
+                    return null;
+                }
+                pause();
+                List<MockServer> replacements = new ArrayList<>();
+                for (Iterator<String> iterator = pending.iterator(); iterator.hasNext(); ) {
+                    MockServer server = getServer(iterator.next());
+                    MockServer.Status status = server.getStatus();
+                    if (status == MockServer.Status.ACTIVE) {
+                        workers.add(new InstanceMock(instanceConfiguration, server));
+                        PhaseTracer.getInstance().record("boot " + server.getName(), PhaseTracer.CATEGORY_INSTANCE,
+                                requestNanos.get(server.getId()), System.nanoTime());
+                        iterator.remove();
+                        LOG.info("[{}/{}] Instance '{}' is active!", workers.size(), instanceConfiguration.getCount(),
+                                server.getName());
+                    } else if (status == MockServer.Status.ERROR) {
+                        LOG.error("Launch of '{}' failed. Message: '{}'", server.getName(), server.getFault());
+                        iterator.remove();
+                        ClientMock.call("servers.delete", () -> {
+                            cloud.deleteServer(server.getId());
+                            return null;
+                        });
+                        if (takeWorkerReplacement(server.getName())) {
+                            replacements.add(bootServer(server.getName(), instanceConfiguration,
+                                    getReplacementType(instanceConfiguration), metadata));
+                        }
+                    }
+                }
+                for (MockServer replacement : replacements) {
+                    requested.put(replacement.getId(), replacement);
+                    requestNanos.put(replacement.getId(), System.nanoTime());
+                    pending.add(replacement.getId());
+                }
+            }
+            return workers;
+        } catch (MockCloudException e) {
+            LOG.error("Launch workers :: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Deletes a failed master and waits before the next launch attempt.
+     *
+     * @return true, if the master should be launched again
+     */
+    private boolean retryMasterLaunch(MockServer server, int attempt) {
+        if (attempt >= ClientMock.RETRY.getMaxAttempts()) {
+            return false;
+        }
+        LOG.warn("Launch of master failed. Retrying ({}/{}) ...", attempt, ClientMock.RETRY.getMaxAttempts() - 1);
+        ClientMock.call("servers.delete", () -> {
+            cloud.deleteServer(server.getId());
+            return null;
+        });
+        ApiMetrics.getInstance().recordRetry("servers.boot");
+        return ClientMock.RETRY.backoff(attempt);
+    }
+
+    private MockServer getServer(String id) {
+        return ClientMock.read("servers.get", id, () -> cloud.getServer(id));
+    }
+
+    /**
+     * Waits for the configured poll interval between two status requests.
+     */
+    private void pause() {
+        try {
+            Thread.sleep(cloud.getSettings().getPollInterval());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MockCloudException(MockCloudException.SERVICE_UNAVAILABLE, "Waiting for instances interrupted");
+        }
+    }
+
+    @Override
+    protected void configure(Instance masterInstance, List<Instance> workerInstances, String subnetCidr,
+                             boolean prepare) {
+        LOG.info("Mock cloud instances can't be configured, skipping ansible setup of {} instance(s).",
+                workerInstances.size() + 1);
+    }
+}
@@ -0,0 +1,36 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.model.InstanceImage;
+
+/**
+ * Image of the in-memory cloud.
+ */
+public class InstanceImageMock extends InstanceImage {
+    private final String id;
+    private final String name;
+
+    InstanceImageMock(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    @Override
+    public long getMinDiskSpace() {
+        return 0;
+    }
+
+    @Override
+    public int getMinRam() {
+        return 0;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,62 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.Instance;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Instance backed by a server of the in-memory cloud.
+ */
+public class InstanceMock extends Instance {
+    private final MockServer server;
+
+    InstanceMock(Configuration.InstanceConfiguration configuration, MockServer server) {
+        super(configuration);
+        this.server = server;
+    }
+
+    MockServer getInternal() {
+        return server;
+    }
+
+    @Override
+    public String getPublicIp() {
+        return server.getPublicIp();
+    }
+
+    @Override
+    public String getPrivateIp() {
+        return server.getPrivateIp();
+    }
+
+    @Override
+    public String getHostname() {
+        return server.getName();
+    }
+
+    @Override
+    public String getId() {
+        return server.getId();
+    }
+
+    @Override
+    public String getName() {
+        return server.getName();
+    }
+
+    @Override
+    public String getTag(String key) {
+        return server.getMetadata().get(key);
+    }
+
+    @Override
+    public ZonedDateTime getCreationTimestamp() {
+        return server.getCreationTimestamp();
+    }
+
+    @Override
+    public String getKeyName() {
+        return server.getKeyName();
+    }
+}
@@ -0,0 +1,21 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.model.InstanceType;
+
+/**
+ * Flavor of the in-memory cloud.
+ */
+public class InstanceTypeMock extends InstanceType {
+    InstanceTypeMock(String name, int cpuCores, int maxRam, int ephemerals) {
+        value = name;
+        this.cpuCores = cpuCores;
+        this.maxRam = maxRam;
+        this.ephemerals = ephemerals;
+        maxDiskSpace = 20 * 1024;
+        swap = false;
+        configDrive = false;
+        clusterInstance = false;
+        pvm = false;
+        hvm = false;
+    }
+}
@@ -0,0 +1,59 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.intents.CreateClusterEnvironment;
+import de.unibi.cebitec.bibigrid.core.intents.ListIntent;
+import de.unibi.cebitec.bibigrid.core.model.Client;
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.Instance;
+import de.unibi.cebitec.bibigrid.core.model.ProviderModule;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.InstanceTypeNotFoundException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Implements ListIntent for the in-memory cloud.
+ */
+public class ListIntentMock extends ListIntent {
+    private final MockCloud cloud;
+
+    ListIntentMock(final ProviderModule providerModule, Client client, final Configuration config) {
+        super(providerModule, client, config);
+        cloud = ((ClientMock) client).getInternal();
+    }
+
+    @Override
+    protected void searchClusterIfNecessary() {
+        super.searchClusterIfNecessary();
+        searchSecurityGroups();
+    }
+
+    private void searchSecurityGroups() {
+        for (Map.Entry<String, String> securityGroup : cloud.listSecurityGroups().entrySet()) {
+            String name = securityGroup.getValue();
+            if (name != null && name.startsWith(CreateClusterEnvironment.SECURITY_GROUP_PREFIX)) {
+                getOrCreateCluster(getClusterIdFromName(name)).setSecurityGroup(securityGroup.getKey());
+            }
+        }
+    }
+
+    @Override
+    protected List<Instance> getInstances() {
+        return cloud.listServers().stream().map(s -> new InstanceMock(null, s)).collect(Collectors.toList());
+    }
+
+    @Override
+    protected void loadInstanceConfiguration(Instance instance) {
+        MockServer server = ((InstanceMock) instance).getInternal();
+        Configuration.InstanceConfiguration instanceConfiguration = new Configuration.InstanceConfiguration();
+        instanceConfiguration.setType(server.getFlavor().getValue());
+        try {
+            instanceConfiguration.setProviderType(providerModule.getInstanceType(client, config,
+                    server.getFlavor().getValue()));
+        } catch (InstanceTypeNotFoundException ignored) {
+        }
+        instanceConfiguration.setImage(server.getImage().getName());
+        instance.setConfiguration(instanceConfiguration);
+    }
+}
@@ -0,0 +1,465 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.model.Quotas;
+import de.unibi.cebitec.bibigrid.core.util.ApiMetrics;
+import de.unibi.cebitec.bibigrid.core.util.FlightRecording;
+import de.unibi.cebitec.bibigrid.core.util.SubNets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * In-memory cloud with configurable api latency, boot time distribution, failure injection and quotas.
+ * <p/>
+ * Every api call blocks the calling thread for the configured latency, but no lock is held while waiting,
+ * so concurrent calls overlap like requests against a real cloud api. Clouds are shared by name within
+ * the JVM, which allows create, list and terminate intents to operate on the same resources.
+ */
+public final class MockCloud {
+    private static final Logger LOG = LoggerFactory.getLogger(MockCloud.class);
+    private static final Map<String, MockCloud> CLOUDS = new HashMap<>();
+    private static final String FLOATING_IP_CIDR = "100.64.0.0/10";
+
+    private volatile MockCloudSettings settings;
+    private volatile Random random;
+
+    private final Map<String, InstanceTypeMock> flavors = new LinkedHashMap<>();
+    private final Map<String, InstanceImageMock> images = new LinkedHashMap<>();
+    private final Map<String, MockServer> servers = new ConcurrentHashMap<>();
+    private final Map<String, NetworkMock> networks = new ConcurrentHashMap<>();
+    private final Map<String, SubnetMock> subnets = new ConcurrentHashMap<>();
+    private final Map<String, String> securityGroups = new ConcurrentHashMap<>();
+    private final Map<String, String> keypairs = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> callCounts = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong nextFloatingIp = new AtomicLong(SubNets.parseCidr(FLOATING_IP_CIDR)[0] + 1);
+
+    private long rateWindowStart;
+    private int rateWindowCalls;
+
+    private int usedInstances;
+    private int usedCores;
+    private int usedRam;
+
+    private MockCloud(MockCloudSettings settings) {
+        setSettings(settings);
+        addFlavor(new InstanceTypeMock("mock.tiny", 1, 1024, 0));
+        addFlavor(new InstanceTypeMock("mock.small", 2, 4096, 0));
+        addFlavor(new InstanceTypeMock("mock.medium", 4, 8192, 0));
+        addFlavor(new InstanceTypeMock("mock.large", 8, 16384, 1));
+        addFlavor(new InstanceTypeMock("mock.xlarge", 16, 32768, 1));
+        for (String image : Arrays.asList("ubuntu-16.04", "ubuntu-18.04", "ubuntu-20.04")) {
+            String id = "img-" + image;
+            images.put(id, new InstanceImageMock(id, image));
+        }
+    }
+
+    private void addFlavor(InstanceTypeMock flavor) {
+        flavors.put(flavor.getValue(), flavor);
+    }
+
+    /**
+     * Returns the cloud with the name given in the settings. A new cloud is created if necessary,
+     * otherwise the settings of the existing cloud are replaced.
+     */
+    public static MockCloud getInstance(MockCloudSettings settings) {
+        synchronized (CLOUDS) {
+            MockCloud cloud = CLOUDS.get(settings.getName());
+            if (cloud == null) {
+                cloud = new MockCloud(settings);
+                CLOUDS.put(settings.getName(), cloud);
+                LOG.info(V, "Mock cloud '{}' created.", settings.getName());
+            } else {
+                cloud.setSettings(settings);
+            }
+            return cloud;
+        }
+    }
+
+    /**
+     * Discards the cloud with the given name including all of its resources.
+     */
+    public static void remove(String name) {
+        synchronized (CLOUDS) {
+            CLOUDS.remove(name);
+        }
+    }
+
+    public MockCloudSettings getSettings() {
+        return settings;
+    }
+
+    public void setSettings(MockCloudSettings settings) {
+        this.settings = settings;
+        random = settings.getSeed() != null ? new Random(settings.getSeed()) : new Random();
+    }
+
+    /**
+     * @return number of api calls per operation, e.g. "servers.boot"
+     */
+    public Map<String, Long> getCallCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : callCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    public long getCallCount(String operation) {
+        AtomicLong count = callCounts.get(operation);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * Simulates the round trip of an api request: counts the call, waits for the configured latency and
+     * fails the request with the configured probability.
+     */
+    private void call(String operation) {
+        callCounts.computeIfAbsent(operation, k -> new AtomicLong()).incrementAndGet();
+        long start = System.nanoTime();
+        try (FlightRecording.Scope event = FlightRecording.apiCall(operation)) {
+            try {
+                simulateRequest(operation);
+            } catch (MockCloudException e) {
+                event.setError("HTTP " + e.getStatus());
+                throw e;
+            } finally {
+                ApiMetrics.getInstance().record(operation, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void simulateRequest(String operation) {
+        MockCloudSettings s = settings;
+        long latency = s.getApiLatency();
+        if (s.getApiLatencyJitter() > 0) {
+            latency += ThreadLocalRandom.current().nextInt(s.getApiLatencyJitter() + 1);
+        }
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw error(operation, MockCloudException.SERVICE_UNAVAILABLE, "Request interrupted");
+            }
+        }
+        if (s.getApiRateLimit() > 0) {
+            long retryAfter = throttle(s.getApiRateLimit());
+            if (retryAfter > 0) {
+                throw error(operation, MockCloudException.TOO_MANY_REQUESTS, "Rate limit exceeded", retryAfter);
+            }
+        }
+        if (s.getApiFailureRate() > 0 && random.nextDouble() < s.getApiFailureRate()) {
+            throw error(operation, MockCloudException.SERVICE_UNAVAILABLE, "Injected failure of '" + operation + "'");
+        }
+    }
+
+    /**
+     * Counts the request in the current one second window.
+     *
+     * @return milliseconds until the next window, if the limit of the current window is exceeded, 0 otherwise
+     */
+    private synchronized long throttle(int limit) {
+        long now = System.currentTimeMillis();
+        if (now - rateWindowStart >= 1000) {
+            rateWindowStart = now;
+            rateWindowCalls = 0;
+        }
+        return ++rateWindowCalls > limit ? Math.max(1, rateWindowStart + 1000 - now) : 0;
+    }
+
+    /**
+     * Creates the error response of an api call and counts it in the {@link ApiMetrics}.
+     */
+    private static MockCloudException error(String operation, int status, String message) {
+        return error(operation, status, message, 0);
+    }
+
+    private static MockCloudException error(String operation, int status, String message, long retryAfter) {
+        ApiMetrics.getInstance().recordError(operation, "HTTP " + status);
+        return new MockCloudException(status, message, retryAfter);
+    }
+
+    private String generateId(String prefix) {
+        return prefix + "-" + String.format("%08x", nextId.getAndIncrement());
+    }
+
+    /**
+     * @return boot duration in ms drawn from the configured distribution
+     */
+    long nextBootTime() {
+        MockCloudSettings s = settings;
+        double median = s.getBootTime();
+        double deviation = s.getBootTimeDeviation();
+        double value;
+        switch (s.getBootTimeDistribution()) {
+            case UNIFORM:
+                value = median - deviation + 2 * deviation * random.nextDouble();
+                break;
+            case NORMAL:
+                value = median + deviation * random.nextGaussian();
+                break;
+            case LOGNORMAL:
+                value = median > 0 ? median * Math.exp(deviation / median * random.nextGaussian()) : 0;
+                break;
+            default:
+                value = median;
+        }
+        return Math.max(0, Math.round(value));
+    }
+
+    // compute
+
+    public List<InstanceTypeMock> listFlavors() {
+        call("flavors.list");
+        return new ArrayList<>(flavors.values());
+    }
+
+    public List<InstanceImageMock> listImages() {
+        call("images.list");
+        return new ArrayList<>(images.values());
+    }
+
+    /**
+     * Requests a new server. The server is returned immediately in status BUILD.
+     *
+     * @throws MockCloudException if a quota is exceeded or an argument does not reference an existing resource
+     */
+    public MockServer bootServer(String name, String flavorName, String imageId, String keyName, String subnetId,
+                                 Map<String, String> metadata) {
+        call("servers.boot");
+        InstanceTypeMock flavor = flavors.get(flavorName);
+        if (flavor == null) {
+            throw error("servers.boot", MockCloudException.NOT_FOUND, "Flavor '" + flavorName + "' not found");
+        }
+        InstanceImageMock image = images.get(imageId);
+        if (image == null) {
+            throw error("servers.boot", MockCloudException.NOT_FOUND, "Image '" + imageId + "' not found");
+        }
+        if (keyName != null && !keypairs.containsKey(keyName)) {
+            throw error("servers.boot", MockCloudException.NOT_FOUND, "Keypair '" + keyName + "' not found");
+        }
+        SubnetMock subnet = subnets.get(subnetId);
+        if (subnet == null) {
+            throw error("servers.boot", MockCloudException.NOT_FOUND, "Subnet '" + subnetId + "' not found");
+        }
+        acquireQuota(flavor);
+        String privateIp = subnet.allocateAddress();
+        if (privateIp == null) {
+            releaseQuota(flavor);
+            throw error("servers.boot", MockCloudException.CONFLICT,
+                    "No more IP addresses available in subnet '" + subnetId + "'");
+        }
+        boolean failing = settings.getBootFailureRate() > 0 && random.nextDouble() < settings.getBootFailureRate();
+        MockServer server = new MockServer(generateId("srv"), name, flavor, image, keyName, subnetId, privateIp,
+                metadata, nextBootTime(), failing);
+        servers.put(server.getId(), server);
+        return server;
+    }
+
+    private synchronized void acquireQuota(InstanceTypeMock flavor) {
+        MockCloudSettings s = settings;
+        if (s.getMaxInstances() > 0 && usedInstances + 1 > s.getMaxInstances()) {
+            throw error("servers.boot", MockCloudException.FORBIDDEN,
+                    "Quota exceeded for instances: Requested 1, but already used " + usedInstances + " of " +
+                            s.getMaxInstances() + " instances");
+        }
+        if (s.getMaxCores() > 0 && usedCores + flavor.getCpuCores() > s.getMaxCores()) {
+            throw error("servers.boot", MockCloudException.FORBIDDEN,
+                    "Quota exceeded for cores: Requested " + flavor.getCpuCores() + ", but already used " +
+                            usedCores + " of " + s.getMaxCores() + " cores");
+        }
+        if (s.getMaxRam() > 0 && usedRam + flavor.getMaxRam() > s.getMaxRam()) {
+            throw error("servers.boot", MockCloudException.FORBIDDEN,
+                    "Quota exceeded for ram: Requested " + flavor.getMaxRam() + ", but already used " +
+                            usedRam + " of " + s.getMaxRam() + " ram");
+        }
+        usedInstances++;
+        usedCores += flavor.getCpuCores();
+        usedRam += flavor.getMaxRam();
+    }
+
+    private synchronized void releaseQuota(InstanceTypeMock flavor) {
+        usedInstances--;
+        usedCores -= flavor.getCpuCores();
+        usedRam -= flavor.getMaxRam();
+    }
+
+    public MockServer getServer(String id) {
+        call("servers.get");
+        MockServer server = servers.get(id);
+        if (server == null) {
+            throw error("servers.get", MockCloudException.NOT_FOUND, "Server '" + id + "' not found");
+        }
+        return server;
+    }
+
+    public List<MockServer> listServers() {
+        call("servers.list");
+        return new ArrayList<>(servers.values());
+    }
+
+    public void stopServer(String id) {
+        call("servers.stop");
+        MockServer server = servers.get(id);
+        if (server == null) {
+            throw error("servers.stop", MockCloudException.NOT_FOUND, "Server '" + id + "' not found");
+        }
+        server.stop();
+    }
+
+    public void deleteServer(String id) {
+        call("servers.delete");
+        MockServer server = servers.remove(id);
+        if (server == null) {
+            throw error("servers.delete", MockCloudException.NOT_FOUND, "Server '" + id + "' not found");
+        }
+        releaseQuota(server.getFlavor());
+    }
+
+    /**
+     * Assigns a new floating ip to the server.
+     *
+     * @return public ip of the server
+     */
+    public String addFloatingIp(String serverId) {
+        call("floatingIps.add");
+        MockServer server = servers.get(serverId);
+        if (server == null) {
+            throw error("floatingIps.add", MockCloudException.NOT_FOUND, "Server '" + serverId + "' not found");
+        }
+        server.setPublicIp(SubNets.longAsIPV4String(nextFloatingIp.getAndIncrement()));
+        return server.getPublicIp();
+    }
+
+    /**
+     * @return used instances, cores and ram
+     */
+    public synchronized int[] getQuotaUsage() {
+        return new int[]{usedInstances, usedCores, usedRam};
+    }
+
+    /**
+     * Absolute limits like the compute limits api of openstack. Limits of 0 are unlimited.
+     *
+     * @return quotas of instances, cores and ram
+     */
+    public Quotas getLimits() {
+        call("limits.get");
+        MockCloudSettings s = settings;
+        int[] usage = getQuotaUsage();
+        return new Quotas()
+                .set(Quotas.Resource.INSTANCES, limit(s.getMaxInstances()), usage[0])
+                .set(Quotas.Resource.CORES, limit(s.getMaxCores()), usage[1])
+                .set(Quotas.Resource.RAM, limit(s.getMaxRam()), usage[2]);
+    }
+
+    private static long limit(int max) {
+        return max > 0 ? max : Quotas.UNLIMITED;
+    }
+
+    // network
+
+    public NetworkMock createNetwork(String name) {
+        call("networks.create");
+        NetworkMock network = new NetworkMock(generateId("net"), name);
+        networks.put(network.getId(), network);
+        return network;
+    }
+
+    public List<NetworkMock> listNetworks() {
+        call("networks.list");
+        return new ArrayList<>(networks.values());
+    }
+
+    public void deleteNetwork(String id) {
+        call("networks.delete");
+        for (SubnetMock subnet : subnets.values()) {
+            if (subnet.getNetworkId().equals(id)) {
+                throw error("networks.delete", MockCloudException.CONFLICT,
+                        "Network '" + id + "' is still in use by subnet '" + subnet.getId() + "'");
+            }
+        }
+        if (networks.remove(id) == null) {
+            throw error("networks.delete", MockCloudException.NOT_FOUND, "Network '" + id + "' not found");
+        }
+    }
+
+    public SubnetMock createSubnet(String name, String networkId, String cidr) {
+        call("subnets.create");
+        if (!networks.containsKey(networkId)) {
+            throw error("subnets.create", MockCloudException.NOT_FOUND, "Network '" + networkId + "' not found");
+        }
+        SubnetMock subnet = new SubnetMock(generateId("subnet"), name, cidr, networkId);
+        subnets.put(subnet.getId(), subnet);
+        return subnet;
+    }
+
+    public List<SubnetMock> listSubnets() {
+        call("subnets.list");
+        return new ArrayList<>(subnets.values());
+    }
+
+    public void deleteSubnet(String id) {
+        call("subnets.delete");
+        for (MockServer server : servers.values()) {
+            if (server.getSubnetId().equals(id)) {
+                throw error("subnets.delete", MockCloudException.CONFLICT,
+                        "Subnet '" + id + "' is still in use by server '" + server.getId() + "'");
+            }
+        }
+        if (subnets.remove(id) == null) {
+            throw error("subnets.delete", MockCloudException.NOT_FOUND, "Subnet '" + id + "' not found");
+        }
+    }
+
+    /**
+     * @return id of the new security group
+     */
+    public String createSecurityGroup(String name) {
+        call("securityGroups.create");
+        String id = generateId("sg");
+        securityGroups.put(id, name);
+        return id;
+    }
+
+    /**
+     * @return security group names by id
+     */
+    public Map<String, String> listSecurityGroups() {
+        call("securityGroups.list");
+        return new HashMap<>(securityGroups);
+    }
+
+    public void deleteSecurityGroup(String id) {
+        call("securityGroups.delete");
+        if (securityGroups.remove(id) == null) {
+            throw error("securityGroups.delete", MockCloudException.NOT_FOUND, "Security group '" + id + "' not found");
+        }
+    }
+
+    public void createKeypair(String name, String publicKey) {
+        call("keypairs.create");
+        if (keypairs.putIfAbsent(name, publicKey) != null) {
+            throw error("keypairs.create", MockCloudException.CONFLICT, "Keypair '" + name + "' already exists");
+        }
+    }
+
+    public List<String> listKeypairs() {
+        call("keypairs.list");
+        return new ArrayList<>(keypairs.keySet());
+    }
+
+    public void deleteKeypair(String name) {
+        call("keypairs.delete");
+        if (keypairs.remove(name) == null) {
+            throw error("keypairs.delete", MockCloudException.NOT_FOUND, "Keypair '" + name + "' not found");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+/**
+ * Error response of the in-memory cloud api, modelled after the http status codes of a real cloud api.
+ */
+public class MockCloudException extends RuntimeException {
+    public static final int NOT_FOUND = 404;
+    public static final int FORBIDDEN = 403;
+    public static final int CONFLICT = 409;
+    public static final int TOO_MANY_REQUESTS = 429;
+    public static final int SERVICE_UNAVAILABLE = 503;
+
+    private final int status;
+    private final long retryAfter;
+
+    MockCloudException(int status, String message) {
+        this(status, message, 0);
+    }
+
+    MockCloudException(int status, String message, long retryAfter) {
+        super(message + " (HTTP " + status + ")");
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return delay in milliseconds the client should wait before retrying, like the Retry-After header
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,173 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
+
+/**
+ * Behaviour of the in-memory cloud: api latency, boot time distribution, failure injection and quotas.
+ * All durations are given in milliseconds, quotas of 0 are unlimited.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class MockCloudSettings {
+    private static final Logger LOG = LoggerFactory.getLogger(MockCloudSettings.class);
+
+    public enum BootTimeDistribution {
+        /**
+         * Every instance boots in exactly bootTime.
+         */
+        FIXED,
+        /**
+         * Uniformly distributed in [bootTime - bootTimeDeviation, bootTime + bootTimeDeviation].
+         */
+        UNIFORM,
+        /**
+         * Normal distribution with mean bootTime and standard deviation bootTimeDeviation.
+         */
+        NORMAL,
+        /**
+         * Log-normal distribution with median bootTime and shape bootTimeDeviation / bootTime, which
+         * produces the long tail of slow instances observed in real clouds.
+         */
+        LOGNORMAL
+    }
+
+    public MockCloudSettings() {
+    }
+
+    private String name = "default";
+    private int apiLatency;
+    private int apiLatencyJitter;
+    private int bootTime;
+    private int bootTimeDeviation;
+    private BootTimeDistribution bootTimeDistribution = BootTimeDistribution.FIXED;
+    private double apiFailureRate;
+    private int apiRateLimit;
+    private double bootFailureRate;
+    private int maxInstances;
+    private int maxCores;
+    private int maxRam;
+    private int pollInterval = 500;
+    private Long seed;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name != null ? name.trim() : null;
+    }
+
+    public int getApiLatency() {
+        return apiLatency;
+    }
+
+    public void setApiLatency(int apiLatency) {
+        this.apiLatency = apiLatency;
+        LOG.info(V, "Mock cloud api latency set. ({} ms)", apiLatency);
+    }
+
+    public int getApiLatencyJitter() {
+        return apiLatencyJitter;
+    }
+
+    public void setApiLatencyJitter(int apiLatencyJitter) {
+        this.apiLatencyJitter = apiLatencyJitter;
+    }
+
+    public int getBootTime() {
+        return bootTime;
+    }
+
+    public void setBootTime(int bootTime) {
+        this.bootTime = bootTime;
+        LOG.info(V, "Mock cloud boot time set. ({} ms)", bootTime);
+    }
+
+    public int getBootTimeDeviation() {
+        return bootTimeDeviation;
+    }
+
+    public void setBootTimeDeviation(int bootTimeDeviation) {
+        this.bootTimeDeviation = bootTimeDeviation;
+    }
+
+    public BootTimeDistribution getBootTimeDistribution() {
+        return bootTimeDistribution;
+    }
+
+    public void setBootTimeDistribution(BootTimeDistribution bootTimeDistribution) {
+        this.bootTimeDistribution = bootTimeDistribution;
+    }
+
+    public double getApiFailureRate() {
+        return apiFailureRate;
+    }
+
+    public void setApiFailureRate(double apiFailureRate) {
+        this.apiFailureRate = apiFailureRate;
+        LOG.info(V, "Mock cloud api failure rate set. ({})", apiFailureRate);
+    }
+
+    /**
+     * @return api requests per second the cloud accepts before answering with 429, 0 is unlimited
+     */
+    public int getApiRateLimit() {
+        return apiRateLimit;
+    }
+
+    public void setApiRateLimit(int apiRateLimit) {
+        this.apiRateLimit = apiRateLimit;
+        LOG.info(V, "Mock cloud api rate limit set. ({}/s)", apiRateLimit);
+    }
+
+    public double getBootFailureRate() {
+        return bootFailureRate;
+    }
+
+    public void setBootFailureRate(double bootFailureRate) {
+        this.bootFailureRate = bootFailureRate;
+        LOG.info(V, "Mock cloud boot failure rate set. ({})", bootFailureRate);
+    }
+
+    public int getMaxInstances() {
+        return maxInstances;
+    }
+
+    public void setMaxInstances(int maxInstances) {
+        this.maxInstances = maxInstances;
+    }
+
+    public int getMaxCores() {
+        return maxCores;
+    }
+
+    public void setMaxCores(int maxCores) {
+        this.maxCores = maxCores;
+    }
+
+    public int getMaxRam() {
+        return maxRam;
+    }
+
+    public void setMaxRam(int maxRam) {
+        this.maxRam = maxRam;
+    }
+
+    public int getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(int pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+}
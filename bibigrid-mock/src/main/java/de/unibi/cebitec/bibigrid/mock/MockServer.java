@@ -0,0 +1,118 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Server of the in-memory cloud. The status is derived from the time passed since the boot request,
+ * so no background threads are necessary to simulate thousands of booting servers.
+ */
+public class MockServer {
+    public enum Status {
+        BUILD, ACTIVE, ERROR, SHUTOFF
+    }
+
+    private final String id;
+    private final String name;
+    private final InstanceTypeMock flavor;
+    private final InstanceImageMock image;
+    private final String keyName;
+    private final String subnetId;
+    private final String privateIp;
+    private final Map<String, String> metadata;
+    private final ZonedDateTime creationTimestamp = ZonedDateTime.now();
+    private final long bootTime;
+    private final long readyAt;
+    private final boolean failing;
+    private Status status = Status.BUILD;
+    private volatile String publicIp;
+
+    MockServer(String id, String name, InstanceTypeMock flavor, InstanceImageMock image, String keyName,
+               String subnetId, String privateIp, Map<String, String> metadata, long bootTime, boolean failing) {
+        this.id = id;
+        this.name = name;
+        this.flavor = flavor;
+        this.image = image;
+        this.keyName = keyName;
+        this.subnetId = subnetId;
+        this.privateIp = privateIp;
+        this.metadata = metadata != null ? Collections.unmodifiableMap(new HashMap<>(metadata)) :
+                Collections.emptyMap();
+        this.bootTime = bootTime;
+        this.failing = failing;
+        readyAt = System.nanoTime() + bootTime * 1000000L;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public InstanceTypeMock getFlavor() {
+        return flavor;
+    }
+
+    public InstanceImageMock getImage() {
+        return image;
+    }
+
+    public String getKeyName() {
+        return keyName;
+    }
+
+    public String getSubnetId() {
+        return subnetId;
+    }
+
+    public String getPrivateIp() {
+        return privateIp;
+    }
+
+    public String getPublicIp() {
+        return publicIp;
+    }
+
+    void setPublicIp(String publicIp) {
+        this.publicIp = publicIp;
+    }
+
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    public ZonedDateTime getCreationTimestamp() {
+        return creationTimestamp;
+    }
+
+    /**
+     * @return time in ms from the boot request until the server becomes active (or fails)
+     */
+    public long getBootTime() {
+        return bootTime;
+    }
+
+    public synchronized Status getStatus() {
+        if (status == Status.BUILD && System.nanoTime() - readyAt >= 0) {
+            status = failing ? Status.ERROR : Status.ACTIVE;
+        }
+        return status;
+    }
+
+    /**
+     * @return error message of a failed server, otherwise null
+     */
+    public String getFault() {
+        return getStatus() == Status.ERROR ? "No valid host was found. There are not enough hosts available." : null;
+    }
+
+    synchronized void stop() {
+        if (getStatus() == Status.ACTIVE) {
+            status = Status.SHUTOFF;
+        }
+    }
+}
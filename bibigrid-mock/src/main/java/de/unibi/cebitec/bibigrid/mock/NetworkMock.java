@@ -0,0 +1,28 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.model.Network;
+
+public class NetworkMock extends Network {
+    private final String id;
+    private final String name;
+
+    NetworkMock(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getCidr() {
+        return null;
+    }
+}
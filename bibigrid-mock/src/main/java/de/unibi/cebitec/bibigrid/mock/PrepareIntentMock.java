@@ -0,0 +1,45 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.intents.PrepareIntent;
+import de.unibi.cebitec.bibigrid.core.model.Client;
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.Instance;
+import de.unibi.cebitec.bibigrid.core.model.ProviderModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements PrepareIntent for the in-memory cloud. Images are not persisted.
+ */
+class PrepareIntentMock extends PrepareIntent {
+    private static final Logger LOG = LoggerFactory.getLogger(PrepareIntentMock.class);
+
+    private final MockCloud cloud;
+
+    PrepareIntentMock(ProviderModule providerModule, Client client, Configuration config) {
+        super(providerModule, client, config);
+        cloud = ((ClientMock) client).getInternal();
+    }
+
+    @Override
+    protected boolean stopInstance(Instance instance) {
+        try {
+            cloud.stopServer(instance.getId());
+            return true;
+        } catch (MockCloudException e) {
+            LOG.error("Failed to stop instance '{}'. {}", instance.getName(), e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    protected void waitForInstanceShutdown(Instance instance) {
+        // servers of the in-memory cloud are stopped immediately
+    }
+
+    @Override
+    protected boolean createImageFromInstance(Instance instance, String imageName) {
+        LOG.info("Image '{}' of instance '{}' is not persisted by the mock cloud.", imageName, instance.getName());
+        return true;
+    }
+}
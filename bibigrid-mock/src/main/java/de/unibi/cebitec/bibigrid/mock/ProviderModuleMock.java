@@ -0,0 +1,75 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.Validator;
+import de.unibi.cebitec.bibigrid.core.intents.*;
+import de.unibi.cebitec.bibigrid.core.model.*;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Provider module of an in-memory cloud for offline end-to-end tests and timing experiments.
+ */
+@SuppressWarnings("unused")
+public class ProviderModuleMock extends ProviderModule {
+    @Override
+    public String getName() {
+        return "mock";
+    }
+
+    @Override
+    public Class<? extends Configuration> getConfigurationClass() {
+        return ConfigurationMock.class;
+    }
+
+    @Override
+    public Validator getValidator(Configuration config, ProviderModule module) throws ConfigurationException {
+        return new ValidatorMock(config, module);
+    }
+
+    @Override
+    public Client getClient(Configuration config) {
+        return new ClientMock((ConfigurationMock) config);
+    }
+
+    @Override
+    public ListIntent getListIntent(Client client, Configuration config) {
+        return new ListIntentMock(this, client, config);
+    }
+
+    @Override
+    public TerminateIntent getTerminateIntent(Client client, Configuration config) {
+        return new TerminateIntentMock(this, client, config);
+    }
+
+    @Override
+    public PrepareIntent getPrepareIntent(Client client, Configuration config) {
+        return new PrepareIntentMock(this, client, config);
+    }
+
+    @Override
+    public CreateCluster getCreateIntent(Client client, Configuration config) {
+        return new CreateClusterMock(this, client, config);
+    }
+
+    @Override
+    public CreateClusterEnvironment getClusterEnvironment(Client client, CreateCluster cluster)
+            throws ConfigurationException {
+        return new CreateClusterEnvironmentMock(client, (CreateClusterMock) cluster);
+    }
+
+    @Override
+    public String getBlockDeviceBase() {
+        return "/dev/vd";
+    }
+
+    @Override
+    protected Map<String, InstanceType> getInstanceTypeMap(Client client, Configuration config) {
+        Map<String, InstanceType> instanceTypes = new HashMap<>();
+        for (InstanceTypeMock flavor : ((ClientMock) client).getInternal().listFlavors()) {
+            instanceTypes.put(flavor.getValue(), flavor);
+        }
+        return instanceTypes;
+    }
+}
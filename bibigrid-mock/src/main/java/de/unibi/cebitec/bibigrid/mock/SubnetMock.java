@@ -0,0 +1,60 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.model.Subnet;
+import de.unibi.cebitec.bibigrid.core.util.SubNets;
+
+public class SubnetMock extends Subnet {
+    /**
+     * Addresses below this offset are reserved for gateway, dhcp and other network services.
+     */
+    private static final int FIRST_HOST = 10;
+
+    private final String id;
+    private final String name;
+    private final String cidr;
+    private final String networkId;
+    private final long base;
+    private final long size;
+    private long nextHost = FIRST_HOST;
+
+    SubnetMock(String id, String name, String cidr, String networkId) {
+        this.id = id;
+        this.name = name;
+        this.cidr = cidr;
+        this.networkId = networkId;
+        long[] parsed = SubNets.parseCidr(cidr);
+        base = parsed[0] & parsed[2];
+        size = 1L << (32 - parsed[1]);
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getCidr() {
+        return cidr;
+    }
+
+    @Override
+    public String getNetworkId() {
+        return networkId;
+    }
+
+    /**
+     * @return next unused address of the subnet or null, if all addresses are allocated
+     */
+    synchronized String allocateAddress() {
+        // the last address is the broadcast address
+        if (nextHost >= size - 1) {
+            return null;
+        }
+        return SubNets.longAsIPV4String(base + nextHost++);
+    }
+}
@@ -0,0 +1,69 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.intents.CreateCluster;
+import de.unibi.cebitec.bibigrid.core.intents.TerminateIntent;
+import de.unibi.cebitec.bibigrid.core.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Implements TerminateIntent for the in-memory cloud.
+ */
+public class TerminateIntentMock extends TerminateIntent {
+    private static final Logger LOG = LoggerFactory.getLogger(TerminateIntentMock.class);
+    private final MockCloud cloud;
+
+    TerminateIntentMock(ProviderModule providerModule, Client client, Configuration config) {
+        super(providerModule, client, config);
+        cloud = ((ClientMock) client).getInternal();
+    }
+
+    @Override
+    protected boolean terminateCluster(Cluster cluster) {
+        try {
+            // master and workers
+            if (!deleteInstances(cluster, this::deleteServer)) {
+                return false;
+            }
+            // security group
+            if (cluster.getSecurityGroup() != null) {
+                cloud.deleteSecurityGroup(cluster.getSecurityGroup());
+                LOG.info("Security group '{}' deleted.", cluster.getSecurityGroup());
+            }
+            // subnet
+            if (cluster.getSubnet() != null) {
+                cloud.deleteSubnet(cluster.getSubnet().getId());
+                LOG.info("Subnet '{}' deleted!", cluster.getSubnet().getId());
+            }
+            // network
+            if (cluster.getNetwork() != null) {
+                cloud.deleteNetwork(cluster.getNetwork().getId());
+                LOG.info("Network '{}' deleted!", cluster.getNetwork().getId());
+            }
+            // keypair (but only if it starts with CreateCluster.PREFIX)
+            if (cluster.getKeyName() != null && cluster.getKeyName().startsWith(CreateCluster.PREFIX)) {
+                cloud.deleteKeypair(cluster.getKeyName());
+                LOG.info("Keypair '{}' deleted!", cluster.getKeyName());
+            }
+        } catch (MockCloudException e) {
+            LOG.error("Failed to terminate cluster '{}'. {}", cluster.getClusterId(), e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean terminateInstances(List<Instance> instances) {
+        return deleteInstances(instances, this::deleteServer);
+    }
+
+    private boolean deleteServer(Instance instance) {
+        ClientMock.call("servers.delete", () -> {
+            cloud.deleteServer(instance.getId());
+            return null;
+        });
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.Validator;
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.ProviderModule;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
+
+import java.util.List;
+
+/**
+ * Mock specific implementation for a validator, checks the settings of the in-memory cloud.
+ */
+public final class ValidatorMock extends Validator {
+    private final ConfigurationMock mockConfig;
+
+    ValidatorMock(final Configuration config, final ProviderModule providerModule)
+            throws ConfigurationException {
+        super(config, providerModule);
+        mockConfig = (ConfigurationMock) config;
+    }
+
+    @Override
+    protected Class<ConfigurationMock> getProviderConfigurationClass() {
+        return ConfigurationMock.class;
+    }
+
+    @Override
+    protected List<String> getRequiredOptions() {
+        return null;
+    }
+
+    @Override
+    protected boolean validateProviderParameters() {
+        MockCloudSettings settings = mockConfig.getMockCloud();
+        if (isStringNullOrEmpty(settings.getName())) {
+            LOG.error("Mock cloud: Missing 'name' parameter!");
+            return false;
+        }
+        if (settings.getApiLatency() < 0 || settings.getApiLatencyJitter() < 0 || settings.getBootTime() < 0 ||
+                settings.getBootTimeDeviation() < 0) {
+            LOG.error("Mock cloud: Latencies and boot times must not be negative.");
+            return false;
+        }
+        if (settings.getPollInterval() <= 0) {
+            LOG.error("Mock cloud: 'pollInterval' has to be positive.");
+            return false;
+        }
+        if (!isRate(settings.getApiFailureRate()) || !isRate(settings.getBootFailureRate())) {
+            LOG.error("Mock cloud: Failure rates have to be between 0 and 1.");
+            return false;
+        }
+        if (settings.getMaxInstances() < 0 || settings.getMaxCores() < 0 || settings.getMaxRam() < 0) {
+            LOG.error("Mock cloud: Quotas must not be negative.");
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isRate(double value) {
+        return value >= 0 && value <= 1;
+    }
+}
@@ -0,0 +1,401 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import de.unibi.cebitec.bibigrid.core.intents.CreateCluster;
+import de.unibi.cebitec.bibigrid.core.intents.ValidateIntent;
+import de.unibi.cebitec.bibigrid.core.model.Client;
+import de.unibi.cebitec.bibigrid.core.model.Cluster;
+import de.unibi.cebitec.bibigrid.core.model.Configuration;
+import de.unibi.cebitec.bibigrid.core.model.Instance;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
+import de.unibi.cebitec.bibigrid.core.util.ApiMetrics;
+import de.unibi.cebitec.bibigrid.core.util.ClusterJournal;
+import de.unibi.cebitec.bibigrid.core.util.RateLimiter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Creates, lists and terminates a cluster on the in-memory cloud.
+ */
+public class ClusterLifecycleTest {
+    private static final String CLOUD_NAME = "cluster-lifecycle-test";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ProviderModuleMock module = new ProviderModuleMock();
+    private ConfigurationMock config;
+    private Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty(ClusterJournal.CLUSTERS_DIR_PROPERTY, folder.newFolder("clusters").getPath());
+        config = new ConfigurationMock();
+        config.setUser("tester");
+        config.setSshUser("ubuntu");
+        config.getMockCloud().setName(CLOUD_NAME);
+        config.getMockCloud().setBootTime(200);
+        config.getMockCloud().setBootTimeDeviation(100);
+        config.getMockCloud().setBootTimeDistribution(MockCloudSettings.BootTimeDistribution.UNIFORM);
+        config.getMockCloud().setApiLatency(1);
+        config.getMockCloud().setPollInterval(50);
+        Configuration.InstanceConfiguration master = new Configuration.InstanceConfiguration();
+        master.setType("mock.large");
+        master.setImage("ubuntu-18.04");
+        config.setMasterInstance(master);
+        Configuration.WorkerInstanceConfiguration small = new Configuration.WorkerInstanceConfiguration();
+        small.setType("mock.small");
+        small.setImage("ubuntu-18.04");
+        small.setCount(300);
+        Configuration.WorkerInstanceConfiguration large = new Configuration.WorkerInstanceConfiguration();
+        large.setType("mock.large");
+        large.setImage("ubuntu-20.04");
+        large.setCount(2);
+        config.setWorkerInstances(Arrays.asList(small, large));
+        client = module.getClient(config);
+        assertTrue(module.getValidator(config, module).validateProviderTypes(client));
+    }
+
+    @After
+    public void tearDown() {
+        MockCloud.remove(CLOUD_NAME);
+        ApiMetrics.getInstance().clear();
+        RateLimiter.getInstance().configure(null);
+        System.clearProperty(ClusterJournal.CLUSTERS_DIR_PROPERTY);
+    }
+
+    private CreateCluster createCluster() throws Exception {
+        CreateCluster cluster = module.getCreateIntent(client, config);
+        cluster.createClusterEnvironment()
+                .createNetwork()
+                .createSubnet()
+                .createSecurityGroup()
+                .createKeyPair()
+                .createPlacementGroup();
+        return cluster;
+    }
+
+    @Test
+    public void createListTerminate() throws Exception {
+        CreateCluster cluster = createCluster();
+        assertTrue(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        assertEquals(302, cluster.getWorkerInstances().size());
+        assertNotNull(cluster.getMasterInstance().getPublicIp());
+
+        Map<String, Cluster> clusters = module.getListIntent(client, config).getList();
+        Cluster listed = clusters.get(cluster.getClusterId());
+        assertNotNull(listed);
+        assertEquals("tester", listed.getUser());
+        assertNotNull(listed.getMasterInstance());
+        assertEquals(302, listed.getWorkerInstances().size());
+        assertNotNull(listed.getSubnet());
+        assertNotNull(listed.getSecurityGroup());
+        // 303 instances do not fit into a /24
+        assertTrue(listed.getSubnet().getCidr().endsWith("/23"));
+
+        config.setClusterIds(cluster.getClusterId());
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+        MockCloud cloud = MockCloud.getInstance(config.getMockCloud());
+        assertEquals(Collections.emptyList(), cloud.listServers());
+        assertEquals(Collections.emptyList(), cloud.listSubnets());
+        assertEquals(Collections.emptyList(), cloud.listNetworks());
+        assertEquals(Collections.emptyList(), cloud.listKeypairs());
+        assertTrue(module.getListIntent(client, config).getList().isEmpty());
+    }
+
+    @Test
+    public void validateAndCreateResolveImagesOnce() throws Exception {
+        MockCloud cloud = MockCloud.getInstance(config.getMockCloud());
+        ValidateIntent validateIntent = module.getValidateIntent(client, config);
+        assertTrue(validateIntent.validate());
+        CreateCluster cluster = module.getCreateIntent(client, config);
+        cluster.setResources(validateIntent.getResources());
+        cluster.createClusterEnvironment()
+                .createNetwork()
+                .createSubnet()
+                .createSecurityGroup()
+                .createKeyPair()
+                .createPlacementGroup();
+        assertTrue(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        // master and workers share two images, each resolved once by the validation
+        assertEquals(2, cloud.getCallCount("images.list"));
+        config.setClusterIds(cluster.getClusterId());
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+    }
+
+    @Test
+    public void quotaExceeded() throws Exception {
+        config.getMockCloud().setMaxInstances(100);
+        ApiMetrics.getInstance().clear();
+        CreateCluster cluster = createCluster();
+        assertFalse(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        ApiMetrics.Operation boot = ApiMetrics.getInstance().getOperation("servers.boot");
+        assertEquals(101, boot.getCalls());
+        assertEquals(Long.valueOf(1), boot.getErrorCodes().get("HTTP 403"));
+        config.setClusterIds(cluster.getClusterId());
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+        assertArrayEquals(new int[]{0, 0, 0}, MockCloud.getInstance(config.getMockCloud()).getQuotaUsage());
+    }
+
+    @Test
+    public void validateRejectsClusterExceedingQuota() {
+        // master and workers need 8 + 300 * 2 + 2 * 8 cores
+        config.getMockCloud().setMaxCores(600);
+        MockCloud cloud = MockCloud.getInstance(config.getMockCloud());
+        assertFalse(module.getValidateIntent(client, config).validate());
+        assertEquals(1, cloud.getCallCount("limits.get"));
+        assertEquals(0, cloud.getCallCount("servers.boot"));
+
+        config.getMockCloud().setMaxCores(624);
+        assertTrue(module.getValidateIntent(client, config).validate());
+    }
+
+    @Test
+    public void validateScaleUpLeavesRunningMasterOut() {
+        // the workers alone need 300 * 2 + 2 * 8 cores
+        config.getMockCloud().setMaxCores(616);
+        assertFalse(module.getValidateIntent(client, config).validate());
+        ValidateIntent scaleUpValidation = module.getValidateIntent(client, config);
+        scaleUpValidation.setMasterRunning(true);
+        assertTrue(scaleUpValidation.validate());
+    }
+
+    @Test
+    public void throttledRequestsAreRetried() throws Exception {
+        config.getWorkerInstances().get(0).setCount(5);
+        config.getMockCloud().setApiRateLimit(20);
+        client = module.getClient(config);
+        CreateCluster cluster = createCluster();
+        assertTrue(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        assertEquals(7, cluster.getWorkerInstances().size());
+        ApiMetrics.Operation get = ApiMetrics.getInstance().getOperation("servers.get");
+        assertTrue(get.getErrorCodes().get("HTTP 429") > 0);
+        assertEquals(get.getErrors(), get.getRetries());
+        config.setClusterIds(cluster.getClusterId());
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+    }
+
+    @Test
+    public void failedMasterIsLaunchedAgain() throws Exception {
+        config.setWorkerInstances(Collections.emptyList());
+        config.getMockCloud().setBootFailureRate(0.5);
+        // the first two masters fail with this seed
+        config.getMockCloud().setSeed(39999965L);
+        client = module.getClient(config);
+        ApiMetrics.getInstance().clear();
+        CreateCluster cluster = createCluster();
+        assertTrue(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        assertTrue(ApiMetrics.getInstance().getOperation("servers.boot").getRetries() > 0);
+        // failed masters are deleted before the next attempt
+        MockCloud cloud = MockCloud.getInstance(config.getMockCloud());
+        assertEquals(1, cloud.listServers().size());
+        config.setClusterIds(cluster.getClusterId());
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+    }
+
+    @Test
+    public void failedWorkersAreReplaced() throws Exception {
+        config.getWorkerInstances().get(1).setFallbackType("mock.small");
+        // replacements must not be smaller than the workers they replace
+        assertFalse(module.getValidator(config, module).validateProviderTypes(client));
+        config.getWorkerInstances().get(1).setFallbackType(null);
+        config.getWorkerInstances().get(0).setCount(20);
+        config.getWorkerInstances().get(0).setFallbackType("mock.large");
+        assertTrue(module.getValidator(config, module).validateProviderTypes(client));
+        config.setWorkerReplacements(40);
+        config.getMockCloud().setBootFailureRate(0.3);
+        config.getMockCloud().setSeed(1234L);
+        client = module.getClient(config);
+        CreateCluster cluster = createCluster();
+        assertTrue(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        assertEquals(22, cluster.getWorkerInstances().size());
+        // failed workers are deleted, their replacements are launched with the fallback type
+        MockCloud cloud = MockCloud.getInstance(config.getMockCloud());
+        assertEquals(23, cloud.listServers().size());
+        long large = cloud.listServers().stream()
+                .filter(server -> server.getFlavor().getValue().equals("mock.large")).count();
+        assertTrue(large > 3);
+        config.setClusterIds(cluster.getClusterId());
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+    }
+
+    @Test
+    public void failedWorkersAreIgnoredWithoutReplacements() throws Exception {
+        config.getWorkerInstances().get(0).setCount(20);
+        config.setWorkerReplacements(0);
+        config.getMockCloud().setBootFailureRate(0.3);
+        config.getMockCloud().setSeed(1234L);
+        client = module.getClient(config);
+        CreateCluster cluster = createCluster();
+        assertTrue(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        int workers = cluster.getWorkerInstances().size();
+        assertTrue(workers < 22);
+        assertEquals(workers + 1, MockCloud.getInstance(config.getMockCloud()).listServers().size());
+        config.setClusterIds(cluster.getClusterId());
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+    }
+
+    @Test
+    public void failedSetupIsResumed() throws Exception {
+        config.getWorkerInstances().get(0).setCount(5);
+        // the first batch of workers exceeds the quota
+        config.getMockCloud().setMaxInstances(4);
+        CreateCluster cluster = createCluster();
+        assertFalse(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        String clusterId = cluster.getClusterId();
+        String masterId = cluster.getMasterInstance().getId();
+
+        config.getMockCloud().setMaxInstances(0);
+        CreateCluster resumed = module.getCreateIntent(client, config);
+        resumed.resumeClusterEnvironment(clusterId);
+        assertEquals(clusterId, resumed.getClusterId());
+        assertTrue(resumed.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        assertEquals(masterId, resumed.getMasterInstance().getId());
+        assertEquals(7, resumed.getWorkerInstances().size());
+        // workers of the incomplete batch have been replaced
+        assertEquals(8, MockCloud.getInstance(config.getMockCloud()).listServers().size());
+        ClusterJournal journal = ClusterJournal.load(clusterId);
+        assertTrue(journal.contains(ClusterJournal.Step.ANSIBLE_PLAYBOOK));
+        try {
+            module.getCreateIntent(client, config).resumeClusterEnvironment(clusterId);
+            fail("a complete setup can't be resumed");
+        } catch (ConfigurationException ignored) {
+        }
+
+        config.setClusterIds(clusterId);
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+        assertFalse(Files.exists(ClusterJournal.getDirectory(clusterId)));
+        assertEquals(Collections.emptyList(), MockCloud.getInstance(config.getMockCloud()).listServers());
+    }
+
+    @Test
+    public void runningClusterIsScaledUp() throws Exception {
+        config.getWorkerInstances().get(0).setCount(5);
+        CreateCluster cluster = createCluster();
+        assertTrue(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        String clusterId = cluster.getClusterId();
+        String masterId = cluster.getMasterInstance().getId();
+        MockCloud cloud = MockCloud.getInstance(config.getMockCloud());
+        int networks = cloud.listNetworks().size();
+        int subnets = cloud.listSubnets().size();
+
+        CreateCluster scaled = module.getCreateIntent(client, config);
+        scaled.scaleUpClusterEnvironment(clusterId);
+        assertEquals(clusterId, scaled.getClusterId());
+        assertTrue(scaled.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .scaleUpClusterInstances(2, 3));
+        assertEquals(masterId, scaled.getMasterInstance().getId());
+        assertEquals(10, scaled.getWorkerInstances().size());
+
+        Cluster listed = module.getListIntent(client, config).getList().get(clusterId);
+        assertEquals(masterId, listed.getMasterInstance().getId());
+        assertEquals(10, listed.getWorkerInstances().size());
+        // the added workers continue the numbering of their batch
+        Set<String> names = new HashSet<>();
+        for (Instance worker : listed.getWorkerInstances()) {
+            names.add(worker.getName());
+        }
+        assertEquals(10, names.size());
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(names.contains("bibigrid-worker2-" + i + "-" + clusterId));
+        }
+        // the added workers are journaled with their batch
+        ClusterJournal journal = ClusterJournal.load(clusterId);
+        assertEquals(5, journal.getWorkers(1).size());
+        assertEquals(11, journal.getInstances().size());
+        // no network or subnet has been created
+        assertEquals(networks, cloud.listNetworks().size());
+        assertEquals(subnets, cloud.listSubnets().size());
+
+        try {
+            module.getCreateIntent(client, config).scaleUpClusterEnvironment("unknown");
+            fail("an unknown cluster can't be scaled up");
+        } catch (ConfigurationException ignored) {
+        }
+        CreateCluster invalid = module.getCreateIntent(client, config);
+        invalid.scaleUpClusterEnvironment(clusterId);
+        assertFalse(invalid.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .scaleUpClusterInstances(3, 1));
+
+        config.setClusterIds(clusterId);
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+        assertEquals(Collections.emptyList(), cloud.listServers());
+    }
+
+    @Test
+    public void interruptedSetupIsRolledBack() throws Exception {
+        config.getWorkerInstances().get(0).setCount(5);
+        config.getMockCloud().setBootTime(5000);
+        config.getMockCloud().setBootTimeDeviation(0);
+        client = module.getClient(config);
+        AtomicReference<CreateCluster> cluster = new AtomicReference<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> launched = executor.submit(() -> {
+                cluster.set(createCluster());
+                return cluster.get().configureClusterMasterInstance().configureClusterWorkerInstance()
+                        .launchClusterInstances(false);
+            });
+            MockCloud cloud = MockCloud.getInstance(config.getMockCloud());
+            // interrupt the setup while the master is booting
+            while (cloud.listServers().isEmpty()) {
+                Thread.sleep(10);
+            }
+            assertTrue(cluster.get().cancel());
+            assertFalse(launched.get(10, TimeUnit.SECONDS));
+            assertTrue(cluster.get().isCancelled());
+            assertEquals(Collections.emptyList(), cloud.listServers());
+            assertEquals(Collections.emptyList(), cloud.listSubnets());
+            assertEquals(Collections.emptyList(), cloud.listNetworks());
+            assertEquals(Collections.emptyList(), cloud.listKeypairs());
+            assertFalse(Files.exists(ClusterJournal.getDirectory(cluster.get().getClusterId())));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void clientBudgetAvoidsThrottling() throws Exception {
+        config.getWorkerInstances().get(0).setCount(5);
+        config.getMockCloud().setApiRateLimit(40);
+        // at most a burst of 10 and 10 requests per second within any second, some lookups are not limited
+        config.setApiRateLimits(Collections.singletonMap("default", 10));
+        client = module.getClient(config);
+        ApiMetrics.getInstance().clear();
+        CreateCluster cluster = createCluster();
+        assertTrue(cluster.configureClusterMasterInstance().configureClusterWorkerInstance()
+                .launchClusterInstances(false));
+        assertEquals(7, cluster.getWorkerInstances().size());
+        config.setClusterIds(cluster.getClusterId());
+        assertTrue(module.getTerminateIntent(client, config).terminate());
+        for (ApiMetrics.Operation operation : ApiMetrics.getInstance().getOperations()) {
+            assertEquals(operation.getName(), 0, operation.getErrors());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package de.unibi.cebitec.bibigrid.mock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class MockCloudTest {
+    private MockCloudSettings settings;
+    private MockCloud cloud;
+    private String subnetId;
+
+    @Before
+    public void setUp() {
+        settings = new MockCloudSettings();
+        settings.setName("mock-cloud-test");
+        settings.setSeed(42L);
+        cloud = MockCloud.getInstance(settings);
+        NetworkMock network = cloud.createNetwork("net");
+        subnetId = cloud.createSubnet("subnet", network.getId(), "10.0.0.0/28").getId();
+        cloud.createKeypair("key", "ssh-rsa AAAA");
+    }
+
+    @After
+    public void tearDown() {
+        MockCloud.remove(settings.getName());
+    }
+
+    private MockServer boot(String name) {
+        return cloud.bootServer(name, "mock.small", "img-ubuntu-18.04", "key", subnetId, Collections.emptyMap());
+    }
+
+    @Test
+    public void bootServer() throws Exception {
+        settings.setBootTime(50);
+        MockServer server = boot("server");
+        assertEquals(MockServer.Status.BUILD, server.getStatus());
+        assertEquals("10.0.0.10", server.getPrivateIp());
+        Thread.sleep(60);
+        assertEquals(MockServer.Status.ACTIVE, cloud.getServer(server.getId()).getStatus());
+        assertEquals(1, cloud.getCallCount("servers.boot"));
+        assertEquals(1, cloud.getCallCount("servers.get"));
+    }
+
+    @Test
+    public void bootTimeDistributions() {
+        settings.setBootTime(1000);
+        settings.setBootTimeDeviation(200);
+        settings.setBootTimeDistribution(MockCloudSettings.BootTimeDistribution.UNIFORM);
+        for (int i = 0; i < 1000; i++) {
+            long bootTime = cloud.nextBootTime();
+            assertTrue(bootTime >= 800 && bootTime <= 1200);
+        }
+        settings.setBootTimeDistribution(MockCloudSettings.BootTimeDistribution.LOGNORMAL);
+        long sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            long bootTime = cloud.nextBootTime();
+            assertTrue(bootTime > 0);
+            sum += bootTime;
+        }
+        // mean of a log-normal distribution is larger than its median
+        assertTrue(sum / 1000 > 1000);
+    }
+
+    @Test
+    public void quota() {
+        settings.setMaxCores(4);
+        MockServer first = boot("first");
+        boot("second");
+        try {
+            boot("third");
+            fail("quota exceeded");
+        } catch (MockCloudException e) {
+            assertEquals(MockCloudException.FORBIDDEN, e.getStatus());
+        }
+        cloud.deleteServer(first.getId());
+        boot("third");
+        assertArrayEquals(new int[]{2, 4, 8192}, cloud.getQuotaUsage());
+    }
+
+    @Test
+    public void subnetExhausted() {
+        // /28 provides addresses .10 to .14
+        for (int i = 0; i < 5; i++) {
+            boot("server" + i);
+        }
+        try {
+            boot("server5");
+            fail("no address left");
+        } catch (MockCloudException e) {
+            assertEquals(MockCloudException.CONFLICT, e.getStatus());
+        }
+        assertEquals(5, cloud.getQuotaUsage()[0]);
+    }
+
+    @Test
+    public void failureInjection() {
+        settings.setBootFailureRate(1);
+        assertEquals(MockServer.Status.ERROR, boot("failing").getStatus());
+        settings.setApiFailureRate(1);
+        try {
+            cloud.listServers();
+            fail("injected failure");
+        } catch (MockCloudException e) {
+            assertEquals(MockCloudException.SERVICE_UNAVAILABLE, e.getStatus());
+        }
+    }
+
+    @Test
+    public void latency() {
+        settings.setApiLatency(20);
+        long start = System.nanoTime();
+        cloud.listServers();
+        assertTrue(System.nanoTime() - start >= 20 * 1000000L);
+    }
+
+    @Test
+    public void deleteInUse() {
+        boot("server");
+        try {
+            cloud.deleteSubnet(subnetId);
+            fail("subnet in use");
+        } catch (MockCloudException e) {
+            assertEquals(MockCloudException.CONFLICT, e.getStatus());
+        }
+    }
+}
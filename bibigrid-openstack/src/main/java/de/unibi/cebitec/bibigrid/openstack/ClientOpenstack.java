@@ -2,10 +2,17 @@ package de.unibi.cebitec.bibigrid.openstack;
 
 import de.unibi.cebitec.bibigrid.core.model.*;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.ClientConnectionFailedException;
+import de.unibi.cebitec.bibigrid.core.util.ApiMetrics;
+import de.unibi.cebitec.bibigrid.core.util.RateLimiter;
+import de.unibi.cebitec.bibigrid.core.util.RetryPolicy;
 import org.openstack4j.api.OSClient;
 import org.openstack4j.api.compute.ServerGroupService;
 import org.openstack4j.api.exceptions.AuthenticationException;
+import org.openstack4j.api.exceptions.ConnectionException;
+import org.openstack4j.api.exceptions.ResponseException;
+import org.openstack4j.model.common.ActionResponse;
 import org.openstack4j.model.common.Identifier;
+import org.openstack4j.model.compute.AbsoluteLimit;
 import org.openstack4j.model.compute.Image;
 import org.openstack4j.model.storage.block.Volume;
 import org.openstack4j.openstack.OSFactory;
@@ -14,6 +21,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -24,6 +32,7 @@ import java.util.stream.Collectors;
  */
 class ClientOpenstack extends Client {
     private static final Logger LOG = LoggerFactory.getLogger(ClientOpenstack.class);
+    static final RetryPolicy RETRY = RetryPolicy.DEFAULT.withClassifier(ClientOpenstack::classify);
 
     private final OSClient internalClient;
 
@@ -31,9 +40,12 @@ class ClientOpenstack extends Client {
         OpenStackCredentials credentials = config.getOpenstackCredentials();
         try {
             OSFactory.enableHttpLoggingFilter(config.isDebugRequests());
-            internalClient = credentials.getDomain() != null ?
+            ApiMetrics.getInstance().setErrorClassifier(ClientOpenstack::getErrorCode);
+            RateLimiter.getInstance().setThrottleClassifier(ClientOpenstack::getRetryAfter);
+            RateLimiter.getInstance().configure(config.getApiRateLimits());
+            internalClient = call("identity.authenticate", () -> credentials.getDomain() != null ?
                     buildOSClientV3(credentials) :
-                    buildOSClientV2(credentials);
+                    buildOSClientV2(credentials));
             LOG.info("Openstack connection established.");
         } catch (AuthenticationException e) {
             if (Configuration.DEBUG) {
@@ -71,15 +83,129 @@ class ClientOpenstack extends Client {
         return internalClient;
     }
 
+    /**
+     * Openstack4j binds the session to the thread that authenticated. Other threads reuse the token of the
+     * session instead of authenticating again.
+     */
+    @Override
+    public void attachThread() {
+        if (internalClient instanceof OSClient.OSClientV3) {
+            OSFactory.clientFromToken(((OSClient.OSClientV3) internalClient).getToken());
+        } else {
+            OSFactory.clientFromAccess(((OSClient.OSClientV2) internalClient).getAccess());
+        }
+    }
+
+    /**
+     * @return http status of openstack response exceptions, the exception name otherwise
+     */
+    private static String getErrorCode(Throwable e) {
+        return e instanceof ResponseException ?
+                "HTTP " + ((ResponseException) e).getStatus() :
+                e.getClass().getSimpleName();
+    }
+
+    private static int getStatus(Throwable e) {
+        return e instanceof ResponseException ? ((ResponseException) e).getStatus() :
+                e instanceof FailedActionException ? ((FailedActionException) e).response.getCode() : 0;
+    }
+
+    /**
+     * Nova and neutron answer with 429 if the rate limit is exceeded. The openstack4j exceptions don't carry the
+     * Retry-After header, so the rate limiter pauses the endpoint for its default delay.
+     *
+     * @return 0 if the request has been throttled, {@link RateLimiter#NOT_THROTTLED} otherwise
+     */
+    private static long getRetryAfter(Throwable e) {
+        return getStatus(e) == 429 ? 0 : RateLimiter.NOT_THROTTLED;
+    }
+
+    /**
+     * Throttled requests (429) have not been processed and are retried in any case. Overloaded services (503),
+     * internal server errors, gateway errors and lost connections may have processed the request nevertheless,
+     * so only idempotent requests are retried.
+     */
+    private static RetryPolicy.Failure classify(Throwable e) {
+        int status = getStatus(e);
+        if (status == 429) {
+            return RetryPolicy.Failure.REJECTED;
+        }
+        return isTransientFault(status) || e instanceof ConnectionException ?
+                RetryPolicy.Failure.TRANSIENT : RetryPolicy.Failure.PERMANENT;
+    }
+
+    /**
+     * @return true, if the fault of a server or response is worth another attempt
+     */
+    static boolean isTransientFault(int code) {
+        return code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * Unsuccessful action response of a throttled or failed request, thrown to let the rate limiter and the
+     * retry policy repeat it.
+     */
+    private static final class FailedActionException extends RuntimeException {
+        private final ActionResponse response;
+
+        private FailedActionException(ActionResponse response) {
+            super(response.getFault());
+            this.response = response;
+        }
+    }
+
+    /**
+     * Runs an openstack api call within the rate limit and records it in the {@link ApiMetrics}. Throttled
+     * requests and transient errors are retried according to the {@link RetryPolicy}, the only retry layer.
+     *
+     * @param operation name of the operation, e.g. "compute.servers.list"
+     */
+    static <T> T call(String operation, Supplier<T> call) {
+        return RETRY.call(operation, () -> RateLimiter.getInstance().call(operation,
+                () -> ApiMetrics.getInstance().call(operation, call::get)));
+    }
+
+    /**
+     * Runs a read only openstack api call. Identical reads in flight at the same time are sent once.
+     *
+     * @param operation name of the operation, e.g. "compute.servers.get"
+     * @param id        id of the requested resource
+     */
+    static <T> T read(String operation, String id, Supplier<T> call) {
+        return RateLimiter.getInstance().read(operation + " " + id, () -> call(operation, call));
+    }
+
+    /**
+     * Runs an openstack api call answered by an action response. Unsuccessful responses are recorded as errors.
+     */
+    static ActionResponse action(String operation, Supplier<ActionResponse> call) {
+        try {
+            return RETRY.call(operation, () -> RateLimiter.getInstance().call(operation, () -> {
+                ActionResponse response = ApiMetrics.getInstance().call(operation, call::get);
+                if (response != null && !response.isSuccess()) {
+                    ApiMetrics.getInstance().recordError(operation, "HTTP " + response.getCode());
+                    if (isTransientFault(response.getCode()) || response.getCode() == 429) {
+                        throw new FailedActionException(response);
+                    }
+                }
+                return response;
+            }));
+        } catch (FailedActionException e) {
+            return e.response;
+        }
+    }
+
     @Override
     public List<Network> getNetworks() {
-        return internalClient.networking().network().list()
+        return call("network.networks.list", () -> internalClient.networking().network().list())
                 .stream().map(n -> new NetworkOpenstack(n, null)).collect(Collectors.toList());
     }
 
     @Override
     public Network getNetworkByName(String networkName) {
-        for (org.openstack4j.model.network.Network network : internalClient.networking().network().list()) {
+        List<? extends org.openstack4j.model.network.Network> networks =
+                call("network.networks.list", () -> internalClient.networking().network().list());
+        for (org.openstack4j.model.network.Network network : networks) {
             if (network.getName().equals(networkName)) {
                 return new NetworkOpenstack(network, null);
             }
@@ -89,13 +215,16 @@ class ClientOpenstack extends Client {
 
     @Override
     public Network getNetworkById(String networkId) {
-        org.openstack4j.model.network.Network network = internalClient.networking().network().get(networkId);
+        org.openstack4j.model.network.Network network =
+                call("network.networks.get", () -> internalClient.networking().network().get(networkId));
         return network != null ? new NetworkOpenstack(network, null) : null;
     }
 
     @Override
     public Network getNetworkByIdOrName(String net) {
-        for (org.openstack4j.model.network.Network network : internalClient.networking().network().list()) {
+        List<? extends org.openstack4j.model.network.Network> networks =
+                call("network.networks.list", () -> internalClient.networking().network().list());
+        for (org.openstack4j.model.network.Network network : networks) {
             if (network.getId().equals(net) || network.getName().equals(net)) {
                 return new NetworkOpenstack(network, null);
             }
@@ -110,13 +239,13 @@ class ClientOpenstack extends Client {
 
     @Override
     public List<Subnet> getSubnets() {
-        return internalClient.networking().subnet().list()
+        return call("network.subnets.list", () -> internalClient.networking().subnet().list())
                 .stream().map(SubnetOpenstack::new).collect(Collectors.toList());
     }
 
     @Override
     public List<String> getKeypairNames() {
-        return internalClient.compute().keypairs().list()
+        return call("compute.keypairs.list", () -> internalClient.compute().keypairs().list())
                 .stream().map(org.openstack4j.model.compute.Keypair::getName).collect(Collectors.toList());
     }
 
@@ -128,7 +257,9 @@ class ClientOpenstack extends Client {
 
     @Override
     public Subnet getSubnetByIdOrName(String snet) {
-        for (org.openstack4j.model.network.Subnet subnet : internalClient.networking().subnet().list()) {
+        List<? extends org.openstack4j.model.network.Subnet> subnets =
+                call("network.subnets.list", () -> internalClient.networking().subnet().list());
+        for (org.openstack4j.model.network.Subnet subnet : subnets) {
             if (subnet.getName().equals(snet) || subnet.getId().equals(snet)) {
                 return new SubnetOpenstack(subnet);
             }
@@ -144,7 +275,7 @@ class ClientOpenstack extends Client {
 
     @Override
     public InstanceImage getImageByIdOrName(String img) {
-        for (Image image : internalClient.compute().images().list()) {
+        for (Image image : call("compute.images.list", () -> internalClient.compute().images().list())) {
             if (image.getStatus() == Image.Status.ACTIVE
                     && (image.getName().equals(img) || image.getId().equals(img))) {
                 return new InstanceImageOpenstack(image);
@@ -161,8 +292,8 @@ class ClientOpenstack extends Client {
 
     @Override
     public Snapshot getSnapshotByIdOrName(String s) {
-        for (Volume snapshot : internalClient.blockStorage().volumes().list()) {
-            if (snapshot.getId().equals(s) || snapshot.getName().equals(s)) {
+        for (Volume snapshot : call("volume.volumes.list", () -> internalClient.blockStorage().volumes().list())) {
+            if (snapshot.getId().equals(s) || s.equals(snapshot.getName())) {
                 return new SnapshotOpenstack(snapshot);
             }
         }
@@ -172,7 +303,7 @@ class ClientOpenstack extends Client {
     @Override
     public ServerGroup getServerGroupByIdOrName(String serverGroup) {
         ServerGroupService sgs = internalClient.compute().serverGroups();
-        List<? extends org.openstack4j.model.compute.ServerGroup> sgl = sgs.list();
+        List<? extends org.openstack4j.model.compute.ServerGroup> sgl = call("compute.serverGroups.list", sgs::list);
         for (org.openstack4j.model.compute.ServerGroup sg : sgl) {
             if (sg.getId().equals(serverGroup)  || sg.getName().equals(serverGroup)) {
                 return new ServerGroupOpenstack(sg);
@@ -181,6 +312,18 @@ class ClientOpenstack extends Client {
         return null;
     }
 
-
-
+    @Override
+    public Quotas getQuotas() {
+        AbsoluteLimit limit = call("compute.limits.get",
+                () -> internalClient.compute().quotaSets().limits().getAbsolute());
+        long unassociatedFloatingIps = call("network.floatingIps.list",
+                () -> internalClient.networking().floatingip().list()).stream()
+                .filter(floatingIp -> floatingIp.getPortId() == null).count();
+        return new Quotas()
+                .set(Quotas.Resource.INSTANCES, limit.getMaxTotalInstances(), limit.getTotalInstancesUsed())
+                .set(Quotas.Resource.CORES, limit.getMaxTotalCores(), limit.getTotalCoresUsed())
+                .set(Quotas.Resource.RAM, limit.getMaxTotalRAMSize(), limit.getTotalRAMUsed())
+                .set(Quotas.Resource.FLOATING_IPS, limit.getMaxTotalFloatingIps(), limit.getTotalFloatingIpsUsed())
+                .setUnused(Quotas.Resource.FLOATING_IPS, unassociatedFloatingIps);
+    }
 }
@@ -2,8 +2,10 @@ package de.unibi.cebitec.bibigrid.openstack;
 
 import de.unibi.cebitec.bibigrid.core.intents.CreateClusterEnvironment;
 import de.unibi.cebitec.bibigrid.core.model.Client;
+import de.unibi.cebitec.bibigrid.core.model.Cluster;
 import de.unibi.cebitec.bibigrid.core.model.Configuration;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.ConfigurationException;
+import de.unibi.cebitec.bibigrid.core.model.exceptions.NotYetSupportedException;
 import de.unibi.cebitec.bibigrid.core.model.Port;
 import de.unibi.cebitec.bibigrid.core.util.SubNets;
 
@@ -71,11 +73,11 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
             // if subnet is set just use it
             if (cfg.getSubnet() != null) {
                 // check if subnet exists
-                subnet = getSubnetByIdOrName(osc, cfg.getSubnet());
+                subnet = getSubnet(cfg.getSubnet());
                 if (subnet == null) {
                     throw new ConfigurationException("No subnet with id '" + cfg.getSubnet() + "' found!");
                 }
-                network = getNetworkByIdOrName(osc, subnet.getNetworkId());
+                network = getNetwork(subnet.getNetworkId());
                 if (network == null) {
                     throw new ConfigurationException("No network with id '" + subnet.getNetworkId() + "' found!");
                 }
@@ -88,7 +90,7 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
             // if network is set try to determine router
             if (cfg.getNetwork() != null) {
                 // check if net exists
-                network = getNetworkByIdOrName(osc, cfg.getNetwork());
+                network = getNetwork(cfg.getNetwork());
                 if (network == null) {
                     throw new ConfigurationException("No network with name '" + cfg.getSubnet() + "' found!");
                 }
@@ -106,10 +108,12 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
                     LOG.info("Using existing router (ID: {}).", router.getId());
                 }
                 // create a new network
-                network = osc.networking().network().create(Builders.network()
+                Network networkRequest = Builders.network()
                         .name(NETWORK_PREFIX + cluster.getClusterId())
                         .adminStateUp(true)
-                        .build());
+                        .build();
+                network = ClientOpenstack.call("network.networks.create",
+                        () -> osc.networking().network().create(networkRequest));
                 cfg.setNetwork(network.getName());
                 LOG.info("Network (ID: {}, NAME: {}) created.", network.getId(), network.getName());
             }
@@ -129,24 +133,30 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
                 throw new ConfigurationException("No free /24 network found in " + NETWORK_CIDR + " for router " + router.getName());
             }
             // now we can create a new subnet
-            subnet = osc.networking().subnet().create(Builders.subnet()
+            Subnet subnetRequest = Builders.subnet()
                     .name(SUBNET_PREFIX + cluster.getClusterId())
                     .network(network)
                     .ipVersion(IPVersionType.V4)
                     .enableDHCP(true)
                     .cidr(CIDR)
-                    .build());
+                    .build();
+            subnet = ClientOpenstack.call("network.subnets.create",
+                    () -> osc.networking().subnet().create(subnetRequest));
 
             cfg.setSubnet(subnet.getName());
             LOG.info("Subnet (ID: {}, NAME: {}, CIDR: {}) created.", subnet.getId(), subnet.getName(), subnet.getCidr());
 
-            RouterInterface routerInterface = osc.networking().router().attachInterface(router.getId(),
-                    AttachInterfaceType.SUBNET, subnet.getId());
+            String routerId = router.getId();
+            String subnetId = subnet.getId();
+            RouterInterface routerInterface = ClientOpenstack.call("network.routers.attachInterface",
+                    () -> osc.networking().router().attachInterface(routerId, AttachInterfaceType.SUBNET, subnetId));
 
             LOG.info("Interface (ID: {}) added.", routerInterface.getId());
         } catch (ClientResponseException crs) {
             LOG.error(V, crs.getMessage(), crs);
             throw new ConfigurationException(crs.getMessage(), crs);
+        } catch (NotYetSupportedException e) {
+            throw new ConfigurationException(e.getMessage());
         }
         this.subnet = new SubnetOpenstack(subnet);
         this.network = new NetworkOpenstack(network, router);
@@ -159,7 +169,7 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
         // if a security group is configured then used it
         String securityGroup = ((ConfigurationOpenstack) getConfig()).getSecurityGroup();
         if (securityGroup != null) {
-            sge = getSecGroupExtensionByName(osc, securityGroup);
+            sge = getSecGroupExtensionByIdOrName(osc, securityGroup);
             if (sge == null) {
                 LOG.warn("Configured security group (name: {}) not found. Trying to create a new one ...", securityGroup);
             } else {
@@ -169,19 +179,21 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
         }
         try {
             ComputeSecurityGroupService csgs = cluster.getClient().compute().securityGroups();
-            sge = csgs.create(SECURITY_GROUP_PREFIX + cluster.getClusterId(),
-                    "Security group for cluster: " + cluster.getClusterId());
+            sge = ClientOpenstack.call("compute.securityGroups.create",
+                    () -> csgs.create(SECURITY_GROUP_PREFIX + cluster.getClusterId(),
+                            "Security group for cluster: " + cluster.getClusterId()));
             // allow ssh access (TCP:22) from everywhere
-            csgs.createRule(getPortBuilder(sge.getId(), IPProtocol.TCP, 22, 22).cidr("0.0.0.0/0").build());
+            createRule(csgs, getPortBuilder(sge.getId(), IPProtocol.TCP, 22, 22).cidr("0.0.0.0/0").build());
             // no restriction within the security group
-            csgs.createRule(getPortBuilder(sge.getId(), IPProtocol.TCP, 1, 65535).groupId(sge.getId()).build());
-            csgs.createRule(getPortBuilder(sge.getId(), IPProtocol.UDP, 1, 65535).groupId(sge.getId()).build());
+            createRule(csgs, getPortBuilder(sge.getId(), IPProtocol.TCP, 1, 65535).groupId(sge.getId()).build());
+            createRule(csgs, getPortBuilder(sge.getId(), IPProtocol.UDP, 1, 65535).groupId(sge.getId()).build());
             // User selected Ports.
             List<Port> ports = getConfig().getPorts();
             for (Port p : ports) {
                 IPProtocol protocol = p.getType().equals(Port.Protocol.TCP) ? IPProtocol.TCP :
                         (p.getType().equals(Port.Protocol.UDP) ? IPProtocol.UDP : IPProtocol.ICMP);
-                csgs.createRule(getPortBuilder(sge.getId(), protocol, p.getNumber(), p.getNumber()).cidr(p.getIpRange()).build());
+                createRule(csgs, getPortBuilder(sge.getId(), protocol, p.getNumber(), p.getNumber())
+                        .cidr(p.getIpRange()).build());
             }
             LOG.info("Security group created. (name: {})", sge.getName());
         } catch (ClientResponseException e) {
@@ -194,13 +206,49 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
     public CreateClusterEnvironment createKeyPair() throws ConfigurationException {
         OSClient osc = cluster.getClient();
         Configuration.ClusterKeyPair ckp = getConfig().getClusterKeyPair();
-        if (osc.compute().keypairs().create(ckp.getName(),ckp.getPublicKey())  == null) {
+        if (ClientOpenstack.call("compute.keypairs.create",
+                () -> osc.compute().keypairs().create(ckp.getName(), ckp.getPublicKey())) == null) {
             throw new ConfigurationException("Can't create KeyPair");
         }
         LOG.info("KeyPair '{}' created.",ckp.getName());
         return this;
     }
 
+    @Override
+    public CreateClusterEnvironmentOpenstack resume(Cluster existing, String networkId, String subnetId)
+            throws ConfigurationException {
+        OSClient osc = cluster.getClient();
+        try {
+            Subnet subnet = subnetId != null ? getSubnet(subnetId) : null;
+            if (subnet == null) {
+                throw new ConfigurationException("Subnet (ID: " + subnetId + ") of the cluster no longer exists!");
+            }
+            Network network = getNetwork(subnet.getNetworkId());
+            if (network == null) {
+                throw new ConfigurationException("Network (ID: " + subnet.getNetworkId() +
+                        ") of the cluster no longer exists!");
+            }
+            this.subnet = new SubnetOpenstack(subnet);
+            this.network = new NetworkOpenstack(network, getRouterByNetwork(osc, network.getId(), subnet.getId()));
+        } catch (NotYetSupportedException e) {
+            throw new ConfigurationException(e.getMessage());
+        }
+        String securityGroup = existing.getSecurityGroup() != null ? existing.getSecurityGroup() :
+                ((ConfigurationOpenstack) getConfig()).getSecurityGroup();
+        sge = securityGroup != null ? getSecGroupExtensionByIdOrName(osc, securityGroup) : null;
+        if (sge == null) {
+            throw new ConfigurationException("Security group of cluster '" + cluster.getClusterId() +
+                    "' no longer exists!");
+        }
+        LOG.info(V, "Using subnet (ID: {}) and security group (name: {}) of the cluster.", subnet.getId(),
+                sge.getName());
+        return this;
+    }
+
+    private static void createRule(ComputeSecurityGroupService csgs, SecGroupExtension.Rule rule) {
+        ClientOpenstack.call("compute.securityGroups.createRule", () -> csgs.createRule(rule));
+    }
+
     private SecurityGroupRuleBuilder getPortBuilder(String groupId, IPProtocol protocol, int from, int to) {
         return Builders.secGroupRule().parentGroupId(groupId).protocol(protocol).range(from, to);
     }
@@ -210,12 +258,13 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
     }
 
     /**
-     * Determine secgroupExt by given name. Returns secgroupext object or null in the
+     * Determine secgroupExt by given id or name. Returns secgroupext object or null in the
      * case that no suitable secgroupexetension is found.
      */
-    private static SecGroupExtension getSecGroupExtensionByName(OSClient osc, String name) {
-        for (SecGroupExtension sge : osc.compute().securityGroups().list()) {
-            if (sge.getName().equals(name)) {
+    private static SecGroupExtension getSecGroupExtensionByIdOrName(OSClient osc, String name) {
+        for (SecGroupExtension sge : ClientOpenstack.call("compute.securityGroups.list",
+                () -> osc.compute().securityGroups().list())) {
+            if (sge.getName().equals(name) || sge.getId().equals(name)) {
                 return sge;
             }
         }
@@ -226,7 +275,7 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
      * Determine router by given router name. Returns router object or null in the case that no suitable router is found.
      */
     private static Router getRouterByIdOrName(OSClient osc, String r) {
-        for (Router router : osc.networking().router().list()) {
+        for (Router router : ClientOpenstack.call("network.routers.list", () -> osc.networking().router().list())) {
             if (router.getName().equals(r) || router.getId().equals(r)) {
                 return router;
             }
@@ -239,7 +288,7 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
      * Determine network by given network id. Returns Network object or null if no network with given id is found.
      */
     static Network getNetworkByIdOrName(OSClient osc, String n) {
-        for (Network net : osc.networking().network().list()) {
+        for (Network net : ClientOpenstack.call("network.networks.list", () -> osc.networking().network().list())) {
             if (net.getId().equals(n) || net.getName().equals(n)) {
                 return net;
             }
@@ -248,15 +297,19 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
     }
 
     /**
-     * Determine subnet by given subnet name. Returns subnet object or null in the case no suitable subnet is found.
+     * Determine subnet by given subnet id or name, resolved once per run. Returns null if no subnet is found.
      */
-    private static Subnet getSubnetByIdOrName(OSClient osc, String s) {
-        for (Subnet subnet : osc.networking().subnet().list()) {
-            if (subnet.getName().equals(s) || subnet.getId().equals(s)) {
-                return subnet;
-            }
-        }
-        return null;
+    private Subnet getSubnet(String s) throws NotYetSupportedException {
+        SubnetOpenstack subnet = (SubnetOpenstack) cluster.getResources().getSubnet(s);
+        return subnet != null ? subnet.getInternal() : null;
+    }
+
+    /**
+     * Determine network by given network id or name, resolved once per run. Returns null if no network is found.
+     */
+    private Network getNetwork(String n) throws NotYetSupportedException {
+        NetworkOpenstack network = (NetworkOpenstack) cluster.getResources().getNetwork(n);
+        return network != null ? network.getInternal() : null;
     }
 
     /**
@@ -275,14 +328,14 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
         portListOptions.networkId(networkId);
         // 1st check for device_owner "network:router_interface
         portListOptions.deviceOwner("network:router_interface");
-        List<? extends org.openstack4j.model.network.Port> lop = ps.list(portListOptions);
+        List<? extends org.openstack4j.model.network.Port> lop = listPorts(ps, portListOptions);
         if (lop.isEmpty()) { // if no port found 2nd check for "network:ha_router_replicated_interface"
             portListOptions.deviceOwner("network:ha_router_replicated_interface");
-            lop = ps.list(portListOptions);
+            lop = listPorts(ps, portListOptions);
         }
         if (lop.isEmpty()) { // if no port found 3nd check for "network:router_interface_distributed"
             portListOptions.deviceOwner("network:router_interface_distributed");
-            lop = ps.list(portListOptions);
+            lop = listPorts(ps, portListOptions);
         }
         if (subnetId == null && lop.size() > 1) {
             LOG.warn("Network (ID: {}) uses more than one router, returning the first one!", networkId);
@@ -304,6 +357,11 @@ public class CreateClusterEnvironmentOpenstack extends CreateClusterEnvironment
 
     private static List<? extends org.openstack4j.model.network.Port> getPortsByRouter(OSClient osc, Router router) {
         PortListOptions portListOptions = PortListOptions.create().deviceId(router.getId());
-        return osc.networking().port().list(portListOptions);
+        return listPorts(osc.networking().port(), portListOptions);
+    }
+
+    private static List<? extends org.openstack4j.model.network.Port> listPorts(PortService ps,
+                                                                                PortListOptions portListOptions) {
+        return ClientOpenstack.call("network.ports.list", () -> ps.list(portListOptions));
     }
 }
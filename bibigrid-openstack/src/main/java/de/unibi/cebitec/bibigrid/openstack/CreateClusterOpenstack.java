@@ -4,7 +4,9 @@ import de.unibi.cebitec.bibigrid.core.intents.CreateCluster;
 import de.unibi.cebitec.bibigrid.core.model.Client;
 import de.unibi.cebitec.bibigrid.core.model.Configuration;
 import de.unibi.cebitec.bibigrid.core.model.Instance;
+import de.unibi.cebitec.bibigrid.core.model.InstanceType;
 import de.unibi.cebitec.bibigrid.core.model.ProviderModule;
+import de.unibi.cebitec.bibigrid.core.model.Snapshot;
 import de.unibi.cebitec.bibigrid.core.model.exceptions.NotYetSupportedException;
 import de.unibi.cebitec.bibigrid.core.util.*;
 
@@ -13,8 +15,11 @@ import static de.unibi.cebitec.bibigrid.core.util.VerboseOutputFilter.V;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.openstack4j.api.Builders;
 import org.openstack4j.api.OSClient;
@@ -50,21 +55,33 @@ public class CreateClusterOpenstack extends CreateCluster {
     protected List<Configuration.MountPoint> resolveMountSources(List<Configuration.MountPoint> mountPoints) {
         List<Configuration.MountPoint> result = new ArrayList<>();
         for (Configuration.MountPoint mountPoint : mountPoints) {
-            // check if master mount is a volume
-            Volume volume = getVolumeByNameOrId(mountPoint.getSource());
+            // check if master mount is a volume, volumes have been resolved by the validation before
+            String volumeName = mountPoint.getSource() + "-" + clusterId;
+            Snapshot volume;
+            try {
+                volume = resources.getSnapshot(mountPoint.getSource());
+                if (volume == null) {
+                    // the volume might have been created from the snapshot before the cluster setup was resumed
+                    volume = resources.getSnapshot(volumeName);
+                }
+            } catch (NotYetSupportedException e) {
+                LOG.error(e.getMessage());
+                volume = null;
+            }
+            String volumeId = volume != null ? volume.getId() : null;
             // could also be a snapshot
-            if (volume == null) {
+            if (volumeId == null) {
                 VolumeSnapshot snapshot = getSnapshotByNameOrId(mountPoint.getSource());
                 if (snapshot != null) {
-                    volume = createVolumeFromSnapshot(snapshot, mountPoint.getSource() + "-" + clusterId);
-                    LOG.info(V, "Create volume '{}' from snapshot '{}'.", volume.getName(), mountPoint.getSource());
+                    volumeId = createVolumeFromSnapshot(snapshot, volumeName).getId();
+                    LOG.info(V, "Create volume '{}' from snapshot '{}'.", volumeName, mountPoint.getSource());
                 }
             }
             // Volume exists or created from snapshot
-            if (volume != null) {
-                LOG.info(V, "Add volume '{}' to master volume mount map.", volume.getName());
+            if (volumeId != null) {
+                LOG.info(V, "Add volume '{}' to master volume mount map.", volumeId);
                 Configuration.MountPoint idTargetMount = new Configuration.MountPoint();
-                idTargetMount.setSource(volume.getId());
+                idTargetMount.setSource(volumeId);
                 idTargetMount.setTarget(mountPoint.getTarget());
                 result.add(idTargetMount);
             } else {
@@ -76,6 +93,14 @@ public class CreateClusterOpenstack extends CreateCluster {
 
     @Override
     protected InstanceOpenstack launchClusterMasterInstance(String masterNameTag) {
+        return launchClusterMasterInstance(masterNameTag, 1);
+    }
+
+    /**
+     * @param attempt number of the launch attempt, masters failing with a transient fault are launched again
+     *                within the limits of the {@link ClientOpenstack#RETRY retry policy}
+     */
+    private InstanceOpenstack launchClusterMasterInstance(String masterNameTag, int attempt) {
         InstanceOpenstack master = null;
         try {
             final Map<String, String> metadata = new HashMap<>();
@@ -88,7 +113,7 @@ public class CreateClusterOpenstack extends CreateCluster {
                     .name(masterNameTag)
                     .flavor(masterSpec.getFlavor().getId())
                     // .image(config.getMasterInstance().getImage())
-                    .image((client.getImageByIdOrName(config.getMasterInstance().getImage())).getId())
+                    .image(resources.getImage(config.getMasterInstance().getImage()).getId())
                     .keypairName(config.getClusterKeyPair().getName())
                     .addSecurityGroup(((CreateClusterEnvironmentOpenstack) environment).getSecGroupExtension().getId())
                     .availabilityZone(config.getAvailabilityZone())
@@ -102,24 +127,30 @@ public class CreateClusterOpenstack extends CreateCluster {
 
             ServerCreate sc = scb.build();
             // Boot the server async
-            Server server = os.compute().servers().boot(sc);
+            long requestNanos = System.nanoTime();
+            Server server = ClientOpenstack.call("compute.servers.boot", () -> os.compute().servers().boot(sc));
 
             // check if anything goes wrong
             Fault fault = server.getFault();
             if (fault != null) {
                 // some more debug information in verbose mode
                 LOG.info(V, "{},{}", fault.getCode(), fault.getMessage());
-                // print error message and abort launch
+                // print error message and retry or abort launch
                 if (fault.getCode() == 500) {
                     LOG.error("Launch master :: {}", fault.getMessage());
-                    return null;
+                    return retryMasterLaunch(server, fault, attempt) ?
+                            launchClusterMasterInstance(masterNameTag, attempt + 1) : null;
                 }
             }
 
             // Network configuration
             LOG.info("Master (ID: {}) started", server.getId());
             master = new InstanceOpenstack(config.getMasterInstance(), server);
-            master.setPrivateIp(waitForAddress(master.getId(), environment.getNetwork().getName()).getAddr());
+            Address masterAddress = waitForAddress(master.getId(), environment.getNetwork().getName());
+            if (masterAddress == null) {
+                return null;
+            }
+            master.setPrivateIp(masterAddress.getAddr());
 
             master.updateNeutronHostname();
             // get and assign floating ip to master
@@ -130,22 +161,31 @@ public class CreateClusterOpenstack extends CreateCluster {
 
             // wait for master available
             do {
+                if (isCancelled()) {
+                    return null;
+                }
                 checkForServerAndUpdateInstance(master.getId(), master);
-                if (!master.isActive()) { // if not yet active wait ....
+                if (master.hasError()) {
+                    // if the master fails permanently we can do nothing and must shutdown everything
+                    return retryMasterLaunch(master.getInternal(), master.getInternal().getFault(), attempt) ?
+                            launchClusterMasterInstance(masterNameTag, attempt + 1) : null;
+                } else if (!master.isActive()) { // if not yet active wait ....
                     sleep(2);
-                } else if (master.hasError()) {
-                    // if the master fails we can do nothing and must shutdown everything
-                    return null;
                 }
             } while (!master.isActive());
+            PhaseTracer.getInstance().record("boot " + masterNameTag, PhaseTracer.CATEGORY_INSTANCE,
+                    requestNanos, System.nanoTime());
 
             // attach Volumes
             if (!masterDeviceMapper.getSnapshotIdToMountPoint().isEmpty()) {
                 for (Configuration.MountPoint mountPoint : masterDeviceMapper.getSnapshotIdToMountPoint()) {
                     //check if volume is available
-                    Volume v = os.blockStorage().volumes().get(mountPoint.getSource());
+                    Volume v = getVolume(mountPoint.getSource());
                     boolean waiting = true;
                     while (waiting) {
+                        if (isCancelled()) {
+                            return null;
+                        }
                         switch (v.getStatus()) {
                             case AVAILABLE:
                                 waiting = false;
@@ -153,7 +193,7 @@ public class CreateClusterOpenstack extends CreateCluster {
                             case CREATING: {
                                 sleep(5);
                                 LOG.info(V, "Waiting for volume '{}' to be available.", v.getId());
-                                v = os.blockStorage().volumes().get(mountPoint.getSource());
+                                v = getVolume(mountPoint.getSource());
                                 break;
                             }
                             default:
@@ -164,8 +204,9 @@ public class CreateClusterOpenstack extends CreateCluster {
 
                     if (v.getStatus().equals(Status.AVAILABLE)) {
                         // @ToDo: Test if a volume can be attached to a non active server instance ...
-                        VolumeAttachment va = os.compute().servers().attachVolume(server.getId(), mountPoint.getSource(),
-                                masterDeviceMapper.getDeviceNameForSnapshotId(mountPoint.getSource()));
+                        VolumeAttachment va = ClientOpenstack.call("compute.servers.attachVolume",
+                                () -> os.compute().servers().attachVolume(server.getId(), mountPoint.getSource(),
+                                        masterDeviceMapper.getDeviceNameForSnapshotId(mountPoint.getSource())));
                         if (va == null) {
                             LOG.error("Attaching volume '{}' to master failed.", mountPoint.getSource());
                         } else {
@@ -181,6 +222,28 @@ public class CreateClusterOpenstack extends CreateCluster {
         return master;
     }
 
+    /**
+     * Deletes a master that failed with a transient fault and waits before the next launch attempt.
+     *
+     * @return true, if the master should be launched again
+     */
+    private boolean retryMasterLaunch(Server server, Fault fault, int attempt) {
+        if (fault == null || !ClientOpenstack.isTransientFault(fault.getCode()) ||
+                attempt >= ClientOpenstack.RETRY.getMaxAttempts()) {
+            return false;
+        }
+        LOG.warn("Launch of master failed with transient error code '{}'. Retrying ({}/{}) ...", fault.getCode(),
+                attempt, ClientOpenstack.RETRY.getMaxAttempts() - 1);
+        ActionResponse response = ClientOpenstack.action("compute.servers.delete",
+                () -> os.compute().servers().delete(server.getId()));
+        if (!response.isSuccess()) {
+            LOG.error("Failed to delete master (ID: {}): {}", server.getId(), response.getFault());
+            return false;
+        }
+        ApiMetrics.getInstance().recordRetry("compute.servers.boot");
+        return ClientOpenstack.RETRY.backoff(attempt);
+    }
+
     private boolean assignPublicIpToMaster(InstanceOpenstack master) {
         // If we don't use a public ip for the master instance, just return.
         if (!config.isUseMasterWithPublicIp()) {
@@ -189,7 +252,16 @@ public class CreateClusterOpenstack extends CreateCluster {
         ActionResponse ar = null;
         boolean assigned = false;
         List<String> blacklist = new ArrayList<>();
+        RetryPolicy.Deadline deadline = ClientOpenstack.RETRY.deadline();
         while (ar == null || !assigned) {
+            if (isCancelled()) {
+                return false;
+            }
+            if (deadline.isExpired()) {
+                LOG.error("Failed to assign a FloatingIP to the master within {} seconds! Abort!",
+                        ClientOpenstack.RETRY.getDeadlineMillis() / 1000);
+                return false;
+            }
             // get next free floatingIP
             NetFloatingIP floatingIp = getFloatingIP(blacklist);
             // if null there is no free floating ip available
@@ -200,11 +272,13 @@ public class CreateClusterOpenstack extends CreateCluster {
             // put ip on blacklist
             blacklist.add(floatingIp.getFloatingIpAddress());
             // try to assign floating ip to server
-            ar = os.compute().floatingIps().addFloatingIP(master.getInternal(), floatingIp.getFloatingIpAddress());
+            ar = ClientOpenstack.action("compute.floatingIps.add", () -> os.compute().floatingIps()
+                    .addFloatingIP(master.getInternal(), floatingIp.getFloatingIpAddress()));
             // in case of success try  update master object
             if (ar.isSuccess()) {
                 sleep(1, false);
-                Server tmp = os.compute().servers().get(master.getId());
+                Server tmp = ClientOpenstack.read("compute.servers.get", master.getId(),
+                        () -> os.compute().servers().get(master.getId()));
                 if (tmp != null) {
                     assigned = checkForFloatingIp(tmp, floatingIp.getFloatingIpAddress());
                     if (assigned) {
@@ -225,65 +299,73 @@ public class CreateClusterOpenstack extends CreateCluster {
     protected List<Instance> launchClusterWorkerInstances(
             int batchIndex, Configuration.WorkerInstanceConfiguration instanceConfiguration, String workerNameTag) {
         Map<String, InstanceOpenstack> workers = new HashMap<>();
+        Map<String, Long> requestNanos = new HashMap<>();
         try {
             final Map<String, String> metadata = new HashMap<>();
             metadata.put(Instance.TAG_NAME, workerNameTag);
             metadata.put(Instance.TAG_BIBIGRID_ID, clusterId);
             metadata.put(Instance.TAG_USER, config.getUser());
-            InstanceTypeOpenstack workerSpec = (InstanceTypeOpenstack) instanceConfiguration.getProviderType();
             for (int i = 0; i < instanceConfiguration.getCount(); i++) {
-                ServerCreateBuilder scb = null;
-                    scb = Builders.server()
-                            .name(buildWorkerInstanceName(batchIndex, i))
-                            .flavor(workerSpec.getFlavor().getId())
-                            //.image(instanceConfiguration.getImage())
-                            .image((client.getImageByIdOrName(instanceConfiguration.getImage())).getId())
-                            .keypairName(config.getClusterKeyPair().getName())
-                            .addSecurityGroup(((CreateClusterEnvironmentOpenstack) environment).getSecGroupExtension().getId())
-                            .availabilityZone(config.getAvailabilityZone())
-                            .userData(ShellScriptCreator.getUserData(config, true))
-                            .addMetadata(metadata)
-                            .configDrive(instanceConfiguration.getProviderType().getConfigDrive() != 0)
-                            .networks(Arrays.asList(environment.getNetwork().getId()));
-                if (config.getServerGroup() != null) {
-                    scb.addSchedulerHint("group", config.getServerGroup());
+                if (isCancelled()) {
+                    // workers requested so far are deleted by the rollback
+                    return null;
                 }
-                ServerCreate sc  = scb.build();
-                Server server = os.compute().servers().boot(sc);
-                InstanceOpenstack instance = new InstanceOpenstack(instanceConfiguration, server);
-                workers.put(server.getId(), instance);
-                LOG.info(V, "Instance request for '{}'.", sc.getName());
+                InstanceOpenstack instance = bootWorkerInstance(buildWorkerInstanceName(batchIndex, i),
+                        instanceConfiguration, instanceConfiguration.getProviderType(), config.getAvailabilityZone(),
+                        metadata);
+                workers.put(instance.getId(), instance);
+                requestNanos.put(instance.getId(), System.nanoTime());
             }
             LOG.info("Waiting for worker instances to be ready ...");
             int active = 0;
-            List<String> ignoreList = new ArrayList<>();
-            while (workers.size() > active + ignoreList.size()) {
+            Set<String> pending = new LinkedHashSet<>(workers.keySet());
+            while (!pending.isEmpty()) {
                 // wait for some seconds to not overload REST API
                 sleep(2);
-                // get fresh server object for given server id
-                for (InstanceOpenstack worker : workers.values()) {
-                    //ignore if instance is already active ...
-                    if (!(worker.isActive() || worker.hasError())) {
-                        // check server status
-                        checkForServerAndUpdateInstance(worker.getId(), worker);
-                        if (worker.isActive()) {
-                            active++;
-                            LOG.info("[{}/{}] Instance '{}' is active!", active, workers.size(), worker.getHostname());
-                        } else if (worker.hasError()) {
-                            LOG.warn("Ignoring worker instance '{}'.", worker.getHostname());
-                            ignoreList.add(worker.getId());
+                if (isCancelled()) {
+                    return null;
+                }
+                Map<String, InstanceOpenstack> replacements = new HashMap<>();
+                for (Iterator<String> iterator = pending.iterator(); iterator.hasNext(); ) {
+                    InstanceOpenstack worker = workers.get(iterator.next());
+                    // get fresh server object for given server id
+                    checkForServerAndUpdateInstance(worker.getId(), worker);
+                    if (worker.isActive()) {
+                        active++;
+                        iterator.remove();
+                        LOG.info("[{}/{}] Instance '{}' is active!", active, instanceConfiguration.getCount(),
+                                worker.getHostname());
+                        PhaseTracer.getInstance().record("boot " + worker.getHostname(),
+                                PhaseTracer.CATEGORY_INSTANCE, requestNanos.get(worker.getId()), System.nanoTime());
+                    } else if (worker.hasError()) {
+                        iterator.remove();
+                        workers.remove(worker.getId());
+                        String name = worker.getInternal().getName();
+                        ActionResponse response = ClientOpenstack.action("compute.servers.delete",
+                                () -> os.compute().servers().delete(worker.getId()));
+                        if (!response.isSuccess()) {
+                            LOG.error("Failed to delete worker (ID: {}): {}", worker.getId(), response.getFault());
+                        }
+                        if (takeWorkerReplacement(name)) {
+                            InstanceOpenstack replacement = bootWorkerInstance(name, instanceConfiguration,
+                                    getReplacementType(instanceConfiguration), getReplacementAvailabilityZone(),
+                                    metadata);
+                            replacements.put(replacement.getId(), replacement);
+                            requestNanos.put(replacement.getId(), System.nanoTime());
                         }
                     }
                 }
-            }
-            // remove ignored instances from worker map
-            for (String id : ignoreList) {
-                workers.remove(id);
+                workers.putAll(replacements);
+                pending.addAll(replacements.keySet());
             }
             LOG.info(V, "Waiting for worker network configuration completion ...");
             // wait for worker network finished ... update server instance list
             for (InstanceOpenstack worker : workers.values()) {
-                worker.setPrivateIp(waitForAddress(worker.getId(), environment.getNetwork().getName()).getAddr());
+                Address workerAddress = waitForAddress(worker.getId(), environment.getNetwork().getName());
+                if (workerAddress == null) {
+                    return null;
+                }
+                worker.setPrivateIp(workerAddress.getAddr());
                 worker.updateNeutronHostname();
             }
             // TODO
@@ -296,9 +378,40 @@ public class CreateClusterOpenstack extends CreateCluster {
         return new ArrayList<>(workers.values());
     }
 
+    /**
+     * Requests a worker instance of the batch.
+     *
+     * @param type             flavor of the instance, a fallback for replacements of failed workers
+     * @param availabilityZone zone of the instance, a fallback for replacements of failed workers
+     */
+    private InstanceOpenstack bootWorkerInstance(String name,
+                                                 Configuration.WorkerInstanceConfiguration instanceConfiguration,
+                                                 InstanceType type, String availabilityZone,
+                                                 Map<String, String> metadata) throws NotYetSupportedException {
+        ServerCreateBuilder scb = Builders.server()
+                .name(name)
+                .flavor(((InstanceTypeOpenstack) type).getFlavor().getId())
+                .image(resources.getImage(instanceConfiguration.getImage()).getId())
+                .keypairName(config.getClusterKeyPair().getName())
+                .addSecurityGroup(((CreateClusterEnvironmentOpenstack) environment).getSecGroupExtension().getId())
+                .availabilityZone(availabilityZone)
+                .userData(ShellScriptCreator.getUserData(config, true))
+                .addMetadata(metadata)
+                .configDrive(type.getConfigDrive() != 0)
+                .networks(Arrays.asList(environment.getNetwork().getId()));
+        if (config.getServerGroup() != null) {
+            scb.addSchedulerHint("group", config.getServerGroup());
+        }
+        ServerCreate sc = scb.build();
+        Server server = ClientOpenstack.call("compute.servers.boot", () -> os.compute().servers().boot(sc));
+        LOG.info(V, "Instance request for '{}'.", sc.getName());
+        return new InstanceOpenstack(instanceConfiguration, server);
+    }
+
     private NetFloatingIP getFloatingIP(List<String> blacklist) {
         // get list of all available floating IP's, and search for free ones ...
-        List<? extends NetFloatingIP> floatingIps = os.networking().floatingip().list();
+        List<? extends NetFloatingIP> floatingIps =
+                ClientOpenstack.call("network.floatingIps.list", () -> os.networking().floatingip().list());
         Router router = ((NetworkOpenstack) environment.getNetwork()).getRouter();
         for (NetFloatingIP floatingIp : floatingIps) {
             if (floatingIp.getPortId() == null
@@ -313,9 +426,11 @@ public class CreateClusterOpenstack extends CreateCluster {
         }
         // try to allocate a new floating from network pool
         try {
-            return os.networking().floatingip().create(Builders.netFloatingIP()
+            NetFloatingIP request = Builders.netFloatingIP()
                     .floatingNetworkId(router.getExternalGatewayInfo().getNetworkId())
-                    .build());
+                    .build();
+            return ClientOpenstack.call("network.floatingIps.create",
+                    () -> os.networking().floatingip().create(request));
         } catch (Exception e) {
             LOG.error(e.getMessage());
         }
@@ -328,15 +443,21 @@ public class CreateClusterOpenstack extends CreateCluster {
 
     /**
      * Wait until the server has a private ip address.
-     * This blocks and polls the server object every second.
+     * This blocks and polls the server object every two seconds.
+     *
+     * @return the address or null, if the setup has been cancelled meanwhile
      */
     private Address waitForAddress(String serverId, String networkName) {
         List<? extends Address> addressList;
         Server server;
         do {
+            if (isCancelled()) {
+                return null;
+            }
             sleep(2, false);
             // refresh server object - ugly
-            server = os.compute().servers().get(serverId);
+            server = ClientOpenstack.read("compute.servers.get", serverId,
+                    () -> os.compute().servers().get(serverId));
             addressList = server.getAddresses().getAddresses().get(networkName);
             if (addressList == null) {
                 LOG.info(V,"Waiting for address ...");
@@ -374,7 +495,8 @@ public class CreateClusterOpenstack extends CreateCluster {
      * @param nameOrId - name or id of snapshot
      */
     private VolumeSnapshot getSnapshotByNameOrId(String nameOrId) {
-        List<? extends VolumeSnapshot> allSnapshots = os.blockStorage().snapshots().list();
+        List<? extends VolumeSnapshot> allSnapshots =
+                ClientOpenstack.call("volume.snapshots.list", () -> os.blockStorage().snapshots().list());
         for (VolumeSnapshot vss : allSnapshots) {
             if (vss.getName() != null && vss.getName().equals(nameOrId) || vss.getId().equals(nameOrId)) {
                 return vss;
@@ -383,32 +505,22 @@ public class CreateClusterOpenstack extends CreateCluster {
         return null;
     }
 
-    /**
-     * Return a Volume by its name/id or null if no volume is found
-     *
-     * @param nameOrId - name or id of volume
-     */
-    private Volume getVolumeByNameOrId(String nameOrId) {
-        List<? extends Volume> allVolumes = os.blockStorage().volumes().list();
-        for (Volume v : allVolumes) {
-            if (v.getName() != null && v.getName().equals(nameOrId) || v.getId().equals(nameOrId)) {
-                return v;
-            }
-        }
-        return null;
-    }
-
     /**
      * Return a new volume from a Snapshot
      *
      * @param name of newly created volume
      */
     private Volume createVolumeFromSnapshot(VolumeSnapshot snapshot, String name) {
-        return os.blockStorage().volumes().create(Builders.volume()
+        Volume request = Builders.volume()
                 .name(name)
                 .snapshot(snapshot.getId())
                 .description("created from snapshot " + snapshot.getId() + " by BiBiGrid")
-                .build());
+                .build();
+        return ClientOpenstack.call("volume.volumes.create", () -> os.blockStorage().volumes().create(request));
+    }
+
+    private Volume getVolume(String id) {
+        return ClientOpenstack.read("volume.volumes.get", id, () -> os.blockStorage().volumes().get(id));
     }
 
     /**
@@ -416,7 +528,7 @@ public class CreateClusterOpenstack extends CreateCluster {
      * state. Returns false in the case of an error, true otherwise.
      */
     private void checkForServerAndUpdateInstance(String id, InstanceOpenstack instance) {
-        Server server = os.compute().servers().get(id);
+        Server server = ClientOpenstack.read("compute.servers.get", id, () -> os.compute().servers().get(id));
         instance.setServer(server);
         // check for status available
         if (server.getStatus() != null) {
@@ -9,8 +9,8 @@ import java.util.stream.Collectors;
 import de.unibi.cebitec.bibigrid.core.model.Client;
 import de.unibi.cebitec.bibigrid.core.model.Configuration;
 import de.unibi.cebitec.bibigrid.core.model.Instance;
+import de.unibi.cebitec.bibigrid.core.model.InstanceType;
 import de.unibi.cebitec.bibigrid.core.model.ProviderModule;
-import de.unibi.cebitec.bibigrid.core.model.exceptions.InstanceTypeNotFoundException;
 import org.openstack4j.api.OSClient;
 import org.openstack4j.model.compute.*;
 
@@ -22,6 +22,8 @@ import org.openstack4j.model.compute.*;
  */
 public class ListIntentOpenstack extends ListIntent {
     private final OSClient os;
+    private Map<String, InstanceTypeOpenstack> instanceTypes;
+    private Map<String, Image> images;
 
     ListIntentOpenstack(final ProviderModule providerModule, Client client, final Configuration config) {
         super(providerModule, client, config);
@@ -35,7 +37,8 @@ public class ListIntentOpenstack extends ListIntent {
     }
 
     private void searchSecurityGroups() {
-        for (SecGroupExtension sg : os.compute().securityGroups().list()) {
+        for (SecGroupExtension sg : ClientOpenstack.call("compute.securityGroups.list",
+                () -> os.compute().securityGroups().list())) {
             String name = sg.getName();
             if (name != null && name.startsWith(CreateClusterEnvironment.SECURITY_GROUP_PREFIX)) {
                 getOrCreateCluster(getClusterIdFromName(name)).setSecurityGroup(sg.getId());
@@ -45,25 +48,51 @@ public class ListIntentOpenstack extends ListIntent {
 
     @Override
     protected List<Instance> getInstances() {
-        return os.compute().servers().list().stream().map(i -> new InstanceOpenstack(null, i)).collect(Collectors.toList());
+        return ClientOpenstack.call("compute.servers.list", () -> os.compute().servers().list())
+                .stream().map(i -> new InstanceOpenstack(null, i)).collect(Collectors.toList());
     }
 
     @Override
     protected void loadInstanceConfiguration(Instance instance) {
         Server server = ((InstanceOpenstack) instance).getInternal();
         Configuration.InstanceConfiguration instanceConfiguration = new Configuration.InstanceConfiguration();
-        Flavor flavor = server.getFlavor();
-        if (flavor != null) {
-            instanceConfiguration.setType(flavor.getName());
-            try {
-                instanceConfiguration.setProviderType(providerModule.getInstanceType(client, config, flavor.getName()));
-            } catch (InstanceTypeNotFoundException ignored) {
-            }
+        // Server#getFlavor and Server#getImage fetch the resource once per server, resolve both from one list instead
+        InstanceTypeOpenstack type = getInstanceTypes().get(server.getFlavorId());
+        if (type != null) {
+            instanceConfiguration.setType(type.getValue());
+            instanceConfiguration.setProviderType(type);
         }
-        Image image = server.getImage();
+        Image image = getImages().get(server.getImageId());
         if (image != null) {
             instanceConfiguration.setImage(image.getName());
         }
         instance.setConfiguration(instanceConfiguration);
     }
+
+    /**
+     * @return instance types by flavor id
+     */
+    private Map<String, InstanceTypeOpenstack> getInstanceTypes() {
+        if (instanceTypes == null) {
+            instanceTypes = new HashMap<>();
+            for (InstanceType type : providerModule.getInstanceTypes(client, config)) {
+                InstanceTypeOpenstack typeOpenstack = (InstanceTypeOpenstack) type;
+                instanceTypes.put(typeOpenstack.getFlavor().getId(), typeOpenstack);
+            }
+        }
+        return instanceTypes;
+    }
+
+    /**
+     * @return images by id
+     */
+    private Map<String, Image> getImages() {
+        if (images == null) {
+            images = new HashMap<>();
+            for (Image image : ClientOpenstack.call("compute.images.list", () -> os.compute().images().list())) {
+                images.put(image.getId(), image);
+            }
+        }
+        return images;
+    }
 }
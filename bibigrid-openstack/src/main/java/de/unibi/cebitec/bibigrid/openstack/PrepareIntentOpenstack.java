@@ -59,7 +59,9 @@ class PrepareIntentOpenstack extends PrepareIntent {
                 break;
             } else {
                 LOG.info(V, "...");
-                sleep(10);
+                if (!sleep(10)) {
+                    return;
+                }
             }
         } while (true);
     }
@@ -75,7 +77,9 @@ class PrepareIntentOpenstack extends PrepareIntent {
                 break;
             } else {
                 LOG.info(V, "...");
-                sleep(2);
+                if (!sleep(2)) {
+                    return false;
+                }
             }
         } while (true);
         Volume volume = CinderVolume.builder()
@@ -91,7 +95,9 @@ class PrepareIntentOpenstack extends PrepareIntent {
                 break;
             } else {
                 LOG.info(V, "...");
-                sleep(2);
+                if (!sleep(2)) {
+                    return false;
+                }
             }
         } while (true);
         os.blockStorage().snapshots().delete(snapshotId);
@@ -104,7 +110,9 @@ class PrepareIntentOpenstack extends PrepareIntent {
                 break;
             } else {
                 LOG.info(V, "...");
-                sleep(2);
+                if (!sleep(2)) {
+                    return false;
+                }
             }
         } while (true);
         os.blockStorage().volumes().delete(volume.getId());
@@ -3,6 +3,8 @@ package de.unibi.cebitec.bibigrid.openstack;
 import de.unibi.cebitec.bibigrid.core.intents.CreateCluster;
 import de.unibi.cebitec.bibigrid.core.intents.TerminateIntent;
 import de.unibi.cebitec.bibigrid.core.model.*;
+import de.unibi.cebitec.bibigrid.core.util.ApiMetrics;
+import de.unibi.cebitec.bibigrid.core.util.RetryPolicy;
 import org.openstack4j.api.OSClient;
 import org.openstack4j.api.exceptions.ClientResponseException;
 import org.openstack4j.api.networking.PortService;
@@ -14,6 +16,8 @@ import org.openstack4j.model.network.options.PortListOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 /**
  * Implements TerminateIntent for Openstack.
  *
@@ -31,32 +35,29 @@ public class TerminateIntentOpenstack extends TerminateIntent {
 
     @Override
     protected boolean terminateCluster(Cluster cluster) {
-        // master
-        if (cluster.getMasterInstance() != null) {
-            ActionResponse response = os.compute().servers().delete(cluster.getMasterInstance().getId());
-            if (!response.isSuccess()) {
-                LOG.error("Failed to delete instance '{}'. {}", cluster.getMasterInstance().getName(), response.getFault());
-                return false;
-            }
-        }
-        // workers
-        for (Instance worker : cluster.getWorkerInstances()) {
-            if (worker != null) {
-                ActionResponse response = os.compute().servers().delete(worker.getId());
-                if (!response.isSuccess()) {
-                    LOG.error("Failed to delete instance '{}'. {}", worker.getName(), response.getFault());
-                    return false;
-                }
-            }
+        // master and workers
+        if (!deleteInstances(cluster, this::deleteServer)) {
+            return false;
         }
         // security groups
         if (cluster.getSecurityGroup() != null) {
+            // the security group stays in use until the instances are gone
+            RetryPolicy.Deadline deadline = ClientOpenstack.RETRY.deadline();
             while (true) {
-                sleep(1, false);
-                ActionResponse ar = os.compute().securityGroups().delete(cluster.getSecurityGroup());
+                if (!sleep(1, false)) {
+                    LOG.error("Deletion of security group '{}' has been interrupted.", cluster.getSecurityGroup());
+                    return false;
+                }
+                ActionResponse ar = ClientOpenstack.action("compute.securityGroups.delete",
+                        () -> os.compute().securityGroups().delete(cluster.getSecurityGroup()));
                 if (ar.isSuccess()) {
                     break;
                 }
+                if (deadline.isExpired()) {
+                    LOG.error("Failed to delete security group '{}'. {}", cluster.getSecurityGroup(), ar.getFault());
+                    return false;
+                }
+                ApiMetrics.getInstance().recordRetry("compute.securityGroups.delete");
                 LOG.warn("{} Trying again ...", ar.getFault());
             }
             LOG.info("Security group '{}' deleted.", cluster.getSecurityGroup());
@@ -82,9 +83,11 @@ public class TerminateIntentOpenstack extends TerminateIntent {
             }
             // detach interface from router
             try {
-                os.networking().router().detachInterface(router.getId(), subnet.getId(), port.getId());
+                ClientOpenstack.call("network.routers.detachInterface",
+                        () -> os.networking().router().detachInterface(router.getId(), subnet.getId(), port.getId()));
                 // delete subnet
-                ActionResponse ar = os.networking().subnet().delete(subnet.getId());
+                ActionResponse ar = ClientOpenstack.action("network.subnets.delete",
+                        () -> os.networking().subnet().delete(subnet.getId()));
                 if (ar.isSuccess()) {
                     LOG.info("Subnet '{}' deleted!", subnet.getId());
                 } else {
@@ -97,7 +100,8 @@ public class TerminateIntentOpenstack extends TerminateIntent {
         // network
         if (cluster.getNetwork() != null) {
             // delete network
-            ActionResponse ar = os.networking().network().delete(cluster.getNetwork().getId());
+            ActionResponse ar = ClientOpenstack.action("network.networks.delete",
+                    () -> os.networking().network().delete(cluster.getNetwork().getId()));
             if (ar.isSuccess()) {
                 LOG.info("Network '{}' deleted!", cluster.getNetwork());
             } else {
@@ -107,7 +111,8 @@ public class TerminateIntentOpenstack extends TerminateIntent {
         // keypair (but only if it starts with CreateCluster.PREFIX)
         if (cluster.getKeyName() != null && cluster.getKeyName().startsWith(CreateCluster.PREFIX)) {
             // delete keypair
-            ActionResponse ar  = os.compute().keypairs().delete(cluster.getKeyName());
+            ActionResponse ar = ClientOpenstack.action("compute.keypairs.delete",
+                    () -> os.compute().keypairs().delete(cluster.getKeyName()));
             if (ar.isSuccess()) {
                 LOG.info("Keypair '{}' deleted!", cluster.getKeyName());
             } else {
@@ -118,12 +123,26 @@ public class TerminateIntentOpenstack extends TerminateIntent {
         return true;
     }
 
+    @Override
+    public boolean terminateInstances(List<Instance> instances) {
+        return deleteInstances(instances, this::deleteServer);
+    }
+
+    private boolean deleteServer(Instance instance) {
+        ActionResponse response = ClientOpenstack.action("compute.servers.delete",
+                () -> os.compute().servers().delete(instance.getId()));
+        if (!response.isSuccess()) {
+            LOG.error("Failed to delete instance '{}'. {}", instance.getName(), response.getFault());
+        }
+        return response.isSuccess();
+    }
+
     private static Port getPortByRouterAndNetworkAndSubnet(OSClient osc, Router router, Network net, Subnet subnet) {
         PortService ps = osc.networking().port();
         PortListOptions portListOptions = PortListOptions.create();
         portListOptions.deviceId(router.getId());
         portListOptions.networkId(net.getId());
-        for (Port port : ps.list(portListOptions)) {
+        for (Port port : ClientOpenstack.call("network.ports.list", () -> ps.list(portListOptions))) {
             for (IP ip : port.getFixedIps()) {
                 if (ip.getSubnetId().equals(subnet.getId())) {
                     return port;
@@ -44,6 +44,12 @@ public final class ValidatorOpenstack extends Validator {
         return loadAndparseCredentialParameters();
     }
 
+    @Override
+    protected String getProviderEndpoint() {
+        OpenStackCredentials credentials = openstackConfig.getOpenstackCredentials();
+        return credentials.getEndpoint() + " " + credentials.getProjectName();
+    }
+
     private boolean loadAndparseCredentialParameters() {
 
         OpenStackCredentials openStackCredentials = null;
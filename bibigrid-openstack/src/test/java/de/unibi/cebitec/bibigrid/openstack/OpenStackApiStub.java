@@ -0,0 +1,343 @@
+package de.unibi.cebitec.bibigrid.openstack;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP stand-in for the OpenStack APIs used by the openstack module: Keystone v3, Nova, Neutron, Cinder
+ * and Glance. Requests are answered with recorded fixtures (see fixtures folder next to this class), which can
+ * be replaced per test. Every request is counted per endpoint and every service can be slowed down by a fixed
+ * latency, so tests can assert the number of requests an intent issues.
+ * <p>
+ * The service catalog returned by Keystone points all services to this server, so a {@link ClientOpenstack}
+ * created with {@link #createConfiguration()} talks to the stub only.
+ */
+class OpenStackApiStub implements Closeable {
+    static final String PROJECT_ID = "8f3c4a5e6b7d4e0f9a1b2c3d4e5f6a7b";
+    static final String TOKEN = "gAAAAABdpWmpstubtoken";
+    private static final String FIXTURES = "fixtures/";
+    private static final Pattern VARIABLE = Pattern.compile("\\$\\{([a-z]+)}");
+
+    enum Service {
+        IDENTITY("/identity", "v3"),
+        COMPUTE("/compute", "v2.1"),
+        NETWORK("/network", "v2.0"),
+        VOLUME("/volume", "v3"),
+        IMAGE("/image", "v2");
+
+        private final String prefix;
+        private final String version;
+
+        Service(String prefix, String version) {
+            this.prefix = prefix;
+            this.version = version;
+        }
+    }
+
+    private static final class Route {
+        private final Service service;
+        private final String method;
+        private final String path;
+        private final Pattern pattern;
+        private final int status;
+        private final String body;
+
+        Route(Service service, String method, String path, int status, String body) {
+            this.service = service;
+            this.method = method;
+            this.path = path;
+            this.pattern = Pattern.compile(path.replaceAll("\\{[^/]+}", "[^/]+"));
+            this.status = status;
+            this.body = body;
+        }
+
+        String getKey() {
+            return getKey(service, method, path);
+        }
+
+        static String getKey(Service service, String method, String path) {
+            return service + " " + method + " " + path;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+    private final Map<String, String> variables = new HashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Service, AtomicInteger> serviceRequestCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger totalRequests = new AtomicInteger();
+    private final Map<Service, Integer> latencies = new EnumMap<>(Service.class);
+    private final List<String> unmatchedRequests = new CopyOnWriteArrayList<>();
+
+    OpenStackApiStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        for (Service service : Service.values()) {
+            server.createContext(service.prefix, exchange -> handle(service, exchange));
+        }
+        variables.put("endpoint", "http://127.0.0.1:" + server.getAddress().getPort());
+        variables.put("project", PROJECT_ID);
+        registerDefaultRoutes();
+        server.start();
+    }
+
+    private void registerDefaultRoutes() {
+        respond(Service.IDENTITY, "POST", "/auth/tokens", 201, fixture("identity/token.json"));
+        // Nova
+        respond(Service.COMPUTE, "GET", "/servers/detail", 200, fixture("compute/servers.json"));
+        respond(Service.COMPUTE, "DELETE", "/servers/{id}", 204, null);
+        respond(Service.COMPUTE, "GET", "/flavors/detail", 200, fixture("compute/flavors.json"));
+        respond(Service.COMPUTE, "GET", "/images/detail", 200, fixture("compute/images.json"));
+        respond(Service.COMPUTE, "GET", "/os-keypairs", 200, fixture("compute/keypairs.json"));
+        respond(Service.COMPUTE, "DELETE", "/os-keypairs/{name}", 202, null);
+        respond(Service.COMPUTE, "GET", "/os-security-groups", 200, fixture("compute/security_groups.json"));
+        respond(Service.COMPUTE, "DELETE", "/os-security-groups/{id}", 202, null);
+        respond(Service.COMPUTE, "GET", "/os-server-groups", 200, fixture("compute/server_groups.json"));
+        // Neutron
+        respond(Service.NETWORK, "GET", "/networks", 200, fixture("network/networks.json"));
+        respond(Service.NETWORK, "GET", "/subnets", 200, fixture("network/subnets.json"));
+        respond(Service.NETWORK, "GET", "/routers", 200, fixture("network/routers.json"));
+        respond(Service.NETWORK, "GET", "/ports", 200, fixture("network/ports.json"));
+        // Cinder
+        respond(Service.VOLUME, "GET", "/volumes", 200, fixture("volume/volumes.json"));
+        respond(Service.VOLUME, "GET", "/volumes/detail", 200, fixture("volume/volumes.json"));
+        // Glance
+        respond(Service.IMAGE, "GET", "/images", 200, fixture("image/images.json"));
+    }
+
+    /**
+     * Registers a response, replacing earlier responses for the same method and path.
+     *
+     * @param service requested service
+     * @param method http method
+     * @param path path relative to the versioned service endpoint, "{...}" matches a single path segment
+     * @param status http status code
+     * @param body response body, "${endpoint}" and "${project}" are replaced; null for an empty response
+     */
+    void respond(Service service, String method, String path, int status, String body) {
+        Route route = new Route(service, method, path, status, body);
+        routes.removeIf(r -> r.getKey().equals(route.getKey()));
+        routes.add(route);
+    }
+
+    /**
+     * Delays every response of the service.
+     *
+     * @param service service to slow down
+     * @param millis latency in milliseconds
+     */
+    void setLatency(Service service, int millis) {
+        synchronized (latencies) {
+            latencies.put(service, millis);
+        }
+    }
+
+    /**
+     * @return fixture content with the variables "${key}" replaced by the given values
+     */
+    static String fixture(String name, Map<String, String> values) {
+        return render(fixture(name), values);
+    }
+
+    static String fixture(String name) {
+        try (InputStream stream = OpenStackApiStub.class.getResourceAsStream(FIXTURES + name)) {
+            if (stream == null) {
+                throw new IllegalArgumentException("Fixture '" + name + "' not found.");
+            }
+            return new String(readAll(stream), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return a configuration authenticating against the identity endpoint of this stub
+     */
+    ConfigurationOpenstack createConfiguration() throws IOException {
+        ConfigurationOpenstack config = new ConfigurationOpenstack();
+        OpenStackCredentials credentials = new OpenStackCredentials();
+        credentials.setEndpoint(getEndpoint());
+        credentials.setUsername("bibigrid");
+        credentials.setPassword("secret");
+        credentials.setProjectName("bibigrid");
+        credentials.setDomain("Default");
+        credentials.setProjectDomain("Default");
+        config.setOpenstackCredentials(credentials);
+        return config;
+    }
+
+    /**
+     * @return Keystone v3 endpoint
+     */
+    String getEndpoint() {
+        return variables.get("endpoint") + Service.IDENTITY.prefix + "/" + Service.IDENTITY.version;
+    }
+
+    /**
+     * @return number of requests received, including unmatched requests
+     */
+    int getRequestCount() {
+        return totalRequests.get();
+    }
+
+    int getRequestCount(Service service) {
+        AtomicInteger count = serviceRequestCounts.get(service);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * @param path registered path of the endpoint, e.g. "/servers/{id}"
+     */
+    int getRequestCount(Service service, String method, String path) {
+        AtomicInteger count = requestCounts.get(Route.getKey(service, method, path));
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * @return number of requests per endpoint, useful as failure message of request budget assertions
+     */
+    Map<String, Integer> getRequestCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        requestCounts.forEach((key, count) -> counts.put(key, count.get()));
+        return counts;
+    }
+
+    /**
+     * @return requests without registered response, answered with 404
+     */
+    List<String> getUnmatchedRequests() {
+        return new ArrayList<>(unmatchedRequests);
+    }
+
+    void resetCounters() {
+        requestCounts.clear();
+        serviceRequestCounts.clear();
+        totalRequests.set(0);
+        unmatchedRequests.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(Service service, HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = getResourcePath(service, exchange.getRequestURI().getPath());
+            // consume request body, the stub answers independent of the content
+            readAll(exchange.getRequestBody());
+            totalRequests.incrementAndGet();
+            serviceRequestCounts.computeIfAbsent(service, k -> new AtomicInteger()).incrementAndGet();
+            Route route = findRoute(service, method, path);
+            String key = route != null ? route.getKey() : Route.getKey(service, method, path);
+            requestCounts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            delay(service);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (route == null) {
+                unmatchedRequests.add(key);
+                send(exchange, 404, "{\"itemNotFound\": {\"code\": 404, \"message\": \"" + key + " not found\"}}");
+                return;
+            }
+            if (service == Service.IDENTITY) {
+                exchange.getResponseHeaders().add("X-Subject-Token", TOKEN);
+            }
+            send(exchange, route.status, route.body != null ? render(route.body, variables) : null);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String render(String template, Map<String, String> values) {
+        Matcher matcher = VARIABLE.matcher(template);
+        StringBuffer result = new StringBuffer();
+        while (matcher.find()) {
+            String value = values.get(matcher.group(1));
+            matcher.appendReplacement(result, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * Removes the service prefix, the api version and the project id (cinder) from the request path.
+     */
+    private static String getResourcePath(Service service, String path) {
+        String resource = path.substring(service.prefix.length());
+        if (resource.startsWith("/" + service.version + "/") || resource.equals("/" + service.version)) {
+            resource = resource.substring(service.version.length() + 1);
+        }
+        if (resource.startsWith("/" + PROJECT_ID)) {
+            resource = resource.substring(PROJECT_ID.length() + 1);
+        }
+        if (resource.length() > 1 && resource.endsWith("/")) {
+            resource = resource.substring(0, resource.length() - 1);
+        }
+        return resource.isEmpty() ? "/" : resource;
+    }
+
+    private Route findRoute(Service service, String method, String path) {
+        for (Route route : routes) {
+            if (route.service == service && route.method.equals(method) && route.pattern.matcher(path).matches()) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    private void delay(Service service) {
+        Integer latency;
+        synchronized (latencies) {
+            latency = latencies.get(service);
+        }
+        if (latency != null && latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] data = new byte[8192];
+        int read;
+        while ((read = stream.read(data)) != -1) {
+            buffer.write(data, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,116 @@
+package de.unibi.cebitec.bibigrid.openstack;
+
+import de.unibi.cebitec.bibigrid.core.model.Cluster;
+import de.unibi.cebitec.bibigrid.openstack.OpenStackApiStub.Service;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Request-count budgets of the openstack intents, measured against the {@link OpenStackApiStub}.
+ * A budget violation usually means a lookup has been moved into a loop over instances.
+ */
+public class OpenStackRequestBudgetTest {
+    private static final String CLUSTER_ID = "k4qwv1x3wc2gdbn";
+    private static final int WORKERS = 200;
+
+    private OpenStackApiStub stub;
+    private ConfigurationOpenstack config;
+    private ProviderModuleOpenstack providerModule;
+    private ClientOpenstack client;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new OpenStackApiStub();
+        stub.respond(Service.COMPUTE, "GET", "/servers/detail", 200, getServers(CLUSTER_ID, WORKERS));
+        stub.respond(Service.COMPUTE, "GET", "/os-security-groups", 200, "{\"security_groups\": [" +
+                "{\"id\": \"0e1f2a3b-4c5d-4e6f-8a9b-0c1d2e3f4a5b\", \"name\": \"bibigrid-sg-" + CLUSTER_ID + "\", " +
+                "\"description\": \"\", \"tenant_id\": \"${project}\", \"rules\": []}]}");
+        stub.respond(Service.COMPUTE, "GET", "/os-keypairs", 200, "{\"keypairs\": [{\"keypair\": " +
+                "{\"name\": \"bibigrid-" + CLUSTER_ID + "\", \"fingerprint\": \"7e:eb:ab:24:ba:d1:e1:88:ae:9a:fb:66:53:df:d3:bd\", " +
+                "\"public_key\": \"ssh-rsa AAAAB3NzaC1yc2EAAAADAQABAAABAQC1stub bibigrid\"}}]}");
+        config = stub.createConfiguration();
+        providerModule = new ProviderModuleOpenstack();
+        client = new ClientOpenstack(config);
+    }
+
+    @After
+    public void tearDown() {
+        stub.close();
+    }
+
+    /**
+     * @return servers/detail response of a cluster with one master and the given number of workers
+     */
+    private static String getServers(String clusterId, int workers) {
+        List<String> servers = new ArrayList<>();
+        for (int i = 0; i <= workers; i++) {
+            Map<String, String> values = new HashMap<>();
+            values.put("id", String.format(Locale.US, "0c5d3e2a-9b1f-4e7d-8a6c-%012d", i));
+            values.put("name", i == 0 ? "bibigrid-master-" + clusterId : "bibigrid-worker1-" + i + "-" + clusterId);
+            values.put("tag", i == 0 ? "bibigrid-master-" + clusterId : "bibigrid-worker-" + clusterId);
+            values.put("cluster", clusterId);
+            values.put("ip", "10.0." + (i / 250) + "." + (i % 250 + 2));
+            servers.add(OpenStackApiStub.fixture("compute/server.json", values));
+        }
+        return "{\"servers\": [" + String.join(",", servers) + "]}";
+    }
+
+    @Test
+    public void authenticate() {
+        assertEquals(1, stub.getRequestCount(Service.IDENTITY, "POST", "/auth/tokens"));
+        assertEquals(1, stub.getRequestCount());
+    }
+
+    @Test
+    public void listLargeCluster() {
+        stub.resetCounters();
+        Map<String, Cluster> clusters = providerModule.getListIntent(client, config).getList();
+        Cluster cluster = clusters.get(CLUSTER_ID);
+        assertNotNull(cluster);
+        assertNotNull(cluster.getMasterInstance());
+        assertEquals(WORKERS, cluster.getWorkerInstances().size());
+        assertNotNull(cluster.getSecurityGroup());
+        assertTrue(stub.getUnmatchedRequests().toString(), stub.getUnmatchedRequests().isEmpty());
+        assertEquals(1, stub.getRequestCount(Service.COMPUTE, "GET", "/servers/detail"));
+        assertTrue(stub.getRequestCounts().toString(), stub.getRequestCount() <= 8);
+    }
+
+    @Test
+    public void terminateLargeCluster() {
+        config.setClusterIds(CLUSTER_ID);
+        stub.resetCounters();
+        assertTrue(providerModule.getTerminateIntent(client, config).terminate());
+        assertEquals(WORKERS + 1, stub.getRequestCount(Service.COMPUTE, "DELETE", "/servers/{id}"));
+        assertEquals(1, stub.getRequestCount(Service.COMPUTE, "DELETE", "/os-security-groups/{id}"));
+        assertEquals(1, stub.getRequestCount(Service.COMPUTE, "DELETE", "/os-keypairs/{name}"));
+        // list budget plus one request per deleted resource
+        assertTrue(stub.getRequestCounts().toString(), stub.getRequestCount() <= 8 + WORKERS + 3);
+    }
+
+    @Test
+    public void lookups() {
+        stub.resetCounters();
+        assertNotNull(client.getSubnetByIdOrName("bibigrid-intern-subnet"));
+        assertEquals(1, stub.getRequestCount(Service.NETWORK));
+        assertNotNull(client.getImageByIdOrName("Ubuntu 18.04 LTS (2019-09-25)"));
+        assertEquals(1, stub.getRequestCount(Service.COMPUTE));
+        assertNotNull(client.getNetworkByIdOrName("a7b8c9d0-e1f2-4a3b-8c4d-5e6f7a8b9c0d"));
+        assertEquals(2, stub.getRequestCount(Service.NETWORK));
+        assertNotNull(client.getSnapshotByIdOrName("bibigrid-data"));
+        assertEquals(1, stub.getRequestCount(Service.VOLUME));
+        assertEquals(4, stub.getRequestCount());
+    }
+
+    @Test
+    public void latency() {
+        stub.setLatency(Service.NETWORK, 200);
+        long start = System.nanoTime();
+        assertFalse(client.getSubnets().isEmpty());
+        assertTrue(System.nanoTime() - start >= 200_000_000L);
+    }
+}